@@ -0,0 +1,294 @@
+/*
+ * Copyright (C) 2013 Distributed Computing & Security Group,
+ *                    Leibniz Universitaet Hannover, Germany
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.locationprivacy.algorithm;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import android.location.Location;
+import android.locationprivacy.model.AbstractLocationPrivacyAlgorithm;
+import android.locationprivacy.model.Coordinate;
+import android.locationprivacy.model.LocationPrivacyConfiguration;
+import android.locationprivacy.util.BoundaryIndex;
+import android.locationprivacy.util.Gazetteer;
+import android.locationprivacy.util.TimedLruCache;
+import android.os.Parcel;
+import android.util.Log;
+
+/**
+ * The algorithm AdminRegion maps a real location to the representative point
+ * of the postal code region or municipality containing it. Unlike
+ * GeoReverseGeo it does not depend on a geocoder: the boundaries are taken
+ * from a memory-mapped BoundaryIndex and the region is found by an R-tree
+ * search and a point-in-polygon test. All users within a region get the same
+ * location, which lies inside the region.
+ *
+ * Consecutive locations of an app mostly stay in the same region, so the
+ * region of the last location is tested first.
+ *
+ * If the boundary file is missing or no region contains the location, the
+ * location is suppressed.
+ */
+public class AdminRegion extends AbstractLocationPrivacyAlgorithm {
+
+	/** The Constant NAME. */
+	private static final String NAME = "adminregion";
+
+	/** Default location of the boundary index */
+	private static final String DEFAULT_BOUNDARY_FILE = "/system/etc/locationprivacy/boundaries.bnd";
+
+	/** Time in milliseconds before opening a boundary index is retried */
+	private static final long RETRY_INTERVAL = 60000;
+
+	/**
+	 * Boundary indexes that could not be opened recently, so a missing file is
+	 * not opened and logged again for every location
+	 */
+	private static final TimedLruCache<String, Boolean> failedFiles = new TimedLruCache<String, Boolean>(
+			8);
+
+	/** Boundary index last opened, reused while the boundary file is the same */
+	private volatile BoundaryIndex index;
+
+	/** Region the last location has been mapped to */
+	private volatile Hit lastHit;
+
+	/**
+	 * Creates new instance of AdminRegion
+	 */
+	public AdminRegion() {
+		super(NAME);
+	}
+
+	/**
+	 * Creates new instance of AdminRegion
+	 *
+	 * @param in
+	 *            Parcel object containing the configuration of the algorithm
+	 */
+	private AdminRegion(Parcel in) {
+		super(in, NAME);
+	}
+
+	/**
+	 * Creates new instance of AdminRegion
+	 *
+	 * @param configuration
+	 *            configuration of the algorithm
+	 */
+	private AdminRegion(LocationPrivacyConfiguration configuration) {
+		super(NAME, configuration);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * android.locationprivacy.model.AbstractLocationPrivacyAlgorithm#newInstance
+	 * ()
+	 */
+	@Override
+	public AbstractLocationPrivacyAlgorithm newInstance() {
+		return new AdminRegion();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * android.locationprivacy.model.AbstractLocationPrivacyAlgorithm#newInstance
+	 * (android.locationprivacy.model.LocationPrivacyConfiguration)
+	 */
+	@Override
+	public AbstractLocationPrivacyAlgorithm newInstance(
+			LocationPrivacyConfiguration configuration) {
+		return new AdminRegion(configuration);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see android.locationprivacy.model.AbstractLocationPrivacyAlgorithm#
+	 * getDefaultConfiguration()
+	 */
+	@Override
+	public LocationPrivacyConfiguration getDefaultConfiguration() {
+		HashMap<String, ArrayList<String>> enumValues = new HashMap<String, ArrayList<String>>();
+		ArrayList<String> region = new ArrayList<String>();
+		region.add("postalcode");
+		region.add("city");
+		enumValues.put("region", region);
+		HashMap<String, String> enumChoosen = new HashMap<String, String>();
+		enumChoosen.put("region", "city");
+		HashMap<String, String> stringValues = new HashMap<String, String>();
+		stringValues.put("boundaryfile", DEFAULT_BOUNDARY_FILE);
+		return new LocationPrivacyConfiguration(new HashMap<String, Integer>(),
+				new HashMap<String, Double>(), stringValues, enumValues,
+				enumChoosen, new HashMap<String, Coordinate>(),
+				new HashMap<String, Boolean>());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * android.locationprivacy.model.AbstractLocationPrivacyAlgorithm#setConfiguration
+	 * (android.locationprivacy.model.LocationPrivacyConfiguration)
+	 */
+	@Override
+	public void setConfiguration(LocationPrivacyConfiguration configuration) {
+		super.setConfiguration(configuration);
+		lastHit = null;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see android.locationprivacy.model.AbstractLocationPrivacyAlgorithm#
+	 * obfuscate(android.location.Location)
+	 */
+	@Override
+	public Location obfuscate(Location location) {
+		BoundaryIndex index = getIndex();
+		if (index == null) {
+			return null;
+		}
+		int region = getRegion(index, getLevel(), location.getLatitude(),
+				location.getLongitude());
+		if (region < 0) {
+			return null;
+		}
+		Location newLoc = new Location(location);
+		newLoc.setLatitude(index.getLatitude(region));
+		newLoc.setLongitude(index.getLongitude(region));
+		return newLoc;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see android.locationprivacy.model.AbstractLocationPrivacyAlgorithm#
+	 * obfuscate(double[], double[], double[], long[], int, int)
+	 */
+	@Override
+	public void obfuscate(double[] latitudes, double[] longitudes,
+			double[] altitudes, long[] times, int offset, int count) {
+		BoundaryIndex index = getIndex();
+		int level = getLevel();
+		for (int i = offset; i < offset + count; i++) {
+			int region = index == null ? -1 : getRegion(index, level,
+					latitudes[i], longitudes[i]);
+			if (region < 0) {
+				latitudes[i] = Double.NaN;
+				longitudes[i] = Double.NaN;
+			} else {
+				latitudes[i] = index.getLatitude(region);
+				longitudes[i] = index.getLongitude(region);
+			}
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see android.locationprivacy.model.AbstractLocationPrivacyAlgorithm#
+	 * instanceFromParcel(android.os.Parcel)
+	 */
+	@Override
+	protected AbstractLocationPrivacyAlgorithm instanceFromParcel(Parcel in) {
+		return new AdminRegion(in);
+	}
+
+	/**
+	 * Returns the configured boundary index. The index is only looked up
+	 * again if the boundary file has changed.
+	 *
+	 * @return index, null if it cannot be opened or could not be opened within
+	 *         the last RETRY_INTERVAL
+	 */
+	private BoundaryIndex getIndex() {
+		String path = configuration.getString("boundaryfile");
+		if (path == null) {
+			path = DEFAULT_BOUNDARY_FILE;
+		}
+		BoundaryIndex current = index;
+		if (current != null && current.getPath().equals(path)) {
+			return current;
+		}
+		if (failedFiles.get(path) != null) {
+			return null;
+		}
+		try {
+			current = BoundaryIndex.open(path);
+			index = current;
+			return current;
+		} catch (IOException e) {
+			Log.e(TAG, "Error: could not open boundary index " + path);
+			Log.e(TAG, e.getMessage());
+			failedFiles.put(path, Boolean.TRUE, RETRY_INTERVAL);
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the configured level of the regions
+	 */
+	private int getLevel() {
+		String region = configuration.getEnumChoosen("region");
+		return "postalcode".equals(region) ? Gazetteer.POSTALCODE
+				: Gazetteer.CITY;
+	}
+
+	/**
+	 * Returns the region of a level containing a location. The region of the
+	 * last location is tested first.
+	 *
+	 * @return region, -1 if there is none
+	 */
+	private int getRegion(BoundaryIndex index, int level, double latitude,
+			double longitude) {
+		Hit hit = lastHit;
+		if (hit != null && hit.index == index && hit.level == level
+				&& index.contains(hit.region, latitude, longitude)) {
+			return hit.region;
+		}
+		int region = index.find(level, latitude, longitude);
+		if (region >= 0) {
+			lastHit = new Hit(index, level, region);
+		}
+		return region;
+	}
+
+	/**
+	 * Hit stores the region of a location. Hits are immutable, so they can be
+	 * shared between threads.
+	 */
+	private static class Hit {
+		final BoundaryIndex index;
+		final int level;
+		final int region;
+
+		Hit(BoundaryIndex index, int level, int region) {
+			this.index = index;
+			this.level = level;
+			this.region = region;
+		}
+	}
+
+}
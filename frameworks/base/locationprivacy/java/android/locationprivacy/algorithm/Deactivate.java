@@ -18,6 +18,7 @@
 package android.locationprivacy.algorithm;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 
 import android.location.Location;
@@ -45,6 +46,16 @@ public class Deactivate extends AbstractLocationPrivacyAlgorithm {
 	public Deactivate(Parcel in) {
 		super(in, NAME);
 	}
+
+	/**
+	 * Creates new instance of Deactivate
+	 * 
+	 * @param configuration
+	 *            configuration of the algorithm
+	 */
+	private Deactivate(LocationPrivacyConfiguration configuration) {
+		super(NAME, configuration);
+	}
 	
 	/**
 	 * Creates new instance of Deactivate
@@ -61,6 +72,15 @@ public class Deactivate extends AbstractLocationPrivacyAlgorithm {
 		return new Deactivate();
 	}
 
+	/* (non-Javadoc)
+	 * @see android.locationprivacy.model.AbstractLocationPrivacyAlgorithm#newInstance(android.locationprivacy.model.LocationPrivacyConfiguration)
+	 */
+	@Override
+	public AbstractLocationPrivacyAlgorithm newInstance(
+			LocationPrivacyConfiguration configuration) {
+		return new Deactivate(configuration);
+	}
+
 	/* (non-Javadoc)
 	 * @see android.locationprivacy.model.AbstractLocationPrivacyAlgorithm#getDefaultConfiguration()
 	 */
@@ -81,6 +101,16 @@ public class Deactivate extends AbstractLocationPrivacyAlgorithm {
 		return null;
 	}
 
+	/* (non-Javadoc)
+	 * @see android.locationprivacy.model.AbstractLocationPrivacyAlgorithm#obfuscate(double[], double[], double[], long[], int, int)
+	 */
+	@Override
+	public void obfuscate(double[] latitudes, double[] longitudes,
+			double[] altitudes, long[] times, int offset, int count) {
+		Arrays.fill(latitudes, offset, offset + count, Double.NaN);
+		Arrays.fill(longitudes, offset, offset + count, Double.NaN);
+	}
+
 	/* (non-Javadoc)
 	 * @see android.locationprivacy.model.AbstractLocationPrivacyAlgorithm#instanceFromParcel(android.os.Parcel)
 	 */
@@ -18,6 +18,7 @@
 package android.locationprivacy.algorithm;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -56,6 +57,16 @@ public class FixedPosition extends AbstractLocationPrivacyAlgorithm {
 		super(in, NAME);
 	}
 
+	/**
+	 * Creates new instance of FixedPosition
+	 * 
+	 * @param configuration
+	 *            configuration of the algorithm
+	 */
+	private FixedPosition(LocationPrivacyConfiguration configuration) {
+		super(NAME, configuration);
+	}
+
 
 	/* (non-Javadoc)
 	 * @see android.locationprivacy.model.AbstractLocationPrivacyAlgorithm#newInstance()
@@ -65,6 +76,15 @@ public class FixedPosition extends AbstractLocationPrivacyAlgorithm {
 		return new FixedPosition();
 	}
 
+	/* (non-Javadoc)
+	 * @see android.locationprivacy.model.AbstractLocationPrivacyAlgorithm#newInstance(android.locationprivacy.model.LocationPrivacyConfiguration)
+	 */
+	@Override
+	public AbstractLocationPrivacyAlgorithm newInstance(
+			LocationPrivacyConfiguration configuration) {
+		return new FixedPosition(configuration);
+	}
+
 	/* (non-Javadoc)
 	 * @see android.locationprivacy.model.AbstractLocationPrivacyAlgorithm#getDefaultConfiguration()
 	 */
@@ -89,6 +109,18 @@ public class FixedPosition extends AbstractLocationPrivacyAlgorithm {
 		return Coordinate.getLocation(coord, location);
 	}
 
+	/* (non-Javadoc)
+	 * @see android.locationprivacy.model.AbstractLocationPrivacyAlgorithm#obfuscate(double[], double[], double[], long[], int, int)
+	 */
+	@Override
+	public void obfuscate(double[] latitudes, double[] longitudes,
+			double[] altitudes, long[] times, int offset, int count) {
+		Coordinate coord = configuration.getCoordinate("position");
+		Arrays.fill(latitudes, offset, offset + count, coord.getLatitude());
+		Arrays.fill(longitudes, offset, offset + count, coord.getLongitude());
+		Arrays.fill(altitudes, offset, offset + count, coord.getAltitude());
+	}
+
 	/* (non-Javadoc)
 	 * @see android.locationprivacy.model.AbstractLocationPrivacyAlgorithm#instanceFromParcel(android.os.Parcel)
 	 */
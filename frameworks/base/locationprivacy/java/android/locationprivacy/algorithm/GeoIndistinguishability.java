@@ -0,0 +1,291 @@
+/*
+ * Copyright (C) 2013 Distributed Computing & Security Group,
+ *                    Leibniz Universitaet Hannover, Germany
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.locationprivacy.algorithm;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+
+import android.location.Location;
+import android.locationprivacy.model.AbstractLocationPrivacyAlgorithm;
+import android.locationprivacy.model.Coordinate;
+import android.locationprivacy.model.LocationPrivacyConfiguration;
+import android.os.Parcel;
+import android.util.Log;
+
+/**
+ * The algorithm GeoIndistinguishability adds noise drawn from the planar
+ * Laplace distribution to every location. This mechanism satisfies
+ * epsilon-geo-indistinguishability: two locations within a distance r are
+ * indistinguishable up to a factor of e^(epsilon * r).
+ *
+ * The direction is drawn uniformly, the distance from the inverse of the
+ * radial cumulative distribution function C(r) = 1 - (1 + epsilon * r) *
+ * e^(-epsilon * r). Inverting C needs the Lambert W function, so the inverse
+ * is precomputed once for epsilon = 1 and linearly interpolated. Other values
+ * of epsilon only scale the distance.
+ */
+public class GeoIndistinguishability extends AbstractLocationPrivacyAlgorithm {
+
+	/** The Constant NAME. */
+	private static final String NAME = "geoind";
+
+	/** Number of intervals of the inverse CDF table */
+	private static final int TABLE_SIZE = 4096;
+
+	/**
+	 * Number of intervals at the upper end of the table that are computed
+	 * exactly because the inverse CDF diverges towards p = 1
+	 */
+	private static final int EXACT_TAIL = 4;
+
+	/**
+	 * Inverse of the radial CDF for epsilon = 1, sampled at probabilities
+	 * i / TABLE_SIZE.
+	 */
+	private static final double[] INVERSE_CDF = new double[TABLE_SIZE];
+
+	static {
+		for (int i = 0; i < TABLE_SIZE; i++) {
+			INVERSE_CDF[i] = inverseCdf((double) i / TABLE_SIZE);
+		}
+	}
+
+	/** Random number generator used for the noise */
+	private final Random random = new Random();
+
+	/** Epsilon last read from the configuration, validated once per value */
+	private volatile Epsilon epsilon;
+
+	/**
+	 * Creates new instance of GeoIndistinguishability
+	 */
+	public GeoIndistinguishability() {
+		super(NAME);
+	}
+
+	/**
+	 * Creates new instance of GeoIndistinguishability
+	 *
+	 * @param in
+	 *            Parcel object containing the configuration of the algorithm
+	 */
+	private GeoIndistinguishability(Parcel in) {
+		super(in, NAME);
+	}
+
+	/**
+	 * Creates new instance of GeoIndistinguishability
+	 *
+	 * @param configuration
+	 *            configuration of the algorithm
+	 */
+	private GeoIndistinguishability(LocationPrivacyConfiguration configuration) {
+		super(NAME, configuration);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * android.locationprivacy.model.AbstractLocationPrivacyAlgorithm#newInstance
+	 * ()
+	 */
+	@Override
+	public AbstractLocationPrivacyAlgorithm newInstance() {
+		return new GeoIndistinguishability();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * android.locationprivacy.model.AbstractLocationPrivacyAlgorithm#newInstance
+	 * (android.locationprivacy.model.LocationPrivacyConfiguration)
+	 */
+	@Override
+	public AbstractLocationPrivacyAlgorithm newInstance(
+			LocationPrivacyConfiguration configuration) {
+		return new GeoIndistinguishability(configuration);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see android.locationprivacy.model.AbstractLocationPrivacyAlgorithm#
+	 * getDefaultConfiguration()
+	 */
+	@Override
+	public LocationPrivacyConfiguration getDefaultConfiguration() {
+		HashMap<String, Double> doubleValues = new HashMap<String, Double>();
+		// epsilon per kilometer, about ln(4) within 200 meters
+		doubleValues.put("epsilon", 7.0);
+		return new LocationPrivacyConfiguration(new HashMap<String, Integer>(),
+				doubleValues, new HashMap<String, String>(),
+				new HashMap<String, ArrayList<String>>(),
+				new HashMap<String, String>(),
+				new HashMap<String, Coordinate>(),
+				new HashMap<String, Boolean>());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see android.locationprivacy.model.AbstractLocationPrivacyAlgorithm#
+	 * obfuscate(android.location.Location)
+	 */
+	@Override
+	public Location obfuscate(Location location) {
+		double epsilon = getEpsilon();
+		if (Double.isNaN(epsilon)) {
+			return null;
+		}
+		double[] moved = new double[2];
+		double alpha = random.nextDouble() * 2 * Math.PI;
+		double r = sampleDistance(random.nextDouble()) / epsilon;
+		Radius.move(location.getLatitude(), location.getLongitude(), r, alpha,
+				moved);
+		Location newLoc = new Location(location);
+		newLoc.setLatitude(moved[0]);
+		newLoc.setLongitude(moved[1]);
+		return newLoc;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see android.locationprivacy.model.AbstractLocationPrivacyAlgorithm#
+	 * obfuscate(double[], double[], double[], long[], int, int)
+	 */
+	@Override
+	public void obfuscate(double[] latitudes, double[] longitudes,
+			double[] altitudes, long[] times, int offset, int count) {
+		double epsilon = getEpsilon();
+		double[] moved = new double[2];
+		for (int i = offset; i < offset + count; i++) {
+			if (Double.isNaN(epsilon)) {
+				latitudes[i] = Double.NaN;
+				longitudes[i] = Double.NaN;
+				continue;
+			}
+			double alpha = random.nextDouble() * 2 * Math.PI;
+			double r = sampleDistance(random.nextDouble()) / epsilon;
+			Radius.move(latitudes[i], longitudes[i], r, alpha, moved);
+			latitudes[i] = moved[0];
+			longitudes[i] = moved[1];
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see android.locationprivacy.model.AbstractLocationPrivacyAlgorithm#
+	 * instanceFromParcel(android.os.Parcel)
+	 */
+	@Override
+	protected AbstractLocationPrivacyAlgorithm instanceFromParcel(Parcel in) {
+		return new GeoIndistinguishability(in);
+	}
+
+	/**
+	 * Returns the configured epsilon per meter. A value that is not positive
+	 * and finite would yield an infinite, zero or NaN distance, i.e. the
+	 * location would be lost or disclosed, so locations are suppressed then.
+	 * The value is only validated and an invalid value only logged when the
+	 * configured value changes.
+	 *
+	 * @return epsilon per meter, NaN if the configured value is invalid
+	 */
+	private double getEpsilon() {
+		double configured = configuration.getDouble("epsilon");
+		Epsilon current = epsilon;
+		if (current != null
+				&& Double.compare(current.configured, configured) == 0) {
+			return current.perMeter;
+		}
+		double perMeter = configured / 1000.0;
+		if (!(configured > 0) || Double.isInfinite(configured)) {
+			Log.w(TAG, "Invalid epsilon " + configured
+					+ ", locations suppressed");
+			perMeter = Double.NaN;
+		}
+		epsilon = new Epsilon(configured, perMeter);
+		return perMeter;
+	}
+
+	/**
+	 * Returns the distance of the planar Laplace distribution for epsilon = 1
+	 * at a given probability using the precomputed table. The first interval
+	 * (square root behaviour near 0) and the last intervals are computed
+	 * exactly, which keeps the interpolation error below 0.01 / epsilon.
+	 *
+	 * @param p
+	 *            uniformly distributed probability in [0, 1)
+	 * @return distance with C(distance) = p
+	 */
+	static double sampleDistance(double p) {
+		double x = p * TABLE_SIZE;
+		int i = (int) x;
+		if (i == 0 || i >= TABLE_SIZE - EXACT_TAIL) {
+			return inverseCdf(p);
+		}
+		return INVERSE_CDF[i] + (x - i) * (INVERSE_CDF[i + 1] - INVERSE_CDF[i]);
+	}
+
+	/**
+	 * Computes the inverse of the radial CDF for epsilon = 1 exactly, which
+	 * is -W_-1((p - 1) / e) - 1. Instead of evaluating the Lambert W function
+	 * the equation ln(1 + u) - u = ln(1 - p) is solved with Newton's method.
+	 * Starting right of the root, the iteration converges monotonically
+	 * because the function is concave and decreasing.
+	 *
+	 * @param p
+	 *            probability in [0, 1)
+	 * @return distance u with C(u) = p
+	 */
+	static double inverseCdf(double p) {
+		if (p <= 0) {
+			return 0;
+		}
+		double q = -Math.log1p(-p);
+		double u = Math.sqrt(2 * q) + q + Math.log1p(q);
+		for (int i = 0; i < 50; i++) {
+			double f = Math.log1p(u) - u + q;
+			double step = f * (1 + u) / u;
+			u += step;
+			if (Math.abs(step) < 1e-12 * (1 + u)) {
+				break;
+			}
+		}
+		return u;
+	}
+
+	/**
+	 * Epsilon stores a configured value and the value per meter derived from
+	 * it. It is immutable, so it can be shared between threads.
+	 */
+	private static class Epsilon {
+		final double configured;
+		final double perMeter;
+
+		Epsilon(double configured, double perMeter) {
+			this.configured = configured;
+			this.perMeter = perMeter;
+		}
+	}
+}
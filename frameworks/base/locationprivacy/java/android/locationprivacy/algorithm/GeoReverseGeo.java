@@ -17,18 +17,25 @@
 
 package android.locationprivacy.algorithm;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import android.content.Context;
 import android.location.Address;
 import android.location.Geocoder;
 import android.location.Location;
 import android.locationprivacy.model.AbstractLocationPrivacyAlgorithm;
 import android.locationprivacy.model.Coordinate;
 import android.locationprivacy.model.LocationPrivacyConfiguration;
+import android.locationprivacy.util.Gazetteer;
+import android.locationprivacy.util.MetricGrid;
+import android.locationprivacy.util.Metrics;
+import android.locationprivacy.util.SingleFlight;
+import android.locationprivacy.util.TimedLruCache;
 import android.os.Parcel;
 import android.util.Log;
 
@@ -40,6 +47,24 @@ import android.util.Log;
  * The broad address then is geo-coded again to transform it back to coordinates.
  * The algorithm maps a real location to the center of the bounding box of a geo
  * object, such as the current street, postal code region, or city.
+ * 
+ * Both geocoder results hardly change while a user stays within a city, so
+ * they are cached for all apps. Reverse geocoding results are cached per
+ * detail and cell of a grid whose cells are small compared to the geo objects
+ * of the detail, forward geocoding results per formatted address. Locations
+ * and addresses the geocoder knows nothing about are cached for a shorter
+ * time, errors are not cached. Hits and misses of both caches are recorded
+ * in the metrics of the algorithm.
+ * 
+ * Apps of several uids often receive the same fix at the same moment. Cache
+ * misses for the same key are therefore coalesced: only one of them asks the
+ * geocoder, the others wait and share its result (geocoder_shared).
+ * 
+ * With the source gazetteer, the algorithm works offline: the place of the
+ * configured detail containing the location is taken from a Gazetteer file
+ * and its centroid is returned. With the source geocoder, addresses found by
+ * the geocoder are looked up in the gazetteer file, if there is one, before
+ * the geocoder is asked for their coordinates.
  *
  * @author Christian Kater
  * @author Benjamin Henne
@@ -50,6 +75,75 @@ public class GeoReverseGeo extends AbstractLocationPrivacyAlgorithm {
 	/** The Constant NAME. */
 	private static final String NAME = "georeversegeo";
 
+	/** Default location of the gazetteer */
+	private static final String DEFAULT_GAZETTEER_FILE = "/system/etc/locationprivacy/gazetteer.gaz";
+
+	/** Maximum number of cached addresses */
+	private static final int MAX_ADDRESSES = 512;
+
+	/** Maximum number of cached coordinates */
+	private static final int MAX_COORDINATES = 256;
+
+	/** Time geocoder results are cached in milliseconds */
+	private static final long TTL = 6 * 60 * 60 * 1000L;
+
+	/** Time missing geocoder results are cached in milliseconds */
+	private static final long MISSING_TTL = 5 * 60 * 1000L;
+
+	/** Time in milliseconds before opening a gazetteer file is retried */
+	private static final long RETRY_INTERVAL = 60000;
+
+	/** Cached value of a location without address */
+	private static final String NO_ADDRESS = "";
+
+	/** Cached value of an address without coordinates */
+	private static final double[] NO_COORDINATES = new double[0];
+
+	/** Formatted addresses by detail and cell */
+	private static final TimedLruCache<String, String> addresses = new TimedLruCache<String, String>(
+			MAX_ADDRESSES);
+
+	/** Coordinates by formatted address */
+	private static final TimedLruCache<String, double[]> coordinates = new TimedLruCache<String, double[]>(
+			MAX_COORDINATES);
+
+	/**
+	 * Gazetteer files that could not be opened recently, so a missing file is
+	 * not opened and logged again for every location
+	 */
+	private static final TimedLruCache<String, Boolean> failedFiles = new TimedLruCache<String, Boolean>(
+			8);
+
+	/** Grids locations are quantized with by detail */
+	private static final HashMap<String, MetricGrid> grids = new HashMap<String, MetricGrid>();
+
+	/** Metrics of the algorithm */
+	private static final Metrics metrics = Metrics.get(NAME);
+
+	/** Reverse geocoding requests in flight by detail and cell */
+	private static final SingleFlight<String, String> addressFlights = new SingleFlight<String, String>(
+			metrics, "geocoder_shared");
+
+	/** Geocoding requests in flight by formatted address */
+	private static final SingleFlight<String, double[]> coordinatesFlights = new SingleFlight<String, double[]>(
+			metrics, "geocoder_shared");
+
+	static {
+		grids.put("street", new MetricGrid(25));
+		grids.put("postalcode", new MetricGrid(100));
+		grids.put("city", new MetricGrid(250));
+		grids.put("country", new MetricGrid(1000));
+	}
+
+	/** Gazetteer last opened, reused while the gazetteer file is the same */
+	private volatile Gazetteer gazetteer;
+
+	/** Geocoder of the context, reused for all requests */
+	private volatile Geocoder geocoder;
+
+	/** Context the geocoder has been created for */
+	private volatile Context geocoderContext;
+
 	/**
 	 * Creates new instance of GeoReverseGeo
 	 * 
@@ -68,6 +162,16 @@ public class GeoReverseGeo extends AbstractLocationPrivacyAlgorithm {
 		super(in, NAME);
 	}
 
+	/**
+	 * Creates new instance of GeoReverseGeo
+	 * 
+	 * @param configuration
+	 *            configuration of the algorithm
+	 */
+	private GeoReverseGeo(LocationPrivacyConfiguration configuration) {
+		super(NAME, configuration);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -80,6 +184,19 @@ public class GeoReverseGeo extends AbstractLocationPrivacyAlgorithm {
 		return new GeoReverseGeo();
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * android.locationprivacy.model.AbstractLocationPrivacyAlgorithm#newInstance
+	 * (android.locationprivacy.model.LocationPrivacyConfiguration)
+	 */
+	@Override
+	public AbstractLocationPrivacyAlgorithm newInstance(
+			LocationPrivacyConfiguration configuration) {
+		return new GeoReverseGeo(configuration);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -95,11 +212,18 @@ public class GeoReverseGeo extends AbstractLocationPrivacyAlgorithm {
 		detail.add("city");
 		detail.add("country");
 		enumValues.put("detail", detail);
+		ArrayList<String> source = new ArrayList<String>();
+		source.add("geocoder");
+		source.add("gazetteer");
+		enumValues.put("source", source);
 		HashMap<String, String> enumChoosen = new HashMap<String, String>();
 		enumChoosen.put("detail", "city");
+		enumChoosen.put("source", "geocoder");
+		HashMap<String, String> stringValues = new HashMap<String, String>();
+		stringValues.put("gazetteerfile", DEFAULT_GAZETTEER_FILE);
 		return new LocationPrivacyConfiguration(new HashMap<String, Integer>(),
-				new HashMap<String, Double>(), new HashMap<String, String>(),
-				enumValues, enumChoosen, new HashMap<String, Coordinate>(),
+				new HashMap<String, Double>(), stringValues, enumValues,
+				enumChoosen, new HashMap<String, Coordinate>(),
 				new HashMap<String, Boolean>());
 	}
 
@@ -112,36 +236,245 @@ public class GeoReverseGeo extends AbstractLocationPrivacyAlgorithm {
 	@Override
 	public Location obfuscate(Location location) {
 		String detail = configuration.getEnumChoosen("detail");
-		Geocoder geocoder = new Geocoder(context);
-		Location newLocation = null;
-		List<Address> nextAddressList = null;
+		if ("gazetteer".equals(configuration.getEnumChoosen("source"))) {
+			return obfuscateOffline(location, detail);
+		}
+		String addressString = getAddress(location, detail);
+		if (addressString == null) {
+			return null;
+		}
+		double[] coordinate = getCoordinates(addressString);
+		if (coordinate == null) {
+			return null;
+		}
+		Location newLocation = new Location(location);
+		newLocation.setLatitude(coordinate[0]);
+		newLocation.setLongitude(coordinate[1]);
+		return newLocation;
+	}
+
+	/**
+	 * Maps a location to the centroid of the place of the gazetteer
+	 * containing it
+	 * 
+	 * @param location
+	 *            real location
+	 * @param detail
+	 *            detail of the place
+	 * @return obfuscated location, null if there is no gazetteer or no place
+	 *         near the location
+	 */
+	private Location obfuscateOffline(Location location, String detail) {
+		Gazetteer gazetteer = getGazetteer(true);
+		if (gazetteer == null) {
+			return null;
+		}
+		int place = gazetteer.nearest(getLevel(detail), location.getLatitude(),
+				location.getLongitude());
+		if (place < 0) {
+			return null;
+		}
+		Location newLocation = new Location(location);
+		newLocation.setLatitude(gazetteer.getLatitude(place));
+		newLocation.setLongitude(gazetteer.getLongitude(place));
+		return newLocation;
+	}
+
+	/**
+	 * Returns the address of a location reduced to a detail, from the cache
+	 * or by reverse geocoding
+	 * 
+	 * @param location
+	 *            real location
+	 * @param detail
+	 *            detail of the address
+	 * @return formatted address, null if there is none or on errors
+	 */
+	private String getAddress(Location location, String detail) {
+		MetricGrid grid = grids.get(detail);
+		if (grid == null) {
+			grid = grids.get("street");
+		}
+		String key = detail
+				+ ":"
+				+ grid.getCell(location.getLatitude(), location.getLongitude());
+		String addressString = addresses.get(key);
+		if (addressString != null) {
+			metrics.increment("address_hits");
+			return addressString == NO_ADDRESS ? null : addressString;
+		}
+		metrics.increment("address_misses");
+		try {
+			addressString = addressFlights.execute(key,
+					new ReverseGeocoding(key, location, detail));
+		} catch (IOException e) {
+			Log.d(TAG, "Error: Could not read from Geocoder");
+			Log.d(TAG, e.getMessage());
+			return null;
+		}
+		return addressString == NO_ADDRESS ? null : addressString;
+	}
+
+	/**
+	 * Returns the coordinates of an address, from the cache or by geocoding
+	 * 
+	 * @param addressString
+	 *            formatted address
+	 * @return latitude and longitude, null if there are none or on errors
+	 */
+	private double[] getCoordinates(String addressString) {
+		double[] coordinate = coordinates.get(addressString);
+		if (coordinate != null) {
+			metrics.increment("coordinates_hits");
+			return coordinate == NO_COORDINATES ? null : coordinate;
+		}
+		metrics.increment("coordinates_misses");
+		Gazetteer gazetteer = getGazetteer(false);
+		if (gazetteer != null) {
+			int place = gazetteer.find(addressString);
+			if (place >= 0) {
+				metrics.increment("gazetteer_hits");
+				coordinate = new double[] { gazetteer.getLatitude(place),
+						gazetteer.getLongitude(place) };
+				coordinates.put(addressString, coordinate, TTL);
+				return coordinate;
+			}
+			metrics.increment("gazetteer_misses");
+		}
 		try {
-			nextAddressList = geocoder.getFromLocation(location.getLatitude(),
-					location.getLongitude(), 1);
+			coordinate = coordinatesFlights.execute(addressString,
+					new Geocoding(addressString));
 		} catch (IOException e) {
 			Log.d(TAG, "Error: Could not read from Geocoder");
 			Log.d(TAG, e.getMessage());
 			return null;
 		}
-		if (nextAddressList != null && nextAddressList.size() > 0) {
-			Address nextAddress = nextAddressList.get(0);
-			String addressString = formateAddress(nextAddress, detail);
-			List<Address> nextStreetList = null;
-			try {
-				nextStreetList = geocoder.getFromLocationName(addressString, 1);
-			} catch (IOException e) {
-				Log.d(TAG, "Error: Could not read from Geocoder");
-				Log.d(TAG, e.getMessage());
-				return null;
+		return coordinate == NO_COORDINATES ? null : coordinate;
+	}
+
+	/**
+	 * ReverseGeocoding asks the geocoder for the address of a location and
+	 * caches it
+	 */
+	private class ReverseGeocoding implements SingleFlight.Call<String> {
+		private final String key;
+		private final Location location;
+		private final String detail;
+
+		ReverseGeocoding(String key, Location location, String detail) {
+			this.key = key;
+			this.location = location;
+			this.detail = detail;
+		}
+
+		@Override
+		public String call() throws IOException {
+			// another flight may have finished since the cache was checked
+			String addressString = addresses.get(key);
+			if (addressString != null) {
+				return addressString;
 			}
-			if (nextAddressList != null && nextAddressList.size() > 0) {
-				Address nextModifiedAddress = nextStreetList.get(0);
-				newLocation = new Location(location);
-				newLocation.setLatitude(nextModifiedAddress.getLatitude());
-				newLocation.setLongitude(nextModifiedAddress.getLongitude());
+			metrics.increment("geocoder_calls");
+			List<Address> nextAddressList = getGeocoder().getFromLocation(
+					location.getLatitude(), location.getLongitude(), 1);
+			if (nextAddressList == null || nextAddressList.size() == 0) {
+				addresses.put(key, NO_ADDRESS, MISSING_TTL);
+				return NO_ADDRESS;
 			}
+			addressString = formateAddress(nextAddressList.get(0), detail);
+			addresses.put(key, addressString, TTL);
+			return addressString;
 		}
-		return newLocation;
+	}
+
+	/**
+	 * Geocoding asks the geocoder for the coordinates of an address and
+	 * caches them
+	 */
+	private class Geocoding implements SingleFlight.Call<double[]> {
+		private final String addressString;
+
+		Geocoding(String addressString) {
+			this.addressString = addressString;
+		}
+
+		@Override
+		public double[] call() throws IOException {
+			double[] coordinate = coordinates.get(addressString);
+			if (coordinate != null) {
+				return coordinate;
+			}
+			metrics.increment("geocoder_calls");
+			List<Address> nextStreetList = getGeocoder().getFromLocationName(
+					addressString, 1);
+			if (nextStreetList == null || nextStreetList.size() == 0) {
+				coordinates.put(addressString, NO_COORDINATES, MISSING_TTL);
+				return NO_COORDINATES;
+			}
+			Address nextModifiedAddress = nextStreetList.get(0);
+			coordinate = new double[] { nextModifiedAddress.getLatitude(),
+					nextModifiedAddress.getLongitude() };
+			coordinates.put(addressString, coordinate, TTL);
+			return coordinate;
+		}
+	}
+
+	/**
+	 * Returns the configured gazetteer. The gazetteer is only looked up again
+	 * if the gazetteer file has changed.
+	 * 
+	 * @param required
+	 *            whether a missing file is an error, otherwise it is ignored
+	 * @return gazetteer, null if it cannot be opened or could not be opened
+	 *         within the last RETRY_INTERVAL
+	 */
+	private Gazetteer getGazetteer(boolean required) {
+		String path = configuration.getString("gazetteerfile");
+		if (path == null) {
+			path = DEFAULT_GAZETTEER_FILE;
+		}
+		Gazetteer current = gazetteer;
+		if (current != null && current.getPath().equals(path)) {
+			return current;
+		}
+		if (failedFiles.get(path) != null) {
+			return null;
+		}
+		if (!required && !new File(path).exists()) {
+			return null;
+		}
+		try {
+			current = Gazetteer.open(path);
+			gazetteer = current;
+			return current;
+		} catch (IOException e) {
+			Log.e(TAG, "Error: could not open gazetteer " + path);
+			Log.e(TAG, e.getMessage());
+			failedFiles.put(path, Boolean.TRUE, RETRY_INTERVAL);
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the level of a detail, the coarsest level for unknown details
+	 */
+	private static int getLevel(String detail) {
+		int level = Gazetteer.getLevel(detail);
+		return level < 0 ? Gazetteer.COUNTRY : level;
+	}
+
+	/**
+	 * Returns the geocoder of the current context. It is created once per
+	 * context.
+	 */
+	private Geocoder getGeocoder() {
+		Geocoder current = geocoder;
+		if (current == null || geocoderContext != context) {
+			current = new Geocoder(context);
+			geocoderContext = context;
+			geocoder = current;
+		}
+		return current;
 	}
 
 	/*
@@ -165,31 +498,9 @@ public class GeoReverseGeo extends AbstractLocationPrivacyAlgorithm {
 	 * @return the string
 	 */
 	private String formateAddress(Address address, String detail) {
-		String postal = address.getPostalCode();
-		String street = address.getThoroughfare();
-		String city = address.getLocality();
-		String country = address.getCountryName();
-		String addressString = "";
-
-		if (street != null && detail.equals("street")) {
-			addressString += street;
-			addressString += ", ";
-		}
-		if (city != null
-				&& (detail.equals("street") || detail.equals("postalcode") || detail
-						.equals("city"))) {
-			if (postal != null
-					&& (detail.equals("street") || detail.equals("postalcode"))) {
-				addressString += postal + " ";
-			}
-			addressString += city + ", ";
-		}
-		if (country != null) {
-			addressString += country;
-		} else if (addressString.endsWith(", ")) {
-			addressString.substring(0, addressString.length() - 2);
-		}
-		return addressString;
+		return Gazetteer.formatAddress(address.getThoroughfare(),
+				address.getPostalCode(), address.getLocality(),
+				address.getCountryName(), getLevel(detail));
 	}
 
 }
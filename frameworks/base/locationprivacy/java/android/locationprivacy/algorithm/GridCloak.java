@@ -0,0 +1,315 @@
+/*
+ * Copyright (C) 2013 Distributed Computing & Security Group,
+ *                    Leibniz Universitaet Hannover, Germany
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.locationprivacy.algorithm;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import android.location.Location;
+import android.locationprivacy.model.AbstractLocationPrivacyAlgorithm;
+import android.locationprivacy.model.Coordinate;
+import android.locationprivacy.model.LocationPrivacyConfiguration;
+import android.locationprivacy.util.MetricGrid;
+import android.os.Parcel;
+
+/**
+ * The algorithm GridCloak maps a real location to the center of the grid cell
+ * containing it. Cells are either squares with a side length in meters or
+ * geohash cells of a given precision. The mapping is deterministic, so a user
+ * staying within a cell always gets the same location.
+ *
+ * All cell computations use integer coordinates in 1e-7 degrees. The last
+ * cell is remembered, so as long as the device stays in a cell a location
+ * costs only a few integer comparisons.
+ */
+public class GridCloak extends AbstractLocationPrivacyAlgorithm {
+
+	/** The Constant NAME. */
+	private static final String NAME = "gridcloak";
+
+	/** Maximum geohash precision, 60 bits fit into the integer math */
+	private static final int MAX_PRECISION = 12;
+
+	/** Last cell a location has been mapped to */
+	private volatile Cell lastCell;
+
+	/** Grid used for cells in meters */
+	private volatile MetricGrid grid;
+
+	/**
+	 * Creates new instance of GridCloak
+	 */
+	public GridCloak() {
+		super(NAME);
+	}
+
+	/**
+	 * Creates new instance of GridCloak
+	 *
+	 * @param in
+	 *            Parcel object containing the configuration of the algorithm
+	 */
+	private GridCloak(Parcel in) {
+		super(in, NAME);
+	}
+
+	/**
+	 * Creates new instance of GridCloak
+	 *
+	 * @param configuration
+	 *            configuration of the algorithm
+	 */
+	private GridCloak(LocationPrivacyConfiguration configuration) {
+		super(NAME, configuration);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * android.locationprivacy.model.AbstractLocationPrivacyAlgorithm#newInstance
+	 * ()
+	 */
+	@Override
+	public AbstractLocationPrivacyAlgorithm newInstance() {
+		return new GridCloak();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * android.locationprivacy.model.AbstractLocationPrivacyAlgorithm#newInstance
+	 * (android.locationprivacy.model.LocationPrivacyConfiguration)
+	 */
+	@Override
+	public AbstractLocationPrivacyAlgorithm newInstance(
+			LocationPrivacyConfiguration configuration) {
+		return new GridCloak(configuration);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see android.locationprivacy.model.AbstractLocationPrivacyAlgorithm#
+	 * getDefaultConfiguration()
+	 */
+	@Override
+	public LocationPrivacyConfiguration getDefaultConfiguration() {
+		HashMap<String, Integer> intValues = new HashMap<String, Integer>();
+		intValues.put("cellsize", 500);
+		intValues.put("precision", 6);
+		HashMap<String, ArrayList<String>> enumValues = new HashMap<String, ArrayList<String>>();
+		ArrayList<String> mode = new ArrayList<String>();
+		mode.add("meters");
+		mode.add("geohash");
+		enumValues.put("mode", mode);
+		HashMap<String, String> enumChoosen = new HashMap<String, String>();
+		enumChoosen.put("mode", "meters");
+		return new LocationPrivacyConfiguration(intValues,
+				new HashMap<String, Double>(), new HashMap<String, String>(),
+				enumValues, enumChoosen, new HashMap<String, Coordinate>(),
+				new HashMap<String, Boolean>());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * android.locationprivacy.model.AbstractLocationPrivacyAlgorithm#setConfiguration
+	 * (android.locationprivacy.model.LocationPrivacyConfiguration)
+	 */
+	@Override
+	public void setConfiguration(LocationPrivacyConfiguration configuration) {
+		super.setConfiguration(configuration);
+		lastCell = null;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see android.locationprivacy.model.AbstractLocationPrivacyAlgorithm#
+	 * obfuscate(android.location.Location)
+	 */
+	@Override
+	public Location obfuscate(Location location) {
+		Cell cell = getCell(MetricGrid.toE7(location.getLatitude()),
+				MetricGrid.toE7(location.getLongitude()));
+		Location newLoc = new Location(location);
+		newLoc.setLatitude(cell.latitude);
+		newLoc.setLongitude(cell.longitude);
+		return newLoc;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see android.locationprivacy.model.AbstractLocationPrivacyAlgorithm#
+	 * obfuscate(double[], double[], double[], long[], int, int)
+	 */
+	@Override
+	public void obfuscate(double[] latitudes, double[] longitudes,
+			double[] altitudes, long[] times, int offset, int count) {
+		for (int i = offset; i < offset + count; i++) {
+			Cell cell = getCell(MetricGrid.toE7(latitudes[i]),
+					MetricGrid.toE7(longitudes[i]));
+			latitudes[i] = cell.latitude;
+			longitudes[i] = cell.longitude;
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see android.locationprivacy.model.AbstractLocationPrivacyAlgorithm#
+	 * instanceFromParcel(android.os.Parcel)
+	 */
+	@Override
+	protected AbstractLocationPrivacyAlgorithm instanceFromParcel(Parcel in) {
+		return new GridCloak(in);
+	}
+
+	/**
+	 * Returns the cell containing a coordinate. The last cell is reused if it
+	 * contains the coordinate and the mode and cell size have not changed,
+	 * otherwise the cell is computed. Settings may change the configuration
+	 * in place, so both are compared for every location.
+	 *
+	 * @param latE7
+	 *            latitude in 1e-7 degrees
+	 * @param lonE7
+	 *            longitude in 1e-7 degrees
+	 * @return cell containing the coordinate
+	 */
+	private Cell getCell(int latE7, int lonE7) {
+		boolean geohash = configuration.getEnumChoosen("mode").equals(
+				"geohash");
+		int size = configuration.getInt(geohash ? "precision" : "cellsize");
+		Cell cell = lastCell;
+		if (cell != null && cell.geohash == geohash && cell.size == size
+				&& latE7 >= cell.south && latE7 < cell.north
+				&& lonE7 >= cell.west && lonE7 < cell.east) {
+			return cell;
+		}
+		if (geohash) {
+			cell = getGeohashCell(latE7, lonE7, size);
+		} else {
+			cell = getMetricCell(latE7, lonE7, size);
+		}
+		lastCell = cell;
+		return cell;
+	}
+
+	/**
+	 * Computes the cell of a MetricGrid containing a coordinate
+	 *
+	 * @param latE7
+	 *            latitude in 1e-7 degrees
+	 * @param lonE7
+	 *            longitude in 1e-7 degrees
+	 * @param cellSize
+	 *            side length of the cells in meters
+	 * @return cell containing the coordinate
+	 */
+	private Cell getMetricCell(int latE7, int lonE7, int cellSize) {
+		MetricGrid current = grid;
+		if (current == null || current.getCellSize() != cellSize) {
+			current = new MetricGrid(cellSize);
+			grid = current;
+		}
+		int row = current.getRow(latE7);
+		int column = current.getColumn(row, lonE7);
+		long width = current.getCellWidthE7(row);
+		long west = column * width - MetricGrid.LONGITUDE_OFFSET_E7;
+		long cell = MetricGrid.getCell(row, column);
+		return new Cell(false, cellSize, current.getSouthE7(row),
+				current.getNorthE7(row), west, west + width,
+				current.getCenterLatitude(cell),
+				current.getCenterLongitude(cell));
+	}
+
+	/**
+	 * Computes the geohash cell containing a coordinate. A geohash of
+	 * precision p interleaves 5 * p bits, of which the longitude gets the
+	 * larger half.
+	 *
+	 * @param latE7
+	 *            latitude in 1e-7 degrees
+	 * @param lonE7
+	 *            longitude in 1e-7 degrees
+	 * @param precision
+	 *            number of geohash characters
+	 * @return cell containing the coordinate
+	 */
+	private static Cell getGeohashCell(int latE7, int lonE7, int precision) {
+		int p = Math.max(1, Math.min(MAX_PRECISION, precision));
+		int latBits = 5 * p / 2;
+		int lonBits = 5 * p - latBits;
+		long latRange = 2 * MetricGrid.LATITUDE_OFFSET_E7;
+		long lonRange = 2 * MetricGrid.LONGITUDE_OFFSET_E7;
+
+		long lat = Math.min(Math.max(latE7 + MetricGrid.LATITUDE_OFFSET_E7, 0),
+				latRange - 1);
+		long row = (lat << latBits) / latRange;
+		long south = ((row * latRange) >> latBits)
+				- MetricGrid.LATITUDE_OFFSET_E7;
+		long north = (((row + 1) * latRange) >> latBits)
+				- MetricGrid.LATITUDE_OFFSET_E7;
+
+		long lon = Math.min(Math.max(lonE7 + MetricGrid.LONGITUDE_OFFSET_E7, 0),
+				lonRange - 1);
+		long column = (lon << lonBits) / lonRange;
+		long west = ((column * lonRange) >> lonBits)
+				- MetricGrid.LONGITUDE_OFFSET_E7;
+		long east = (((column + 1) * lonRange) >> lonBits)
+				- MetricGrid.LONGITUDE_OFFSET_E7;
+
+		return new Cell(true, precision, south, north, west, east,
+				(south + north) / (2 * MetricGrid.E7), (west + east)
+						/ (2 * MetricGrid.E7));
+	}
+
+	/**
+	 * Cell models a grid cell by its borders in 1e-7 degrees and its center,
+	 * together with the mode and configured cell size or precision it has been
+	 * computed for. Cells are immutable, so they can be shared between threads.
+	 */
+	private static class Cell {
+		final boolean geohash;
+		final int size;
+		final long south;
+		final long north;
+		final long west;
+		final long east;
+		final double latitude;
+		final double longitude;
+
+		Cell(boolean geohash, int size, long south, long north, long west,
+				long east, double latitude, double longitude) {
+			this.geohash = geohash;
+			this.size = size;
+			this.south = south;
+			this.north = north;
+			this.west = west;
+			this.east = east;
+			this.latitude = latitude;
+			this.longitude = longitude;
+		}
+	}
+
+}
@@ -0,0 +1,308 @@
+/*
+ * Copyright (C) 2013 Distributed Computing & Security Group,
+ *                    Leibniz Universitaet Hannover, Germany
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.locationprivacy.algorithm;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import android.location.Location;
+import android.locationprivacy.model.AbstractLocationPrivacyAlgorithm;
+import android.locationprivacy.model.Coordinate;
+import android.locationprivacy.model.LocationPrivacyConfiguration;
+import android.locationprivacy.util.MetricGrid;
+import android.locationprivacy.util.PopulationGrid;
+import android.locationprivacy.util.TimedLruCache;
+import android.os.Parcel;
+import android.util.Log;
+
+/**
+ * The algorithm KAnonymity maps a real location to the center of a region in
+ * which at least k people live. The population is taken from a
+ * PopulationGrid.
+ *
+ * Regions are aligned blocks of 2^l x 2^l grid cells, i.e. the nodes of a
+ * quadtree over the grid. The blocks containing a location are nested, so
+ * their population grows with l and the smallest sufficient level is found
+ * by a binary search (PopulationGrid.getBlockLevel). Each probe needs four lookups in the summed-area table,
+ * so a location costs O(log log n) lookups for a grid of n cells, independent
+ * of k. Since the blocks are aligned, all users within a block get the same
+ * location.
+ *
+ * If the grid file is missing, the location is outside of the grid or the
+ * whole grid has less than k inhabitants, the location is suppressed.
+ */
+public class KAnonymity extends AbstractLocationPrivacyAlgorithm {
+
+	/** The Constant NAME. */
+	private static final String NAME = "kanonymity";
+
+	/** Default location of the population grid */
+	private static final String DEFAULT_GRID_FILE = "/system/etc/locationprivacy/population.grid";
+
+	/** Time in milliseconds before opening a grid file is retried */
+	private static final long RETRY_INTERVAL = 60000;
+
+	/**
+	 * Grid files that could not be opened recently, so a missing file is not
+	 * opened and logged again for every location
+	 */
+	private static final TimedLruCache<String, Boolean> failedFiles = new TimedLruCache<String, Boolean>(
+			8);
+
+	/** Population grid last opened, reused while the grid file is the same */
+	private volatile PopulationGrid grid;
+
+	/** Last block a location has been mapped to */
+	private volatile Block lastBlock;
+
+	/**
+	 * Creates new instance of KAnonymity
+	 */
+	public KAnonymity() {
+		super(NAME);
+	}
+
+	/**
+	 * Creates new instance of KAnonymity
+	 *
+	 * @param in
+	 *            Parcel object containing the configuration of the algorithm
+	 */
+	private KAnonymity(Parcel in) {
+		super(in, NAME);
+	}
+
+	/**
+	 * Creates new instance of KAnonymity
+	 *
+	 * @param configuration
+	 *            configuration of the algorithm
+	 */
+	private KAnonymity(LocationPrivacyConfiguration configuration) {
+		super(NAME, configuration);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * android.locationprivacy.model.AbstractLocationPrivacyAlgorithm#newInstance
+	 * ()
+	 */
+	@Override
+	public AbstractLocationPrivacyAlgorithm newInstance() {
+		return new KAnonymity();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * android.locationprivacy.model.AbstractLocationPrivacyAlgorithm#newInstance
+	 * (android.locationprivacy.model.LocationPrivacyConfiguration)
+	 */
+	@Override
+	public AbstractLocationPrivacyAlgorithm newInstance(
+			LocationPrivacyConfiguration configuration) {
+		return new KAnonymity(configuration);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see android.locationprivacy.model.AbstractLocationPrivacyAlgorithm#
+	 * getDefaultConfiguration()
+	 */
+	@Override
+	public LocationPrivacyConfiguration getDefaultConfiguration() {
+		HashMap<String, Integer> intValues = new HashMap<String, Integer>();
+		intValues.put("k", 500);
+		HashMap<String, String> stringValues = new HashMap<String, String>();
+		stringValues.put("gridfile", DEFAULT_GRID_FILE);
+		return new LocationPrivacyConfiguration(intValues,
+				new HashMap<String, Double>(), stringValues,
+				new HashMap<String, ArrayList<String>>(),
+				new HashMap<String, String>(),
+				new HashMap<String, Coordinate>(),
+				new HashMap<String, Boolean>());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * android.locationprivacy.model.AbstractLocationPrivacyAlgorithm#setConfiguration
+	 * (android.locationprivacy.model.LocationPrivacyConfiguration)
+	 */
+	@Override
+	public void setConfiguration(LocationPrivacyConfiguration configuration) {
+		super.setConfiguration(configuration);
+		lastBlock = null;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see android.locationprivacy.model.AbstractLocationPrivacyAlgorithm#
+	 * obfuscate(android.location.Location)
+	 */
+	@Override
+	public Location obfuscate(Location location) {
+		PopulationGrid grid = getGrid();
+		if (grid == null) {
+			return null;
+		}
+		Block block = getBlock(grid,
+				MetricGrid.toE7(location.getLatitude()),
+				MetricGrid.toE7(location.getLongitude()));
+		if (block == null) {
+			return null;
+		}
+		Location newLoc = new Location(location);
+		newLoc.setLatitude(block.latitude);
+		newLoc.setLongitude(block.longitude);
+		return newLoc;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see android.locationprivacy.model.AbstractLocationPrivacyAlgorithm#
+	 * obfuscate(double[], double[], double[], long[], int, int)
+	 */
+	@Override
+	public void obfuscate(double[] latitudes, double[] longitudes,
+			double[] altitudes, long[] times, int offset, int count) {
+		PopulationGrid grid = getGrid();
+		for (int i = offset; i < offset + count; i++) {
+			Block block = grid == null ? null : getBlock(grid,
+					MetricGrid.toE7(latitudes[i]),
+					MetricGrid.toE7(longitudes[i]));
+			if (block == null) {
+				latitudes[i] = Double.NaN;
+				longitudes[i] = Double.NaN;
+			} else {
+				latitudes[i] = block.latitude;
+				longitudes[i] = block.longitude;
+			}
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see android.locationprivacy.model.AbstractLocationPrivacyAlgorithm#
+	 * instanceFromParcel(android.os.Parcel)
+	 */
+	@Override
+	protected AbstractLocationPrivacyAlgorithm instanceFromParcel(Parcel in) {
+		return new KAnonymity(in);
+	}
+
+	/**
+	 * Returns the configured population grid. The grid is only looked up
+	 * again if the grid file has changed.
+	 *
+	 * @return grid, null if it cannot be opened or could not be opened within
+	 *         the last RETRY_INTERVAL
+	 */
+	private PopulationGrid getGrid() {
+		String path = configuration.getString("gridfile");
+		PopulationGrid current = grid;
+		if (current != null && current.getPath().equals(path)) {
+			return current;
+		}
+		if (failedFiles.get(path) != null) {
+			return null;
+		}
+		try {
+			current = PopulationGrid.open(path);
+			grid = current;
+			return current;
+		} catch (IOException e) {
+			Log.e(TAG, "Error: could not open population grid " + path);
+			Log.e(TAG, e.getMessage());
+			failedFiles.put(path, Boolean.TRUE, RETRY_INTERVAL);
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the smallest block containing a coordinate that has at least k
+	 * inhabitants. The last block is reused if the coordinate lies in the same
+	 * grid cell and k has not changed.
+	 *
+	 * @param grid
+	 *            population grid
+	 * @param latE7
+	 *            latitude in 1e-7 degrees
+	 * @param lonE7
+	 *            longitude in 1e-7 degrees
+	 * @return block, null if there is no such block
+	 */
+	private Block getBlock(PopulationGrid grid, int latE7, int lonE7) {
+		int row = grid.getRow(latE7);
+		int column = grid.getColumn(lonE7);
+		if (row < 0 || column < 0) {
+			return null;
+		}
+		long k = configuration.getInt("k");
+		Block block = lastBlock;
+		if (block != null && block.grid == grid && block.k == k
+				&& block.row == row && block.column == column) {
+			return block;
+		}
+
+		int level = grid.getBlockLevel(row, column, k);
+		if (level < 0) {
+			return null;
+		}
+		int row0 = (row >> level) << level;
+		int column0 = (column >> level) << level;
+		double half = (1 << level) / 2.0;
+		block = new Block(grid, k, row, column, grid.getLatitude(row0 + half),
+				grid.getLongitude(column0 + half));
+		lastBlock = block;
+		return block;
+	}
+
+	/**
+	 * Block stores the result for a grid cell. Blocks are immutable, so they
+	 * can be shared between threads.
+	 */
+	private static class Block {
+		final PopulationGrid grid;
+		final long k;
+		final int row;
+		final int column;
+		final double latitude;
+		final double longitude;
+
+		Block(PopulationGrid grid, long k, int row, int column,
+				double latitude, double longitude) {
+			this.grid = grid;
+			this.k = k;
+			this.row = row;
+			this.column = column;
+			this.latitude = latitude;
+			this.longitude = longitude;
+		}
+	}
+
+}
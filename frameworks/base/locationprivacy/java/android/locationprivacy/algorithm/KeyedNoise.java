@@ -0,0 +1,282 @@
+/*
+ * Copyright (C) 2013 Distributed Computing & Security Group,
+ *                    Leibniz Universitaet Hannover, Germany
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.locationprivacy.algorithm;
+
+import java.math.BigInteger;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import android.location.Location;
+import android.locationprivacy.model.AbstractLocationPrivacyAlgorithm;
+import android.locationprivacy.model.Coordinate;
+import android.locationprivacy.model.LocationPrivacyConfiguration;
+import android.locationprivacy.util.MetricGrid;
+import android.locationprivacy.util.SipHash;
+import android.os.Parcel;
+
+/**
+ * The algorithm KeyedNoise maps a real location to a random point within a
+ * radius around the center of the grid cell containing it. The random offset
+ * is not drawn from a random number generator but computed by the keyed
+ * pseudorandom function SipHash-2-4 of the app's uid, the cell and the
+ * current time epoch. The key is derived from a secret generated with the
+ * configuration.
+ *
+ * As a result, a user staying within a cell gets the same location for the
+ * whole epoch without storing any state, and different apps get different
+ * locations. Without the secret, the offset cannot be predicted or removed.
+ * Obfuscation is a pure function of the configuration and the location, so
+ * it does not write to the database and can be evaluated in parallel.
+ */
+public class KeyedNoise extends AbstractLocationPrivacyAlgorithm {
+
+	/** The Constant NAME. */
+	private static final String NAME = "keyednoise";
+
+	/** Milliseconds per minute */
+	private static final long MINUTE = 60000;
+
+	/** Pseudorandom function for the current secret */
+	private volatile Key key;
+
+	/** Grid used for the cells */
+	private volatile MetricGrid grid;
+
+	/**
+	 * Creates new instance of KeyedNoise
+	 */
+	public KeyedNoise() {
+		super(NAME);
+	}
+
+	/**
+	 * Creates new instance of KeyedNoise
+	 *
+	 * @param in
+	 *            Parcel object containing the configuration of the algorithm
+	 */
+	private KeyedNoise(Parcel in) {
+		super(in, NAME);
+	}
+
+	/**
+	 * Creates new instance of KeyedNoise
+	 *
+	 * @param configuration
+	 *            configuration of the algorithm
+	 */
+	private KeyedNoise(LocationPrivacyConfiguration configuration) {
+		super(NAME, configuration);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * android.locationprivacy.model.AbstractLocationPrivacyAlgorithm#newInstance
+	 * ()
+	 */
+	@Override
+	public AbstractLocationPrivacyAlgorithm newInstance() {
+		return new KeyedNoise();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * android.locationprivacy.model.AbstractLocationPrivacyAlgorithm#newInstance
+	 * (android.locationprivacy.model.LocationPrivacyConfiguration)
+	 */
+	@Override
+	public AbstractLocationPrivacyAlgorithm newInstance(
+			LocationPrivacyConfiguration configuration) {
+		return new KeyedNoise(configuration);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see android.locationprivacy.model.AbstractLocationPrivacyAlgorithm#
+	 * getDefaultConfiguration()
+	 */
+	@Override
+	public LocationPrivacyConfiguration getDefaultConfiguration() {
+		HashMap<String, Integer> intValues = new HashMap<String, Integer>();
+		intValues.put("cellsize", 250);
+		intValues.put("radius", 500);
+		// epoch length in minutes, 0 never changes the offsets
+		intValues.put("epoch", 1440);
+		HashMap<String, String> stringValues = new HashMap<String, String>();
+		// generated for each configuration by initializeConfiguration
+		stringValues.put("private_secret", "");
+		return new LocationPrivacyConfiguration(intValues,
+				new HashMap<String, Double>(), stringValues,
+				new HashMap<String, ArrayList<String>>(),
+				new HashMap<String, String>(),
+				new HashMap<String, Coordinate>(),
+				new HashMap<String, Boolean>());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see android.locationprivacy.model.AbstractLocationPrivacyAlgorithm#
+	 * initializeConfiguration
+	 * (android.locationprivacy.model.LocationPrivacyConfiguration)
+	 */
+	@Override
+	public void initializeConfiguration(
+			LocationPrivacyConfiguration configuration) {
+		configuration.getStringValues().put("private_secret",
+				new BigInteger(128, new SecureRandom()).toString(32));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see android.locationprivacy.model.AbstractLocationPrivacyAlgorithm#
+	 * obfuscate(android.location.Location)
+	 */
+	@Override
+	public Location obfuscate(Location location) {
+		double[] result = new double[2];
+		obfuscate(getPrf(), getGrid(), location.getLatitude(),
+				location.getLongitude(), location.getTime(), result);
+		Location newLoc = new Location(location);
+		newLoc.setLatitude(result[0]);
+		newLoc.setLongitude(result[1]);
+		return newLoc;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see android.locationprivacy.model.AbstractLocationPrivacyAlgorithm#
+	 * obfuscate(double[], double[], double[], long[], int, int)
+	 */
+	@Override
+	public void obfuscate(double[] latitudes, double[] longitudes,
+			double[] altitudes, long[] times, int offset, int count) {
+		Key prf = getPrf();
+		MetricGrid cells = getGrid();
+		double[] result = new double[2];
+		for (int i = offset; i < offset + count; i++) {
+			obfuscate(prf, cells, latitudes[i], longitudes[i], times[i], result);
+			latitudes[i] = result[0];
+			longitudes[i] = result[1];
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see android.locationprivacy.model.AbstractLocationPrivacyAlgorithm#
+	 * instanceFromParcel(android.os.Parcel)
+	 */
+	@Override
+	protected AbstractLocationPrivacyAlgorithm instanceFromParcel(Parcel in) {
+		return new KeyedNoise(in);
+	}
+
+	/**
+	 * Computes the obfuscated coordinate of a location
+	 *
+	 * @param prf
+	 *            pseudorandom function
+	 * @param cells
+	 *            grid the cell is taken from
+	 * @param latitude
+	 *            latitude in degrees
+	 * @param longitude
+	 *            longitude in degrees
+	 * @param time
+	 *            UTC time of the location in milliseconds
+	 * @param result
+	 *            array receiving latitude and longitude
+	 */
+	private void obfuscate(Key prf, MetricGrid cells, double latitude,
+			double longitude, long time, double[] result) {
+		long epochLength = configuration.getInt("epoch") * MINUTE;
+		long epoch = epochLength > 0 ? time / epochLength : 0;
+		long cell = cells.getCell(latitude, longitude);
+		long value = prf.sipHash.hash(prf.uid, cell, epoch, 0);
+		// upper and lower half of the value give distance and direction,
+		// sqrt makes the points uniformly distributed on the disc
+		double r = Math.sqrt((value >>> 32) / 4294967296.0)
+				* configuration.getInt("radius");
+		double alpha = (value & 0xffffffffL) / 4294967296.0 * 2 * Math.PI;
+		Radius.move(cells.getCenterLatitude(cell),
+				cells.getCenterLongitude(cell), r, alpha, result);
+	}
+
+	/**
+	 * Returns the pseudorandom function for the current secret and uid. It is
+	 * only rebuilt if one of them changes.
+	 */
+	private Key getPrf() {
+		String secret = configuration.getString("private_secret");
+		String app = uid == null ? "" : uid;
+		Key current = key;
+		if (current == null || !current.secret.equals(secret)
+				|| !current.uidString.equals(app)) {
+			current = new Key(secret, app);
+			key = current;
+		}
+		return current;
+	}
+
+	/**
+	 * Returns the grid for the configured cell size
+	 */
+	private MetricGrid getGrid() {
+		int cellSize = configuration.getInt("cellsize");
+		MetricGrid current = grid;
+		if (current == null || current.getCellSize() != cellSize) {
+			current = new MetricGrid(cellSize);
+			grid = current;
+		}
+		return current;
+	}
+
+	/**
+	 * Key stores the pseudorandom function of a secret together with the uid
+	 * as number. Keys are immutable, so they can be shared between threads.
+	 */
+	private static class Key {
+		final String secret;
+		final String uidString;
+		final long uid;
+		final SipHash sipHash;
+
+		Key(String secret, String uidString) {
+			this.secret = secret;
+			this.uidString = uidString;
+			long number;
+			try {
+				number = Long.parseLong(uidString);
+			} catch (NumberFormatException e) {
+				number = uidString.hashCode();
+			}
+			this.uid = number;
+			this.sipHash = SipHash.fromSecret(secret);
+		}
+	}
+
+}
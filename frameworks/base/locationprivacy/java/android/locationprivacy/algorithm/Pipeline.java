@@ -0,0 +1,390 @@
+/*
+ * Copyright (C) 2013 Distributed Computing & Security Group,
+ *                    Leibniz Universitaet Hannover, Germany
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.locationprivacy.algorithm;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+import android.content.Context;
+import android.location.Location;
+import android.locationprivacy.model.AbstractLocationPrivacyAlgorithm;
+import android.locationprivacy.model.Coordinate;
+import android.locationprivacy.model.LocationPrivacyConfiguration;
+import android.os.Parcel;
+
+/**
+ * The algorithm Pipeline applies up to three algorithms one after another,
+ * e.g. GridCloak followed by Radius followed by Truncate.
+ *
+ * The configuration contains the selected algorithm of each stage and the
+ * parameters of all algorithms that can be used as stage. Parameter keys are
+ * prefixed with the algorithm name, e.g. "gridcloak_cellsize". Hidden keys
+ * keep their prefix in front, e.g. "private_radius_lastlocation". As the
+ * pipeline is a regular algorithm, its configuration is stored by the
+ * LocationPrivacyManager like any other.
+ *
+ * On first use the configuration is compiled into an array of stage
+ * instances. A location is then passed through the batch kernels of all
+ * stages as primitive coordinates, so no intermediate Location objects are
+ * created. A suppressed location ends the pipeline.
+ */
+public class Pipeline extends AbstractLocationPrivacyAlgorithm {
+
+	/** The Constant NAME. */
+	private static final String NAME = "pipeline";
+
+	/** Enum keys of the stages in execution order */
+	private static final String[] STAGES = { "stage1", "stage2", "stage3" };
+
+	/** Value of a stage that is not used */
+	private static final String NONE = "none";
+
+	/** Algorithms that can be used as stage */
+	private static final String[] ALGORITHMS = { "gridcloak", "radius",
+			"geoind", "truncate" };
+
+	/** Prefixes of keys hidden or masked in the settings */
+	private static final String[] KEY_PREFIXES = { "private_", "secret_" };
+
+	/** Compiled stages, null if the configuration has not been compiled */
+	private volatile AbstractLocationPrivacyAlgorithm[] stages;
+
+	/**
+	 * Creates new instance of Pipeline
+	 */
+	public Pipeline() {
+		super(NAME);
+	}
+
+	/**
+	 * Creates new instance of Pipeline
+	 *
+	 * @param in
+	 *            Parcel object containing the configuration of the algorithm
+	 */
+	private Pipeline(Parcel in) {
+		super(in, NAME);
+	}
+
+	/**
+	 * Creates new instance of Pipeline
+	 *
+	 * @param configuration
+	 *            configuration of the algorithm
+	 */
+	private Pipeline(LocationPrivacyConfiguration configuration) {
+		super(NAME, configuration);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * android.locationprivacy.model.AbstractLocationPrivacyAlgorithm#newInstance
+	 * ()
+	 */
+	@Override
+	public AbstractLocationPrivacyAlgorithm newInstance() {
+		return new Pipeline();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * android.locationprivacy.model.AbstractLocationPrivacyAlgorithm#newInstance
+	 * (android.locationprivacy.model.LocationPrivacyConfiguration)
+	 */
+	@Override
+	public AbstractLocationPrivacyAlgorithm newInstance(
+			LocationPrivacyConfiguration configuration) {
+		return new Pipeline(configuration);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see android.locationprivacy.model.AbstractLocationPrivacyAlgorithm#
+	 * getDefaultConfiguration()
+	 */
+	@Override
+	public LocationPrivacyConfiguration getDefaultConfiguration() {
+		LocationPrivacyConfiguration defaults = new LocationPrivacyConfiguration(
+				new HashMap<String, Integer>(), new HashMap<String, Double>(),
+				new HashMap<String, String>(),
+				new HashMap<String, ArrayList<String>>(),
+				new HashMap<String, String>(),
+				new HashMap<String, Coordinate>(),
+				new HashMap<String, Boolean>());
+		ArrayList<String> choices = new ArrayList<String>();
+		choices.add(NONE);
+		for (String algorithm : ALGORITHMS) {
+			choices.add(algorithm);
+		}
+		for (String stage : STAGES) {
+			defaults.setEnum(stage, new ArrayList<String>(choices));
+		}
+		defaults.setEnumChoosen(STAGES[0], "gridcloak");
+		defaults.setEnumChoosen(STAGES[1], "radius");
+		defaults.setEnumChoosen(STAGES[2], "truncate");
+
+		for (String algorithm : ALGORITHMS) {
+			LocationPrivacyConfiguration stage = createStage(algorithm)
+					.getConfiguration();
+			export(algorithm, stage.getIntValues(), defaults.getIntValues());
+			export(algorithm, stage.getDoubleValues(),
+					defaults.getDoubleValues());
+			export(algorithm, stage.getStringValues(),
+					defaults.getStringValues());
+			export(algorithm, stage.getEnumValues(), defaults.getEnumValues());
+			export(algorithm, stage.getEnumChoosen(),
+					defaults.getEnumChoosen());
+			export(algorithm, stage.getCoordinateValues(),
+					defaults.getCoordinateValues());
+			export(algorithm, stage.getBooleanValues(),
+					defaults.getBooleanValues());
+		}
+		return defaults;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * android.locationprivacy.model.AbstractLocationPrivacyAlgorithm#setConfiguration
+	 * (android.locationprivacy.model.LocationPrivacyConfiguration)
+	 */
+	@Override
+	public void setConfiguration(LocationPrivacyConfiguration configuration) {
+		super.setConfiguration(configuration);
+		stages = null;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * android.locationprivacy.model.AbstractLocationPrivacyAlgorithm#setContext
+	 * (android.content.Context)
+	 */
+	@Override
+	public void setContext(Context context) {
+		super.setContext(context);
+		AbstractLocationPrivacyAlgorithm[] compiled = stages;
+		if (compiled != null) {
+			for (AbstractLocationPrivacyAlgorithm stage : compiled) {
+				stage.setContext(context);
+			}
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * android.locationprivacy.model.AbstractLocationPrivacyAlgorithm#setUid
+	 * (java.lang.String)
+	 */
+	@Override
+	public void setUid(String uid) {
+		super.setUid(uid);
+		AbstractLocationPrivacyAlgorithm[] compiled = stages;
+		if (compiled != null) {
+			for (AbstractLocationPrivacyAlgorithm stage : compiled) {
+				stage.setUid(uid);
+			}
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see android.locationprivacy.model.AbstractLocationPrivacyAlgorithm#
+	 * obfuscate(android.location.Location)
+	 */
+	@Override
+	public Location obfuscate(Location location) {
+		double[] latitude = { location.getLatitude() };
+		double[] longitude = { location.getLongitude() };
+		double[] altitude = { location.getAltitude() };
+		long[] time = { location.getTime() };
+		for (AbstractLocationPrivacyAlgorithm stage : getStages()) {
+			stage.obfuscate(latitude, longitude, altitude, time, 0, 1);
+			if (Double.isNaN(latitude[0])) {
+				return null;
+			}
+		}
+		Location newLoc = new Location(location);
+		newLoc.setLatitude(latitude[0]);
+		newLoc.setLongitude(longitude[0]);
+		if (altitude[0] != location.getAltitude()) {
+			newLoc.setAltitude(altitude[0]);
+		}
+		newLoc.setTime(time[0]);
+		return newLoc;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see android.locationprivacy.model.AbstractLocationPrivacyAlgorithm#
+	 * obfuscate(double[], double[], double[], long[], int, int)
+	 */
+	@Override
+	public void obfuscate(double[] latitudes, double[] longitudes,
+			double[] altitudes, long[] times, int offset, int count) {
+		int end = offset + count;
+		for (AbstractLocationPrivacyAlgorithm stage : getStages()) {
+			// pass only runs of locations not suppressed by an earlier stage
+			int start = offset;
+			while (start < end) {
+				while (start < end && Double.isNaN(latitudes[start])) {
+					start++;
+				}
+				int stop = start;
+				while (stop < end && !Double.isNaN(latitudes[stop])) {
+					stop++;
+				}
+				if (stop > start) {
+					stage.obfuscate(latitudes, longitudes, altitudes, times,
+							start, stop - start);
+				}
+				start = stop;
+			}
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see android.locationprivacy.model.AbstractLocationPrivacyAlgorithm#
+	 * instanceFromParcel(android.os.Parcel)
+	 */
+	@Override
+	protected AbstractLocationPrivacyAlgorithm instanceFromParcel(Parcel in) {
+		return new Pipeline(in);
+	}
+
+	/**
+	 * Returns the compiled stages, compiling the configuration if necessary
+	 *
+	 * @return stages in execution order
+	 */
+	private AbstractLocationPrivacyAlgorithm[] getStages() {
+		AbstractLocationPrivacyAlgorithm[] compiled = stages;
+		if (compiled == null) {
+			ArrayList<AbstractLocationPrivacyAlgorithm> list = new ArrayList<AbstractLocationPrivacyAlgorithm>();
+			for (String key : STAGES) {
+				String algorithm = configuration.getEnumChoosen(key);
+				AbstractLocationPrivacyAlgorithm stage = algorithm == null ? null
+						: createStage(algorithm);
+				if (stage != null) {
+					LocationPrivacyConfiguration stageConf = stage
+							.getConfiguration();
+					load(algorithm, configuration.getIntValues(),
+							stageConf.getIntValues());
+					load(algorithm, configuration.getDoubleValues(),
+							stageConf.getDoubleValues());
+					load(algorithm, configuration.getStringValues(),
+							stageConf.getStringValues());
+					load(algorithm, configuration.getEnumValues(),
+							stageConf.getEnumValues());
+					load(algorithm, configuration.getEnumChoosen(),
+							stageConf.getEnumChoosen());
+					load(algorithm, configuration.getCoordinateValues(),
+							stageConf.getCoordinateValues());
+					load(algorithm, configuration.getBooleanValues(),
+							stageConf.getBooleanValues());
+					stage.setConfiguration(stageConf);
+					stage.setContext(context);
+					stage.setUid(uid);
+					list.add(stage);
+				}
+			}
+			compiled = list.toArray(new AbstractLocationPrivacyAlgorithm[list
+					.size()]);
+			stages = compiled;
+		}
+		return compiled;
+	}
+
+	/**
+	 * Creates a stage instance with its default configuration
+	 *
+	 * @param algorithm
+	 *            name of the algorithm
+	 * @return new instance, null if the algorithm cannot be used as stage
+	 */
+	private static AbstractLocationPrivacyAlgorithm createStage(String algorithm) {
+		if (algorithm.equals("gridcloak")) {
+			return new GridCloak();
+		} else if (algorithm.equals("radius")) {
+			return new Radius();
+		} else if (algorithm.equals("geoind")) {
+			return new GeoIndistinguishability();
+		} else if (algorithm.equals("truncate")) {
+			return new Truncate();
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the key of a stage parameter in the pipeline configuration
+	 *
+	 * @param algorithm
+	 *            name of the stage algorithm
+	 * @param key
+	 *            key in the configuration of the stage
+	 * @return key in the configuration of the pipeline
+	 */
+	private static String prefix(String algorithm, String key) {
+		for (String keyPrefix : KEY_PREFIXES) {
+			if (key.startsWith(keyPrefix)) {
+				return keyPrefix + algorithm + "_"
+						+ key.substring(keyPrefix.length());
+			}
+		}
+		return algorithm + "_" + key;
+	}
+
+	/**
+	 * Copies stage parameters into the pipeline configuration
+	 */
+	private static <T> void export(String algorithm, Map<String, T> from,
+			Map<String, T> to) {
+		for (Map.Entry<String, T> entry : from.entrySet()) {
+			to.put(prefix(algorithm, entry.getKey()), entry.getValue());
+		}
+	}
+
+	/**
+	 * Copies the parameters of a stage from the pipeline configuration.
+	 * Parameters missing in the pipeline configuration keep their defaults.
+	 */
+	private static <T> void load(String algorithm, Map<String, T> from,
+			Map<String, T> to) {
+		for (Map.Entry<String, T> entry : to.entrySet()) {
+			T value = from.get(prefix(algorithm, entry.getKey()));
+			if (value != null) {
+				entry.setValue(value);
+			}
+		}
+	}
+
+}
@@ -26,6 +26,7 @@ import android.location.Location;
 import android.locationprivacy.model.AbstractLocationPrivacyAlgorithm;
 import android.locationprivacy.model.Coordinate;
 import android.locationprivacy.model.LocationPrivacyConfiguration;
+import android.locationprivacy.util.Geodesy;
 import android.os.Parcel;
 import android.util.Log;
 
@@ -43,6 +44,15 @@ public class Radius extends AbstractLocationPrivacyAlgorithm {
 	/** The Constant NAME. */
 	private static final String NAME = "radius";
 
+	/** Mean earth radius in meters */
+	static final double EARTH_RADIUS = 6371000;
+
+	/** Factor converting degrees to radians */
+	static final double TO_RADIAN = Math.PI / 180;
+
+	/** Length of one degree latitude in meters */
+	static final double METER_PER_LATITUDE = 111320;
+
 	/**
 	 * Creates new instance of Radius
 	 */
@@ -60,6 +70,16 @@ public class Radius extends AbstractLocationPrivacyAlgorithm {
 		super(in, NAME);
 	}
 
+	/**
+	 * Creates new instance of Radius
+	 * 
+	 * @param configuration
+	 *            configuration of the algorithm
+	 */
+	private Radius(LocationPrivacyConfiguration configuration) {
+		super(NAME, configuration);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -71,6 +91,18 @@ public class Radius extends AbstractLocationPrivacyAlgorithm {
 		return new Radius();
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * android.locationprivacy.model.AbstractLocationPrivacyAlgorithm#newInstance
+	 * (android.locationprivacy.model.LocationPrivacyConfiguration)
+	 */
+	public AbstractLocationPrivacyAlgorithm newInstance(
+			LocationPrivacyConfiguration configuration) {
+		return new Radius(configuration);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -102,38 +134,24 @@ public class Radius extends AbstractLocationPrivacyAlgorithm {
 	 * obfuscate(android.location.Location)
 	 */
 	public Location obfuscate(Location location) {
-		double EARTH_RADIUS = 6371000;
-		double TO_RADIAN = Math.PI / 180;
-		double METER_PER_LATITUDE = 111320;
-
 		int movement = configuration.getInt("movement");
 		Location lastLocation = Coordinate.getLocation(configuration
 				.getCoordinate("private_lastlocation"));
 		int radius = configuration.getInt("radius");
 
 		if (lastLocation.getLongitude() == 999.0
-				|| location.distanceTo(lastLocation) > movement) {
+				|| Geodesy.isFartherThan(location.getLatitude(),
+						location.getLongitude(), lastLocation.getLatitude(),
+						lastLocation.getLongitude(), movement, new float[1])) {
 			Location calcLoc = new Location(location);
 			Random rnd = new Random();
 			double alpha = rnd.nextDouble() * 360.0 * TO_RADIAN;
 			double r = rnd.nextDouble() * radius;
-			double meterPerLong = Math.abs((2 * Math.PI
-					* Math.cos(location.getLatitude() * TO_RADIAN)
-					* EARTH_RADIUS / 360));
-			double moveLong = r * Math.cos(alpha) / meterPerLong;
-			double moveLat = r * Math.sin(alpha) / METER_PER_LATITUDE;
-			calcLoc.setLongitude(location.getLongitude() + moveLong);
-			calcLoc.setLatitude(location.getLatitude() + moveLat);
-			if (calcLoc.getLatitude() > 90) {
-				calcLoc.setLatitude(180 - calcLoc.getLatitude());
-			} else if (calcLoc.getLatitude() < -90) {
-				calcLoc.setLatitude(-180 + calcLoc.getLatitude());
-			}
-			if (calcLoc.getLongitude() > 180) {
-				calcLoc.setLongitude(-360 + calcLoc.getLongitude());
-			} else if (calcLoc.getLongitude() < -180) {
-				calcLoc.setLongitude(360 + calcLoc.getLongitude());
-			}
+			double[] moved = new double[2];
+			move(location.getLatitude(), location.getLongitude(), r, alpha,
+					moved);
+			calcLoc.setLatitude(moved[0]);
+			calcLoc.setLongitude(moved[1]);
 			configuration.setCoordinate("private_lastlocation",
 					Coordinate.getCoordinate(location));
 			configuration.setCoordinate("private_lastcalculatedlocation",
@@ -147,6 +165,103 @@ public class Radius extends AbstractLocationPrivacyAlgorithm {
 
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see android.locationprivacy.model.AbstractLocationPrivacyAlgorithm#
+	 * obfuscate(double[], double[], double[], long[], int, int)
+	 */
+	public void obfuscate(double[] latitudes, double[] longitudes,
+			double[] altitudes, long[] times, int offset, int count) {
+		int movement = configuration.getInt("movement");
+		int radius = configuration.getInt("radius");
+		Coordinate last = configuration.getCoordinate("private_lastlocation");
+		Coordinate lastCalculated = configuration
+				.getCoordinate("private_lastcalculatedlocation");
+		double lastLat = last.getLatitude();
+		double lastLon = last.getLongitude();
+		double lastAlt = last.getAltitude();
+		double calcLat = 0;
+		double calcLon = 0;
+		double calcAlt = 0;
+		if (lastCalculated != null) {
+			calcLat = lastCalculated.getLatitude();
+			calcLon = lastCalculated.getLongitude();
+			calcAlt = lastCalculated.getAltitude();
+		}
+		boolean changed = false;
+		Random rnd = new Random();
+		float[] distance = new float[1];
+		double[] moved = new double[2];
+		for (int i = offset; i < offset + count; i++) {
+			boolean newLocation = lastLon == 999.0;
+			if (!newLocation) {
+				newLocation = Geodesy.isFartherThan(latitudes[i],
+						longitudes[i], lastLat, lastLon, movement, distance);
+			}
+			if (newLocation) {
+				double alpha = rnd.nextDouble() * 360.0 * TO_RADIAN;
+				double r = rnd.nextDouble() * radius;
+				move(latitudes[i], longitudes[i], r, alpha, moved);
+				lastLat = latitudes[i];
+				lastLon = longitudes[i];
+				lastAlt = altitudes[i];
+				calcLat = moved[0];
+				calcLon = moved[1];
+				calcAlt = altitudes[i];
+				changed = true;
+			}
+			latitudes[i] = calcLat;
+			longitudes[i] = calcLon;
+			altitudes[i] = calcAlt;
+		}
+		if (changed) {
+			configuration.setCoordinate("private_lastlocation", new Coordinate(
+					lastLon, lastLat, lastAlt));
+			configuration.setCoordinate("private_lastcalculatedlocation",
+					new Coordinate(calcLon, calcLat, calcAlt));
+			Log.d(TAG, "new Location");
+		}
+	}
+
+	/**
+	 * Moves a coordinate by a distance into a direction. Coordinates crossing
+	 * the poles or the antimeridian are wrapped around.
+	 * 
+	 * @param latitude
+	 *            latitude of the coordinate
+	 * @param longitude
+	 *            longitude of the coordinate
+	 * @param distance
+	 *            distance in meters
+	 * @param alpha
+	 *            direction in radians, counterclockwise from east
+	 * @param result
+	 *            receives the moved latitude at index 0 and longitude at
+	 *            index 1
+	 */
+	static void move(double latitude, double longitude, double distance,
+			double alpha, double[] result) {
+		double meterPerLong = Math.abs((2 * Math.PI
+				* Math.cos(latitude * TO_RADIAN) * EARTH_RADIUS / 360));
+		double moveLong = distance * Math.cos(alpha) / meterPerLong;
+		double moveLat = distance * Math.sin(alpha) / METER_PER_LATITUDE;
+		double newLat = latitude + moveLat;
+		double newLong = longitude + moveLong;
+		if (newLat > 90) {
+			newLat = 180 - newLat;
+		} else if (newLat < -90) {
+			newLat = -180 + newLat;
+		}
+		if (newLong > 180) {
+			newLong = -360 + newLong;
+		} else if (newLong < -180) {
+			newLong = 360 + newLong;
+		}
+		result[0] = newLat;
+		result[1] = newLong;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -26,6 +26,7 @@ import android.location.Location;
 import android.locationprivacy.model.AbstractLocationPrivacyAlgorithm;
 import android.locationprivacy.model.Coordinate;
 import android.locationprivacy.model.LocationPrivacyConfiguration;
+import android.locationprivacy.util.Geodesy;
 import android.os.Parcel;
 import android.os.Parcelable;
 import android.os.Parcelable.Creator;
@@ -65,6 +66,16 @@ public class RadiusDistance extends AbstractLocationPrivacyAlgorithm {
 		super(in, NAME);
 	}
 
+	/**
+	 * Creates new instance of RadiusDistance
+	 * 
+	 * @param configuration
+	 *            configuration of the algorithm
+	 */
+	private RadiusDistance(LocationPrivacyConfiguration configuration) {
+		super(NAME, configuration);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -87,6 +98,18 @@ public class RadiusDistance extends AbstractLocationPrivacyAlgorithm {
 		return new RadiusDistance();
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * android.locationprivacy.model.AbstractLocationPrivacyAlgorithm#newInstance
+	 * (android.locationprivacy.model.LocationPrivacyConfiguration)
+	 */
+	public AbstractLocationPrivacyAlgorithm newInstance(
+			LocationPrivacyConfiguration configuration) {
+		return new RadiusDistance(configuration);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -115,10 +138,6 @@ public class RadiusDistance extends AbstractLocationPrivacyAlgorithm {
 	 * obfuscate(android.location.Location)
 	 */
 	public Location obfuscate(Location location) {
-		double EARTH_RADIUS = 6371000;
-		double TO_RADIAN = Math.PI / 180;
-		double METER_PER_LATITUDE = 111320;
-
 		int movement = configuration.getInt("movement");
 		int distance = configuration.getInt("distance");
 		int radius = configuration.getInt("radius");
@@ -126,28 +145,18 @@ public class RadiusDistance extends AbstractLocationPrivacyAlgorithm {
 				.getCoordinate("private_lastlocation"));
 
 		if (lastLocation.getLongitude() == 999.0
-				|| location.distanceTo(lastLocation) > movement) {
+				|| Geodesy.isFartherThan(location.getLatitude(),
+						location.getLongitude(), lastLocation.getLatitude(),
+						lastLocation.getLongitude(), movement, new float[1])) {
 			Location calcLoc = new Location(location);
 			Random rnd = new Random();
-			double alpha = rnd.nextDouble() * 360.0 * TO_RADIAN;
+			double alpha = rnd.nextDouble() * 360.0 * Radius.TO_RADIAN;
 			double r = rnd.nextDouble() * (radius - distance) + distance;
-			double meterPerLong = Math.abs((2 * Math.PI
-					* Math.cos(location.getLatitude() * TO_RADIAN)
-					* EARTH_RADIUS / 360));
-			double moveLong = r * Math.cos(alpha) / meterPerLong;
-			double moveLat = r * Math.sin(alpha) / METER_PER_LATITUDE;
-			calcLoc.setLongitude(location.getLongitude() + moveLong);
-			calcLoc.setLatitude(location.getLatitude() + moveLat);
-			if (calcLoc.getLatitude() > 90) {
-				calcLoc.setLatitude(180 - calcLoc.getLatitude());
-			} else if (calcLoc.getLatitude() < -90) {
-				calcLoc.setLatitude(-180 + calcLoc.getLatitude());
-			}
-			if (calcLoc.getLongitude() > 180) {
-				calcLoc.setLongitude(-360 + calcLoc.getLongitude());
-			} else if (calcLoc.getLongitude() < -180) {
-				calcLoc.setLongitude(360 + calcLoc.getLongitude());
-			}
+			double[] moved = new double[2];
+			Radius.move(location.getLatitude(), location.getLongitude(), r,
+					alpha, moved);
+			calcLoc.setLatitude(moved[0]);
+			calcLoc.setLongitude(moved[1]);
 			configuration.setCoordinate("private_lastlocation",
 					Coordinate.getCoordinate(location));
 			configuration.setCoordinate("private_lastcalculatedlocation",
@@ -160,6 +169,66 @@ public class RadiusDistance extends AbstractLocationPrivacyAlgorithm {
 		}
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see android.locationprivacy.model.AbstractLocationPrivacyAlgorithm#
+	 * obfuscate(double[], double[], double[], long[], int, int)
+	 */
+	public void obfuscate(double[] latitudes, double[] longitudes,
+			double[] altitudes, long[] times, int offset, int count) {
+		int movement = configuration.getInt("movement");
+		int distance = configuration.getInt("distance");
+		int radius = configuration.getInt("radius");
+		Coordinate last = configuration.getCoordinate("private_lastlocation");
+		Coordinate lastCalculated = configuration
+				.getCoordinate("private_lastcalculatedlocation");
+		double lastLat = last.getLatitude();
+		double lastLon = last.getLongitude();
+		double lastAlt = last.getAltitude();
+		double calcLat = 0;
+		double calcLon = 0;
+		double calcAlt = 0;
+		if (lastCalculated != null) {
+			calcLat = lastCalculated.getLatitude();
+			calcLon = lastCalculated.getLongitude();
+			calcAlt = lastCalculated.getAltitude();
+		}
+		boolean changed = false;
+		Random rnd = new Random();
+		float[] moveDistance = new float[1];
+		double[] moved = new double[2];
+		for (int i = offset; i < offset + count; i++) {
+			boolean newLocation = lastLon == 999.0;
+			if (!newLocation) {
+				newLocation = Geodesy.isFartherThan(latitudes[i],
+						longitudes[i], lastLat, lastLon, movement, moveDistance);
+			}
+			if (newLocation) {
+				double alpha = rnd.nextDouble() * 360.0 * Radius.TO_RADIAN;
+				double r = rnd.nextDouble() * (radius - distance) + distance;
+				Radius.move(latitudes[i], longitudes[i], r, alpha, moved);
+				lastLat = latitudes[i];
+				lastLon = longitudes[i];
+				lastAlt = altitudes[i];
+				calcLat = moved[0];
+				calcLon = moved[1];
+				calcAlt = altitudes[i];
+				changed = true;
+			}
+			latitudes[i] = calcLat;
+			longitudes[i] = calcLon;
+			altitudes[i] = calcAlt;
+		}
+		if (changed) {
+			configuration.setCoordinate("private_lastlocation", new Coordinate(
+					lastLon, lastLat, lastAlt));
+			configuration.setCoordinate("private_lastcalculatedlocation",
+					new Coordinate(calcLon, calcLat, calcAlt));
+			Log.d(TAG, "new Location");
+		}
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -39,11 +39,21 @@ public class TemplateAlgorithm extends AbstractLocationPrivacyAlgorithm {
 		super(in, NAME);
 	}
 
+	private TemplateAlgorithm(LocationPrivacyConfiguration configuration) {
+		super(NAME, configuration);
+	}
+
 	@Override
 	public AbstractLocationPrivacyAlgorithm newInstance() {
 		return new TemplateAlgorithm();
 	}
 
+	@Override
+	public AbstractLocationPrivacyAlgorithm newInstance(
+			LocationPrivacyConfiguration configuration) {
+		return new TemplateAlgorithm(configuration);
+	}
+
 	@Override
 	public LocationPrivacyConfiguration getDefaultConfiguration() {
 		/*
@@ -43,6 +43,16 @@ public class TestAlgorithm extends AbstractLocationPrivacyAlgorithm{
 		super(in, NAME);
 	}
 
+	/**
+	 * Creates new instance of TestAlgorithm
+	 *
+	 * @param configuration
+	 *            configuration of the algorithm
+	 */
+	private TestAlgorithm(LocationPrivacyConfiguration configuration) {
+		super(NAME, configuration);
+	}
+
 	public LocationPrivacyConfiguration getDefaultConfiguration() {
 		HashMap<String, Integer> intValues = new HashMap<String, Integer>();
 		intValues.put("integer", 1);
@@ -72,10 +82,25 @@ public class TestAlgorithm extends AbstractLocationPrivacyAlgorithm{
 		return newLoc;
 	}
 
+	public void obfuscate(double[] latitudes, double[] longitudes,
+			double[] altitudes, long[] times, int offset, int count) {
+		int latShift = configuration.getInt("integer");
+		double lonShift = configuration.getDouble("double");
+		for (int i = offset; i < offset + count; i++) {
+			latitudes[i] += latShift;
+			longitudes[i] += lonShift;
+		}
+	}
+
 	public TestAlgorithm newInstance() {
 		return new TestAlgorithm();
 	}
 
+	public TestAlgorithm newInstance(
+			LocationPrivacyConfiguration configuration) {
+		return new TestAlgorithm(configuration);
+	}
+
 	public AbstractLocationPrivacyAlgorithm instanceFromParcel(Parcel in){
 		return new TestAlgorithm(in);
 	}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2013 Distributed Computing & Security Group,
+ *                    Leibniz Universitaet Hannover, Germany
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.locationprivacy.algorithm;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import android.location.Location;
+import android.locationprivacy.model.AbstractLocationPrivacyAlgorithm;
+import android.locationprivacy.model.Coordinate;
+import android.locationprivacy.model.LocationPrivacyConfiguration;
+import android.os.Parcel;
+
+/**
+ * The algorithm Truncate reduces the precision of a location to a number of
+ * decimal digits. Coordinates are rounded down, so all locations within a
+ * cell of 10^-digits degrees get the same coordinates.
+ */
+public class Truncate extends AbstractLocationPrivacyAlgorithm {
+
+	/** The Constant NAME. */
+	private static final String NAME = "truncate";
+
+	/**
+	 * Creates new instance of Truncate
+	 */
+	public Truncate() {
+		super(NAME);
+	}
+
+	/**
+	 * Creates new instance of Truncate
+	 *
+	 * @param in
+	 *            Parcel object containing the configuration of the algorithm
+	 */
+	private Truncate(Parcel in) {
+		super(in, NAME);
+	}
+
+	/**
+	 * Creates new instance of Truncate
+	 *
+	 * @param configuration
+	 *            configuration of the algorithm
+	 */
+	private Truncate(LocationPrivacyConfiguration configuration) {
+		super(NAME, configuration);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * android.locationprivacy.model.AbstractLocationPrivacyAlgorithm#newInstance
+	 * ()
+	 */
+	@Override
+	public AbstractLocationPrivacyAlgorithm newInstance() {
+		return new Truncate();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * android.locationprivacy.model.AbstractLocationPrivacyAlgorithm#newInstance
+	 * (android.locationprivacy.model.LocationPrivacyConfiguration)
+	 */
+	@Override
+	public AbstractLocationPrivacyAlgorithm newInstance(
+			LocationPrivacyConfiguration configuration) {
+		return new Truncate(configuration);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see android.locationprivacy.model.AbstractLocationPrivacyAlgorithm#
+	 * getDefaultConfiguration()
+	 */
+	@Override
+	public LocationPrivacyConfiguration getDefaultConfiguration() {
+		HashMap<String, Integer> intValues = new HashMap<String, Integer>();
+		intValues.put("digits", 2);
+		return new LocationPrivacyConfiguration(intValues,
+				new HashMap<String, Double>(), new HashMap<String, String>(),
+				new HashMap<String, ArrayList<String>>(),
+				new HashMap<String, String>(),
+				new HashMap<String, Coordinate>(),
+				new HashMap<String, Boolean>());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see android.locationprivacy.model.AbstractLocationPrivacyAlgorithm#
+	 * obfuscate(android.location.Location)
+	 */
+	@Override
+	public Location obfuscate(Location location) {
+		double scale = getScale();
+		Location newLoc = new Location(location);
+		newLoc.setLatitude(Math.floor(location.getLatitude() * scale) / scale);
+		newLoc.setLongitude(Math.floor(location.getLongitude() * scale) / scale);
+		return newLoc;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see android.locationprivacy.model.AbstractLocationPrivacyAlgorithm#
+	 * obfuscate(double[], double[], double[], long[], int, int)
+	 */
+	@Override
+	public void obfuscate(double[] latitudes, double[] longitudes,
+			double[] altitudes, long[] times, int offset, int count) {
+		double scale = getScale();
+		for (int i = offset; i < offset + count; i++) {
+			latitudes[i] = Math.floor(latitudes[i] * scale) / scale;
+			longitudes[i] = Math.floor(longitudes[i] * scale) / scale;
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see android.locationprivacy.model.AbstractLocationPrivacyAlgorithm#
+	 * instanceFromParcel(android.os.Parcel)
+	 */
+	@Override
+	protected AbstractLocationPrivacyAlgorithm instanceFromParcel(Parcel in) {
+		return new Truncate(in);
+	}
+
+	/**
+	 * Returns 10^digits, digits limited to 0..7
+	 */
+	private double getScale() {
+		int digits = Math.max(0, Math.min(7, configuration.getInt("digits")));
+		return Math.pow(10, digits);
+	}
+
+}
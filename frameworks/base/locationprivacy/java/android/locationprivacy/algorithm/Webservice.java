@@ -17,37 +17,89 @@
 
 package android.locationprivacy.algorithm;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.security.GeneralSecurityException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
 
 import org.apache.http.conn.ssl.SSLSocketFactory;
-import org.json.JSONException;
-import org.json.JSONObject;
 
 import android.location.Location;
+import android.locationprivacy.control.AlgorithmRegistry;
 import android.locationprivacy.model.AbstractLocationPrivacyAlgorithm;
 import android.locationprivacy.model.Coordinate;
 import android.locationprivacy.model.LocationPrivacyConfiguration;
+import android.locationprivacy.util.CircuitBreaker;
+import android.locationprivacy.util.LocationJsonParser;
+import android.locationprivacy.util.MetricGrid;
+import android.locationprivacy.util.Metrics;
+import android.locationprivacy.util.Prefetcher;
+import android.locationprivacy.util.TimedLruCache;
 import android.os.Build;
 import android.os.Parcel;
 import android.os.StrictMode;
+import android.os.SystemClock;
+import android.os.SystemProperties;
 import android.util.Base64;
 import android.util.Log;
 
 /**
  * The algorithm Webservice makes a call to an obfuscation service on the Web.
  * Service is requested via HTTPS connection and authenticated via HTTP Basic Auth.
- * The service returns the obfuscated location as JSON data, which is parsed and
- * finally returned by the algorithm.
+ * Other service addresses are refused, so the credentials are never sent in
+ * clear text. Plain HTTP is only allowed on eng and userdebug builds if the
+ * system property debug.locationprivacy.allowhttp is true, for testing with a
+ * local stand-in service.
+ * The service returns the obfuscated location as JSON data, which is parsed
+ * directly from the response bytes by a LocationJsonParser and finally
+ * returned by the algorithm.
+ * 
+ * Service results are cached per app and area for a configurable time. A
+ * location within an area with a cached result is answered locally without
+ * asking the service. Cache hits, misses and the latency saved by them are
+ * recorded in the metrics of the algorithm.
+ * 
+ * In asynchronous mode the request is sent by a background thread and the
+ * location is answered immediately: with the cached service result for the
+ * same area and app if there is one, otherwise by a local fallback
+ * algorithm. The number of requests in flight is limited per app, so a slow
+ * service neither stalls location dispatch nor piles up requests.
+ * 
+ * All requests share one TLS socket factory, so TLS sessions are resumed, and
+ * responses are read completely and closed, so the platform keeps the
+ * connections alive and reuses them for the next request.
+ * 
+ * Each service is guarded by a CircuitBreaker. Timeouts are derived from the
+ * observed latencies of the service, and after repeated failures requests
+ * are not sent for a while. Locations that cannot be obfuscated by the
+ * service, because of errors or an open circuit, are obfuscated by the
+ * fallback algorithm.
+ * 
+ * In batch mode, requests of all apps to the same service are collected for a
+ * short window, or until the batch is full, and sent as one POST request
+ * with a JSON array of locations. The service answers with an array of
+ * obfuscated locations in the same order, null for suppressed locations.
+ * 
+ * With prefetching, a Prefetcher predicts the next areas of a moving user
+ * from speed and bearing of the recent locations and requests their results
+ * in the background, within a budget of requests per minute and app. A
+ * prefetch is only sent while the app has no other request in flight.
  *
  * @author Christian Kater
  *
@@ -57,6 +109,64 @@ public class Webservice extends AbstractLocationPrivacyAlgorithm {
 	/** The Constant NAME. */
 	private static final String NAME = "webservice";
 
+	/** System property allowing plain HTTP on debug builds */
+	private static final String PROPERTY_ALLOW_HTTP = "debug.locationprivacy.allowhttp";
+
+	/** Maximum number of areas the last service result is kept for */
+	private static final int MAX_RESULTS = 256;
+
+	/** Threads sending asynchronous requests */
+	private static final ThreadPoolExecutor executor;
+
+	/** Service results by area key */
+	private static final TimedLruCache<String, double[]> results = new TimedLruCache<String, double[]>(
+			MAX_RESULTS);
+
+	/** Metrics of the algorithm */
+	private static final Metrics metrics = Metrics.get(NAME);
+
+	/** Area keys with a request in flight */
+	private static final HashSet<String> pendingAreas = new HashSet<String>();
+
+	/** Number of requests in flight by uid */
+	private static final HashMap<String, Integer> pendingRequests = new HashMap<String, Integer>();
+
+	/** Batchers by service address and credentials */
+	private static final HashMap<String, Batcher> batchers = new HashMap<String, Batcher>();
+
+	/** Circuit breakers by service address and credentials */
+	private static final HashMap<String, CircuitBreaker> breakers = new HashMap<String, CircuitBreaker>();
+
+	static {
+		ThreadPoolExecutor pool = new ThreadPoolExecutor(2, 2, 30,
+				TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+				new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, "LP_webservice");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		pool.allowCoreThreadTimeOut(true);
+		executor = pool;
+	}
+
+	/** Fallback algorithm used while no service result is available */
+	private volatile AbstractLocationPrivacyAlgorithm fallback;
+
+	/** Grid defining the areas results are reused in */
+	private volatile MetricGrid grid;
+
+	/** Socket factory shared by all requests, holds the TLS session cache */
+	private static javax.net.ssl.SSLSocketFactory socketFactory;
+
+	/** Service address and authorization header of the configuration */
+	private volatile Endpoint endpoint;
+
+	/** Prefetcher of results on the way, null if not yet created */
+	private volatile Prefetcher prefetcher;
+
 	/**
 	 * Creates new instance of Webservice
 	 */
@@ -74,6 +184,16 @@ public class Webservice extends AbstractLocationPrivacyAlgorithm {
 		super(in, NAME);
 	}
 
+	/**
+	 * Creates new instance of Webservice
+	 * 
+	 * @param configuration
+	 *            configuration of the algorithm
+	 */
+	private Webservice(LocationPrivacyConfiguration configuration) {
+		super(NAME, configuration);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -86,6 +206,19 @@ public class Webservice extends AbstractLocationPrivacyAlgorithm {
 		return new Webservice();
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * android.locationprivacy.model.AbstractLocationPrivacyAlgorithm#newInstance
+	 * (android.locationprivacy.model.LocationPrivacyConfiguration)
+	 */
+	@Override
+	public AbstractLocationPrivacyAlgorithm newInstance(
+			LocationPrivacyConfiguration configuration) {
+		return new Webservice(configuration);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -99,12 +232,47 @@ public class Webservice extends AbstractLocationPrivacyAlgorithm {
 				"https://priserv.dcsec.uni-hannover.de/authed/json");
 		stringValues.put("username", "myname");
 		stringValues.put("secret_password", "secret");
-		return new LocationPrivacyConfiguration(new HashMap<String, Integer>(),
-				new HashMap<String, Double>(), stringValues,
-				new HashMap<String, ArrayList<String>>(),
-				new HashMap<String, String>(),
-				new HashMap<String, Coordinate>(),
-				new HashMap<String, Boolean>());
+		Map<String, Integer> intValues = new HashMap<String, Integer>();
+		intValues.put("maxrequests", 2);
+		intValues.put("areasize", 250);
+		// seconds a service result is reused within its area
+		intValues.put("cachettl", 600);
+		// failures opening the circuit and seconds it stays open
+		intValues.put("breakerfailures", 3);
+		intValues.put("breakeropen", 30);
+		intValues.put("batchwindow", 50);
+		intValues.put("batchsize", 16);
+		// prefetch requests per minute and app
+		intValues.put("prefetchbudget", 6);
+		Map<String, ArrayList<String>> enumValues = new HashMap<String, ArrayList<String>>();
+		ArrayList<String> fallbackValues = new ArrayList<String>();
+		fallbackValues.add("gridcloak");
+		fallbackValues.add("geoind");
+		fallbackValues.add("deactivate");
+		enumValues.put("fallback", fallbackValues);
+		Map<String, String> enumChoosen = new HashMap<String, String>();
+		enumChoosen.put("fallback", "gridcloak");
+		Map<String, Boolean> booleanValues = new HashMap<String, Boolean>();
+		booleanValues.put("async", true);
+		booleanValues.put("batch", false);
+		booleanValues.put("prefetch", false);
+		return new LocationPrivacyConfiguration(intValues,
+				new HashMap<String, Double>(), stringValues, enumValues,
+				enumChoosen, new HashMap<String, Coordinate>(), booleanValues);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * android.locationprivacy.model.AbstractLocationPrivacyAlgorithm#setConfiguration
+	 * (android.locationprivacy.model.LocationPrivacyConfiguration)
+	 */
+	@Override
+	public void setConfiguration(LocationPrivacyConfiguration configuration) {
+		super.setConfiguration(configuration);
+		fallback = null;
+		prefetcher = null;
 	}
 
 	/*
@@ -115,22 +283,408 @@ public class Webservice extends AbstractLocationPrivacyAlgorithm {
 	 */
 	@Override
 	public Location obfuscate(Location location) {
-        // We do it this way to run network connection in main thread. This
-        // way is not the normal one and does not comply to best practices,
-        // but the main thread must wait for the obfuscation service reply anyway.
-		StrictMode.ThreadPolicy policy = new StrictMode.ThreadPolicy.Builder()
-				.permitAll().build();
-		StrictMode.setThreadPolicy(policy);
-
-		final String HOST_ADDRESS = configuration.getString("host");
-		String username = configuration.getString("username");
-		String password = configuration.getString("secret_password");
+		String app = uid == null ? "" : uid;
+		MetricGrid current = getGrid();
+		String area = getArea(app, current, current.getCell(
+				location.getLatitude(), location.getLongitude()));
+		double[] result = results.get(area);
+		Prefetcher prefetch = getPrefetcher(app, current);
+		if (prefetch != null) {
+			prefetch.update(location.getLatitude(), location.getLongitude(),
+					location.getTime(), result != null);
+		}
+		if (result != null) {
+			metrics.increment("cache_hits");
+			metrics.add("saved_latency_ms", metrics.getMean("request_latency"));
+			Location newLoc = new Location(location);
+			newLoc.setLatitude(result[0]);
+			newLoc.setLongitude(result[1]);
+			return newLoc;
+		}
+		metrics.increment("cache_misses");
+
+		Boolean async = configuration.getBooleanValues().get("async");
+		if (async == null || !async) {
+			// We do it this way to run network connection in main thread. This
+			// way is not the normal one and does not comply to best practices,
+			// but the main thread must wait for the obfuscation service reply
+			// anyway.
+			StrictMode.ThreadPolicy policy = new StrictMode.ThreadPolicy.Builder()
+					.permitAll().build();
+			StrictMode.setThreadPolicy(policy);
+			Location newLoc;
+			boolean failed;
+			if (isBatched()) {
+				Item item = new Item(location);
+				submit(item);
+				newLoc = item.await(getBatchTimeout());
+				failed = item.failed || item.expired;
+			} else {
+				newLoc = request(location);
+				failed = newLoc == null;
+			}
+			if (failed) {
+				return getFallback().obfuscate(location);
+			}
+			store(area, newLoc);
+			return newLoc;
+		}
+
+		requestAsync(app, area, new Location(location), getMaxRequests());
+		return getFallback().obfuscate(location);
+	}
+
+	/**
+	 * Sends a request in the background unless a request for the area is
+	 * already in flight or the app has reached its limit of requests
+	 * 
+	 * @param app
+	 *            uid of the app
+	 * @param area
+	 *            key of the area the result is stored for
+	 * @param location
+	 *            original location
+	 * @param limit
+	 *            maximum number of requests of the app in flight
+	 * @return true if the request has been sent
+	 */
+	private boolean requestAsync(final String app, final String area,
+			final Location location, int limit) {
+		synchronized (pendingAreas) {
+			Integer pending = pendingRequests.get(app);
+			int count = pending == null ? 0 : pending;
+			if (count >= limit || pendingAreas.contains(area)) {
+				return false;
+			}
+			pendingAreas.add(area);
+			pendingRequests.put(app, count + 1);
+		}
+		if (isBatched()) {
+			submit(new Item(location) {
+				@Override
+				void complete(Location newLoc) {
+					store(area, newLoc);
+					finishRequest(app, area);
+					super.complete(newLoc);
+				}
+			});
+			return true;
+		}
+		try {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						store(area, request(location));
+					} finally {
+						finishRequest(app, area);
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			finishRequest(app, area);
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns whether a thread is free for a request
+	 */
+	private static boolean isIdle() {
+		return executor.getQueue().isEmpty()
+				&& executor.getActiveCount() < executor.getMaximumPoolSize();
+	}
+
+	/**
+	 * Returns the maximum number of requests in flight per app
+	 */
+	private int getMaxRequests() {
+		Integer maxRequests = configuration.getIntValues().get("maxrequests");
+		return maxRequests == null ? 2 : maxRequests;
+	}
+
+	/**
+	 * Returns the prefetcher of the app
+	 * 
+	 * @param app
+	 *            uid of the app
+	 * @param current
+	 *            grid of the areas
+	 * @return prefetcher, null if prefetching is disabled
+	 */
+	private Prefetcher getPrefetcher(final String app, final MetricGrid current) {
+		Boolean prefetch = configuration.getBooleanValues().get("prefetch");
+		if (prefetch == null || !prefetch) {
+			return null;
+		}
+		Prefetcher existing = prefetcher;
+		if (existing != null && existing.getGrid() == current) {
+			return existing;
+		}
+		Prefetcher created = new Prefetcher(current, new Prefetcher.Fetcher() {
+			@Override
+			public boolean isAvailable(long cell) {
+				return results.get(getArea(app, current, cell)) != null;
+			}
+
+			@Override
+			public boolean fetch(long cell, double latitude, double longitude) {
+				Location location = new Location(NAME);
+				location.setLatitude(latitude);
+				location.setLongitude(longitude);
+				location.setTime(System.currentTimeMillis());
+				// only while no other request of the app is in flight and a
+				// thread is free, so prefetches are never late from queuing
+				if (!isBatched() && !isIdle()) {
+					return false;
+				}
+				return requestAsync(app, getArea(app, current, cell), location,
+						1);
+			}
+		}, metrics);
+		Integer budget = configuration.getIntValues().get("prefetchbudget");
+		Integer cacheTtl = configuration.getIntValues().get("cachettl");
+		created.setLimits(budget == null ? 6 : budget,
+				(cacheTtl == null ? 600 : cacheTtl) * 1000L);
+		prefetcher = created;
+		return created;
+	}
+
+	/**
+	 * Removes a request from the requests in flight
+	 */
+	private static void finishRequest(String app, String area) {
+		synchronized (pendingAreas) {
+			pendingAreas.remove(area);
+			Integer pending = pendingRequests.get(app);
+			if (pending == null || pending <= 1) {
+				pendingRequests.remove(app);
+			} else {
+				pendingRequests.put(app, pending - 1);
+			}
+		}
+	}
+
+	/**
+	 * Returns whether requests are sent in batches
+	 */
+	private boolean isBatched() {
+		Boolean batch = configuration.getBooleanValues().get("batch");
+		return batch != null && batch;
+	}
+
+	/**
+	 * Adds a request to the batch of its service. If no batch is being
+	 * collected, a sender is started, which sends the batch when it is full or
+	 * the window of its oldest request has passed.
+	 * 
+	 * @param item
+	 *            request, completed when the service has answered
+	 */
+	private void submit(Item item) {
+		final Endpoint service = getEndpoint();
+		Integer batchWindow = configuration.getIntValues().get("batchwindow");
+		Integer batchSize = configuration.getIntValues().get("batchsize");
+		final Batcher batcher;
+		synchronized (batchers) {
+			Batcher current = batchers.get(service.key);
+			if (current == null) {
+				current = new Batcher();
+				batchers.put(service.key, current);
+			}
+			batcher = current;
+		}
+		boolean start;
+		synchronized (batcher) {
+			batcher.window = batchWindow == null ? 50 : batchWindow;
+			batcher.size = Math.max(1, batchSize == null ? 16 : batchSize);
+			batcher.pending.add(item);
+			if (batcher.pending.size() >= batcher.size) {
+				batcher.notifyAll();
+			}
+			start = !batcher.sending;
+			batcher.sending = true;
+		}
+		if (start) {
+			send(service, batcher);
+		}
+	}
+
+	/**
+	 * Starts a sender taking one batch of a service. After sending it, the
+	 * sender hands its thread back and is started again, so services with
+	 * steady load do not hold the threads shared with the other requests.
+	 * 
+	 * @param service
+	 *            service the batch is sent to
+	 * @param batcher
+	 *            batcher of the service
+	 */
+	private void send(final Endpoint service, final Batcher batcher) {
+		try {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					boolean finished = false;
+					boolean sent = false;
+					try {
+						List<Item> items = batcher.next();
+						if (items != null) {
+							List<Location> newLocs = null;
+							try {
+								newLocs = requestBatch(service, items);
+							} finally {
+								for (int i = 0; i < items.size(); i++) {
+									Item item = items.get(i);
+									item.failed = newLocs == null;
+									item.complete(newLocs == null ? null
+											: newLocs.get(i));
+								}
+							}
+							sent = true;
+						}
+						finished = true;
+					} finally {
+						// next() has reset sending if no request was left
+						if (!finished) {
+							abort(batcher);
+						}
+					}
+					if (sent) {
+						send(service, batcher);
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			abort(batcher);
+		}
+	}
+
+	/**
+	 * Stops collecting requests of a batcher whose sender cannot run and
+	 * fails its pending requests, so their callers use the fallback. The next
+	 * request starts a new sender.
+	 * 
+	 * @param batcher
+	 *            batcher of the service
+	 */
+	private static void abort(Batcher batcher) {
+		List<Item> items;
+		synchronized (batcher) {
+			items = new ArrayList<Item>(batcher.pending);
+			batcher.pending.clear();
+			batcher.sending = false;
+		}
+		for (Item pending : items) {
+			pending.failed = true;
+			pending.complete(null);
+		}
+	}
+
+	/**
+	 * Returns the longest time a caller waits for a batched request: the
+	 * batch window plus the connect and read timeout of the service
+	 * 
+	 * @return time in milliseconds
+	 */
+	private long getBatchTimeout() {
+		Integer batchWindow = configuration.getIntValues().get("batchwindow");
+		return (batchWindow == null ? 50 : batchWindow) + 2L
+				* getBreaker(getEndpoint()).getTimeout();
+	}
+
+	/**
+	 * Returns the grid of the areas results are reused in
+	 */
+	private MetricGrid getGrid() {
+		Integer areaSize = configuration.getIntValues().get("areasize");
+		int cellSize = areaSize == null ? 250 : areaSize;
+		MetricGrid current = grid;
+		if (current == null || current.getCellSize() != cellSize) {
+			current = new MetricGrid(cellSize);
+			grid = current;
+		}
+		return current;
+	}
+
+	/**
+	 * Returns the key of an area. The key contains the service address, the
+	 * uid and the area size, so results of different configurations are not
+	 * mixed up.
+	 * 
+	 * @param app
+	 *            uid of the app
+	 * @param current
+	 *            grid of the areas
+	 * @param cell
+	 *            cell of the grid
+	 * @return key of the area
+	 */
+	private String getArea(String app, MetricGrid current, long cell) {
+		return configuration.getString("host") + " " + app + " "
+				+ current.getCellSize() + ":" + cell;
+	}
+
+	/**
+	 * Caches a service result for the configured time
+	 * 
+	 * @param area
+	 *            key of the area
+	 * @param newLoc
+	 *            obfuscated location, nothing is cached if null
+	 */
+	private void store(String area, Location newLoc) {
+		if (newLoc == null) {
+			return;
+		}
+		Integer cacheTtl = configuration.getIntValues().get("cachettl");
+		long ttl = (cacheTtl == null ? 600 : cacheTtl) * 1000L;
+		results.put(area,
+				new double[] { newLoc.getLatitude(), newLoc.getLongitude() },
+				ttl);
+	}
 
+	/**
+	 * Returns the fallback algorithm, which obfuscates locations while no
+	 * service result is available
+	 */
+	private AbstractLocationPrivacyAlgorithm getFallback() {
+		AbstractLocationPrivacyAlgorithm current = fallback;
+		if (current == null) {
+			String name = configuration.getEnumChoosen().get("fallback");
+			if (name != null) {
+				current = AlgorithmRegistry.getInstance().newInstance(name);
+			}
+			if (current == null) {
+				current = AlgorithmRegistry.getInstance().newInstance(
+						"deactivate");
+			}
+			current.setContext(context);
+			current.setUid(uid);
+			fallback = current;
+		}
+		return current;
+	}
+
+	/**
+	 * Requests the obfuscated location from the service. The call blocks
+	 * until the service has answered.
+	 * 
+	 * @param location
+	 *            original location
+	 * @return obfuscated location, null on errors
+	 */
+	private Location request(Location location) {
+		Endpoint service = getEndpoint();
+		if (!service.allowed) {
+			return null;
+		}
 		Location newLoc = new Location(location);
 		double lat = location.getLatitude();
 		double lon = location.getLongitude();
 
-		String urlString = HOST_ADDRESS;
+		String urlString = service.host;
 		urlString += "?lat=" + lat;
 		urlString += "&lon=" + lon;
 		URL url;
@@ -141,44 +695,298 @@ public class Webservice extends AbstractLocationPrivacyAlgorithm {
 			Log.e(TAG, e.getMessage());
 			return null;
 		}
-		HttpsURLConnection connection = null;
-		JSONObject json = null;
-		InputStream is = null;
+		CircuitBreaker breaker = getBreaker(service);
+		if (!breaker.allowRequest()) {
+			return null;
+		}
+		long start = SystemClock.elapsedRealtime();
+		HttpURLConnection connection = null;
 		try {
-			connection = (HttpsURLConnection) url.openConnection();
-			connection
-					.setHostnameVerifier(SSLSocketFactory.BROWSER_COMPATIBLE_HOSTNAME_VERIFIER);
-			connection.setRequestProperty(
-					"Authorization",
-					"Basic "
-							+ Base64.encodeToString(
-									(username + ":" + password).getBytes(),
-									Base64.NO_WRAP));
-			is = connection.getInputStream();
-
+			connection = (HttpURLConnection) url.openConnection();
+			connection.setConnectTimeout(breaker.getTimeout());
+			connection.setReadTimeout(breaker.getTimeout());
+			if (connection instanceof HttpsURLConnection) {
+				HttpsURLConnection https = (HttpsURLConnection) connection;
+				https.setSSLSocketFactory(getSocketFactory());
+				https
+						.setHostnameVerifier(SSLSocketFactory.BROWSER_COMPATIBLE_HOSTNAME_VERIFIER);
+			}
+			connection.setRequestProperty("Authorization",
+					service.authorization);
+			double[] result = new double[2];
+			InputStream is = connection.getInputStream();
+			try {
+				LocationJsonParser parser = new LocationJsonParser(is);
+				parser.readLocation(result);
+				parser.finish();
+			} finally {
+				is.close();
+			}
+			newLoc.setLatitude(result[0]);
+			newLoc.setLongitude(result[1]);
+			long latency = SystemClock.elapsedRealtime() - start;
+			metrics.record("request_latency", latency);
+			breaker.onSuccess(latency);
+			return newLoc;
 		} catch (IOException e) {
-			Log.e(TAG, "Error while connectiong to " + url.toString());
-			Log.e(TAG, e.getMessage());
+			onRequestFailed(breaker, connection, url.toString(), e);
+			return null;
+		} catch (RuntimeException e) {
+			// must not leave the breaker waiting for the outcome of a probe
+			onRequestFailed(breaker, connection, url.toString(), e);
+			return null;
+		}
+	}
+
+	/**
+	 * Requests the obfuscated locations of a batch from the service. The call
+	 * blocks until the service has answered.
+	 * 
+	 * @param service
+	 *            service address and authorization
+	 * @param items
+	 *            requests of the batch
+	 * @return obfuscated locations in the order of the requests, null entries
+	 *         for suppressed locations, null on errors
+	 */
+	private List<Location> requestBatch(Endpoint service, List<Item> items) {
+		if (!service.allowed) {
 			return null;
 		}
-		BufferedReader reader = new BufferedReader(new InputStreamReader(is));
+		StringBuilder body = new StringBuilder(items.size() * 48);
+		body.append('[');
+		for (int i = 0; i < items.size(); i++) {
+			Location location = items.get(i).location;
+			if (i > 0) {
+				body.append(',');
+			}
+			body.append("{\"lat\":").append(location.getLatitude())
+					.append(",\"lon\":").append(location.getLongitude())
+					.append('}');
+		}
+		body.append(']');
+		CircuitBreaker breaker = getBreaker(service);
+		if (!breaker.allowRequest()) {
+			return null;
+		}
+		long start = SystemClock.elapsedRealtime();
+		HttpURLConnection connection = null;
 		try {
-			String line = reader.readLine();
-			System.out.println("Line " + line);
-			json = new JSONObject(line);
-			newLoc.setLatitude(json.getDouble("lat"));
-			newLoc.setLongitude(json.getDouble("lon"));
+			byte[] bytes = body.toString().getBytes("UTF-8");
+			connection = (HttpURLConnection) new URL(service.host)
+					.openConnection();
+			connection.setConnectTimeout(breaker.getTimeout());
+			connection.setReadTimeout(breaker.getTimeout());
+			if (connection instanceof HttpsURLConnection) {
+				HttpsURLConnection https = (HttpsURLConnection) connection;
+				https.setSSLSocketFactory(getSocketFactory());
+				https
+						.setHostnameVerifier(SSLSocketFactory.BROWSER_COMPATIBLE_HOSTNAME_VERIFIER);
+			}
+			connection.setRequestProperty("Authorization",
+					service.authorization);
+			connection.setRequestProperty("Content-Type", "application/json");
+			connection.setDoOutput(true);
+			connection.setFixedLengthStreamingMode(bytes.length);
+			OutputStream os = connection.getOutputStream();
+			try {
+				os.write(bytes);
+			} finally {
+				os.close();
+			}
+			double[] latitudes = new double[items.size()];
+			double[] longitudes = new double[items.size()];
+			int count;
+			InputStream is = connection.getInputStream();
+			try {
+				LocationJsonParser parser = new LocationJsonParser(is);
+				count = parser.readLocations(latitudes, longitudes);
+				parser.finish();
+			} finally {
+				is.close();
+			}
+			if (count != items.size()) {
+				Log.e(TAG, "Error: service answered " + count
+						+ " locations for " + items.size());
+				metrics.increment("request_errors");
+				breaker.onFailure();
+				return null;
+			}
+			ArrayList<Location> newLocs = new ArrayList<Location>(items.size());
+			for (int i = 0; i < items.size(); i++) {
+				if (Double.isNaN(latitudes[i])) {
+					newLocs.add(null);
+				} else {
+					Location newLoc = new Location(items.get(i).location);
+					newLoc.setLatitude(latitudes[i]);
+					newLoc.setLongitude(longitudes[i]);
+					newLocs.add(newLoc);
+				}
+			}
+			long latency = SystemClock.elapsedRealtime() - start;
+			metrics.record("request_latency", latency);
+			metrics.add("batched_locations", items.size());
+			breaker.onSuccess(latency);
+			return newLocs;
 		} catch (IOException e) {
-			Log.e(TAG, "Error: could not read from BufferedReader");
-			Log.e(TAG, e.getMessage());
+			onRequestFailed(breaker, connection, service.host, e);
 			return null;
-		} catch (JSONException e) {
-			Log.e(TAG, "Error: could not read from JSON");
-			Log.e(TAG, e.getMessage());
+		} catch (RuntimeException e) {
+			// must not leave the breaker waiting for the outcome of a probe
+			onRequestFailed(breaker, connection, service.host, e);
 			return null;
 		}
-		connection.disconnect();
-		return newLoc;
+	}
+
+	/**
+	 * Reports a failed request to the circuit breaker and the metrics and
+	 * releases its connection
+	 * 
+	 * @param breaker
+	 *            circuit breaker of the service
+	 * @param connection
+	 *            connection of the request, may be null
+	 * @param address
+	 *            address of the request
+	 * @param e
+	 *            cause of the failure
+	 */
+	private void onRequestFailed(CircuitBreaker breaker,
+			HttpURLConnection connection, String address, Exception e) {
+		Log.e(TAG, "Error while connectiong to " + address);
+		Log.e(TAG, String.valueOf(e.getMessage()));
+		metrics.increment("request_errors");
+		breaker.onFailure();
+		release(connection);
+	}
+
+	/**
+	 * Skips a response and closes its stream, so the connection can be
+	 * reused
+	 * 
+	 * @param is
+	 *            stream of the response
+	 * @throws IOException
+	 */
+	private static void skipResponse(InputStream is) throws IOException {
+		try {
+			byte[] buffer = new byte[512];
+			while (is.read(buffer) >= 0) {
+				// skip the rest
+			}
+		} finally {
+			is.close();
+		}
+	}
+
+	/**
+	 * Releases the connection of a failed request. If the server has sent an
+	 * error response, it is read and the connection is kept alive, otherwise
+	 * the connection is closed.
+	 * 
+	 * @param connection
+	 *            connection of the request, may be null
+	 */
+	private static void release(HttpURLConnection connection) {
+		if (connection == null) {
+			return;
+		}
+		InputStream error = connection.getErrorStream();
+		if (error == null) {
+			connection.disconnect();
+			return;
+		}
+		try {
+			skipResponse(error);
+		} catch (IOException e) {
+			connection.disconnect();
+		}
+	}
+
+	/**
+	 * Returns the circuit breaker of a service with the limits of the current
+	 * configuration
+	 * 
+	 * @param service
+	 *            service address and authorization
+	 * @return circuit breaker, shared by all instances using the service
+	 */
+	private CircuitBreaker getBreaker(Endpoint service) {
+		CircuitBreaker breaker;
+		synchronized (breakers) {
+			breaker = breakers.get(service.key);
+			if (breaker == null) {
+				breaker = new CircuitBreaker(metrics);
+				breakers.put(service.key, breaker);
+			}
+		}
+		Integer failures = configuration.getIntValues().get("breakerfailures");
+		Integer openTime = configuration.getIntValues().get("breakeropen");
+		breaker.setLimits(failures == null ? 3 : failures,
+				(openTime == null ? 30 : openTime) * 1000L);
+		return breaker;
+	}
+
+	/**
+	 * Returns the service address and authorization header of the current
+	 * configuration. They are only rebuilt if the configuration changes.
+	 */
+	private Endpoint getEndpoint() {
+		String host = configuration.getString("host");
+		String username = configuration.getString("username");
+		String password = configuration.getString("secret_password");
+		Endpoint current = endpoint;
+		if (current == null || !current.host.equals(host)
+				|| !current.username.equals(username)
+				|| !current.password.equals(password)) {
+			current = new Endpoint(host, username, password);
+			if (!current.allowed) {
+				Log.e(TAG, "Error: refusing to send credentials to " + host
+						+ ", the service must use HTTPS");
+			}
+			endpoint = current;
+		}
+		return current;
+	}
+
+	/**
+	 * Returns whether a service address may be used. HTTPS is required,
+	 * unless plain HTTP is allowed for testing on a debug build.
+	 * 
+	 * @param host
+	 *            service address
+	 * @return true if the address may be used
+	 */
+	private static boolean isAllowed(String host) {
+		String lower = host.toLowerCase();
+		if (lower.startsWith("https://")) {
+			return true;
+		}
+		return lower.startsWith("http://") && !"user".equals(Build.TYPE)
+				&& SystemProperties.getBoolean(PROPERTY_ALLOW_HTTP, false);
+	}
+
+	/**
+	 * Returns the socket factory shared by all requests. Connections are only
+	 * reused for the same socket factory, so it must not be created per
+	 * request.
+	 */
+	private javax.net.ssl.SSLSocketFactory getSocketFactory() {
+		synchronized (Webservice.class) {
+			if (socketFactory == null) {
+				try {
+					SSLContext context = SSLContext.getInstance("TLS");
+					context.init(null, null, null);
+					socketFactory = context.getSocketFactory();
+				} catch (GeneralSecurityException e) {
+					Log.e(TAG, "Error: could not create TLS context");
+					Log.e(TAG, e.getMessage());
+					socketFactory = HttpsURLConnection
+							.getDefaultSSLSocketFactory();
+				}
+			}
+			return socketFactory;
+		}
 	}
 
 	/*
@@ -192,4 +1000,125 @@ public class Webservice extends AbstractLocationPrivacyAlgorithm {
 		return new Webservice(in);
 	}
 
+	/**
+	 * Endpoint stores the service address together with the precomputed
+	 * authorization header and whether the address may be used. Endpoints
+	 * are immutable, so they can be shared between threads.
+	 */
+	private static class Endpoint {
+		final String host;
+		final String username;
+		final String password;
+		final String authorization;
+		final String key;
+		final boolean allowed;
+
+		Endpoint(String host, String username, String password) {
+			this.host = host;
+			this.allowed = isAllowed(host);
+			this.username = username;
+			this.password = password;
+			this.authorization = "Basic "
+					+ Base64.encodeToString((username + ":" + password)
+							.getBytes(), Base64.NO_WRAP);
+			this.key = host + "\n" + authorization;
+		}
+	}
+
+	/**
+	 * Item is a request waiting for its batch to be answered
+	 */
+	private static class Item {
+		final Location location;
+		final long submitted = SystemClock.elapsedRealtime();
+		volatile boolean failed;
+		/** Set by await() if the result did not arrive in time */
+		boolean expired;
+		private Location result;
+		private boolean done;
+
+		Item(Location location) {
+			this.location = location;
+		}
+
+		/**
+		 * Sets the result and wakes up the waiting caller
+		 * 
+		 * @param newLoc
+		 *            obfuscated location, null if suppressed or on errors
+		 */
+		void complete(Location newLoc) {
+			synchronized (this) {
+				result = newLoc;
+				done = true;
+				notifyAll();
+			}
+		}
+
+		/**
+		 * Waits for the result. If it does not arrive in time, expired is set.
+		 * 
+		 * @param timeout
+		 *            longest time to wait in milliseconds
+		 * @return obfuscated location, null if suppressed, on errors, if
+		 *         expired or if interrupted
+		 */
+		synchronized Location await(long timeout) {
+			long end = SystemClock.elapsedRealtime() + timeout;
+			long remaining;
+			try {
+				while (!done
+						&& (remaining = end - SystemClock.elapsedRealtime()) > 0) {
+					wait(remaining);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			if (!done) {
+				expired = true;
+				return null;
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Batcher collects the requests to one service. At most one sender per
+	 * service is running, it takes one batch per run and is started again
+	 * until no request is left.
+	 */
+	private static class Batcher {
+		final ArrayList<Item> pending = new ArrayList<Item>();
+		int window;
+		int size;
+		boolean sending;
+
+		/**
+		 * Waits until the batch is full or the window of its oldest request
+		 * has passed and removes the batch
+		 * 
+		 * @return requests of the batch, null if no request is left
+		 */
+		synchronized List<Item> next() {
+			if (pending.isEmpty()) {
+				sending = false;
+				return null;
+			}
+			long end = pending.get(0).submitted + window;
+			long remaining;
+			while (pending.size() < size
+					&& (remaining = end - SystemClock.elapsedRealtime()) > 0) {
+				try {
+					wait(remaining);
+				} catch (InterruptedException e) {
+					break;
+				}
+			}
+			int count = Math.min(size, pending.size());
+			List<Item> batch = new ArrayList<Item>(pending.subList(0, count));
+			pending.subList(0, count).clear();
+			return batch;
+		}
+	}
+
 }
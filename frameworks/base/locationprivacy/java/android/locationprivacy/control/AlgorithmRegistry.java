@@ -0,0 +1,301 @@
+/*
+ * Copyright (C) 2013 Distributed Computing & Security Group,
+ *                    Leibniz Universitaet Hannover, Germany
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.locationprivacy.control;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+import android.locationprivacy.algorithm.AdminRegion;
+import android.locationprivacy.algorithm.Deactivate;
+import android.locationprivacy.algorithm.FixedPosition;
+import android.locationprivacy.algorithm.GeoIndistinguishability;
+import android.locationprivacy.algorithm.GeoReverseGeo;
+import android.locationprivacy.algorithm.GridCloak;
+import android.locationprivacy.algorithm.KAnonymity;
+import android.locationprivacy.algorithm.KeyedNoise;
+import android.locationprivacy.algorithm.Pipeline;
+import android.locationprivacy.algorithm.Radius;
+import android.locationprivacy.algorithm.RadiusDistance;
+import android.locationprivacy.algorithm.Truncate;
+import android.locationprivacy.algorithm.Webservice;
+import android.locationprivacy.model.AbstractLocationPrivacyAlgorithm;
+import android.locationprivacy.model.LocationPrivacyConfiguration;
+import android.util.Log;
+
+/**
+ * The AlgorithmRegistry knows all obfuscation algorithms by name. Algorithms
+ * are registered as classes, an algorithm is only loaded and instantiated
+ * when it is used for the first time. This first instance is kept as
+ * prototype, its configuration is the shared default configuration of the
+ * algorithm and must not be changed.
+ *
+ * Besides the algorithms of the framework, add-on algorithms are read from
+ * ADDON_FILE. Each line has the form name=fully.qualified.ClassName, lines
+ * starting with # are ignored. Add-on classes must be on the class path of
+ * the framework and have a public constructor without parameters.
+ */
+public class AlgorithmRegistry {
+
+	/** File listing add-on algorithms */
+	public static final String ADDON_FILE = "/system/etc/locationprivacy/algorithms.conf";
+
+	/** Tag used in Logs */
+	private static final String TAG = "LP_AlgorithmRegistry";
+
+	/** Registry of the process */
+	private static AlgorithmRegistry instance;
+
+	/** Factories by algorithm name */
+	private final HashMap<String, Factory> factories = new HashMap<String, Factory>();
+
+	/**
+	 * Returns the registry of the process. On first call the algorithms of
+	 * the framework and the add-on algorithms are registered.
+	 *
+	 * @return the registry
+	 */
+	public static synchronized AlgorithmRegistry getInstance() {
+		if (instance == null) {
+			instance = new AlgorithmRegistry();
+			instance.register("deactivate", Deactivate.class);
+			instance.register("fixedposition", FixedPosition.class);
+			instance.register("radius", Radius.class);
+			instance.register("radiusdistance", RadiusDistance.class);
+			instance.register("georeversegeo", GeoReverseGeo.class);
+			instance.register("webservice", Webservice.class);
+			instance.register("geoind", GeoIndistinguishability.class);
+			instance.register("gridcloak", GridCloak.class);
+			instance.register("kanonymity", KAnonymity.class);
+			instance.register("truncate", Truncate.class);
+			instance.register("pipeline", Pipeline.class);
+			instance.register("keyednoise", KeyedNoise.class);
+			instance.register("adminregion", AdminRegion.class);
+			instance.registerAddons(new File(ADDON_FILE));
+		}
+		return instance;
+	}
+
+	/**
+	 * Registers an algorithm
+	 *
+	 * @param name
+	 *            name of the algorithm, as returned by getName()
+	 * @param algorithmClass
+	 *            class of the algorithm
+	 */
+	public synchronized void register(String name,
+			Class<? extends AbstractLocationPrivacyAlgorithm> algorithmClass) {
+		factories.put(name, new Factory(name, algorithmClass, null));
+	}
+
+	/**
+	 * Registers an algorithm by class name. The class is loaded on first use.
+	 *
+	 * @param name
+	 *            name of the algorithm, as returned by getName()
+	 * @param className
+	 *            fully qualified name of the class of the algorithm
+	 */
+	public synchronized void register(String name, String className) {
+		factories.put(name, new Factory(name, null, className));
+	}
+
+	/**
+	 * Returns the names of all registered algorithms
+	 *
+	 * @return sorted list of names
+	 */
+	public synchronized List<String> getNames() {
+		ArrayList<String> names = new ArrayList<String>(factories.keySet());
+		Collections.sort(names);
+		return names;
+	}
+
+	/**
+	 * Returns the prototype of an algorithm. The prototype is shared and must
+	 * neither be used for obfuscation nor be changed.
+	 *
+	 * @param name
+	 *            name of the algorithm
+	 * @return prototype, null if the algorithm is unknown or cannot be loaded
+	 */
+	public AbstractLocationPrivacyAlgorithm getPrototype(String name) {
+		Factory factory;
+		synchronized (this) {
+			factory = factories.get(name);
+		}
+		if (factory == null) {
+			Log.e(TAG, "Unknown algorithm " + name);
+			return null;
+		}
+		return factory.getPrototype();
+	}
+
+	/**
+	 * Returns a new configuration of an algorithm: a copy of the default
+	 * configuration with values of its own, e.g. secrets, set by
+	 * initializeConfiguration()
+	 *
+	 * @param name
+	 *            name of the algorithm
+	 * @return default configuration, null if the algorithm is unknown
+	 */
+	public LocationPrivacyConfiguration getDefaultConfiguration(String name) {
+		AbstractLocationPrivacyAlgorithm prototype = getPrototype(name);
+		if (prototype == null) {
+			return null;
+		}
+		return newConfiguration(prototype);
+	}
+
+	/**
+	 * Creates new instance of an algorithm with its default configuration
+	 *
+	 * @param name
+	 *            name of the algorithm
+	 * @return new instance, null if the algorithm is unknown
+	 */
+	public AbstractLocationPrivacyAlgorithm newInstance(String name) {
+		AbstractLocationPrivacyAlgorithm prototype = getPrototype(name);
+		if (prototype == null) {
+			return null;
+		}
+		return prototype.newInstance(newConfiguration(prototype));
+	}
+
+	/**
+	 * Creates new instance of an algorithm with a given configuration. The
+	 * default configuration is not built.
+	 *
+	 * @param name
+	 *            name of the algorithm
+	 * @param configuration
+	 *            configuration of the new instance
+	 * @return new instance, null if the algorithm is unknown
+	 */
+	public AbstractLocationPrivacyAlgorithm newInstance(String name,
+			LocationPrivacyConfiguration configuration) {
+		AbstractLocationPrivacyAlgorithm prototype = getPrototype(name);
+		if (prototype == null) {
+			return null;
+		}
+		return prototype.newInstance(configuration);
+	}
+
+	/**
+	 * Returns a copy of the default configuration of a prototype, initialized
+	 * by the algorithm
+	 */
+	private static LocationPrivacyConfiguration newConfiguration(
+			AbstractLocationPrivacyAlgorithm prototype) {
+		LocationPrivacyConfiguration configuration = new LocationPrivacyConfiguration(
+				prototype.getConfiguration());
+		prototype.initializeConfiguration(configuration);
+		return configuration;
+	}
+
+	/**
+	 * Registers the algorithms listed in a file. A missing file is ignored.
+	 *
+	 * @param file
+	 *            file with lines name=className
+	 */
+	private void registerAddons(File file) {
+		if (!file.exists()) {
+			return;
+		}
+		BufferedReader reader = null;
+		try {
+			reader = new BufferedReader(new FileReader(file));
+			String line;
+			while ((line = reader.readLine()) != null) {
+				line = line.trim();
+				if (line.length() == 0 || line.startsWith("#")) {
+					continue;
+				}
+				int separator = line.indexOf('=');
+				if (separator <= 0 || separator == line.length() - 1) {
+					Log.w(TAG, "Ignoring invalid line in " + file + ": " + line);
+					continue;
+				}
+				register(line.substring(0, separator).trim(),
+						line.substring(separator + 1).trim());
+			}
+		} catch (IOException e) {
+			Log.e(TAG, "Error: could not read " + file);
+			Log.e(TAG, e.getMessage());
+		} finally {
+			if (reader != null) {
+				try {
+					reader.close();
+				} catch (IOException e) {
+					// nothing left to do
+				}
+			}
+		}
+	}
+
+	/**
+	 * Factory creates the prototype of an algorithm on first use
+	 */
+	private static class Factory {
+		private final String name;
+		private final String className;
+		private Class<? extends AbstractLocationPrivacyAlgorithm> algorithmClass;
+		private AbstractLocationPrivacyAlgorithm prototype;
+		private boolean failed;
+
+		Factory(String name,
+				Class<? extends AbstractLocationPrivacyAlgorithm> algorithmClass,
+				String className) {
+			this.name = name;
+			this.algorithmClass = algorithmClass;
+			this.className = className;
+		}
+
+		synchronized AbstractLocationPrivacyAlgorithm getPrototype() {
+			if (prototype == null && !failed) {
+				try {
+					if (algorithmClass == null) {
+						algorithmClass = Class.forName(className, true,
+								AlgorithmRegistry.class.getClassLoader())
+								.asSubclass(AbstractLocationPrivacyAlgorithm.class);
+					}
+					prototype = algorithmClass.newInstance();
+					if (!name.equals(prototype.getName())) {
+						Log.w(TAG, "Algorithm " + algorithmClass.getName()
+								+ " registered as " + name + " is named "
+								+ prototype.getName());
+					}
+				} catch (Exception e) {
+					// ClassNotFound, ClassCast, Instantiation, IllegalAccess
+					failed = true;
+					Log.e(TAG, "Error: could not load algorithm " + name);
+					Log.e(TAG, e.toString());
+				}
+			}
+			return prototype;
+		}
+	}
+}
@@ -36,7 +36,7 @@ import android.database.Cursor;
 import android.database.DataSetObserver;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
-import android.locationprivacy.algorithm.Radius;
+import android.locationprivacy.algorithm.GridCloak;
 import android.locationprivacy.model.AbstractLocationPrivacyAlgorithm;
 import android.locationprivacy.model.Coordinate;
 import android.locationprivacy.model.LocationPrivacyConfiguration;
@@ -737,7 +737,7 @@ public class CryptoDatabase {
 			status.put("value", "true");
 			db.insert("GENRALCONFIGURATION", null, encryptContentValues(status));
 
-			AbstractLocationPrivacyAlgorithm algorithm = new Radius();
+			AbstractLocationPrivacyAlgorithm algorithm = new GridCloak();
 
 			ContentValues defaultAlgorithm = new ContentValues();
 			defaultAlgorithm.put("configkey", "defaultAlgorithm");
@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2013 Distributed Computing & Security Group,
+ *                    Leibniz Universitaet Hannover, Germany
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package android.locationprivacy.control;
+
+import android.os.IBinder;
+import android.os.IInterface;
+import android.os.RemoteException;
+
+/**
+ * Listener of the location privacy service. It is told what has changed, so
+ * clients do not have to re-read the whole policy. Calls are one-way.
+ * 
+ * {@hide}
+ */
+public interface ILocationPrivacyListener extends IInterface {
+
+	String descriptor = "android.locationprivacy.control.ILocationPrivacyListener";
+
+	int ON_STATUS_CHANGED_TRANSACTION = IBinder.FIRST_CALL_TRANSACTION;
+	int ON_APPLICATIONS_CHANGED_TRANSACTION = IBinder.FIRST_CALL_TRANSACTION + 1;
+	int ON_DEFAULT_ALGORITHM_CHANGED_TRANSACTION = IBinder.FIRST_CALL_TRANSACTION + 2;
+
+	/**
+	 * Called when the framework has been enabled or disabled
+	 * 
+	 * @param on
+	 *            new framework state
+	 */
+	void onStatusChanged(boolean on) throws RemoteException;
+
+	/**
+	 * Called when apps have been changed or removed
+	 * 
+	 * @param uids
+	 *            uids of the changed apps
+	 */
+	void onApplicationsChanged(String[] uids) throws RemoteException;
+
+	/**
+	 * Called when the default algorithm or its configuration has changed
+	 * 
+	 * @param name
+	 *            name of the default algorithm
+	 */
+	void onDefaultAlgorithmChanged(String name) throws RemoteException;
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2013 Distributed Computing & Security Group,
+ *                    Leibniz Universitaet Hannover, Germany
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package android.locationprivacy.control;
+
+import java.util.List;
+
+import android.locationprivacy.model.AbstractLocationPrivacyAlgorithm;
+import android.locationprivacy.model.LocationPrivacyApplication;
+import android.os.IBinder;
+import android.os.IInterface;
+import android.os.RemoteException;
+
+/**
+ * System private API of the location privacy service. The service runs in
+ * system_server and owns the policy store; clients such as Settings use it
+ * through LocationPrivacyClient instead of opening the database.
+ * 
+ * {@hide}
+ */
+public interface ILocationPrivacyService extends IInterface {
+
+	/** Name the service is registered as at the ServiceManager */
+	String SERVICE_NAME = "locationprivacy";
+
+	String descriptor = "android.locationprivacy.control.ILocationPrivacyService";
+
+	int GET_STATUS_TRANSACTION = IBinder.FIRST_CALL_TRANSACTION;
+	int SET_STATUS_TRANSACTION = IBinder.FIRST_CALL_TRANSACTION + 1;
+	int GET_APPLICATIONS_TRANSACTION = IBinder.FIRST_CALL_TRANSACTION + 2;
+	int SET_APPLICATIONS_TRANSACTION = IBinder.FIRST_CALL_TRANSACTION + 3;
+	int REMOVE_OLD_APPLICATIONS_TRANSACTION = IBinder.FIRST_CALL_TRANSACTION + 4;
+	int GET_DEFAULT_ALGORITHM_TRANSACTION = IBinder.FIRST_CALL_TRANSACTION + 5;
+	int SET_DEFAULT_ALGORITHM_TRANSACTION = IBinder.FIRST_CALL_TRANSACTION + 6;
+	int REGISTER_LISTENER_TRANSACTION = IBinder.FIRST_CALL_TRANSACTION + 7;
+	int UNREGISTER_LISTENER_TRANSACTION = IBinder.FIRST_CALL_TRANSACTION + 8;
+
+	/**
+	 * Returns location privacy framework state (enabled/disabled)
+	 */
+	boolean getStatus() throws RemoteException;
+
+	/**
+	 * Updates state of location privacy framework
+	 * 
+	 * @param on
+	 *            new framework state
+	 */
+	void setStatus(boolean on) throws RemoteException;
+
+	/**
+	 * Returns the LocationPrivacyApplications of several apps in one call
+	 * 
+	 * @param uids
+	 *            uids of the apps, null for all apps known to the framework
+	 * @return applications, uids unknown to the framework are left out
+	 */
+	List<LocationPrivacyApplication> getApplications(String[] uids)
+			throws RemoteException;
+
+	/**
+	 * Updates several LocationPrivacyApplications and their configurations in
+	 * one call
+	 * 
+	 * @param apps
+	 *            LocationPrivacyApplications to be updated
+	 */
+	void setApplications(List<LocationPrivacyApplication> apps)
+			throws RemoteException;
+
+	/**
+	 * Removes apps/configuration that have been deinstalled
+	 */
+	void removeOldApplications() throws RemoteException;
+
+	/**
+	 * Returns the default obfuscation algorithm with its configuration
+	 */
+	AbstractLocationPrivacyAlgorithm getDefaultAlgorithm()
+			throws RemoteException;
+
+	/**
+	 * Updates default obfuscation algorithm
+	 * 
+	 * @param algorithm
+	 *            default algorithm with its configuration
+	 */
+	void setDefaultAlgorithm(AbstractLocationPrivacyAlgorithm algorithm)
+			throws RemoteException;
+
+	/**
+	 * Registers a listener notified about changes of the policy
+	 */
+	void registerListener(ILocationPrivacyListener listener)
+			throws RemoteException;
+
+	/**
+	 * Unregisters a listener
+	 */
+	void unregisterListener(ILocationPrivacyListener listener)
+			throws RemoteException;
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright (C) 2013 Distributed Computing & Security Group,
+ *                    Leibniz Universitaet Hannover, Germany
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package android.locationprivacy.control;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import android.locationprivacy.model.AbstractLocationPrivacyAlgorithm;
+import android.locationprivacy.model.LocationPrivacyApplication;
+import android.locationprivacy.model.LocationPrivacyConfiguration;
+import android.os.RemoteException;
+import android.util.Log;
+
+/**
+ * The LocationPrivacyClient gives apps other than system_server, namely
+ * Settings, access to the location privacy policy. It does not open the
+ * database: all calls go to the location privacy service, which owns the
+ * policy. The framework state is cached and kept current by the change
+ * callbacks of the service.
+ * 
+ * There is one client per process, obtained by acquire and handed back by
+ * release. Its listener is unregistered when the last caller has released
+ * it.
+ */
+public class LocationPrivacyClient {
+
+	private static final String TAG = "LocationPrivacyClient";
+
+	/** Client shared by all callers in this process */
+	private static LocationPrivacyClient instance;
+
+	/** Number of callers that have acquired the shared client */
+	private static int references;
+
+	/** Location privacy service */
+	private final ILocationPrivacyService service;
+
+	/** Listener keeping the cached state current */
+	private final Listener listener = new Listener();
+
+	/** Is location privacy framework enabled? */
+	private volatile boolean status;
+
+	/**
+	 * Returns the LocationPrivacyClient of this process, creating it on first
+	 * use. Every call has to be paired with a call of release.
+	 * 
+	 * @return shared LocationPrivacyClient
+	 * @throws IllegalStateException
+	 *             if the location privacy service is not running
+	 */
+	public static synchronized LocationPrivacyClient acquire() {
+		if (instance == null) {
+			ILocationPrivacyService service = LocationPrivacyServiceNative
+					.getDefault();
+			if (service == null) {
+				throw new IllegalStateException(
+						"Location privacy service not running");
+			}
+			instance = new LocationPrivacyClient(service);
+		}
+		references++;
+		return instance;
+	}
+
+	/**
+	 * Hands back the LocationPrivacyClient obtained by acquire. The client
+	 * must not be used afterwards.
+	 */
+	public void release() {
+		synchronized (LocationPrivacyClient.class) {
+			if (references == 0 || this != instance) {
+				throw new IllegalStateException(
+						"LocationPrivacyClient released more often than acquired");
+			}
+			references--;
+			if (references == 0) {
+				instance = null;
+				try {
+					service.unregisterListener(listener);
+				} catch (RemoteException e) {
+					Log.e(TAG, "unregisterListener: RemoteException", e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Creates new instance of LocationPrivacyClient
+	 * 
+	 * @param service
+	 *            location privacy service
+	 */
+	private LocationPrivacyClient(ILocationPrivacyService service) {
+		this.service = service;
+		try {
+			service.registerListener(listener);
+			status = service.getStatus();
+		} catch (RemoteException e) {
+			Log.e(TAG, "registerListener: RemoteException", e);
+		}
+	}
+
+	/**
+	 * Returns location privacy framework state (enabled/disabled) as cached
+	 * by this client
+	 */
+	public boolean isEnabled() {
+		return status;
+	}
+
+	/**
+	 * Updates state of location privacy framework
+	 * 
+	 * @param on
+	 *            new framework state
+	 */
+	public void setStatus(boolean on) {
+		status = on;
+		try {
+			service.setStatus(on);
+		} catch (RemoteException e) {
+			Log.e(TAG, "setStatus: RemoteException", e);
+		}
+	}
+
+	/**
+	 * Returns a List of all apps known by the location privacy framework
+	 */
+	public List<LocationPrivacyApplication> getApplications() {
+		return getApplications(null);
+	}
+
+	/**
+	 * Returns the LocationPrivacyApplications of several apps
+	 * 
+	 * @param uids
+	 *            uids of the apps, null for all apps
+	 * @return applications, empty if the service cannot be reached
+	 */
+	public List<LocationPrivacyApplication> getApplications(String[] uids) {
+		try {
+			return service.getApplications(uids);
+		} catch (RemoteException e) {
+			Log.e(TAG, "getApplications: RemoteException", e);
+			return new ArrayList<LocationPrivacyApplication>();
+		}
+	}
+
+	/**
+	 * Updates a LocationPrivacyApplication and its configuration
+	 * 
+	 * @param app
+	 *            LocationPrivacyApplication to be updated
+	 */
+	public void setApplication(LocationPrivacyApplication app) {
+		setApplications(Collections.singletonList(app));
+	}
+
+	/**
+	 * Updates several LocationPrivacyApplications in one call
+	 * 
+	 * @param apps
+	 *            LocationPrivacyApplications to be updated
+	 */
+	public void setApplications(List<LocationPrivacyApplication> apps) {
+		try {
+			service.setApplications(apps);
+		} catch (RemoteException e) {
+			Log.e(TAG, "setApplications: RemoteException", e);
+		}
+	}
+
+	/**
+	 * Removes apps/configuration that have been deinstalled
+	 */
+	public void removeOldApplications() {
+		try {
+			service.removeOldApplications();
+		} catch (RemoteException e) {
+			Log.e(TAG, "removeOldApplications: RemoteException", e);
+		}
+	}
+
+	/**
+	 * Returns the default obfuscation algorithm
+	 * 
+	 * @return AbstractLocationPrivacyAlgorithm select by user as default, null
+	 *         if the service cannot be reached
+	 */
+	public AbstractLocationPrivacyAlgorithm getDefaultAlgorithm() {
+		try {
+			return service.getDefaultAlgorithm();
+		} catch (RemoteException e) {
+			Log.e(TAG, "getDefaultAlgorithm: RemoteException", e);
+			return null;
+		}
+	}
+
+	/**
+	 * Updates default obfuscation algorithm
+	 * 
+	 * @param algorithmName
+	 *            name of default algorithm
+	 * @param config
+	 *            LocationPrivacyConfiguration of default algorithm
+	 */
+	public void setDefaultAlgorithm(String algorithmName,
+			LocationPrivacyConfiguration config) {
+		try {
+			service.setDefaultAlgorithm(LocationPrivacyManager.getAlgorithm(
+					algorithmName, config));
+		} catch (RemoteException e) {
+			Log.e(TAG, "setDefaultAlgorithm: RemoteException", e);
+		}
+	}
+
+	/**
+	 * Listener keeping the cached framework state current
+	 */
+	private class Listener extends LocationPrivacyListenerNative {
+
+		public void onStatusChanged(boolean on) {
+			status = on;
+		}
+
+		public void onApplicationsChanged(String[] uids) {
+			// applications are not cached by the client
+		}
+
+		public void onDefaultAlgorithmChanged(String name) {
+			// the default algorithm is not cached by the client
+		}
+	}
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2013 Distributed Computing & Security Group,
+ *                    Leibniz Universitaet Hannover, Germany
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package android.locationprivacy.control;
+
+import android.os.Binder;
+import android.os.IBinder;
+import android.os.Parcel;
+import android.os.RemoteException;
+
+/**
+ * Binder side of ILocationPrivacyListener. Clients extend this class to be
+ * notified by the location privacy service.
+ * 
+ * {@hide}
+ */
+public abstract class LocationPrivacyListenerNative extends Binder implements
+		ILocationPrivacyListener {
+
+	/**
+	 * Casts a Binder object into a listener interface, generating a proxy if
+	 * needed.
+	 */
+	public static ILocationPrivacyListener asInterface(IBinder obj) {
+		if (obj == null) {
+			return null;
+		}
+		ILocationPrivacyListener in = (ILocationPrivacyListener) obj
+				.queryLocalInterface(descriptor);
+		if (in != null) {
+			return in;
+		}
+		return new LocationPrivacyListenerProxy(obj);
+	}
+
+	/**
+	 * Creates new instance of LocationPrivacyListenerNative
+	 */
+	public LocationPrivacyListenerNative() {
+		attachInterface(this, descriptor);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see android.os.Binder#onTransact(int, android.os.Parcel,
+	 * android.os.Parcel, int)
+	 */
+	@Override
+	protected boolean onTransact(int code, Parcel data, Parcel reply,
+			int flags) throws RemoteException {
+		switch (code) {
+		case ON_STATUS_CHANGED_TRANSACTION: {
+			data.enforceInterface(descriptor);
+			onStatusChanged(data.readInt() != 0);
+			return true;
+		}
+		case ON_APPLICATIONS_CHANGED_TRANSACTION: {
+			data.enforceInterface(descriptor);
+			onApplicationsChanged(data.createStringArray());
+			return true;
+		}
+		case ON_DEFAULT_ALGORITHM_CHANGED_TRANSACTION: {
+			data.enforceInterface(descriptor);
+			onDefaultAlgorithmChanged(data.readString());
+			return true;
+		}
+		}
+		return super.onTransact(code, data, reply, flags);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see android.os.IInterface#asBinder()
+	 */
+	public IBinder asBinder() {
+		return this;
+	}
+}
+
+/**
+ * Proxy of a listener in another process. All calls are one-way.
+ */
+class LocationPrivacyListenerProxy implements ILocationPrivacyListener {
+
+	private final IBinder mRemote;
+
+	LocationPrivacyListenerProxy(IBinder remote) {
+		mRemote = remote;
+	}
+
+	public IBinder asBinder() {
+		return mRemote;
+	}
+
+	public void onStatusChanged(boolean on) throws RemoteException {
+		Parcel data = Parcel.obtain();
+		try {
+			data.writeInterfaceToken(descriptor);
+			data.writeInt(on ? 1 : 0);
+			mRemote.transact(ON_STATUS_CHANGED_TRANSACTION, data, null,
+					IBinder.FLAG_ONEWAY);
+		} finally {
+			data.recycle();
+		}
+	}
+
+	public void onApplicationsChanged(String[] uids) throws RemoteException {
+		Parcel data = Parcel.obtain();
+		try {
+			data.writeInterfaceToken(descriptor);
+			data.writeStringArray(uids);
+			mRemote.transact(ON_APPLICATIONS_CHANGED_TRANSACTION, data, null,
+					IBinder.FLAG_ONEWAY);
+		} finally {
+			data.recycle();
+		}
+	}
+
+	public void onDefaultAlgorithmChanged(String name) throws RemoteException {
+		Parcel data = Parcel.obtain();
+		try {
+			data.writeInterfaceToken(descriptor);
+			data.writeString(name);
+			mRemote.transact(ON_DEFAULT_ALGORITHM_CHANGED_TRANSACTION, data,
+					null, IBinder.FLAG_ONEWAY);
+		} finally {
+			data.recycle();
+		}
+	}
+}
@@ -17,6 +17,7 @@
 
 package android.locationprivacy.control;
 
+import java.io.PrintWriter;
 import java.math.BigInteger;
 import java.security.SecureRandom;
 import java.util.ArrayList;
@@ -29,24 +30,18 @@ import java.util.TreeSet;
 
 import android.content.ContentValues;
 import android.content.Context;
-import android.content.Intent;
 import android.content.SharedPreferences;
 import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageManager;
 import android.content.pm.PackageManager.NameNotFoundException;
 import android.database.Cursor;
 import android.location.Location;
-import android.locationprivacy.algorithm.Deactivate;
-import android.locationprivacy.algorithm.FixedPosition;
-import android.locationprivacy.algorithm.GeoReverseGeo;
-import android.locationprivacy.algorithm.Radius;
-import android.locationprivacy.algorithm.RadiusDistance;
-import android.locationprivacy.algorithm.TestAlgorithm;
-import android.locationprivacy.algorithm.Webservice;
+import android.locationprivacy.control.PolicyCache.PolicySnapshot;
 import android.locationprivacy.model.AbstractLocationPrivacyAlgorithm;
 import android.locationprivacy.model.Coordinate;
 import android.locationprivacy.model.LocationPrivacyApplication;
 import android.locationprivacy.model.LocationPrivacyConfiguration;
+import android.locationprivacy.util.Metrics;
 import android.preference.PreferenceManager;
 import android.util.Log;
 
@@ -54,33 +49,48 @@ import android.util.Log;
  * The LocationPrivacyManager abstracts access to the location privacy framework
  * and configuration. It provides all methods for configuration and usage.
  * 
+ * The framework state and the cached applications are published by a
+ * PolicyCache as an immutable PolicySnapshot. Locations are obfuscated on the
+ * handler thread and on binder threads while the policy is changed through the
+ * location privacy service, so readers take one snapshot per call instead of locking, and every
+ * change builds a new snapshot and swaps it in. A change only drops the cached
+ * applications it affects.
+ * 
+ * There is one LocationPrivacyManager per process, shared by all callers. It
+ * is obtained by acquire and handed back by release; the database is closed
+ * when the last caller has released it.
+ * 
  * @author Christian Kater
  * 
  */
 public class LocationPrivacyManager {
 	/**
-	 * Cached LocationPrivacyApplications. Caching data to minimize access to database.
-	 */
-	private ArrayList<LocationPrivacyApplication> applications;
-	/**
-	 * Is location privacy framework enabled?
+	 * Current policy: is location privacy framework enabled and cached
+	 * LocationPrivacyApplications. Caching data to minimize access to database.
 	 */
-	private boolean status;
+	private final PolicyCache policy;
 
 	/**
 	 * Creates new Instance of obfuscation algorithm with given name
 	 */
 	public static AbstractLocationPrivacyAlgorithm getAlgorithm(String name) {
-		return algorithms.get(name).newInstance();
+		return AlgorithmRegistry.getInstance().newInstance(name);
+	}
+
+	/**
+	 * Creates new Instance of obfuscation algorithm with given name and
+	 * configuration, without building its default configuration
+	 */
+	public static AbstractLocationPrivacyAlgorithm getAlgorithm(String name,
+			LocationPrivacyConfiguration configuration) {
+		return AlgorithmRegistry.getInstance().newInstance(name, configuration);
 	}
 
 	/**
 	 * Returns a list of available obfuscation algorihms
 	 */
 	public static List<String> getAllAlgorithm() {
-		ArrayList<String> sortedKeys = new ArrayList<String>(
-				algorithms.keySet());
-		Collections.sort(sortedKeys);
+		List<String> sortedKeys = AlgorithmRegistry.getInstance().getNames();
 		sortedKeys.add(0, "default");
 		return sortedKeys;
 	}
@@ -90,8 +100,46 @@ public class LocationPrivacyManager {
 
 	private static CryptoDatabase database;
 
-	/** All location obfuscation algorithms */
-	private static HashMap<String, AbstractLocationPrivacyAlgorithm> algorithms;
+	/** Instance shared by all callers in this process */
+	private static LocationPrivacyManager instance;
+
+	/** Number of callers that have acquired the shared instance */
+	private static int references;
+
+	/**
+	 * Returns the LocationPrivacyManager of this process, creating it on first
+	 * use. Every call has to be paired with a call of release.
+	 * 
+	 * @param context
+	 *            Context the location privacy framework is running in
+	 * @return shared LocationPrivacyManager
+	 */
+	public static synchronized LocationPrivacyManager acquire(Context context) {
+		if (instance == null) {
+			instance = new LocationPrivacyManager(context);
+		}
+		references++;
+		return instance;
+	}
+
+	/**
+	 * Hands back the LocationPrivacyManager obtained by acquire. The manager
+	 * must not be used afterwards.
+	 */
+	public void release() {
+		synchronized (LocationPrivacyManager.class) {
+			if (references == 0 || this != instance) {
+				throw new IllegalStateException(
+						"LocationPrivacyManager released more often than acquired");
+			}
+			references--;
+			if (references == 0) {
+				instance = null;
+				database.close();
+				database = null;
+			}
+		}
+	}
 
 	/**
 	 * Creates new instance of LocationPrivacyManager
@@ -99,7 +147,7 @@ public class LocationPrivacyManager {
 	 * @param oContext
 	 *            Context the location privacy framework is running in
 	 */
-	public LocationPrivacyManager(Context oContext) {
+	private LocationPrivacyManager(Context oContext) {
 		try {
 			this.context = oContext.createPackageContext(
 					"com.android.settings", Context.CONTEXT_INCLUDE_CODE);
@@ -129,18 +177,7 @@ public class LocationPrivacyManager {
 		if(database == null){
 		      database = new CryptoDatabase(password, salt, iterationCount, context);
 		}
-		if (algorithms == null) {
-			initialize();
-		}
-		status = getStatus();
-		applications = new ArrayList<LocationPrivacyApplication>();
-	}
-
-	/**
-	 * Adds new location obfuscation algorithm
-	 */
-	private void addAlgorithm(AbstractLocationPrivacyAlgorithm algorithm) {
-		algorithms.put(algorithm.getName(), algorithm);
+		policy = new PolicyCache(getStatus());
 	}
 
 	/**
@@ -180,26 +217,22 @@ public class LocationPrivacyManager {
 	public Location obfuscateLocation(Location location, String uid, String name) {
 		if (location != null) {
 			Location locTemp = new Location(location);
-			if (status) {
-				LocationPrivacyApplication app = null;
-				for (LocationPrivacyApplication application : applications) {
-					if (application.getUid().equals(uid)) {
-						app = application;
-						break;
-					}
-				}
+			PolicySnapshot snapshot = policy.get();
+			if (snapshot.isEnabled()) {
+				LocationPrivacyApplication app = snapshot.getApplication(uid);
 				if (app == null) {
 					app = getApplication(uid);
 					if (app == null) {
 						app = addApplication(uid, name);
 						Log.i("LPA", "added " + uid);
 					}
-					applications.add(app);
+					policy.cache(snapshot, app);
 				}
 				if (app.isEnabled()) {
 					AbstractLocationPrivacyAlgorithm algorithm = app
 							.getAlgorithm();
 					algorithm.setContext(context);
+					algorithm.setUid(uid);
 					locTemp = algorithm.obfuscate(location);
 				}
 			}
@@ -236,8 +269,7 @@ public class LocationPrivacyManager {
 				app = new LocationPrivacyApplication(uid, name, status,
 						algorithm, true);
 			} else {
-				algorithm = getAlgorithm(algorithmTemp);
-				algorithm.setConfiguration(getConfiguration(uid));
+				algorithm = getAlgorithm(algorithmTemp, getConfiguration(uid));
 				app = new LocationPrivacyApplication(uid, name, status,
 						algorithm, false);
 			}
@@ -268,8 +300,8 @@ public class LocationPrivacyManager {
 					app = new LocationPrivacyApplication(uid, name, status,
 							algorithm, true);
 				} else {
-					algorithm = getAlgorithm(algorithmTemp);
-					algorithm.setConfiguration(getConfiguration(uid));
+					algorithm = getAlgorithm(algorithmTemp,
+							getConfiguration(uid));
 					app = new LocationPrivacyApplication(uid, name, status,
 							algorithm, false);
 				}
@@ -380,9 +412,8 @@ public class LocationPrivacyManager {
 				"configkey = ?", new String[] { "defaultAlgorithm" }, null,
 				null, null);
 		cDefaultAlgorithm.moveToFirst();
-		AbstractLocationPrivacyAlgorithm defaultAlgorithm = getAlgorithm(cDefaultAlgorithm
-				.getString(1));
-		defaultAlgorithm.setConfiguration(getConfiguration("defaultApp"));
+		AbstractLocationPrivacyAlgorithm defaultAlgorithm = getAlgorithm(
+				cDefaultAlgorithm.getString(1), getConfiguration("defaultApp"));
 		cDefaultAlgorithm.close();
 		return defaultAlgorithm;
 	}
@@ -402,27 +433,26 @@ public class LocationPrivacyManager {
 	}
 
 	/**
-	 * Adds all obfuscation algorithms to the framework
+	 * Returns location privacy framework state (enaled/disabled) as cached by
+	 * this manager, without accessing the database
+	 * 
+	 * @return state of location privacy framework
 	 */
-	private void initialize() {
-		algorithms = new HashMap<String, AbstractLocationPrivacyAlgorithm>();
-		addAlgorithm(new Deactivate());
-		addAlgorithm(new FixedPosition());
-		addAlgorithm(new Radius());
-		addAlgorithm(new RadiusDistance());
-		addAlgorithm(new GeoReverseGeo());
-		addAlgorithm(new Webservice());
+	public boolean isEnabled() {
+		return policy.get().isEnabled();
 	}
 
 	/**
      * Removes apps/configuration that have been deinstalled
+	 * 
+	 * @return uids of the removed apps
 	 */
-	public void removeOldApplications() {
+	public List<String> removeOldApplications() {
 
 		List<ApplicationInfo> packages = context.getPackageManager()
 				.getInstalledApplications(0);
 		List<LocationPrivacyApplication> apps = getApplications();
-		List<LocationPrivacyApplication> removedApps = new ArrayList<LocationPrivacyApplication>();
+		List<String> removedUids = new ArrayList<String>();
 		for (LocationPrivacyApplication app : apps) {
 			boolean remove = true;
 			for (ApplicationInfo packageInfo : packages) {
@@ -432,13 +462,12 @@ public class LocationPrivacyManager {
 				}
 			}
 			if (remove) {
-				removedApps.add(app);
+				removedUids.add(app.getUid());
 			}
 		}
 		database.beginTransaction();
 		try {
-			for (LocationPrivacyApplication app : removedApps) {
-				String uid = app.getUid();
+			for (String uid : removedUids) {
 				database.delete("INTEGERVALUES", "app = ?",
 						new String[] { uid });
 				database.delete("DOUBLEVALUES", "app = ?", new String[] { uid });
@@ -455,7 +484,8 @@ public class LocationPrivacyManager {
 		} finally {
 			database.endTransaction();
 		}
-		dataChanged();
+		policy.invalidate(null, removedUids, false);
+		return removedUids;
 	}
 
 	/**
@@ -579,7 +609,11 @@ public class LocationPrivacyManager {
 				database.endTransaction();
 			}
 		}
-		dataChanged();
+		if (uid.equals("defaultApp")) {
+			policy.invalidate(null, Collections.<String> emptyList(), true);
+		} else {
+			policy.invalidate(null, Collections.singletonList(uid), false);
+		}
 	}
 
 	/**
@@ -598,7 +632,6 @@ public class LocationPrivacyManager {
 				new String[] { "defaultAlgorithm" });
 		setConfiguration("defaultApp", config, false);
 		Log.i("LPManager", "Framework defaultAlgorithm = " + algorithmName);
-		dataChanged();
 	}
 
 	/**
@@ -612,23 +645,30 @@ public class LocationPrivacyManager {
 		values.put("value", "" + on);
 		database.update("GENRALCONFIGURATION", values, "configkey = ?",
 				new String[] { "status" });
-		dataChanged();
+		policy.invalidate(on, Collections.<String> emptyList(), false);
 		Log.i("LPManager", "Framework status = " + on);
 	}
 
-    /**
-     * Send broadcast on data change for updating configurations
-     */
-	private void dataChanged() {
-		context.sendBroadcast(new Intent(
-				"com.android.server.LocationManagerService.locationprivacy"));
-	}
-
 	/**
 	 * Cleans cached data of LocationPrivacyApplication re-reads it from database
 	 */
 	public void updateData() {
-		applications = new ArrayList<LocationPrivacyApplication>();
-		status = getStatus();
+		policy.invalidate(getStatus(), null, false);
+	}
+
+	/**
+	 * Prints the state of the framework and the metrics of its components,
+	 * used by dumpsys location
+	 * 
+	 * @param pw
+	 *            writer
+	 * @param prefix
+	 *            prefix of each line
+	 */
+	public void dump(PrintWriter pw, String prefix) {
+		PolicySnapshot snapshot = policy.get();
+		pw.println(prefix + "status=" + snapshot.isEnabled()
+				+ " applications=" + snapshot.getApplicationCount());
+		Metrics.dumpAll(pw, prefix);
 	}
 }
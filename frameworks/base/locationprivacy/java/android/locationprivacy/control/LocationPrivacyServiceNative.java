@@ -0,0 +1,313 @@
+/*
+ * Copyright (C) 2013 Distributed Computing & Security Group,
+ *                    Leibniz Universitaet Hannover, Germany
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package android.locationprivacy.control;
+
+import java.util.List;
+
+import android.locationprivacy.model.AbstractLocationPrivacyAlgorithm;
+import android.locationprivacy.model.LocationPrivacyApplication;
+import android.os.Binder;
+import android.os.IBinder;
+import android.os.Parcel;
+import android.os.RemoteException;
+import android.os.ServiceManager;
+
+/**
+ * Binder side of ILocationPrivacyService. The service in system_server
+ * extends this class; clients obtain a proxy by asInterface or getDefault.
+ * 
+ * {@hide}
+ */
+public abstract class LocationPrivacyServiceNative extends Binder implements
+		ILocationPrivacyService {
+
+	/** Proxy of the service registered at the ServiceManager */
+	private static ILocationPrivacyService gDefault;
+
+	/**
+	 * Casts a Binder object into a location privacy service interface,
+	 * generating a proxy if needed.
+	 */
+	public static ILocationPrivacyService asInterface(IBinder obj) {
+		if (obj == null) {
+			return null;
+		}
+		ILocationPrivacyService in = (ILocationPrivacyService) obj
+				.queryLocalInterface(descriptor);
+		if (in != null) {
+			return in;
+		}
+		return new LocationPrivacyServiceProxy(obj);
+	}
+
+	/**
+	 * Returns the location privacy service of the system
+	 * 
+	 * @return service, null if it has not been published yet
+	 */
+	public static synchronized ILocationPrivacyService getDefault() {
+		if (gDefault == null) {
+			gDefault = asInterface(ServiceManager.getService(SERVICE_NAME));
+		}
+		return gDefault;
+	}
+
+	/**
+	 * Creates new instance of LocationPrivacyServiceNative
+	 */
+	public LocationPrivacyServiceNative() {
+		attachInterface(this, descriptor);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see android.os.Binder#onTransact(int, android.os.Parcel,
+	 * android.os.Parcel, int)
+	 */
+	@Override
+	protected boolean onTransact(int code, Parcel data, Parcel reply,
+			int flags) throws RemoteException {
+		switch (code) {
+		case GET_STATUS_TRANSACTION: {
+			data.enforceInterface(descriptor);
+			boolean on = getStatus();
+			reply.writeNoException();
+			reply.writeInt(on ? 1 : 0);
+			return true;
+		}
+		case SET_STATUS_TRANSACTION: {
+			data.enforceInterface(descriptor);
+			setStatus(data.readInt() != 0);
+			reply.writeNoException();
+			return true;
+		}
+		case GET_APPLICATIONS_TRANSACTION: {
+			data.enforceInterface(descriptor);
+			List<LocationPrivacyApplication> apps = getApplications(data
+					.createStringArray());
+			reply.writeNoException();
+			reply.writeTypedList(apps);
+			return true;
+		}
+		case SET_APPLICATIONS_TRANSACTION: {
+			data.enforceInterface(descriptor);
+			setApplications(data
+					.createTypedArrayList(LocationPrivacyApplication.CREATOR));
+			reply.writeNoException();
+			return true;
+		}
+		case REMOVE_OLD_APPLICATIONS_TRANSACTION: {
+			data.enforceInterface(descriptor);
+			removeOldApplications();
+			reply.writeNoException();
+			return true;
+		}
+		case GET_DEFAULT_ALGORITHM_TRANSACTION: {
+			data.enforceInterface(descriptor);
+			AbstractLocationPrivacyAlgorithm algorithm = getDefaultAlgorithm();
+			reply.writeNoException();
+			algorithm.writeToParcel(reply, 0);
+			return true;
+		}
+		case SET_DEFAULT_ALGORITHM_TRANSACTION: {
+			data.enforceInterface(descriptor);
+			setDefaultAlgorithm(AbstractLocationPrivacyAlgorithm.CREATOR
+					.createFromParcel(data));
+			reply.writeNoException();
+			return true;
+		}
+		case REGISTER_LISTENER_TRANSACTION: {
+			data.enforceInterface(descriptor);
+			registerListener(LocationPrivacyListenerNative.asInterface(data
+					.readStrongBinder()));
+			reply.writeNoException();
+			return true;
+		}
+		case UNREGISTER_LISTENER_TRANSACTION: {
+			data.enforceInterface(descriptor);
+			unregisterListener(LocationPrivacyListenerNative.asInterface(data
+					.readStrongBinder()));
+			reply.writeNoException();
+			return true;
+		}
+		}
+		return super.onTransact(code, data, reply, flags);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see android.os.IInterface#asBinder()
+	 */
+	public IBinder asBinder() {
+		return this;
+	}
+}
+
+/**
+ * Proxy of a location privacy service in another process
+ */
+class LocationPrivacyServiceProxy implements ILocationPrivacyService {
+
+	private final IBinder mRemote;
+
+	LocationPrivacyServiceProxy(IBinder remote) {
+		mRemote = remote;
+	}
+
+	public IBinder asBinder() {
+		return mRemote;
+	}
+
+	public boolean getStatus() throws RemoteException {
+		Parcel data = Parcel.obtain();
+		Parcel reply = Parcel.obtain();
+		try {
+			data.writeInterfaceToken(descriptor);
+			mRemote.transact(GET_STATUS_TRANSACTION, data, reply, 0);
+			reply.readException();
+			return reply.readInt() != 0;
+		} finally {
+			data.recycle();
+			reply.recycle();
+		}
+	}
+
+	public void setStatus(boolean on) throws RemoteException {
+		Parcel data = Parcel.obtain();
+		Parcel reply = Parcel.obtain();
+		try {
+			data.writeInterfaceToken(descriptor);
+			data.writeInt(on ? 1 : 0);
+			mRemote.transact(SET_STATUS_TRANSACTION, data, reply, 0);
+			reply.readException();
+		} finally {
+			data.recycle();
+			reply.recycle();
+		}
+	}
+
+	public List<LocationPrivacyApplication> getApplications(String[] uids)
+			throws RemoteException {
+		Parcel data = Parcel.obtain();
+		Parcel reply = Parcel.obtain();
+		try {
+			data.writeInterfaceToken(descriptor);
+			data.writeStringArray(uids);
+			mRemote.transact(GET_APPLICATIONS_TRANSACTION, data, reply, 0);
+			reply.readException();
+			return reply
+					.createTypedArrayList(LocationPrivacyApplication.CREATOR);
+		} finally {
+			data.recycle();
+			reply.recycle();
+		}
+	}
+
+	public void setApplications(List<LocationPrivacyApplication> apps)
+			throws RemoteException {
+		Parcel data = Parcel.obtain();
+		Parcel reply = Parcel.obtain();
+		try {
+			data.writeInterfaceToken(descriptor);
+			data.writeTypedList(apps);
+			mRemote.transact(SET_APPLICATIONS_TRANSACTION, data, reply, 0);
+			reply.readException();
+		} finally {
+			data.recycle();
+			reply.recycle();
+		}
+	}
+
+	public void removeOldApplications() throws RemoteException {
+		Parcel data = Parcel.obtain();
+		Parcel reply = Parcel.obtain();
+		try {
+			data.writeInterfaceToken(descriptor);
+			mRemote.transact(REMOVE_OLD_APPLICATIONS_TRANSACTION, data, reply,
+					0);
+			reply.readException();
+		} finally {
+			data.recycle();
+			reply.recycle();
+		}
+	}
+
+	public AbstractLocationPrivacyAlgorithm getDefaultAlgorithm()
+			throws RemoteException {
+		Parcel data = Parcel.obtain();
+		Parcel reply = Parcel.obtain();
+		try {
+			data.writeInterfaceToken(descriptor);
+			mRemote.transact(GET_DEFAULT_ALGORITHM_TRANSACTION, data, reply, 0);
+			reply.readException();
+			return AbstractLocationPrivacyAlgorithm.CREATOR
+					.createFromParcel(reply);
+		} finally {
+			data.recycle();
+			reply.recycle();
+		}
+	}
+
+	public void setDefaultAlgorithm(AbstractLocationPrivacyAlgorithm algorithm)
+			throws RemoteException {
+		Parcel data = Parcel.obtain();
+		Parcel reply = Parcel.obtain();
+		try {
+			data.writeInterfaceToken(descriptor);
+			algorithm.writeToParcel(data, 0);
+			mRemote.transact(SET_DEFAULT_ALGORITHM_TRANSACTION, data, reply, 0);
+			reply.readException();
+		} finally {
+			data.recycle();
+			reply.recycle();
+		}
+	}
+
+	public void registerListener(ILocationPrivacyListener listener)
+			throws RemoteException {
+		Parcel data = Parcel.obtain();
+		Parcel reply = Parcel.obtain();
+		try {
+			data.writeInterfaceToken(descriptor);
+			data.writeStrongBinder(listener != null ? listener.asBinder() : null);
+			mRemote.transact(REGISTER_LISTENER_TRANSACTION, data, reply, 0);
+			reply.readException();
+		} finally {
+			data.recycle();
+			reply.recycle();
+		}
+	}
+
+	public void unregisterListener(ILocationPrivacyListener listener)
+			throws RemoteException {
+		Parcel data = Parcel.obtain();
+		Parcel reply = Parcel.obtain();
+		try {
+			data.writeInterfaceToken(descriptor);
+			data.writeStrongBinder(listener != null ? listener.asBinder() : null);
+			mRemote.transact(UNREGISTER_LISTENER_TRANSACTION, data, reply, 0);
+			reply.readException();
+		} finally {
+			data.recycle();
+			reply.recycle();
+		}
+	}
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2013 Distributed Computing & Security Group,
+ *                    Leibniz Universitaet Hannover, Germany
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.locationprivacy.control;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import android.locationprivacy.model.LocationPrivacyApplication;
+
+/**
+ * PolicyCache holds the policy of the LocationPrivacyManager: is location
+ * privacy framework enabled and cached LocationPrivacyApplications, caching
+ * data to minimize access to database. The policy is an immutable
+ * PolicySnapshot published by a single atomic reference. Readers take one
+ * snapshot and never lock, every change builds a new snapshot and swaps it in.
+ */
+public class PolicyCache {
+
+	/** Current policy */
+	private final AtomicReference<PolicySnapshot> policy = new AtomicReference<PolicySnapshot>();
+
+	/**
+	 * Creates new instance of PolicyCache without cached applications
+	 *
+	 * @param status
+	 *            framework state
+	 */
+	public PolicyCache(boolean status) {
+		policy.set(new PolicySnapshot(status, 0));
+	}
+
+	/**
+	 * Returns the current policy
+	 */
+	public PolicySnapshot get() {
+		return policy.get();
+	}
+
+	/**
+	 * Adds an application read from the database to the cached applications.
+	 * It is dropped if invalidate has replaced the snapshot it has been read
+	 * for, as it may be outdated.
+	 *
+	 * @param snapshot
+	 *            snapshot the application was missing in
+	 * @param app
+	 *            application to be cached
+	 */
+	public void cache(PolicySnapshot snapshot, LocationPrivacyApplication app) {
+		while (true) {
+			PolicySnapshot current = policy.get();
+			if (current.generation != snapshot.generation
+					|| current.getApplication(app.getUid()) != null) {
+				return;
+			}
+			if (policy.compareAndSet(current, current.with(app))) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Replaces the policy by a snapshot without the cached applications
+	 * affected by a change
+	 *
+	 * @param status
+	 *            new framework state, null to keep the current one
+	 * @param uids
+	 *            uids of the changed apps, null if all apps have changed
+	 * @param defaultAlgorithm
+	 *            has the default algorithm changed?
+	 */
+	public void invalidate(Boolean status, Collection<String> uids,
+			boolean defaultAlgorithm) {
+		PolicySnapshot current;
+		PolicySnapshot next;
+		do {
+			current = policy.get();
+			next = current.without(status == null ? current.status : status,
+					uids, defaultAlgorithm);
+		} while (!policy.compareAndSet(current, next));
+	}
+
+	/**
+	 * PolicySnapshot stores the framework state and the cached applications
+	 * by uid. Snapshots are never modified after construction, so they can be
+	 * shared between threads; changes create a new snapshot.
+	 */
+	public static final class PolicySnapshot {
+		/** Is location privacy framework enabled? */
+		private final boolean status;
+		/** Cached applications by uid */
+		private final Map<String, LocationPrivacyApplication> applications;
+		/** Number of changes the snapshot is based on */
+		private final int generation;
+
+		/**
+		 * Creates new instance of PolicySnapshot without cached applications
+		 */
+		private PolicySnapshot(boolean status, int generation) {
+			this(status, new HashMap<String, LocationPrivacyApplication>(),
+					generation);
+		}
+
+		private PolicySnapshot(boolean status,
+				Map<String, LocationPrivacyApplication> applications,
+				int generation) {
+			this.status = status;
+			this.applications = applications;
+			this.generation = generation;
+		}
+
+		/**
+		 * Returns if location privacy framework is enabled
+		 */
+		public boolean isEnabled() {
+			return status;
+		}
+
+		/**
+		 * Returns the number of changes the snapshot is based on
+		 */
+		public int getGeneration() {
+			return generation;
+		}
+
+		/**
+		 * Returns the number of cached applications
+		 */
+		public int getApplicationCount() {
+			return applications.size();
+		}
+
+		/**
+		 * Returns the cached application of an uid
+		 *
+		 * @return application, null if it is not cached
+		 */
+		public LocationPrivacyApplication getApplication(String uid) {
+			return applications.get(uid);
+		}
+
+		/**
+		 * Returns a copy of this snapshot that additionally caches an
+		 * application
+		 */
+		private PolicySnapshot with(LocationPrivacyApplication app) {
+			HashMap<String, LocationPrivacyApplication> copy = new HashMap<String, LocationPrivacyApplication>(
+					applications);
+			copy.put(app.getUid(), app);
+			return new PolicySnapshot(status, copy, generation);
+		}
+
+		/**
+		 * Returns the next snapshot, which no longer caches the changed
+		 * applications
+		 *
+		 * @param status
+		 *            framework state of the next snapshot
+		 * @param uids
+		 *            uids of the changed apps, null to drop all
+		 * @param defaultAlgorithm
+		 *            drop the apps using the default algorithm?
+		 */
+		private PolicySnapshot without(boolean status, Collection<String> uids,
+				boolean defaultAlgorithm) {
+			if (uids == null) {
+				return new PolicySnapshot(status, generation + 1);
+			}
+			HashMap<String, LocationPrivacyApplication> copy = new HashMap<String, LocationPrivacyApplication>(
+					applications);
+			copy.keySet().removeAll(uids);
+			if (defaultAlgorithm) {
+				for (LocationPrivacyApplication app : applications.values()) {
+					if (app.isDefaultAlgorithm()) {
+						copy.remove(app.getUid());
+					}
+				}
+			}
+			return new PolicySnapshot(status, copy, generation + 1);
+		}
+	}
+}
@@ -19,7 +19,7 @@ package android.locationprivacy.model;
 
 import android.content.Context;
 import android.location.Location;
-import android.locationprivacy.control.LocationPrivacyManager;
+import android.locationprivacy.control.AlgorithmRegistry;
 import android.os.Parcel;
 import android.os.Parcelable;
 
@@ -43,7 +43,7 @@ public abstract class AbstractLocationPrivacyAlgorithm implements Parcelable {
 		@Override
 		public AbstractLocationPrivacyAlgorithm createFromParcel(Parcel source) {
 			String name = source.readString();
-			return LocationPrivacyManager.getAlgorithm(name)
+			return AlgorithmRegistry.getInstance().getPrototype(name)
 					.instanceFromParcel(source);
 		}
 	};
@@ -57,6 +57,9 @@ public abstract class AbstractLocationPrivacyAlgorithm implements Parcelable {
 	/** Context the object is running in */
 	protected Context context;
 
+	/** uid of the app the algorithm obfuscates locations for */
+	protected String uid;
+
 	/** Tag used in Logs */
 	protected final String TAG;
 
@@ -70,7 +73,25 @@ public abstract class AbstractLocationPrivacyAlgorithm implements Parcelable {
 	protected AbstractLocationPrivacyAlgorithm(String name) {
 		this.name = name;
 		this.TAG = "LP_" + name;
-		setConfiguration(getDefaultConfiguration());
+		LocationPrivacyConfiguration defaults = getDefaultConfiguration();
+		initializeConfiguration(defaults);
+		setConfiguration(defaults);
+	}
+
+	/**
+	 * Creates new instance of AbstractLocationPrivacyAlgorithm without
+	 * building the default configuration
+	 * 
+	 * @param name
+	 *            Name of Class in the location privacy framework
+	 * @param configuration
+	 *            configuration of the algorithm
+	 */
+	protected AbstractLocationPrivacyAlgorithm(String name,
+			LocationPrivacyConfiguration configuration) {
+		this.name = name;
+		this.TAG = "LP_" + name;
+		setConfiguration(configuration);
 	}
 
 	/**
@@ -159,6 +180,16 @@ public abstract class AbstractLocationPrivacyAlgorithm implements Parcelable {
 		this.context = context;
 	}
 
+	/**
+	 * Sets the uid of the app the algorithm obfuscates locations for.
+	 * 
+	 * @param uid
+	 *            uid app is running as
+	 */
+	public void setUid(String uid) {
+		this.uid = uid;
+	}
+
 	/**
 	 * Returns an instance of the class
 	 * 
@@ -166,6 +197,24 @@ public abstract class AbstractLocationPrivacyAlgorithm implements Parcelable {
 	 */
 	public abstract AbstractLocationPrivacyAlgorithm newInstance();
 
+	/**
+	 * Returns an instance of the class with the given configuration. This
+	 * default implementation builds and then replaces the default
+	 * configuration. Algorithms should override it with a constructor passing
+	 * the configuration to AbstractLocationPrivacyAlgorithm(String,
+	 * LocationPrivacyConfiguration).
+	 * 
+	 * @param configuration
+	 *            configuration of the new instance
+	 * @return Instance of AbstractLocationPrivacyAlgorithm
+	 */
+	public AbstractLocationPrivacyAlgorithm newInstance(
+			LocationPrivacyConfiguration configuration) {
+		AbstractLocationPrivacyAlgorithm algorithm = newInstance();
+		algorithm.setConfiguration(configuration);
+		return algorithm;
+	}
+
 	/**
      * Returns the default configuration of the algorithm. It is assigned to
      * the AbstractLocationPrivacyAlgorithm on instantiation. These values
@@ -175,6 +224,22 @@ public abstract class AbstractLocationPrivacyAlgorithm implements Parcelable {
 	 */
 	public abstract LocationPrivacyConfiguration getDefaultConfiguration();
 
+	/**
+	 * Sets the values of a new configuration that must not be shared between
+	 * configurations, e.g. secrets. The default configuration is built once
+	 * and copied for every new configuration, so such values must not be
+	 * generated in getDefaultConfiguration(). This method is called for each
+	 * copy handed out by the AlgorithmRegistry and for the default
+	 * configuration assigned on instantiation. The default implementation
+	 * does nothing.
+	 * 
+	 * @param configuration
+	 *            new configuration, a copy of the default configuration
+	 */
+	public void initializeConfiguration(
+			LocationPrivacyConfiguration configuration) {
+	}
+
 	/**
 	 * obfuscates the original location
 	 * 
@@ -184,6 +249,50 @@ public abstract class AbstractLocationPrivacyAlgorithm implements Parcelable {
 	 */
 	public abstract Location obfuscate(Location location);
 
+	/**
+	 * Obfuscates a batch of locations given as parallel arrays, e.g. a
+	 * buffered or replayed trace. The entries from offset to offset + count - 1
+	 * are obfuscated in place. If a location is suppressed (obfuscate(Location)
+	 * would return null), its latitude and longitude are set to Double.NaN.
+	 *
+	 * This default implementation wraps every entry into a Location object and
+	 * calls obfuscate(Location). Algorithms should override it with a loop
+	 * working directly on the arrays.
+	 *
+	 * @param latitudes
+	 *            latitudes of the original locations
+	 * @param longitudes
+	 *            longitudes of the original locations
+	 * @param altitudes
+	 *            altitudes of the original locations
+	 * @param times
+	 *            UTC times of the original locations in milliseconds
+	 * @param offset
+	 *            index of the first location to obfuscate
+	 * @param count
+	 *            number of locations to obfuscate
+	 */
+	public void obfuscate(double[] latitudes, double[] longitudes,
+			double[] altitudes, long[] times, int offset, int count) {
+		for (int i = offset; i < offset + count; i++) {
+			Location location = new Location("GPS");
+			location.setLatitude(latitudes[i]);
+			location.setLongitude(longitudes[i]);
+			location.setAltitude(altitudes[i]);
+			location.setTime(times[i]);
+			Location obfuscated = obfuscate(location);
+			if (obfuscated == null) {
+				latitudes[i] = Double.NaN;
+				longitudes[i] = Double.NaN;
+			} else {
+				latitudes[i] = obfuscated.getLatitude();
+				longitudes[i] = obfuscated.getLongitude();
+				altitudes[i] = obfuscated.getAltitude();
+				times[i] = obfuscated.getTime();
+			}
+		}
+	}
+
 	/**
 	 * Returns an instance of AbstractLocationPrivacyAlgorithm
 	 * 
@@ -92,6 +92,35 @@ public class LocationPrivacyConfiguration implements Parcelable {
 		this.booleanValues = booleanValues;
 	}
 
+	/**
+	 * Creates new instance of LocationPrivacyConfiguration as copy of another
+	 * configuration. The maps, enum lists and coordinates are copied, so
+	 * changes to the copy do not affect the original.
+	 * 
+	 * @param other configuration to copy
+	 */
+	public LocationPrivacyConfiguration(LocationPrivacyConfiguration other) {
+		intValues = new HashMap<String, Integer>(other.intValues);
+		doubleValues = new HashMap<String, Double>(other.doubleValues);
+		stringValues = new HashMap<String, String>(other.stringValues);
+		enumValues = new HashMap<String, ArrayList<String>>();
+		for (Map.Entry<String, ArrayList<String>> entry : other.enumValues
+				.entrySet()) {
+			enumValues.put(entry.getKey(),
+					new ArrayList<String>(entry.getValue()));
+		}
+		enumChoosen = new HashMap<String, String>(other.enumChoosen);
+		coordinateValues = new HashMap<String, Coordinate>();
+		for (Map.Entry<String, Coordinate> entry : other.coordinateValues
+				.entrySet()) {
+			Coordinate coordinate = entry.getValue();
+			coordinateValues.put(entry.getKey(), new Coordinate(
+					coordinate.getLongitude(), coordinate.getLatitude(),
+					coordinate.getAltitude()));
+		}
+		booleanValues = new HashMap<String, Boolean>(other.booleanValues);
+	}
+
 	/**
 	 * Creates new instance of LocationPrivacyConfiguration
      *
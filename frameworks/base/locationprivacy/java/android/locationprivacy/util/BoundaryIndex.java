@@ -0,0 +1,431 @@
+/*
+ * Copyright (C) 2013 Distributed Computing & Security Group,
+ *                    Leibniz Universitaet Hannover, Germany
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.locationprivacy.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+
+/**
+ * BoundaryIndex provides read access to administrative boundaries, e.g.
+ * postal code regions and municipalities, stored in a binary file. Each
+ * region has a level as used by Gazetteer, a name, a polygon of one or more
+ * rings and a representative point, which lies inside the polygon. The file
+ * is memory-mapped, so even country-scale boundaries do not use heap memory.
+ *
+ * The bounding boxes of the regions are indexed by a packed R-tree: the
+ * boxes of the regions form the lowest level of the tree, each entry of a
+ * higher level covers up to NODE_SIZE consecutive entries of the level
+ * below. A region contains a point if a ray from the point crosses its rings
+ * an odd number of times, so holes and regions of several parts need no
+ * special treatment.
+ *
+ * Polygons are simplified by the builder, so neighboring regions may leave
+ * small gaps. A point outside of all regions is therefore assigned to the
+ * region of the level with the nearest border, if that border is within the
+ * tolerance of the simplification.
+ *
+ * File format (all values are big endian 32 bit integers):
+ * <pre>
+ * magic "LPBD", version, region count, tree entry count,
+ * node size, tolerance (1e-7 degrees), tree height, offset of tree,
+ * offset of regions, offset of rings, offset of vertices, offset of names,
+ * for each tree level (MAX_HEIGHT): end of its entries,
+ * tree entries: south, west, north, east (1e-7 degrees), region for the
+ * lowest level, first child entry for all others,
+ * regions: south, west, north, east, latitude and longitude of the
+ * representative point (1e-7 degrees), level, offset of name, first ring,
+ * ring count,
+ * rings: first vertex, followed by the end of the vertices of the last ring,
+ * vertices: latitude, longitude (1e-7 degrees),
+ * names: length (16 bit) and UTF-8 bytes
+ * </pre>
+ * Tree levels are stored from the lowest level, the root is the last entry.
+ * Offsets are absolute except the offsets of names, which are relative to
+ * the names. Files are created by BoundaryIndexBuilder of the host tools
+ * (module locationprivacy-tools).
+ */
+public class BoundaryIndex {
+
+	/** Magic number "LPBD" at the start of a file */
+	public static final int MAGIC = 0x4c504244;
+
+	/** Version of the file format */
+	public static final int VERSION = 1;
+
+	/** Maximum height of the tree */
+	public static final int MAX_HEIGHT = 8;
+
+	/** Size of the file header in bytes */
+	public static final int HEADER_SIZE = 48 + 4 * MAX_HEIGHT;
+
+	/** Size of a tree entry in bytes */
+	public static final int ENTRY_SIZE = 20;
+
+	/** Size of a region in bytes */
+	public static final int REGION_SIZE = 40;
+
+	/** Indexes opened by this process, by file path */
+	private static final HashMap<String, BoundaryIndex> indexes = new HashMap<String, BoundaryIndex>();
+
+	/** Path of the boundary file */
+	private final String path;
+
+	/** Content of the file */
+	private final MappedByteBuffer buffer;
+
+	/** Number of regions */
+	private final int regionCount;
+
+	/** Number of tree entries */
+	private final int entryCount;
+
+	/** Maximum number of children of a tree entry */
+	private final int nodeSize;
+
+	/** Tolerance of the simplification in 1e-7 degrees */
+	private final int tolerance;
+
+	/** Number of tree levels */
+	private final int height;
+
+	/** Ends of the entries of the tree levels */
+	private final int[] levelEnds = new int[MAX_HEIGHT];
+
+	/** Offsets of tree, regions, rings, vertices and names */
+	private final int treeOffset;
+	private final int regionsOffset;
+	private final int ringsOffset;
+	private final int verticesOffset;
+	private final int namesOffset;
+
+	/**
+	 * Returns the index stored in a file. Each file is mapped only once per
+	 * process.
+	 *
+	 * @param path
+	 *            path of the boundary file
+	 * @return the index
+	 * @throws IOException
+	 *             if the file cannot be read or has an invalid format
+	 */
+	public static synchronized BoundaryIndex open(String path)
+			throws IOException {
+		BoundaryIndex index = indexes.get(path);
+		if (index == null) {
+			index = new BoundaryIndex(path);
+			indexes.put(path, index);
+		}
+		return index;
+	}
+
+	/**
+	 * Creates new instance of BoundaryIndex
+	 *
+	 * @param path
+	 *            path of the boundary file
+	 * @throws IOException
+	 *             if the file cannot be read or has an invalid format
+	 */
+	private BoundaryIndex(String path) throws IOException {
+		this.path = path;
+		File file = new File(path);
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			long size = channel.size();
+			if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+				throw new IOException("Not a boundary index: " + file);
+			}
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			if (buffer.getInt(0) != MAGIC) {
+				throw new IOException("Not a boundary index: " + file);
+			}
+			if (buffer.getInt(4) != VERSION) {
+				throw new IOException("Unsupported boundary index version "
+						+ buffer.getInt(4));
+			}
+			regionCount = buffer.getInt(8);
+			entryCount = buffer.getInt(12);
+			nodeSize = buffer.getInt(16);
+			tolerance = buffer.getInt(20);
+			height = buffer.getInt(24);
+			treeOffset = buffer.getInt(28);
+			regionsOffset = buffer.getInt(32);
+			ringsOffset = buffer.getInt(36);
+			verticesOffset = buffer.getInt(40);
+			namesOffset = buffer.getInt(44);
+			boolean valid = regionCount >= 0 && nodeSize >= 2
+					&& tolerance >= 0 && height >= 0 && height <= MAX_HEIGHT
+					&& (height > 0 || regionCount == 0)
+					&& treeOffset + (long) entryCount * ENTRY_SIZE <= size
+					&& regionsOffset + (long) regionCount * REGION_SIZE <= size
+					&& ringsOffset <= size && verticesOffset <= size
+					&& namesOffset <= size;
+			int end = 0;
+			for (int level = 0; valid && level < height; level++) {
+				int levelEnd = buffer.getInt(48 + 4 * level);
+				valid = levelEnd > end && levelEnd <= entryCount;
+				levelEnds[level] = end = levelEnd;
+			}
+			// the lowest level holds the regions, the highest only the root
+			int rootLevelStart = height > 1 ? levelEnds[height - 2] : 0;
+			if (!valid || end != entryCount
+					|| (height > 0 && levelEnds[0] != regionCount)
+					|| (height > 0 && end - rootLevelStart != 1)) {
+				throw new IOException("Corrupt boundary index: " + file);
+			}
+		} finally {
+			// the mapping stays valid after the file is closed
+			raf.close();
+		}
+	}
+
+	/**
+	 * Returns the path of the boundary file
+	 */
+	public String getPath() {
+		return path;
+	}
+
+	public int getRegionCount() {
+		return regionCount;
+	}
+
+	/**
+	 * Returns the tolerance of the simplification in meters
+	 */
+	public double getTolerance() {
+		return tolerance / MetricGrid.E7 * 111320;
+	}
+
+	/**
+	 * Returns the region of a level containing a location
+	 *
+	 * @param level
+	 *            level of the region, e.g. Gazetteer.CITY
+	 * @param latitude
+	 *            latitude in degrees
+	 * @param longitude
+	 *            longitude in degrees
+	 * @return region, -1 if no region of the level contains the location or
+	 *         is within the tolerance
+	 */
+	public int find(int level, double latitude, double longitude) {
+		if (height == 0) {
+			return -1;
+		}
+		int latE7 = MetricGrid.toE7(latitude);
+		int lonE7 = MetricGrid.toE7(longitude);
+		double scale = Math.cos(Math.toRadians(latitude));
+		// a tree entry has at most nodeSize children on each level
+		int[] stack = new int[height * nodeSize + 1];
+		int top = 0;
+		stack[top++] = entryCount - 1;
+		int nearest = -1;
+		double nearestDistance = (double) tolerance * tolerance;
+		while (top > 0) {
+			int entry = stack[--top];
+			int base = treeOffset + entry * ENTRY_SIZE;
+			if (buffer.getInt(base) - tolerance > latE7
+					|| buffer.getInt(base + 4) - tolerance > lonE7
+					|| buffer.getInt(base + 8) + tolerance < latE7
+					|| buffer.getInt(base + 12) + tolerance < lonE7) {
+				continue;
+			}
+			int ref = buffer.getInt(base + 16);
+			if (entry < regionCount) {
+				if (getLevel(ref) != level) {
+					continue;
+				}
+				if (contains(ref, latE7, lonE7)) {
+					return ref;
+				}
+				if (tolerance > 0) {
+					double distance = borderDistance(ref, latE7, lonE7, scale);
+					if (distance <= nearestDistance) {
+						nearestDistance = distance;
+						nearest = ref;
+					}
+				}
+				continue;
+			}
+			int end = Math.min(ref + nodeSize, levelEnds[levelOf(ref)]);
+			for (int child = ref; child < end; child++) {
+				stack[top++] = child;
+			}
+		}
+		return nearest;
+	}
+
+	/**
+	 * Returns whether a region contains a location. Locations within the
+	 * tolerance of the border are not included.
+	 *
+	 * @param region
+	 *            region
+	 * @param latitude
+	 *            latitude in degrees
+	 * @param longitude
+	 *            longitude in degrees
+	 */
+	public boolean contains(int region, double latitude, double longitude) {
+		return contains(region, MetricGrid.toE7(latitude),
+				MetricGrid.toE7(longitude));
+	}
+
+	/**
+	 * Returns the latitude of the representative point of a region
+	 */
+	public double getLatitude(int region) {
+		return buffer.getInt(regionsOffset + region * REGION_SIZE + 16)
+				/ MetricGrid.E7;
+	}
+
+	/**
+	 * Returns the longitude of the representative point of a region
+	 */
+	public double getLongitude(int region) {
+		return buffer.getInt(regionsOffset + region * REGION_SIZE + 20)
+				/ MetricGrid.E7;
+	}
+
+	/**
+	 * Returns the level of a region
+	 */
+	public int getLevel(int region) {
+		return buffer.getInt(regionsOffset + region * REGION_SIZE + 24);
+	}
+
+	/**
+	 * Returns the name of a region
+	 */
+	public String getName(int region) {
+		int offset = namesOffset
+				+ buffer.getInt(regionsOffset + region * REGION_SIZE + 28);
+		byte[] bytes = new byte[buffer.getShort(offset) & 0xffff];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = buffer.get(offset + 2 + i);
+		}
+		try {
+			return new String(bytes, "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new AssertionError(e);
+		}
+	}
+
+	/**
+	 * Returns the number of vertices of a region
+	 */
+	public int getVertexCount(int region) {
+		int base = regionsOffset + region * REGION_SIZE;
+		int firstRing = buffer.getInt(base + 32);
+		int ringCount = buffer.getInt(base + 36);
+		return buffer.getInt(ringsOffset + 4 * (firstRing + ringCount))
+				- buffer.getInt(ringsOffset + 4 * firstRing);
+	}
+
+	/**
+	 * Returns the tree level of an entry
+	 */
+	private int levelOf(int entry) {
+		int level = 0;
+		while (entry >= levelEnds[level]) {
+			level++;
+		}
+		return level;
+	}
+
+	/**
+	 * Tests whether a region contains a point by counting the crossings of a
+	 * ray towards east with its rings
+	 */
+	private boolean contains(int region, int latE7, int lonE7) {
+		int base = regionsOffset + region * REGION_SIZE;
+		if (buffer.getInt(base) > latE7 || buffer.getInt(base + 4) > lonE7
+				|| buffer.getInt(base + 8) < latE7
+				|| buffer.getInt(base + 12) < lonE7) {
+			return false;
+		}
+		int firstRing = buffer.getInt(base + 32);
+		int ringCount = buffer.getInt(base + 36);
+		boolean inside = false;
+		for (int ring = firstRing; ring < firstRing + ringCount; ring++) {
+			int first = buffer.getInt(ringsOffset + 4 * ring);
+			int end = buffer.getInt(ringsOffset + 4 * ring + 4);
+			int offset = verticesOffset + 8 * (end - 1);
+			long lat1 = buffer.getInt(offset);
+			long lon1 = buffer.getInt(offset + 4);
+			for (int vertex = first; vertex < end; vertex++) {
+				offset = verticesOffset + 8 * vertex;
+				long lat2 = buffer.getInt(offset);
+				long lon2 = buffer.getInt(offset + 4);
+				if ((lat1 > latE7) != (lat2 > latE7)) {
+					// lonE7 < longitude of the crossing, without division
+					long left = (lonE7 - lon1) * (lat2 - lat1);
+					long right = (latE7 - lat1) * (lon2 - lon1);
+					if (lat2 > lat1 ? left < right : left > right) {
+						inside = !inside;
+					}
+				}
+				lat1 = lat2;
+				lon1 = lon2;
+			}
+		}
+		return inside;
+	}
+
+	/**
+	 * Returns the squared distance of a point to the border of a region in
+	 * (1e-7 degrees latitude)^2
+	 */
+	private double borderDistance(int region, int latE7, int lonE7,
+			double scale) {
+		int base = regionsOffset + region * REGION_SIZE;
+		int firstRing = buffer.getInt(base + 32);
+		int ringCount = buffer.getInt(base + 36);
+		double best = Double.MAX_VALUE;
+		for (int ring = firstRing; ring < firstRing + ringCount; ring++) {
+			int first = buffer.getInt(ringsOffset + 4 * ring);
+			int end = buffer.getInt(ringsOffset + 4 * ring + 4);
+			int offset = verticesOffset + 8 * (end - 1);
+			double y1 = buffer.getInt(offset) - latE7;
+			double x1 = (buffer.getInt(offset + 4) - lonE7) * scale;
+			for (int vertex = first; vertex < end; vertex++) {
+				offset = verticesOffset + 8 * vertex;
+				double y2 = buffer.getInt(offset) - latE7;
+				double x2 = (buffer.getInt(offset + 4) - lonE7) * scale;
+				double dx = x2 - x1;
+				double dy = y2 - y1;
+				double length = dx * dx + dy * dy;
+				double t = length == 0 ? 0 : Math.max(0,
+						Math.min(1, -(x1 * dx + y1 * dy) / length));
+				double x = x1 + t * dx;
+				double y = y1 + t * dy;
+				best = Math.min(best, x * x + y * y);
+				x1 = x2;
+				y1 = y2;
+			}
+		}
+		return best;
+	}
+}
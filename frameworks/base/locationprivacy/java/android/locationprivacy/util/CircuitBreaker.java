@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2013 Distributed Computing & Security Group,
+ *                    Leibniz Universitaet Hannover, Germany
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.locationprivacy.util;
+
+import java.util.Arrays;
+
+import android.os.SystemClock;
+
+/**
+ * CircuitBreaker protects callers from a remote service that is down. After a
+ * number of consecutive failures the circuit opens and requests are rejected
+ * at once instead of waiting for timeouts. When the open time has passed, the
+ * circuit is half open and a single probe request is let through. If it
+ * succeeds the circuit closes, otherwise it opens again.
+ *
+ * The breaker also derives the timeout of requests from the latencies of the
+ * last successful requests: twice their 99th percentile plus a margin,
+ * limited to MIN_TIMEOUT and MAX_TIMEOUT. As long as there are too few
+ * samples, MAX_TIMEOUT is used.
+ *
+ * State transitions are counted in the given metrics as circuit_opened,
+ * circuit_half_opened and circuit_closed, rejected requests as
+ * circuit_rejected.
+ */
+public class CircuitBreaker {
+
+	/** Lower limit of the timeout in milliseconds */
+	public static final int MIN_TIMEOUT = 1000;
+
+	/** Upper limit of the timeout in milliseconds */
+	public static final int MAX_TIMEOUT = 15000;
+
+	/** Number of latencies the timeout is derived from */
+	private static final int SAMPLES = 64;
+
+	/** Number of latencies needed before the timeout is adapted */
+	private static final int MIN_SAMPLES = 8;
+
+	/** Margin added to the timeout in milliseconds */
+	private static final int MARGIN = 250;
+
+	/** The circuit is closed, requests pass */
+	public static final int CLOSED = 0;
+
+	/** The circuit is open, requests are rejected */
+	public static final int OPEN = 1;
+
+	/** The circuit is half open, one probe request passes */
+	public static final int HALF_OPEN = 2;
+
+	/** Metrics the transitions are counted in */
+	private final Metrics metrics;
+
+	/** Latencies of the last successful requests, used as ring buffer */
+	private final long[] latencies = new long[SAMPLES];
+
+	/** Number of latencies in the buffer */
+	private int recorded;
+
+	/** Index the next latency is written to */
+	private int next;
+
+	/** Current timeout, -1 if it has to be recomputed */
+	private int timeout = -1;
+
+	/** Current state */
+	private int state = CLOSED;
+
+	/** Consecutive failures */
+	private int failures;
+
+	/** Failures opening the circuit */
+	private int failureThreshold = 3;
+
+	/** Time the circuit stays open in milliseconds */
+	private long openTime = 30000;
+
+	/** Time the circuit has been opened */
+	private long openedAt;
+
+	/** Whether the probe of the half open circuit is in flight */
+	private boolean probing;
+
+	/**
+	 * Creates new instance of CircuitBreaker
+	 *
+	 * @param metrics
+	 *            metrics the transitions are counted in
+	 */
+	public CircuitBreaker(Metrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Sets the limits of the breaker
+	 *
+	 * @param failureThreshold
+	 *            consecutive failures opening the circuit
+	 * @param openTime
+	 *            time the circuit stays open in milliseconds
+	 */
+	public synchronized void setLimits(int failureThreshold, long openTime) {
+		this.failureThreshold = Math.max(1, failureThreshold);
+		this.openTime = Math.max(0, openTime);
+	}
+
+	/**
+	 * Asks whether a request may be sent. If true is returned, the caller must
+	 * report the outcome by onSuccess() or onFailure().
+	 *
+	 * @return true if the request may be sent, false if it is rejected
+	 */
+	public synchronized boolean allowRequest() {
+		if (state == OPEN
+				&& SystemClock.elapsedRealtime() - openedAt >= openTime) {
+			state = HALF_OPEN;
+			probing = false;
+			metrics.increment("circuit_half_opened");
+		}
+		if (state == CLOSED) {
+			return true;
+		}
+		if (state == HALF_OPEN && !probing) {
+			probing = true;
+			return true;
+		}
+		metrics.increment("circuit_rejected");
+		return false;
+	}
+
+	/**
+	 * Reports a successful request
+	 *
+	 * @param latency
+	 *            latency of the request in milliseconds
+	 */
+	public synchronized void onSuccess(long latency) {
+		latencies[next] = latency;
+		next = (next + 1) % SAMPLES;
+		recorded = Math.min(recorded + 1, SAMPLES);
+		timeout = -1;
+		failures = 0;
+		if (state != CLOSED) {
+			state = CLOSED;
+			probing = false;
+			metrics.increment("circuit_closed");
+		}
+	}
+
+	/**
+	 * Reports a failed request
+	 */
+	public synchronized void onFailure() {
+		failures++;
+		if (state == HALF_OPEN
+				|| (state == CLOSED && failures >= failureThreshold)) {
+			state = OPEN;
+			probing = false;
+			openedAt = SystemClock.elapsedRealtime();
+			metrics.increment("circuit_opened");
+		}
+	}
+
+	/**
+	 * Returns the current state
+	 *
+	 * @return CLOSED, OPEN or HALF_OPEN
+	 */
+	public synchronized int getState() {
+		return state;
+	}
+
+	/**
+	 * Returns the timeout for connecting and reading
+	 *
+	 * @return timeout in milliseconds
+	 */
+	public synchronized int getTimeout() {
+		if (timeout < 0) {
+			int count = recorded;
+			if (count < MIN_SAMPLES) {
+				timeout = MAX_TIMEOUT;
+			} else {
+				long[] sorted = Arrays.copyOf(latencies, count);
+				Arrays.sort(sorted);
+				long p99 = sorted[(int) Math.ceil(0.99 * count) - 1];
+				timeout = (int) Math.max(MIN_TIMEOUT,
+						Math.min(MAX_TIMEOUT, 2 * p99 + MARGIN));
+			}
+		}
+		return timeout;
+	}
+}
@@ -0,0 +1,466 @@
+/*
+ * Copyright (C) 2013 Distributed Computing & Security Group,
+ *                    Leibniz Universitaet Hannover, Germany
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.locationprivacy.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+
+/**
+ * Gazetteer provides offline access to places of four levels, streets,
+ * postal code regions, cities and countries, stored in a binary file. Each
+ * place has a centroid, a name formatted like an address by formatAddress()
+ * and a parent place of a coarser level, e.g. the postal code region of a
+ * street. The file is memory-mapped, so even country-scale gazetteers do not
+ * use heap memory.
+ *
+ * Places of each level are sorted by the cells of a MetricGrid of the level,
+ * a cell table points to the places of each cell. The nearest place is found
+ * by searching the cells around a location ring by ring. Names are indexed by
+ * an open addressing hash table.
+ *
+ * File format (all values are big endian):
+ * <pre>
+ * magic "LPGZ", version, place count, hash table size,
+ * offset of places, offset of hash table, offset of names, reserved,
+ * for each level: cell size (meters), first place, cell count, offset of
+ * cell table,
+ * cell tables: per cell the cell (64 bit) and its first place, followed by
+ * an entry with cell Long.MAX_VALUE and the end of the places of the level,
+ * places: latitude, longitude (1e-7 degrees), offset of name, parent (-1 for
+ * none), level,
+ * hash table: place + 1 per slot, 0 for empty slots,
+ * names: length (16 bit) and UTF-8 bytes
+ * </pre>
+ * Offsets are absolute except the offsets of names, which are relative to
+ * the names. Files are created by GazetteerBuilder of the host tools
+ * (module locationprivacy-tools).
+ */
+public class Gazetteer {
+
+	/** Magic number "LPGZ" at the start of a file */
+	public static final int MAGIC = 0x4c50475a;
+
+	/** Version of the file format */
+	public static final int VERSION = 1;
+
+	/** Size of the file header in bytes */
+	public static final int HEADER_SIZE = 96;
+
+	/** Size of a place in bytes */
+	public static final int PLACE_SIZE = 20;
+
+	/** Size of a cell table entry in bytes */
+	public static final int CELL_SIZE = 12;
+
+	/** Levels of places */
+	public static final int STREET = 0;
+	public static final int POSTALCODE = 1;
+	public static final int CITY = 2;
+	public static final int COUNTRY = 3;
+
+	/** Number of levels */
+	public static final int LEVELS = 4;
+
+	/** Names of the levels, as used for the detail of GeoReverseGeo */
+	private static final String[] LEVEL_NAMES = { "street", "postalcode",
+			"city", "country" };
+
+	/** Number of rings of cells searched for the nearest place */
+	private static final int MAX_RINGS = 2;
+
+	/** Gazetteers opened by this process, by file path */
+	private static final HashMap<String, Gazetteer> gazetteers = new HashMap<String, Gazetteer>();
+
+	/** Path of the gazetteer file */
+	private final String path;
+
+	/** Content of the file */
+	private final MappedByteBuffer buffer;
+
+	/** Number of places */
+	private final int placeCount;
+
+	/** Size of the hash table, a power of two */
+	private final int hashSize;
+
+	/** Offsets of places, hash table and names */
+	private final int placesOffset;
+	private final int hashOffset;
+	private final int namesOffset;
+
+	/** Grids of the levels */
+	private final MetricGrid[] grids = new MetricGrid[LEVELS];
+
+	/** Number of cells of the levels */
+	private final int[] cellCounts = new int[LEVELS];
+
+	/** Offsets of the cell tables of the levels */
+	private final int[] cellOffsets = new int[LEVELS];
+
+	/**
+	 * Returns the gazetteer stored in a file. Each file is mapped only once
+	 * per process.
+	 *
+	 * @param path
+	 *            path of the gazetteer file
+	 * @return the gazetteer
+	 * @throws IOException
+	 *             if the file cannot be read or has an invalid format
+	 */
+	public static synchronized Gazetteer open(String path) throws IOException {
+		Gazetteer gazetteer = gazetteers.get(path);
+		if (gazetteer == null) {
+			gazetteer = new Gazetteer(path);
+			gazetteers.put(path, gazetteer);
+		}
+		return gazetteer;
+	}
+
+	/**
+	 * Creates new instance of Gazetteer
+	 *
+	 * @param path
+	 *            path of the gazetteer file
+	 * @throws IOException
+	 *             if the file cannot be read or has an invalid format
+	 */
+	private Gazetteer(String path) throws IOException {
+		this.path = path;
+		File file = new File(path);
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			long size = channel.size();
+			if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+				throw new IOException("Not a gazetteer: " + file);
+			}
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			if (buffer.getInt(0) != MAGIC) {
+				throw new IOException("Not a gazetteer: " + file);
+			}
+			if (buffer.getInt(4) != VERSION) {
+				throw new IOException("Unsupported gazetteer version "
+						+ buffer.getInt(4));
+			}
+			placeCount = buffer.getInt(8);
+			hashSize = buffer.getInt(12);
+			placesOffset = buffer.getInt(16);
+			hashOffset = buffer.getInt(20);
+			namesOffset = buffer.getInt(24);
+			boolean valid = placeCount >= 0 && hashSize > 0
+					&& (hashSize & (hashSize - 1)) == 0
+					&& placesOffset + (long) placeCount * PLACE_SIZE <= size
+					&& hashOffset + 4L * hashSize <= size
+					&& namesOffset <= size;
+			for (int level = 0; valid && level < LEVELS; level++) {
+				int offset = 32 + 16 * level;
+				int cellSize = buffer.getInt(offset);
+				cellCounts[level] = buffer.getInt(offset + 8);
+				cellOffsets[level] = buffer.getInt(offset + 12);
+				valid = cellSize > 0
+						&& cellCounts[level] >= 0
+						&& cellOffsets[level] + (cellCounts[level] + 1L)
+								* CELL_SIZE <= size;
+				grids[level] = new MetricGrid(cellSize);
+			}
+			if (!valid) {
+				throw new IOException("Corrupt gazetteer: " + file);
+			}
+		} finally {
+			// the mapping stays valid after the file is closed
+			raf.close();
+		}
+	}
+
+	/**
+	 * Returns the level of a detail
+	 *
+	 * @param detail
+	 *            street, postalcode, city or country
+	 * @return level, -1 for unknown details
+	 */
+	public static int getLevel(String detail) {
+		for (int level = 0; level < LEVELS; level++) {
+			if (LEVEL_NAMES[level].equals(detail)) {
+				return level;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Formats an address reduced to a level, e.g. "30159 Hannover, Germany"
+	 * for the level POSTALCODE. Missing parts are left out.
+	 *
+	 * @param street
+	 *            street, may be null
+	 * @param postalCode
+	 *            postal code, may be null
+	 * @param city
+	 *            city, may be null
+	 * @param country
+	 *            country, may be null
+	 * @param level
+	 *            level of the address
+	 * @return formatted address
+	 */
+	public static String formatAddress(String street, String postalCode,
+			String city, String country, int level) {
+		String addressString = "";
+		if (street != null && level == STREET) {
+			addressString += street;
+			addressString += ", ";
+		}
+		if (city != null && level <= CITY) {
+			if (postalCode != null && level <= POSTALCODE) {
+				addressString += postalCode + " ";
+			}
+			addressString += city + ", ";
+		}
+		if (country != null) {
+			addressString += country;
+		} else if (addressString.endsWith(", ")) {
+			addressString = addressString.substring(0,
+					addressString.length() - 2);
+		}
+		return addressString;
+	}
+
+	/**
+	 * Returns a hash of a name, used for the hash table
+	 */
+	public static int hash(String name) {
+		int h = name.hashCode();
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * Returns the path of the gazetteer file
+	 */
+	public String getPath() {
+		return path;
+	}
+
+	public int getPlaceCount() {
+		return placeCount;
+	}
+
+	/**
+	 * Returns the place of a level containing a location. This is the parent
+	 * of that level of the nearest street. If there is no street near the
+	 * location, the nearest place of the next coarser level is taken, and so
+	 * on. If a place has no parent of the level, its next coarser parent is
+	 * returned.
+	 *
+	 * @param level
+	 *            level of the place
+	 * @param latitude
+	 *            latitude in degrees
+	 * @param longitude
+	 *            longitude in degrees
+	 * @return place, -1 if there is no place near the location
+	 */
+	public int nearest(int level, double latitude, double longitude) {
+		int latE7 = MetricGrid.toE7(latitude);
+		int lonE7 = MetricGrid.toE7(longitude);
+		for (int searched = STREET; searched <= level; searched++) {
+			int place = nearestOfLevel(searched, latE7, lonE7);
+			if (place >= 0) {
+				while (getLevel(place) < level && getParent(place) >= 0) {
+					place = getParent(place);
+				}
+				return place;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the place with a name
+	 *
+	 * @param name
+	 *            name formatted by formatAddress()
+	 * @return place, -1 if there is no place with the name
+	 */
+	public int find(String name) {
+		byte[] bytes = toBytes(name);
+		int mask = hashSize - 1;
+		for (int slot = hash(name) & mask;; slot = (slot + 1) & mask) {
+			int place = buffer.getInt(hashOffset + 4 * slot) - 1;
+			if (place < 0) {
+				return -1;
+			}
+			if (nameEquals(place, bytes)) {
+				return place;
+			}
+		}
+	}
+
+	/**
+	 * Returns the latitude of the centroid of a place
+	 */
+	public double getLatitude(int place) {
+		return buffer.getInt(placesOffset + place * PLACE_SIZE) / MetricGrid.E7;
+	}
+
+	/**
+	 * Returns the longitude of the centroid of a place
+	 */
+	public double getLongitude(int place) {
+		return buffer.getInt(placesOffset + place * PLACE_SIZE + 4)
+				/ MetricGrid.E7;
+	}
+
+	/**
+	 * Returns the name of a place
+	 */
+	public String getName(int place) {
+		int offset = namesOffset
+				+ buffer.getInt(placesOffset + place * PLACE_SIZE + 8);
+		byte[] bytes = new byte[buffer.getShort(offset) & 0xffff];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = buffer.get(offset + 2 + i);
+		}
+		try {
+			return new String(bytes, "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new AssertionError(e);
+		}
+	}
+
+	/**
+	 * Returns the parent of a place
+	 *
+	 * @return parent, -1 if the place has none
+	 */
+	public int getParent(int place) {
+		return buffer.getInt(placesOffset + place * PLACE_SIZE + 12);
+	}
+
+	/**
+	 * Returns the level of a place
+	 */
+	public int getLevel(int place) {
+		return buffer.getInt(placesOffset + place * PLACE_SIZE + 16);
+	}
+
+	/**
+	 * Returns the nearest place of a level within MAX_RINGS cells of the
+	 * grid of the level
+	 *
+	 * @return place, -1 if there is none
+	 */
+	private int nearestOfLevel(int level, int latE7, int lonE7) {
+		MetricGrid grid = grids[level];
+		int row = grid.getRow(latE7);
+		double scale = Math.cos(Math.toRadians(latE7 / MetricGrid.E7));
+		int best = -1;
+		double bestDistance = Double.MAX_VALUE;
+		for (int ring = 0; ring <= MAX_RINGS; ring++) {
+			for (int r = row - ring; r <= row + ring; r++) {
+				if (r < 0) {
+					continue;
+				}
+				int column = grid.getColumn(r, lonE7);
+				boolean edge = r == row - ring || r == row + ring;
+				for (int c = column - ring; c <= column + ring; c += edge
+						|| ring == 0 ? 1 : 2 * ring) {
+					int entry = findCell(level, MetricGrid.getCell(r, c));
+					if (entry < 0) {
+						continue;
+					}
+					int offset = cellOffsets[level] + entry * CELL_SIZE;
+					int end = buffer.getInt(offset + CELL_SIZE + 8);
+					int place = buffer.getInt(offset + 8);
+					for (; place < end; place++) {
+						int base = placesOffset + place * PLACE_SIZE;
+						double dLat = buffer.getInt(base) - latE7;
+						double dLon = (buffer.getInt(base + 4) - lonE7) * scale;
+						double distance = dLat * dLat + dLon * dLon;
+						if (distance < bestDistance) {
+							bestDistance = distance;
+							best = place;
+						}
+					}
+				}
+			}
+			// places in the next ring are at least ring cells away
+			double reach = ring * grid.getCellSize() * MetricGrid.E7 / 111320;
+			if (best >= 0 && bestDistance <= reach * reach) {
+				break;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Finds a cell in the cell table of a level by binary search
+	 *
+	 * @return index of the entry, -1 if the cell has no places
+	 */
+	private int findCell(int level, long cell) {
+		int low = 0;
+		int high = cellCounts[level] - 1;
+		int base = cellOffsets[level];
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			long current = buffer.getLong(base + middle * CELL_SIZE);
+			if (current < cell) {
+				low = middle + 1;
+			} else if (current > cell) {
+				high = middle - 1;
+			} else {
+				return middle;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Compares the name of a place with UTF-8 bytes
+	 */
+	private boolean nameEquals(int place, byte[] bytes) {
+		int offset = namesOffset
+				+ buffer.getInt(placesOffset + place * PLACE_SIZE + 8);
+		if ((buffer.getShort(offset) & 0xffff) != bytes.length) {
+			return false;
+		}
+		for (int i = 0; i < bytes.length; i++) {
+			if (buffer.get(offset + 2 + i) != bytes[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Encodes a name as UTF-8
+	 */
+	public static byte[] toBytes(String name) {
+		try {
+			return name.getBytes("UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new AssertionError(e);
+		}
+	}
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2013 Distributed Computing & Security Group,
+ *                    Leibniz Universitaet Hannover, Germany
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.locationprivacy.util;
+
+import android.location.Location;
+
+/**
+ * Geodesy provides fast distance computations for short distances.
+ *
+ * Location.distanceBetween solves the inverse geodesic problem on the WGS84
+ * ellipsoid iteratively (Vincenty), which is expensive for a simple
+ * comparison with a threshold of some meters. approximateDistance projects
+ * both points onto a plane tangent at their mid-latitude, using the
+ * meridional and prime vertical radii of curvature of WGS84 there.
+ *
+ * For latitudes within +/- MAX_LATITUDE and distances up to MAX_DISTANCE the
+ * relative error compared to Location.distanceBetween is below
+ * MAX_RELATIVE_ERROR. The largest error found by sampling 3 million random
+ * pairs in this range is 9e-5 (at 80 degrees and 50 km), so the bound has a
+ * margin of more than ten. isFartherThan uses the exact method only if the
+ * approximation is within this bound of the threshold. "lpharness geodesy"
+ * repeats this measurement on the device and compares the speed of both
+ * methods.
+ */
+public class Geodesy {
+
+	/** Maximum absolute latitude the error bound holds for */
+	public static final double MAX_LATITUDE = 80;
+
+	/** Maximum distance in meters the error bound holds for */
+	public static final double MAX_DISTANCE = 50000;
+
+	/** Bound of the relative error of approximateDistance */
+	public static final double MAX_RELATIVE_ERROR = 1e-3;
+
+	/** WGS84 semi-major axis in meters */
+	private static final double SEMI_MAJOR_AXIS = 6378137;
+
+	/** WGS84 flattening */
+	private static final double FLATTENING = 1 / 298.257223563;
+
+	/** WGS84 first eccentricity squared */
+	private static final double ECCENTRICITY_SQUARED = FLATTENING
+			* (2 - FLATTENING);
+
+	/** Factor converting degrees to radians */
+	private static final double TO_RADIAN = Math.PI / 180;
+
+	private Geodesy() {
+	}
+
+	/**
+	 * Approximates the distance between two coordinates. The result is only
+	 * reliable within the bounds given by MAX_LATITUDE and MAX_DISTANCE.
+	 *
+	 * @param latitude1
+	 *            latitude of the first coordinate in degrees
+	 * @param longitude1
+	 *            longitude of the first coordinate in degrees
+	 * @param latitude2
+	 *            latitude of the second coordinate in degrees
+	 * @param longitude2
+	 *            longitude of the second coordinate in degrees
+	 * @return distance in meters
+	 */
+	public static double approximateDistance(double latitude1,
+			double longitude1, double latitude2, double longitude2) {
+		double middle = (latitude1 + latitude2) / 2 * TO_RADIAN;
+		double sin = Math.sin(middle);
+		double w2 = 1 - ECCENTRICITY_SQUARED * sin * sin;
+		double w = Math.sqrt(w2);
+		// prime vertical and meridional radius of curvature
+		double n = SEMI_MAJOR_AXIS / w;
+		double m = n * (1 - ECCENTRICITY_SQUARED) / w2;
+		double deltaLongitude = longitude2 - longitude1;
+		if (deltaLongitude > 180) {
+			deltaLongitude -= 360;
+		} else if (deltaLongitude < -180) {
+			deltaLongitude += 360;
+		}
+		double x = deltaLongitude * TO_RADIAN * n * Math.cos(middle);
+		double y = (latitude2 - latitude1) * TO_RADIAN * m;
+		return Math.sqrt(x * x + y * y);
+	}
+
+	/**
+	 * Checks whether two coordinates are farther apart than a threshold. The
+	 * result equals a comparison of Location.distanceBetween with the
+	 * threshold, which is only called if the approximation cannot decide.
+	 *
+	 * @param latitude1
+	 *            latitude of the first coordinate in degrees
+	 * @param longitude1
+	 *            longitude of the first coordinate in degrees
+	 * @param latitude2
+	 *            latitude of the second coordinate in degrees
+	 * @param longitude2
+	 *            longitude of the second coordinate in degrees
+	 * @param threshold
+	 *            distance in meters
+	 * @param result
+	 *            array of length 1 used for the exact computation, may be
+	 *            reused between calls
+	 * @return true if the distance is greater than threshold
+	 */
+	public static boolean isFartherThan(double latitude1, double longitude1,
+			double latitude2, double longitude2, double threshold,
+			float[] result) {
+		if (Math.abs(latitude1) <= MAX_LATITUDE
+				&& Math.abs(latitude2) <= MAX_LATITUDE) {
+			double distance = approximateDistance(latitude1, longitude1,
+					latitude2, longitude2);
+			if (distance <= MAX_DISTANCE) {
+				if (distance > threshold * (1 + MAX_RELATIVE_ERROR)) {
+					return true;
+				}
+				if (distance < threshold * (1 - MAX_RELATIVE_ERROR)) {
+					return false;
+				}
+			}
+		}
+		Location.distanceBetween(latitude1, longitude1, latitude2, longitude2,
+				result);
+		return result[0] > threshold;
+	}
+}
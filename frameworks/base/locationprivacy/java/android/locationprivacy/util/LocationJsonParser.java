@@ -0,0 +1,436 @@
+/*
+ * Copyright (C) 2013 Distributed Computing & Security Group,
+ *                    Leibniz Universitaet Hannover, Germany
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.locationprivacy.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * LocationJsonParser reads locations from JSON responses of obfuscation
+ * services. A location is an object with the number members lat and lon,
+ * other members are skipped. The parser reads the bytes of the stream
+ * directly and does not build Strings or trees, so parsing a response does
+ * not allocate besides the parser and its buffer.
+ *
+ * Numbers are converted exactly as by Double.parseDouble. Numbers without
+ * exponent whose digits form an integer below 2^53 take a fast path: one
+ * division by an exact power of ten, which is correctly rounded. Other
+ * numbers are converted by Double.parseDouble. Like org.json, numbers given
+ * as strings are accepted as well.
+ *
+ * This class does not depend on Android, so it can also be used by host
+ * tools.
+ */
+public class LocationJsonParser {
+
+	/** Exact powers of ten */
+	private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4,
+			1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16,
+			1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+	/** Largest mantissa that is exact as double */
+	private static final long MAX_EXACT = 1L << 53;
+
+	/** Maximum length of a number */
+	private static final int MAX_NUMBER = 64;
+
+	/** Member names */
+	private static final byte[] LAT = { 'l', 'a', 't' };
+	private static final byte[] LON = { 'l', 'o', 'n' };
+
+	/** Stream the response is read from */
+	private final InputStream in;
+
+	/** Buffer of the stream */
+	private final byte[] buffer = new byte[512];
+
+	/** Position of the next byte in the buffer */
+	private int position;
+
+	/** Number of valid bytes in the buffer */
+	private int limit;
+
+	/** Characters of a number on the slow path */
+	private char[] number;
+
+	/**
+	 * Creates new instance of LocationJsonParser
+	 *
+	 * @param in
+	 *            stream of the response, positioned at the start of the JSON
+	 *            value
+	 */
+	public LocationJsonParser(InputStream in) {
+		this.in = in;
+	}
+
+	/**
+	 * Reads a location object
+	 *
+	 * @param result
+	 *            array receiving latitude and longitude
+	 * @throws IOException
+	 *             if the stream cannot be read, is malformed or the object
+	 *             lacks lat or lon
+	 */
+	public void readLocation(double[] result) throws IOException {
+		if (!readObject(result)) {
+			throw new IOException("Location object expected");
+		}
+	}
+
+	/**
+	 * Reads an array of location objects. null entries are returned as NaN.
+	 *
+	 * @param latitudes
+	 *            array receiving the latitudes
+	 * @param longitudes
+	 *            array receiving the longitudes
+	 * @return number of entries in the array, entries beyond the length of
+	 *         the result arrays are skipped
+	 * @throws IOException
+	 *             if the stream cannot be read, is malformed or an object
+	 *             lacks lat or lon
+	 */
+	public int readLocations(double[] latitudes, double[] longitudes)
+			throws IOException {
+		expect('[');
+		double[] result = new double[2];
+		int count = 0;
+		int c = skipWhitespace();
+		if (c == ']') {
+			position++;
+			return 0;
+		}
+		while (true) {
+			if (count < latitudes.length) {
+				if (readObject(result)) {
+					latitudes[count] = result[0];
+					longitudes[count] = result[1];
+				} else {
+					latitudes[count] = Double.NaN;
+					longitudes[count] = Double.NaN;
+				}
+			} else {
+				skipValue();
+			}
+			count++;
+			c = next();
+			if (c == ']') {
+				return count;
+			}
+			if (c != ',') {
+				throw malformed(c);
+			}
+		}
+	}
+
+	/**
+	 * Reads the rest of the stream, so the connection can be reused
+	 *
+	 * @throws IOException
+	 */
+	public void finish() throws IOException {
+		position = limit;
+		while (in.read(buffer) >= 0) {
+			// discard
+		}
+	}
+
+	/**
+	 * Reads an object with lat and lon or null
+	 *
+	 * @return true for an object, false for null
+	 */
+	private boolean readObject(double[] result) throws IOException {
+		int c = skipWhitespace();
+		if (c == 'n') {
+			expectWord("null");
+			return false;
+		}
+		expect('{');
+		boolean hasLat = false;
+		boolean hasLon = false;
+		c = skipWhitespace();
+		if (c == '}') {
+			position++;
+		} else {
+			while (true) {
+				expect('"');
+				int name = readName();
+				expect(':');
+				if (name == 1) {
+					result[0] = readNumber();
+					hasLat = true;
+				} else if (name == 2) {
+					result[1] = readNumber();
+					hasLon = true;
+				} else {
+					skipValue();
+				}
+				c = next();
+				if (c == '}') {
+					break;
+				}
+				if (c != ',') {
+					throw malformed(c);
+				}
+				skipWhitespace();
+			}
+		}
+		if (!hasLat || !hasLon) {
+			throw new IOException("Location without lat or lon");
+		}
+		return true;
+	}
+
+	/**
+	 * Reads a member name after its opening quote
+	 *
+	 * @return 1 for lat, 2 for lon, 0 for other names
+	 */
+	private int readName() throws IOException {
+		boolean lat = true;
+		boolean lon = true;
+		int length = 0;
+		while (true) {
+			int c = read();
+			if (c == '"') {
+				break;
+			}
+			if (c == '\\') {
+				read();
+				lat = false;
+				lon = false;
+				continue;
+			}
+			lat = lat && length < LAT.length && LAT[length] == c;
+			lon = lon && length < LON.length && LON[length] == c;
+			length++;
+		}
+		if (length != 3) {
+			return 0;
+		}
+		return lat ? 1 : lon ? 2 : 0;
+	}
+
+	/**
+	 * Reads a number, which may be enclosed in quotes
+	 */
+	private double readNumber() throws IOException {
+		int c = skipWhitespace();
+		boolean quoted = c == '"';
+		if (quoted) {
+			position++;
+		}
+		boolean negative = false;
+		c = peek();
+		if (c == '-') {
+			negative = true;
+			position++;
+		}
+		long mantissa = 0;
+		int digits = 0;
+		int decimals = 0;
+		boolean fraction = false;
+		boolean exact = true;
+		int length = 0;
+		char[] chars = number;
+		if (chars == null) {
+			chars = new char[MAX_NUMBER];
+			number = chars;
+		}
+		if (negative) {
+			chars[length++] = '-';
+		}
+		while (true) {
+			c = peek();
+			if (c >= '0' && c <= '9') {
+				if (mantissa != 0 || c != '0') {
+					digits++;
+				}
+				if (digits <= 18) {
+					mantissa = mantissa * 10 + (c - '0');
+				} else {
+					exact = false;
+				}
+				if (fraction) {
+					decimals++;
+				}
+			} else if (c == '.' && !fraction) {
+				fraction = true;
+			} else if (c == 'e' || c == 'E' || c == '+' || c == '-') {
+				exact = false;
+			} else {
+				break;
+			}
+			if (length == MAX_NUMBER) {
+				throw new IOException("Number too long");
+			}
+			chars[length++] = (char) c;
+			position++;
+		}
+		if (quoted) {
+			expect('"');
+		}
+		if (length == 0 || (negative && length == 1)) {
+			throw malformed(c);
+		}
+		if (exact && mantissa < MAX_EXACT && decimals < POWERS_OF_TEN.length) {
+			double value = mantissa / POWERS_OF_TEN[decimals];
+			return negative ? -value : value;
+		}
+		try {
+			return Double.parseDouble(new String(chars, 0, length));
+		} catch (NumberFormatException e) {
+			throw new IOException("Malformed number");
+		}
+	}
+
+	/**
+	 * Skips a value of any type
+	 */
+	private void skipValue() throws IOException {
+		int c = skipWhitespace();
+		if (c == '"') {
+			position++;
+			skipString();
+		} else if (c == '{' || c == '[') {
+			int depth = 0;
+			do {
+				c = read();
+				if (c == '"') {
+					skipString();
+				} else if (c == '{' || c == '[') {
+					depth++;
+				} else if (c == '}' || c == ']') {
+					depth--;
+				}
+			} while (depth > 0);
+		} else {
+			// number, true, false or null
+			while (true) {
+				c = peek();
+				if (c == ',' || c == '}' || c == ']' || c <= ' ') {
+					break;
+				}
+				position++;
+			}
+		}
+	}
+
+	/**
+	 * Skips a string after its opening quote
+	 */
+	private void skipString() throws IOException {
+		while (true) {
+			int c = read();
+			if (c == '"') {
+				return;
+			}
+			if (c == '\\') {
+				read();
+			}
+		}
+	}
+
+	/**
+	 * Reads a word like null
+	 */
+	private void expectWord(String word) throws IOException {
+		for (int i = 0; i < word.length(); i++) {
+			int c = read();
+			if (c != word.charAt(i)) {
+				throw malformed(c);
+			}
+		}
+	}
+
+	/**
+	 * Reads the next non whitespace byte and checks it
+	 */
+	private void expect(char expected) throws IOException {
+		int c = next();
+		if (c != expected) {
+			throw malformed(c);
+		}
+	}
+
+	/**
+	 * Reads the next non whitespace byte
+	 */
+	private int next() throws IOException {
+		skipWhitespace();
+		return read();
+	}
+
+	/**
+	 * Skips whitespace
+	 *
+	 * @return next byte, which is not consumed
+	 */
+	private int skipWhitespace() throws IOException {
+		while (true) {
+			int c = peek();
+			if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+				return c;
+			}
+			position++;
+		}
+	}
+
+	/**
+	 * Reads a byte
+	 *
+	 * @throws IOException
+	 *             at the end of the stream
+	 */
+	private int read() throws IOException {
+		int c = peek();
+		if (c < 0) {
+			throw new IOException("Unexpected end of response");
+		}
+		position++;
+		return c;
+	}
+
+	/**
+	 * Returns the next byte without consuming it
+	 *
+	 * @return byte, -1 at the end of the stream
+	 */
+	private int peek() throws IOException {
+		if (position == limit) {
+			int count = in.read(buffer);
+			if (count <= 0) {
+				return -1;
+			}
+			position = 0;
+			limit = count;
+		}
+		return buffer[position] & 0xff;
+	}
+
+	/**
+	 * Creates the exception for an unexpected byte
+	 */
+	private static IOException malformed(int c) {
+		return new IOException(c < 0 ? "Unexpected end of response"
+				: "Unexpected character " + (char) c);
+	}
+}
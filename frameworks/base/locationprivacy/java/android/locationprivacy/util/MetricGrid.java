@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2013 Distributed Computing & Security Group,
+ *                    Leibniz Universitaet Hannover, Germany
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.locationprivacy.util;
+
+/**
+ * MetricGrid divides the earth into cells with a side length given in meters.
+ * All rows have the same height. The width of the cells in a row is adapted
+ * to the latitude of the row center, so cells are about square.
+ *
+ * Coordinates are handled as integers in units of 1e-7 degrees (E7), which
+ * keeps cell assignment exact and free of rounding issues at cell borders.
+ * A cell is identified by a long value containing its row and column.
+ */
+public class MetricGrid {
+
+	/** Factor converting degrees to E7 units */
+	public static final double E7 = 1e7;
+
+	/** Offset moving latitudes in E7 units to positive values */
+	public static final long LATITUDE_OFFSET_E7 = 900000000L;
+
+	/** Offset moving longitudes in E7 units to positive values */
+	public static final long LONGITUDE_OFFSET_E7 = 1800000000L;
+
+	/** Length of one degree latitude in meters */
+	private static final double METER_PER_LATITUDE = 111320;
+
+	/** Side length of a cell in meters */
+	private final int cellSize;
+
+	/** Height of a row in E7 units */
+	private final long cellHeightE7;
+
+	/**
+	 * Creates new instance of MetricGrid
+	 *
+	 * @param cellSize
+	 *            side length of a cell in meters
+	 */
+	public MetricGrid(int cellSize) {
+		this.cellSize = Math.max(1, cellSize);
+		cellHeightE7 = Math.max(1,
+				Math.round(this.cellSize * E7 / METER_PER_LATITUDE));
+	}
+
+	public int getCellSize() {
+		return cellSize;
+	}
+
+	/**
+	 * Converts degrees to E7 units
+	 *
+	 * @param degrees
+	 *            latitude or longitude in degrees
+	 * @return value in E7 units
+	 */
+	public static int toE7(double degrees) {
+		return (int) Math.round(degrees * E7);
+	}
+
+	/**
+	 * Returns the row containing a latitude
+	 *
+	 * @param latE7
+	 *            latitude in E7 units
+	 * @return row index
+	 */
+	public int getRow(int latE7) {
+		long lat = Math.min(Math.max(latE7 + LATITUDE_OFFSET_E7, 0),
+				2 * LATITUDE_OFFSET_E7 - 1);
+		return (int) (lat / cellHeightE7);
+	}
+
+	/**
+	 * Returns the southern border of a row
+	 *
+	 * @param row
+	 *            row index
+	 * @return latitude in E7 units
+	 */
+	public long getSouthE7(int row) {
+		return row * cellHeightE7 - LATITUDE_OFFSET_E7;
+	}
+
+	/**
+	 * Returns the northern border of a row
+	 *
+	 * @param row
+	 *            row index
+	 * @return latitude in E7 units
+	 */
+	public long getNorthE7(int row) {
+		return Math.min(getSouthE7(row + 1), LATITUDE_OFFSET_E7);
+	}
+
+	/**
+	 * Returns the width of the cells in a row
+	 *
+	 * @param row
+	 *            row index
+	 * @return width in E7 units
+	 */
+	public long getCellWidthE7(int row) {
+		double center = (getSouthE7(row) + getNorthE7(row)) / (2 * E7);
+		double width = cellHeightE7 / Math.cos(Math.toRadians(center));
+		return Math.max(1, Math.min(2 * LONGITUDE_OFFSET_E7, (long) width));
+	}
+
+	/**
+	 * Returns the column of a row containing a longitude
+	 *
+	 * @param row
+	 *            row index
+	 * @param lonE7
+	 *            longitude in E7 units
+	 * @return column index
+	 */
+	public int getColumn(int row, int lonE7) {
+		long lon = Math.min(Math.max(lonE7 + LONGITUDE_OFFSET_E7, 0),
+				2 * LONGITUDE_OFFSET_E7 - 1);
+		return (int) (lon / getCellWidthE7(row));
+	}
+
+	/**
+	 * Returns the cell containing a coordinate
+	 *
+	 * @param latitude
+	 *            latitude in degrees
+	 * @param longitude
+	 *            longitude in degrees
+	 * @return cell identifier
+	 */
+	public long getCell(double latitude, double longitude) {
+		int row = getRow(toE7(latitude));
+		int column = getColumn(row, toE7(longitude));
+		return getCell(row, column);
+	}
+
+	/**
+	 * Returns the cell identifier of a row and column
+	 *
+	 * @param row
+	 *            row index
+	 * @param column
+	 *            column index
+	 * @return cell identifier
+	 */
+	public static long getCell(int row, int column) {
+		return ((long) row << 32) | (column & 0xffffffffL);
+	}
+
+	/**
+	 * Returns the row of a cell
+	 *
+	 * @param cell
+	 *            cell identifier
+	 * @return row index
+	 */
+	public static int rowOf(long cell) {
+		return (int) (cell >>> 32);
+	}
+
+	/**
+	 * Returns the column of a cell
+	 *
+	 * @param cell
+	 *            cell identifier
+	 * @return column index
+	 */
+	public static int columnOf(long cell) {
+		return (int) cell;
+	}
+
+	/**
+	 * Returns the latitude of the center of a cell
+	 *
+	 * @param cell
+	 *            cell identifier
+	 * @return latitude in degrees
+	 */
+	public double getCenterLatitude(long cell) {
+		int row = rowOf(cell);
+		return (getSouthE7(row) + getNorthE7(row)) / (2 * E7);
+	}
+
+	/**
+	 * Returns the longitude of the center of a cell
+	 *
+	 * @param cell
+	 *            cell identifier
+	 * @return longitude in degrees
+	 */
+	public double getCenterLongitude(long cell) {
+		long width = getCellWidthE7(rowOf(cell));
+		double center = columnOf(cell) * width + width / 2.0
+				- LONGITUDE_OFFSET_E7;
+		if (center >= LONGITUDE_OFFSET_E7) {
+			center -= 2 * LONGITUDE_OFFSET_E7;
+		}
+		return center / E7;
+	}
+}
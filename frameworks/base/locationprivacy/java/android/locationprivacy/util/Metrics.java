@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2013 Distributed Computing & Security Group,
+ *                    Leibniz Universitaet Hannover, Germany
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.locationprivacy.util;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Metrics collects counters and timings of a component of the framework, e.g.
+ * of an algorithm. Metrics live as long as the process and are printed by
+ * dumpsys location.
+ *
+ * Counters named x_hits and x_misses are printed together with the hit rate
+ * of x, counters named x_wasted and x_requests with the share of wasted
+ * requests of x. Timings are printed with count, mean and maximum.
+ */
+public class Metrics {
+
+	/** Metrics of all components by name */
+	private static final TreeMap<String, Metrics> components = new TreeMap<String, Metrics>();
+
+	/** Counters by name */
+	private final TreeMap<String, Long> counters = new TreeMap<String, Long>();
+
+	/** Timings by name, count, sum and maximum in milliseconds */
+	private final TreeMap<String, long[]> timings = new TreeMap<String, long[]>();
+
+	/**
+	 * Creates new instance of Metrics
+	 */
+	private Metrics() {
+	}
+
+	/**
+	 * Returns the metrics of a component. They are created on first use.
+	 *
+	 * @param component
+	 *            name of the component
+	 * @return metrics of the component
+	 */
+	public static Metrics get(String component) {
+		synchronized (components) {
+			Metrics metrics = components.get(component);
+			if (metrics == null) {
+				metrics = new Metrics();
+				components.put(component, metrics);
+			}
+			return metrics;
+		}
+	}
+
+	/**
+	 * Prints the metrics of all components
+	 *
+	 * @param pw
+	 *            writer
+	 * @param prefix
+	 *            prefix of each line
+	 */
+	public static void dumpAll(PrintWriter pw, String prefix) {
+		ArrayList<Map.Entry<String, Metrics>> all;
+		synchronized (components) {
+			all = new ArrayList<Map.Entry<String, Metrics>>(
+					components.entrySet());
+		}
+		for (Map.Entry<String, Metrics> entry : all) {
+			pw.println(prefix + entry.getKey() + ":");
+			entry.getValue().dump(pw, prefix + "  ");
+		}
+	}
+
+	/**
+	 * Increments a counter by one
+	 */
+	public void increment(String counter) {
+		add(counter, 1);
+	}
+
+	/**
+	 * Adds a value to a counter
+	 */
+	public synchronized void add(String counter, long value) {
+		Long current = counters.get(counter);
+		counters.put(counter, current == null ? value : current + value);
+	}
+
+	/**
+	 * Returns the value of a counter
+	 *
+	 * @return value, 0 if the counter has not been used
+	 */
+	public synchronized long getCount(String counter) {
+		Long current = counters.get(counter);
+		return current == null ? 0 : current;
+	}
+
+	/**
+	 * Records a duration
+	 *
+	 * @param timing
+	 *            name of the timing
+	 * @param millis
+	 *            duration in milliseconds
+	 */
+	public synchronized void record(String timing, long millis) {
+		long[] values = timings.get(timing);
+		if (values == null) {
+			values = new long[3];
+			timings.put(timing, values);
+		}
+		values[0]++;
+		values[1] += millis;
+		values[2] = Math.max(values[2], millis);
+	}
+
+	/**
+	 * Returns the mean of a timing
+	 *
+	 * @return mean in milliseconds, 0 if nothing has been recorded
+	 */
+	public synchronized long getMean(String timing) {
+		long[] values = timings.get(timing);
+		return values == null ? 0 : values[1] / values[0];
+	}
+
+	/**
+	 * Prints the metrics
+	 *
+	 * @param pw
+	 *            writer
+	 * @param prefix
+	 *            prefix of each line
+	 */
+	public synchronized void dump(PrintWriter pw, String prefix) {
+		for (Map.Entry<String, Long> entry : counters.entrySet()) {
+			String name = entry.getKey();
+			pw.println(prefix + name + "=" + entry.getValue());
+			if (name.endsWith("_hits")) {
+				String base = name.substring(0, name.length() - 5);
+				long hits = entry.getValue();
+				long total = hits + getCount(base + "_misses");
+				if (total > 0) {
+					pw.println(prefix + base + "_hit_rate="
+							+ (hits * 1000 / total) / 10.0 + "%");
+				}
+			} else if (name.endsWith("_wasted")) {
+				String base = name.substring(0, name.length() - 7);
+				long requests = getCount(base + "_requests");
+				if (requests > 0) {
+					pw.println(prefix + base + "_wasted_ratio="
+							+ (entry.getValue() * 1000 / requests) / 10.0 + "%");
+				}
+			}
+		}
+		for (Map.Entry<String, long[]> entry : timings.entrySet()) {
+			long[] values = entry.getValue();
+			pw.println(prefix + entry.getKey() + ": count=" + values[0]
+					+ " mean=" + values[1] / values[0] + "ms max=" + values[2]
+					+ "ms");
+		}
+	}
+}
@@ -0,0 +1,293 @@
+/*
+ * Copyright (C) 2013 Distributed Computing & Security Group,
+ *                    Leibniz Universitaet Hannover, Germany
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.locationprivacy.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+
+/**
+ * PopulationGrid provides read access to a population density raster stored
+ * in a binary file. The file is memory-mapped, so even country-scale grids
+ * do not use heap memory.
+ *
+ * The raster is stored as summed-area table: entry (r, c) holds the number
+ * of people in all cells north of row r and west of column c. The population
+ * of any rectangle is computed from four entries. Sums are stored modulo
+ * 2^32, rectangle sums are correct as long as they stay below 2^32.
+ *
+ * File format (all values are big endian 32 bit integers):
+ * <pre>
+ * magic "LPPG", version, rows, columns,
+ * north border, west border, cell size (1e-7 degrees), reserved,
+ * (rows + 1) * (columns + 1) summed-area table entries, row by row
+ * </pre>
+ * Row 0 is the northernmost row. Files are created by PopulationGridBuilder
+ * of the host tools (module locationprivacy-tools).
+ */
+public class PopulationGrid {
+
+	/** Magic number "LPPG" at the start of a file */
+	public static final int MAGIC = 0x4c505047;
+
+	/** Version of the file format */
+	public static final int VERSION = 1;
+
+	/** Size of the file header in bytes */
+	public static final int HEADER_SIZE = 32;
+
+	/** Grids opened by this process, by file path */
+	private static final HashMap<String, PopulationGrid> grids = new HashMap<String, PopulationGrid>();
+
+	/** Path of the grid file */
+	private final String path;
+
+	/** Number of rows */
+	private final int rows;
+
+	/** Number of columns */
+	private final int columns;
+
+	/** Northern border of the grid in 1e-7 degrees */
+	private final int northE7;
+
+	/** Western border of the grid in 1e-7 degrees */
+	private final int westE7;
+
+	/** Side length of a cell in 1e-7 degrees */
+	private final int cellE7;
+
+	/** Lowest level whose blocks cover the whole grid */
+	private final int maxLevel;
+
+	/** Summed-area table */
+	private final IntBuffer table;
+
+	/**
+	 * Returns the grid stored in a file. Each file is mapped only once per
+	 * process.
+	 *
+	 * @param path
+	 *            path of the grid file
+	 * @return the grid
+	 * @throws IOException
+	 *             if the file cannot be read or has an invalid format
+	 */
+	public static synchronized PopulationGrid open(String path)
+			throws IOException {
+		PopulationGrid grid = grids.get(path);
+		if (grid == null) {
+			grid = new PopulationGrid(path);
+			grids.put(path, grid);
+		}
+		return grid;
+	}
+
+	/**
+	 * Creates new instance of PopulationGrid
+	 *
+	 * @param path
+	 *            path of the grid file
+	 * @throws IOException
+	 *             if the file cannot be read or has an invalid format
+	 */
+	private PopulationGrid(String path) throws IOException {
+		this.path = path;
+		File file = new File(path);
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY,
+					0, channel.size());
+			if (channel.size() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+				throw new IOException("Not a population grid: " + file);
+			}
+			if (buffer.getInt(4) != VERSION) {
+				throw new IOException("Unsupported population grid version "
+						+ buffer.getInt(4));
+			}
+			rows = buffer.getInt(8);
+			columns = buffer.getInt(12);
+			northE7 = buffer.getInt(16);
+			westE7 = buffer.getInt(20);
+			cellE7 = buffer.getInt(24);
+			long entries = (long) (rows + 1) * (columns + 1);
+			if (rows <= 0 || columns <= 0 || cellE7 <= 0
+					|| channel.size() != HEADER_SIZE + 4 * entries) {
+				throw new IOException("Corrupt population grid: " + file);
+			}
+			buffer.position(HEADER_SIZE);
+			table = buffer.slice().asIntBuffer();
+			int level = 0;
+			while ((1 << level) < Math.max(rows, columns)) {
+				level++;
+			}
+			maxLevel = level;
+		} finally {
+			// the mapping stays valid after the file is closed
+			raf.close();
+		}
+	}
+
+	/**
+	 * Returns the path of the grid file
+	 */
+	public String getPath() {
+		return path;
+	}
+
+	public int getRows() {
+		return rows;
+	}
+
+	public int getColumns() {
+		return columns;
+	}
+
+	/**
+	 * Returns the row containing a latitude
+	 *
+	 * @param latE7
+	 *            latitude in 1e-7 degrees
+	 * @return row index, -1 if the latitude is outside of the grid
+	 */
+	public int getRow(int latE7) {
+		long offset = (long) northE7 - latE7;
+		if (offset < 0 || offset >= (long) rows * cellE7) {
+			return -1;
+		}
+		return (int) (offset / cellE7);
+	}
+
+	/**
+	 * Returns the column containing a longitude
+	 *
+	 * @param lonE7
+	 *            longitude in 1e-7 degrees
+	 * @return column index, -1 if the longitude is outside of the grid
+	 */
+	public int getColumn(int lonE7) {
+		long offset = (long) lonE7 - westE7;
+		if (offset < 0 || offset >= (long) columns * cellE7) {
+			return -1;
+		}
+		return (int) (offset / cellE7);
+	}
+
+	/**
+	 * Returns the latitude of a (fractional) row border
+	 *
+	 * @param row
+	 *            row, may be fractional
+	 * @return latitude in degrees
+	 */
+	public double getLatitude(double row) {
+		return (northE7 - row * cellE7) / MetricGrid.E7;
+	}
+
+	/**
+	 * Returns the longitude of a (fractional) column border
+	 *
+	 * @param column
+	 *            column, may be fractional
+	 * @return longitude in degrees
+	 */
+	public double getLongitude(double column) {
+		return (westE7 + column * cellE7) / MetricGrid.E7;
+	}
+
+	/**
+	 * Returns the population of a rectangle of cells. The rectangle is
+	 * clipped to the grid.
+	 *
+	 * @param row0
+	 *            first row
+	 * @param column0
+	 *            first column
+	 * @param row1
+	 *            row after the last row
+	 * @param column1
+	 *            column after the last column
+	 * @return number of people living in the rectangle
+	 */
+	public long getPopulation(int row0, int column0, int row1, int column1) {
+		row0 = Math.max(0, row0);
+		column0 = Math.max(0, column0);
+		row1 = Math.min(rows, row1);
+		column1 = Math.min(columns, column1);
+		if (row0 >= row1 || column0 >= column1) {
+			return 0;
+		}
+		int sum = get(row1, column1) - get(row0, column1) - get(row1, column0)
+				+ get(row0, column0);
+		return sum & 0xffffffffL;
+	}
+
+	/**
+	 * Returns the level of the smallest block containing a cell that has at
+	 * least k inhabitants. Blocks of level l are the aligned squares of 2^l x
+	 * 2^l cells. They are nested, so their population grows with l and the
+	 * level is found by a binary search over the levels.
+	 *
+	 * @param row
+	 *            row of the cell
+	 * @param column
+	 *            column of the cell
+	 * @param k
+	 *            minimum number of inhabitants
+	 * @return level, -1 if even the whole grid has less than k inhabitants
+	 */
+	public int getBlockLevel(int row, int column, long k) {
+		// a block of the highest level covers at least the whole grid
+		if (getBlockPopulation(row, column, maxLevel) < k) {
+			return -1;
+		}
+		int low = 0;
+		int high = maxLevel;
+		while (low < high) {
+			int level = (low + high) >>> 1;
+			if (getBlockPopulation(row, column, level) >= k) {
+				high = level;
+			} else {
+				low = level + 1;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Returns the population of the block of a level containing a cell
+	 */
+	private long getBlockPopulation(int row, int column, int level) {
+		int row0 = (row >> level) << level;
+		int column0 = (column >> level) << level;
+		return getPopulation(row0, column0, row0 + (1 << level), column0
+				+ (1 << level));
+	}
+
+	/**
+	 * Returns an entry of the summed-area table
+	 */
+	private int get(int row, int column) {
+		return table.get(row * (columns + 1) + column);
+	}
+}
@@ -0,0 +1,319 @@
+/*
+ * Copyright (C) 2013 Distributed Computing & Security Group,
+ *                    Leibniz Universitaet Hannover, Germany
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.locationprivacy.util;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import android.os.SystemClock;
+
+/**
+ * Prefetcher warms results of an algorithm that asks a remote service, so a
+ * moving user rarely has to wait for the network. From the recent fixes it
+ * derives speed and bearing, predicts the next cells of a MetricGrid on the
+ * way and lets the algorithm fetch results for them in the background.
+ *
+ * Prefetching is strictly limited: at most a given number of requests per
+ * minute with a burst of MAX_CELLS, no requests while the user stands
+ * still, and only cells without a result are fetched.
+ *
+ * The prefetcher counts in the given metrics:
+ * prefetch_requests, requests started;
+ * prefetch_hits, cells entered with a prefetched result;
+ * prefetch_misses, cells entered without any result;
+ * prefetch_wasted, prefetched results never used, because the user went
+ * elsewhere, the request failed or it was too late.
+ */
+public class Prefetcher {
+
+	/**
+	 * Fetcher fetches results for cells on behalf of the prefetcher
+	 */
+	public interface Fetcher {
+
+		/**
+		 * Returns whether a result for a cell is available
+		 *
+		 * @param cell
+		 *            cell identifier
+		 */
+		boolean isAvailable(long cell);
+
+		/**
+		 * Starts fetching the result for a cell in the background. Must not
+		 * block.
+		 *
+		 * @param cell
+		 *            cell identifier
+		 * @param latitude
+		 *            predicted latitude within the cell
+		 * @param longitude
+		 *            predicted longitude within the cell
+		 * @return true if the request has been started
+		 */
+		boolean fetch(long cell, double latitude, double longitude);
+	}
+
+	/** Maximum number of cells predicted ahead */
+	private static final int MAX_CELLS = 3;
+
+	/** Seconds of movement predicted */
+	private static final int LOOKAHEAD = 60;
+
+	/** Minimum speed in meters per second for a prediction */
+	private static final double MIN_SPEED = 1;
+
+	/** Weight of the newest velocity in the smoothed velocity */
+	private static final double SMOOTHING = 0.5;
+
+	/** Maximum age of the previous fix used for the velocity in milliseconds */
+	private static final long MAX_FIX_AGE = 30000;
+
+	/** Maximum number of prefetched cells waiting to be used */
+	private static final int MAX_PREFETCHED = 16;
+
+	/** Length of one degree latitude in meters */
+	private static final double METER_PER_LATITUDE = 111320;
+
+	/** Grid the cells are taken from */
+	private final MetricGrid grid;
+
+	/** Fetcher of results */
+	private final Fetcher fetcher;
+
+	/** Metrics the prefetches are counted in */
+	private final Metrics metrics;
+
+	/** Prefetched cells in order of their request, with expiration time */
+	private final LinkedHashMap<Long, Long> prefetched = new LinkedHashMap<Long, Long>();
+
+	/** Requests per minute */
+	private int budget = 6;
+
+	/** Time prefetched results are kept in milliseconds */
+	private long ttl = 600000;
+
+	/** Requests that may be started now */
+	private double tokens = MAX_CELLS;
+
+	/** Time the tokens have been refilled */
+	private long refilled = SystemClock.elapsedRealtime();
+
+	/** Previous fix, time in milliseconds, 0 if there is none */
+	private double lastLatitude;
+	private double lastLongitude;
+	private long lastTime;
+
+	/** Cell of the previous fix */
+	private long lastCell = -1;
+
+	/** Smoothed velocity in meters per second */
+	private double north;
+	private double east;
+
+	/**
+	 * Creates new instance of Prefetcher
+	 *
+	 * @param grid
+	 *            grid the cells are taken from
+	 * @param fetcher
+	 *            fetcher of results
+	 * @param metrics
+	 *            metrics the prefetches are counted in
+	 */
+	public Prefetcher(MetricGrid grid, Fetcher fetcher, Metrics metrics) {
+		this.grid = grid;
+		this.fetcher = fetcher;
+		this.metrics = metrics;
+	}
+
+	public MetricGrid getGrid() {
+		return grid;
+	}
+
+	/**
+	 * Sets the limits of the prefetcher
+	 *
+	 * @param budget
+	 *            requests per minute, 0 disables prefetching
+	 * @param ttl
+	 *            time prefetched results are kept in milliseconds
+	 */
+	public synchronized void setLimits(int budget, long ttl) {
+		this.budget = Math.max(0, budget);
+		this.ttl = ttl;
+	}
+
+	/**
+	 * Reports a fix and prefetches the cells predicted from it
+	 *
+	 * @param latitude
+	 *            latitude in degrees
+	 * @param longitude
+	 *            longitude in degrees
+	 * @param time
+	 *            time of the fix in milliseconds
+	 * @param available
+	 *            whether a result for the cell of the fix was available
+	 */
+	public synchronized void update(double latitude, double longitude,
+			long time, boolean available) {
+		long now = SystemClock.elapsedRealtime();
+		expire(now);
+		long cell = grid.getCell(latitude, longitude);
+		if (cell != lastCell) {
+			Long expires = prefetched.remove(cell);
+			if (expires != null) {
+				metrics.increment(available ? "prefetch_hits"
+						: "prefetch_wasted");
+			}
+			if (!available) {
+				metrics.increment("prefetch_misses");
+			}
+			lastCell = cell;
+		}
+		updateVelocity(latitude, longitude, time);
+		double speed = Math.sqrt(north * north + east * east);
+		if (speed < MIN_SPEED || budget == 0) {
+			return;
+		}
+		for (Prediction prediction : predict(latitude, longitude, speed,
+				cell)) {
+			long next = prediction.cell;
+			if (prefetched.containsKey(next) || fetcher.isAvailable(next)) {
+				continue;
+			}
+			if (!takeToken(now)) {
+				return;
+			}
+			if (!fetcher.fetch(next, prediction.latitude,
+					prediction.longitude)) {
+				tokens++;
+				return;
+			}
+			metrics.increment("prefetch_requests");
+			prefetched.put(next, now + ttl);
+			if (prefetched.size() > MAX_PREFETCHED) {
+				Iterator<Long> eldest = prefetched.keySet().iterator();
+				eldest.next();
+				eldest.remove();
+				metrics.increment("prefetch_wasted");
+			}
+		}
+	}
+
+	/**
+	 * Updates the smoothed velocity with a new fix
+	 */
+	private void updateVelocity(double latitude, double longitude, long time) {
+		long elapsed = time - lastTime;
+		if (lastTime == 0 || elapsed > MAX_FIX_AGE) {
+			north = 0;
+			east = 0;
+		} else if (elapsed > 0) {
+			double seconds = elapsed / 1000.0;
+			double vNorth = (latitude - lastLatitude) * METER_PER_LATITUDE
+					/ seconds;
+			double vEast = (longitude - lastLongitude) * METER_PER_LATITUDE
+					* Math.cos(Math.toRadians(latitude)) / seconds;
+			north = SMOOTHING * vNorth + (1 - SMOOTHING) * north;
+			east = SMOOTHING * vEast + (1 - SMOOTHING) * east;
+		} else {
+			// same or older fix, keep the previous one as reference
+			return;
+		}
+		lastLatitude = latitude;
+		lastLongitude = longitude;
+		lastTime = time;
+	}
+
+	/**
+	 * Predicts the next cells on the way, nearest first. The way is sampled
+	 * every half cell up to the distance covered in LOOKAHEAD seconds.
+	 *
+	 * @return predicted cells
+	 */
+	private ArrayList<Prediction> predict(double latitude, double longitude,
+			double speed, long cell) {
+		ArrayList<Prediction> candidates = new ArrayList<Prediction>(MAX_CELLS);
+		double step = grid.getCellSize() / 2.0;
+		double distance = Math.min(speed * LOOKAHEAD, MAX_CELLS * 2
+				* grid.getCellSize());
+		long previous = cell;
+		for (double d = step; d <= distance
+				&& candidates.size() < MAX_CELLS; d += step) {
+			double lat = latitude + north / speed * d / METER_PER_LATITUDE;
+			double lon = longitude + east / speed * d
+					/ (METER_PER_LATITUDE * Math.cos(Math.toRadians(latitude)));
+			long next = grid.getCell(lat, lon);
+			if (next != previous && next != cell) {
+				candidates.add(new Prediction(lat, lon, next));
+				previous = next;
+			}
+		}
+		return candidates;
+	}
+
+	/**
+	 * Takes a token of the request budget
+	 *
+	 * @return true if a request may be started
+	 */
+	private boolean takeToken(long now) {
+		tokens = Math.min(MAX_CELLS, tokens + (now - refilled) * budget
+				/ 60000.0);
+		refilled = now;
+		if (tokens < 1) {
+			return false;
+		}
+		tokens--;
+		return true;
+	}
+
+	/**
+	 * Drops prefetched cells whose results have expired unused
+	 */
+	private void expire(long now) {
+		Iterator<Map.Entry<Long, Long>> entries = prefetched.entrySet()
+				.iterator();
+		while (entries.hasNext()) {
+			if (entries.next().getValue() > now) {
+				break;
+			}
+			entries.remove();
+			metrics.increment("prefetch_wasted");
+		}
+	}
+
+	/**
+	 * Prediction is a cell on the way with a location within it
+	 */
+	private static class Prediction {
+		final double latitude;
+		final double longitude;
+		final long cell;
+
+		Prediction(double latitude, double longitude, long cell) {
+			this.latitude = latitude;
+			this.longitude = longitude;
+			this.cell = cell;
+		}
+	}
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2013 Distributed Computing & Security Group,
+ *                    Leibniz Universitaet Hannover, Germany
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.locationprivacy.util;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.HashMap;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * SingleFlight coalesces concurrent calls with the same key: the first
+ * caller runs the call, callers arriving while it is in flight wait for it
+ * and share its result or its exception. Once the call has finished, the
+ * next caller with that key runs it again, so results are not cached here.
+ *
+ * Calls that joined a call in flight are counted in the given metrics.
+ *
+ * @param <K>
+ *            type of the keys
+ * @param <V>
+ *            type of the results
+ */
+public class SingleFlight<K, V> {
+
+	/**
+	 * Call is the work done once for all concurrent callers
+	 *
+	 * @param <V>
+	 *            type of the result
+	 */
+	public interface Call<V> {
+
+		/**
+		 * Runs the call
+		 *
+		 * @return result, may be null
+		 * @throws IOException
+		 *             if the call fails
+		 */
+		V call() throws IOException;
+	}
+
+	/** Calls in flight by key */
+	private final HashMap<K, Flight<V>> flights = new HashMap<K, Flight<V>>();
+
+	/** Metrics the shared calls are counted in */
+	private final Metrics metrics;
+
+	/** Name of the counter of shared calls */
+	private final String counter;
+
+	/**
+	 * Creates new instance of SingleFlight
+	 *
+	 * @param metrics
+	 *            metrics the shared calls are counted in
+	 * @param counter
+	 *            name of the counter of shared calls
+	 */
+	public SingleFlight(Metrics metrics, String counter) {
+		this.metrics = metrics;
+		this.counter = counter;
+	}
+
+	/**
+	 * Runs a call or waits for the call in flight with the same key
+	 *
+	 * @param key
+	 *            key of the call
+	 * @param call
+	 *            call run if there is none in flight
+	 * @return result of the call
+	 * @throws IOException
+	 *             if the call fails or the waiting thread is interrupted
+	 */
+	public V execute(K key, Call<V> call) throws IOException {
+		Flight<V> flight;
+		boolean leader = false;
+		synchronized (flights) {
+			flight = flights.get(key);
+			if (flight == null) {
+				flight = new Flight<V>();
+				flights.put(key, flight);
+				leader = true;
+			}
+		}
+		if (!leader) {
+			metrics.increment(counter);
+			return flight.await();
+		}
+		try {
+			flight.value = call.call();
+			return flight.value;
+		} catch (IOException e) {
+			flight.error = e;
+			throw e;
+		} catch (RuntimeException e) {
+			flight.error = e;
+			throw e;
+		} catch (Error e) {
+			flight.error = e;
+			throw e;
+		} finally {
+			synchronized (flights) {
+				flights.remove(key);
+			}
+			flight.done.countDown();
+		}
+	}
+
+	/**
+	 * Returns the number of calls in flight
+	 */
+	public int getInFlight() {
+		synchronized (flights) {
+			return flights.size();
+		}
+	}
+
+	/**
+	 * Flight is a running call. Result and exception are published by the
+	 * latch.
+	 */
+	private static class Flight<V> {
+		final CountDownLatch done = new CountDownLatch(1);
+		V value;
+		Throwable error;
+
+		/**
+		 * Waits for the call and returns its result
+		 */
+		V await() throws IOException {
+			try {
+				done.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted waiting for call");
+			}
+			if (error instanceof IOException) {
+				throw (IOException) error;
+			} else if (error instanceof RuntimeException) {
+				throw (RuntimeException) error;
+			} else if (error instanceof Error) {
+				throw (Error) error;
+			}
+			return value;
+		}
+	}
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2013 Distributed Computing & Security Group,
+ *                    Leibniz Universitaet Hannover, Germany
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.locationprivacy.util;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * SipHash is an implementation of the keyed pseudorandom function SipHash-2-4
+ * by Aumasson and Bernstein for messages of four 64 bit words. The message
+ * words are hashed as their little endian byte representation, so the result
+ * equals SipHash-2-4 of the corresponding 32 byte message.
+ *
+ * Instances are immutable and hashing does not allocate, so an instance can
+ * be used by multiple threads.
+ */
+public class SipHash {
+
+	/** First half of the key */
+	private final long k0;
+
+	/** Second half of the key */
+	private final long k1;
+
+	/**
+	 * Creates new instance of SipHash
+	 *
+	 * @param k0
+	 *            first 8 bytes of the key, little endian
+	 * @param k1
+	 *            last 8 bytes of the key, little endian
+	 */
+	public SipHash(long k0, long k1) {
+		this.k0 = k0;
+		this.k1 = k1;
+	}
+
+	/**
+	 * Creates new instance of SipHash with a key derived from a secret. The
+	 * key are the first 16 bytes of the SHA-256 hash of the secret.
+	 *
+	 * @param secret
+	 *            secret of arbitrary length
+	 * @return new instance
+	 */
+	public static SipHash fromSecret(String secret) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-256").digest(
+					secret.getBytes("UTF-8"));
+			return new SipHash(toLong(digest, 0), toLong(digest, 8));
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Computes the pseudorandom function of four words
+	 *
+	 * @return 64 bit pseudorandom value
+	 */
+	public long hash(long m0, long m1, long m2, long m3) {
+		long v0 = k0 ^ 0x736f6d6570736575L;
+		long v1 = k1 ^ 0x646f72616e646f6dL;
+		long v2 = k0 ^ 0x6c7967656e657261L;
+		long v3 = k1 ^ 0x7465646279746573L;
+		long m = m0;
+		for (int i = 0; i < 5; i++) {
+			if (i == 1) {
+				m = m1;
+			} else if (i == 2) {
+				m = m2;
+			} else if (i == 3) {
+				m = m3;
+			} else if (i == 4) {
+				// last block: message length 32 in the highest byte
+				m = 32L << 56;
+			}
+			v3 ^= m;
+			for (int r = 0; r < 2; r++) {
+				v0 += v1;
+				v1 = Long.rotateLeft(v1, 13);
+				v1 ^= v0;
+				v0 = Long.rotateLeft(v0, 32);
+				v2 += v3;
+				v3 = Long.rotateLeft(v3, 16);
+				v3 ^= v2;
+				v0 += v3;
+				v3 = Long.rotateLeft(v3, 21);
+				v3 ^= v0;
+				v2 += v1;
+				v1 = Long.rotateLeft(v1, 17);
+				v1 ^= v2;
+				v2 = Long.rotateLeft(v2, 32);
+			}
+			v0 ^= m;
+		}
+		v2 ^= 0xff;
+		for (int r = 0; r < 4; r++) {
+			v0 += v1;
+			v1 = Long.rotateLeft(v1, 13);
+			v1 ^= v0;
+			v0 = Long.rotateLeft(v0, 32);
+			v2 += v3;
+			v3 = Long.rotateLeft(v3, 16);
+			v3 ^= v2;
+			v0 += v3;
+			v3 = Long.rotateLeft(v3, 21);
+			v3 ^= v0;
+			v2 += v1;
+			v1 = Long.rotateLeft(v1, 17);
+			v1 ^= v2;
+			v2 = Long.rotateLeft(v2, 32);
+		}
+		return v0 ^ v1 ^ v2 ^ v3;
+	}
+
+	/**
+	 * Reads 8 bytes little endian
+	 */
+	private static long toLong(byte[] bytes, int offset) {
+		long value = 0;
+		for (int i = 7; i >= 0; i--) {
+			value = (value << 8) | (bytes[offset + i] & 0xff);
+		}
+		return value;
+	}
+}
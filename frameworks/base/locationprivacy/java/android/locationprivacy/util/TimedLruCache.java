@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2013 Distributed Computing & Security Group,
+ *                    Leibniz Universitaet Hannover, Germany
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.locationprivacy.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import android.os.SystemClock;
+
+/**
+ * TimedLruCache is a cache of bounded size whose entries expire. Each entry
+ * gets its own time to live when it is put, expired entries are treated as
+ * missing and removed on access. If the cache is full, the least recently
+ * used entry is dropped.
+ *
+ * Time is taken from SystemClock.elapsedRealtime(), so entries do not live
+ * longer or shorter if the wall clock is changed. All methods are
+ * synchronized, instances can be shared between threads.
+ *
+ * @param <K>
+ *            type of the keys
+ * @param <V>
+ *            type of the values
+ */
+public class TimedLruCache<K, V> {
+
+	/** Entries in access order, least recently used first */
+	private final LinkedHashMap<K, TimedValue<V>> entries;
+
+	/**
+	 * Creates new instance of TimedLruCache
+	 *
+	 * @param maxSize
+	 *            maximum number of entries
+	 */
+	public TimedLruCache(final int maxSize) {
+		entries = new LinkedHashMap<K, TimedValue<V>>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(
+					Map.Entry<K, TimedValue<V>> eldest) {
+				return size() > maxSize;
+			}
+		};
+	}
+
+	/**
+	 * Returns the value of a key
+	 *
+	 * @param key
+	 *            key
+	 * @return value, null if there is no value or it has expired
+	 */
+	public synchronized V get(K key) {
+		TimedValue<V> entry = entries.get(key);
+		if (entry == null) {
+			return null;
+		}
+		if (SystemClock.elapsedRealtime() >= entry.expires) {
+			entries.remove(key);
+			return null;
+		}
+		return entry.value;
+	}
+
+	/**
+	 * Puts a value into the cache
+	 *
+	 * @param key
+	 *            key
+	 * @param value
+	 *            value
+	 * @param ttl
+	 *            time to live in milliseconds, the value is not stored if it
+	 *            is not positive
+	 */
+	public synchronized void put(K key, V value, long ttl) {
+		if (ttl <= 0) {
+			entries.remove(key);
+			return;
+		}
+		entries.put(key, new TimedValue<V>(value,
+				SystemClock.elapsedRealtime() + ttl));
+	}
+
+	/**
+	 * Removes the value of a key
+	 */
+	public synchronized void remove(K key) {
+		entries.remove(key);
+	}
+
+	/**
+	 * Removes all values
+	 */
+	public synchronized void clear() {
+		entries.clear();
+	}
+
+	/**
+	 * Returns the number of entries, including expired ones not yet removed
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * TimedValue stores a value with its expiration time
+	 */
+	private static class TimedValue<V> {
+		final V value;
+		final long expires;
+
+		TimedValue(V value, long expires) {
+			this.value = value;
+			this.expires = expires;
+		}
+	}
+}
@@ -0,0 +1,54 @@
+# Copyright (C) 2013 Distributed Computing & Security Group,
+#                    Leibniz Universitaet Hannover, Germany
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+#      http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+
+LOCAL_PATH := $(call my-dir)
+
+# Host tools for testing the web service algorithm and building gazetteers,
+# boundary indexes and population grids
+include $(CLEAR_VARS)
+
+LOCAL_SRC_FILES := $(call all-java-files-under, src) \
+	../java/android/locationprivacy/util/BoundaryIndex.java \
+	../java/android/locationprivacy/util/Gazetteer.java \
+	../java/android/locationprivacy/util/LocationJsonParser.java \
+	../java/android/locationprivacy/util/MetricGrid.java \
+	../java/android/locationprivacy/util/PopulationGrid.java
+
+LOCAL_MODULE := locationprivacy-tools
+LOCAL_MODULE_TAGS := optional
+
+include $(BUILD_HOST_JAVA_LIBRARY)
+
+# Harness driving the web service algorithm on the device, started by the
+# script lpharness
+include $(CLEAR_VARS)
+
+LOCAL_SRC_FILES := $(call all-java-files-under, harness/src) \
+	src/android/locationprivacy/tools/Histogram.java \
+	src/android/locationprivacy/tools/Options.java
+
+LOCAL_MODULE := lpharness
+LOCAL_MODULE_TAGS := optional
+
+include $(BUILD_JAVA_LIBRARY)
+
+include $(CLEAR_VARS)
+
+LOCAL_MODULE := lpharness
+LOCAL_SRC_FILES := harness/lpharness
+LOCAL_MODULE_CLASS := EXECUTABLES
+LOCAL_MODULE_TAGS := optional
+
+include $(BUILD_PREBUILT)
@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2013 Distributed Computing & Security Group,
+ *                    Leibniz Universitaet Hannover, Germany
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.locationprivacy.tools;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import android.location.Location;
+import android.locationprivacy.algorithm.GeoIndistinguishability;
+import android.locationprivacy.algorithm.Radius;
+import android.locationprivacy.model.AbstractLocationPrivacyAlgorithm;
+
+/**
+ * GeoIndHarness checks the accuracy of the algorithm GeoIndistinguishability
+ * and compares its throughput with the algorithm Radius.
+ *
+ * The distances between the locations and their obfuscated locations are
+ * compared with the radial distribution C(r) = 1 - (1 + epsilon * r) *
+ * e^(-epsilon * r) by a Kolmogorov-Smirnov test. The harness fails if the
+ * statistic exceeds the critical value at a significance level of 1%, i.e.
+ * the interpolated inverse CDF does not sample the planar Laplace
+ * distribution.
+ *
+ * Options:
+ * --epsilon epsilon per kilometer (default 7)
+ * --samples number of locations of the test (default 100000)
+ * --fixes number of locations per throughput measurement (default 200000)
+ */
+public class GeoIndHarness {
+
+	/** Critical value of the Kolmogorov-Smirnov statistic times sqrt(n) at 1% */
+	private static final double KS_CRITICAL = 1.628;
+
+	/** Sink keeping the results alive */
+	private static double sink;
+
+	/**
+	 * Runs the harness
+	 *
+	 * @param args
+	 *            options, see class description
+	 */
+	public static void main(String[] args) {
+		Options options = new Options(args);
+		double epsilon = options.getDouble("epsilon", 7);
+		int samples = options.getInt("samples", 100000);
+		int fixes = options.getInt("fixes", 200000);
+		if (!(epsilon > 0) || Double.isInfinite(epsilon)) {
+			throw new IllegalArgumentException("Invalid epsilon " + epsilon);
+		}
+
+		GeoIndistinguishability geoind = new GeoIndistinguishability();
+		geoind.getConfiguration().getDoubleValues().put("epsilon", epsilon);
+		Random random = new Random(1);
+
+		double[] distances = new double[samples];
+		for (int i = 0; i < samples; i++) {
+			Location location = randomLocation(random);
+			distances[i] = location.distanceTo(geoind.obfuscate(location));
+		}
+		Arrays.sort(distances);
+		double perMeter = epsilon / 1000.0;
+		double statistic = 0;
+		for (int i = 0; i < samples; i++) {
+			double er = perMeter * distances[i];
+			double cdf = 1 - (1 + er) * Math.exp(-er);
+			statistic = Math.max(statistic, Math.max(cdf - (double) i
+					/ samples, (double) (i + 1) / samples - cdf));
+		}
+		double critical = KS_CRITICAL / Math.sqrt(samples);
+		boolean passed = statistic <= critical;
+		System.out.printf("epsilon:    %.2f/km, mean distance %.1f m (expected %.1f m)%n",
+				epsilon, mean(distances), 2 / perMeter);
+		System.out.printf("KS test:    D = %.5f, critical %.5f at 1%%: %s%n",
+				statistic, critical, passed ? "passed" : "FAILED");
+
+		Location[] locations = new Location[fixes];
+		for (int i = 0; i < fixes; i++) {
+			locations[i] = randomLocation(random);
+		}
+		measure("geoind", geoind, locations);
+		measure("radius", new Radius(), locations);
+		if (!passed) {
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Measures and prints the throughput of an algorithm, after a warm-up
+	 */
+	private static void measure(String name,
+			AbstractLocationPrivacyAlgorithm algorithm, Location[] locations) {
+		obfuscate(algorithm, locations);
+		long start = System.nanoTime();
+		obfuscate(algorithm, locations);
+		long duration = System.nanoTime() - start;
+		System.out.printf("%-10s  %8.0f locations/s, %5d ns per location%n",
+				name + ":", locations.length * 1e9 / duration, duration
+						/ locations.length);
+	}
+
+	/**
+	 * Obfuscates all locations
+	 */
+	private static void obfuscate(AbstractLocationPrivacyAlgorithm algorithm,
+			Location[] locations) {
+		for (Location location : locations) {
+			Location result = algorithm.obfuscate(location);
+			if (result != null) {
+				sink += result.getLatitude();
+			}
+		}
+	}
+
+	/**
+	 * Returns a random location in Hannover
+	 */
+	private static Location randomLocation(Random random) {
+		Location location = new Location("gps");
+		location.setLatitude(52.3 + random.nextDouble() * 0.2);
+		location.setLongitude(9.6 + random.nextDouble() * 0.2);
+		location.setAccuracy(10);
+		location.setTime(System.currentTimeMillis());
+		return location;
+	}
+
+	/**
+	 * Returns the mean of values
+	 */
+	private static double mean(double[] values) {
+		double sum = 0;
+		for (double value : values) {
+			sum += value;
+		}
+		return sum / values.length;
+	}
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright (C) 2013 Distributed Computing & Security Group,
+ *                    Leibniz Universitaet Hannover, Germany
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.locationprivacy.tools;
+
+import java.util.Random;
+
+import android.location.Location;
+import android.locationprivacy.util.Geodesy;
+
+/**
+ * GeodesyHarness compares the approximation of Geodesy with
+ * Location.distanceBetween, which it replaces on the device.
+ *
+ * It reports the largest relative error of approximateDistance for random
+ * pairs of coordinates within MAX_LATITUDE and MAX_DISTANCE, and the time per
+ * pair of both methods. For pairs around a threshold it checks that
+ * isFartherThan always decides like a comparison of the exact distance, and
+ * reports how often it falls back to the exact method and the time per pair
+ * of both decisions. The harness fails if the error exceeds
+ * MAX_RELATIVE_ERROR or a decision differs.
+ *
+ * Options:
+ * --pairs number of pairs per measurement (default 1000000)
+ * --threshold distance in meters compared with (default 50, the movement
+ * threshold of the algorithm radius)
+ */
+public class GeodesyHarness {
+
+	/** Meters per degree of latitude */
+	private static final double METERS_PER_DEGREE = 111320;
+
+	/** Sink keeping the results alive */
+	private static double sink;
+
+	/**
+	 * Runs the harness
+	 *
+	 * @param args
+	 *            options, see class description
+	 */
+	public static void main(String[] args) {
+		Options options = new Options(args);
+		int pairs = options.getInt("pairs", 1000000);
+		double threshold = options.getDouble("threshold", 50);
+		Random random = new Random(1);
+		float[] result = new float[1];
+
+		double[][] coordinates = randomPairs(random, pairs,
+				Geodesy.MAX_DISTANCE);
+		double maxError = 0;
+		double maxErrorLatitude = 0;
+		double maxErrorDistance = 0;
+		for (int i = 0; i < pairs; i++) {
+			Location.distanceBetween(coordinates[0][i], coordinates[1][i],
+					coordinates[2][i], coordinates[3][i], result);
+			// below a meter the float result of the exact method dominates
+			if (result[0] < 1) {
+				continue;
+			}
+			double error = Math.abs(Geodesy.approximateDistance(
+					coordinates[0][i], coordinates[1][i], coordinates[2][i],
+					coordinates[3][i])
+					- result[0]) / result[0];
+			if (error > maxError) {
+				maxError = error;
+				maxErrorLatitude = coordinates[0][i];
+				maxErrorDistance = result[0];
+			}
+		}
+		boolean passed = maxError <= Geodesy.MAX_RELATIVE_ERROR;
+		System.out.printf(
+				"max error:  %.2e at %.1f degrees and %.0f m (bound %.0e): %s%n",
+				maxError, maxErrorLatitude, maxErrorDistance,
+				Geodesy.MAX_RELATIVE_ERROR, passed ? "passed" : "FAILED");
+		// warm up
+		exactDistances(coordinates, result);
+		approximateDistances(coordinates);
+		long start = System.nanoTime();
+		exactDistances(coordinates, result);
+		long exact = System.nanoTime() - start;
+		start = System.nanoTime();
+		approximateDistances(coordinates);
+		long approximate = System.nanoTime() - start;
+		System.out.printf(
+				"distance:   exact %5d ns, approximate %5d ns per pair (%.1fx)%n",
+				exact / pairs, approximate / pairs, (double) exact
+						/ approximate);
+
+		coordinates = randomPairs(random, pairs, 2 * threshold);
+		int differences = 0;
+		int fallbacks = 0;
+		for (int i = 0; i < pairs; i++) {
+			Location.distanceBetween(coordinates[0][i], coordinates[1][i],
+					coordinates[2][i], coordinates[3][i], result);
+			boolean expected = result[0] > threshold;
+			double distance = Geodesy.approximateDistance(coordinates[0][i],
+					coordinates[1][i], coordinates[2][i], coordinates[3][i]);
+			if (Math.abs(distance - threshold) <= threshold
+					* Geodesy.MAX_RELATIVE_ERROR) {
+				fallbacks++;
+			}
+			if (Geodesy.isFartherThan(coordinates[0][i], coordinates[1][i],
+					coordinates[2][i], coordinates[3][i], threshold, result) != expected) {
+				differences++;
+			}
+		}
+		passed &= differences == 0;
+		exactDecisions(coordinates, threshold, result);
+		fastDecisions(coordinates, threshold, result);
+		start = System.nanoTime();
+		exactDecisions(coordinates, threshold, result);
+		exact = System.nanoTime() - start;
+		start = System.nanoTime();
+		fastDecisions(coordinates, threshold, result);
+		long fast = System.nanoTime() - start;
+		System.out.printf(
+				"> %.0f m:     exact %5d ns, isFartherThan %5d ns per pair (%.1fx), %.2f%% exact fallbacks, %d differ%n",
+				threshold, exact / pairs, fast / pairs, (double) exact / fast,
+				fallbacks * 100.0 / pairs, differences);
+		if (!passed) {
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Returns random pairs of coordinates within MAX_LATITUDE and a distance
+	 * up to maxDistance
+	 *
+	 * @return latitudes and longitudes of the first and second coordinates
+	 */
+	private static double[][] randomPairs(Random random, int pairs,
+			double maxDistance) {
+		double[][] coordinates = new double[4][pairs];
+		for (int i = 0; i < pairs; i++) {
+			double latitude;
+			double longitude;
+			double latitude2;
+			double longitude2;
+			do {
+				latitude = (random.nextDouble() * 2 - 1) * Geodesy.MAX_LATITUDE;
+				longitude = (random.nextDouble() * 2 - 1) * 180;
+				double distance = random.nextDouble() * maxDistance;
+				double heading = random.nextDouble() * 2 * Math.PI;
+				latitude2 = latitude + distance * Math.cos(heading)
+						/ METERS_PER_DEGREE;
+				longitude2 = longitude + distance * Math.sin(heading)
+						/ (METERS_PER_DEGREE * Math.cos(Math.toRadians(latitude)));
+			} while (Math.abs(latitude2) > Geodesy.MAX_LATITUDE);
+			if (longitude2 > 180) {
+				longitude2 -= 360;
+			} else if (longitude2 < -180) {
+				longitude2 += 360;
+			}
+			coordinates[0][i] = latitude;
+			coordinates[1][i] = longitude;
+			coordinates[2][i] = latitude2;
+			coordinates[3][i] = longitude2;
+		}
+		return coordinates;
+	}
+
+	/**
+	 * Computes the distances of all pairs with Location.distanceBetween
+	 */
+	private static void exactDistances(double[][] coordinates, float[] result) {
+		for (int i = 0; i < coordinates[0].length; i++) {
+			Location.distanceBetween(coordinates[0][i], coordinates[1][i],
+					coordinates[2][i], coordinates[3][i], result);
+			sink += result[0];
+		}
+	}
+
+	/**
+	 * Computes the distances of all pairs with Geodesy.approximateDistance
+	 */
+	private static void approximateDistances(double[][] coordinates) {
+		for (int i = 0; i < coordinates[0].length; i++) {
+			sink += Geodesy.approximateDistance(coordinates[0][i],
+					coordinates[1][i], coordinates[2][i], coordinates[3][i]);
+		}
+	}
+
+	/**
+	 * Compares the distances of all pairs computed by
+	 * Location.distanceBetween with a threshold
+	 */
+	private static void exactDecisions(double[][] coordinates,
+			double threshold, float[] result) {
+		for (int i = 0; i < coordinates[0].length; i++) {
+			Location.distanceBetween(coordinates[0][i], coordinates[1][i],
+					coordinates[2][i], coordinates[3][i], result);
+			if (result[0] > threshold) {
+				sink++;
+			}
+		}
+	}
+
+	/**
+	 * Compares the distances of all pairs with a threshold using
+	 * Geodesy.isFartherThan
+	 */
+	private static void fastDecisions(double[][] coordinates,
+			double threshold, float[] result) {
+		for (int i = 0; i < coordinates[0].length; i++) {
+			if (Geodesy.isFartherThan(coordinates[0][i], coordinates[1][i],
+					coordinates[2][i], coordinates[3][i], threshold, result)) {
+				sink++;
+			}
+		}
+	}
+}
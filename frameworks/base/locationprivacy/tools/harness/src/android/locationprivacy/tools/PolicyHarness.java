@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2013 Distributed Computing & Security Group,
+ *                    Leibniz Universitaet Hannover, Germany
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.locationprivacy.tools;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import android.locationprivacy.algorithm.Radius;
+import android.locationprivacy.control.PolicyCache;
+import android.locationprivacy.control.PolicyCache.PolicySnapshot;
+import android.locationprivacy.model.AbstractLocationPrivacyAlgorithm;
+import android.locationprivacy.model.LocationPrivacyApplication;
+
+/**
+ * PolicyHarness checks that readers of the PolicyCache of the
+ * LocationPrivacyManager never see a torn policy while it is changed.
+ *
+ * Reader threads take snapshots like obfuscateLocation and cache the missing
+ * applications of random uids, read from a simulated database. The main
+ * thread changes the database and invalidates the policy as fast as it can:
+ * it toggles the framework state with every change, every fourth change
+ * affects all apps and the others only the first CHANGED uids. The version of
+ * the data is kept as name of the applications, so every snapshot can be
+ * checked against the changes it is based on: its state has to match its
+ * generation, and a cached application must not be older than the last
+ * change of its uid. The harness fails if a snapshot is torn or a reader
+ * throws an exception.
+ *
+ * Options:
+ * --threads number of reader threads (default 8)
+ * --uids number of uids read (default 200)
+ * --duration duration of the test in seconds (default 5)
+ */
+public class PolicyHarness {
+
+	/** Number of uids affected by every change */
+	private static final int CHANGED = 10;
+
+	/** Version of the simulated database, the generation of its last change */
+	private static volatile int version;
+
+	/**
+	 * Runs the harness
+	 *
+	 * @param args
+	 *            options, see class description
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		Options options = new Options(args);
+		int threads = options.getInt("threads", 8);
+		final int uids = options.getInt("uids", 200);
+		long duration = options.getInt("duration", 5) * 1000L;
+
+		final PolicyCache policy = new PolicyCache(isEnabled(0));
+		final AbstractLocationPrivacyAlgorithm algorithm = new Radius();
+		final List<String> changed = new ArrayList<String>();
+		for (int i = 0; i < CHANGED; i++) {
+			changed.add(Integer.toString(i));
+		}
+		final AtomicLong reads = new AtomicLong();
+		final AtomicLong torn = new AtomicLong();
+		final AtomicLong errors = new AtomicLong();
+		final long end = System.currentTimeMillis() + duration;
+		List<Thread> readers = new ArrayList<Thread>();
+		for (int t = 0; t < threads; t++) {
+			final Random random = new Random(t);
+			readers.add(new Thread() {
+				@Override
+				public void run() {
+					while (System.currentTimeMillis() < end) {
+						try {
+							if (!read(policy, algorithm, random.nextInt(uids))) {
+								torn.incrementAndGet();
+							}
+							reads.incrementAndGet();
+						} catch (RuntimeException e) {
+							errors.incrementAndGet();
+							e.printStackTrace();
+						}
+					}
+				}
+			});
+		}
+		for (Thread reader : readers) {
+			reader.start();
+		}
+		int changes = 0;
+		while (System.currentTimeMillis() < end) {
+			// the database is changed before the policy is invalidated
+			int next = ++version;
+			policy.invalidate(isEnabled(next), next % 4 == 0 ? null : changed,
+					false);
+			changes++;
+		}
+		for (Thread reader : readers) {
+			reader.join();
+		}
+		boolean passed = torn.get() == 0 && errors.get() == 0;
+		System.out.printf(
+				"policy:     %d changes, %d reads by %d threads, %d torn, %d errors: %s%n",
+				changes, reads.get(), threads, torn.get(), errors.get(),
+				passed ? "passed" : "FAILED");
+		if (!passed) {
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Reads the application of an uid like obfuscateLocation, caching it if
+	 * it is missing, and checks the snapshot read
+	 *
+	 * @return is the snapshot consistent?
+	 */
+	private static boolean read(PolicyCache policy,
+			AbstractLocationPrivacyAlgorithm algorithm, int uid) {
+		PolicySnapshot snapshot = policy.get();
+		int generation = snapshot.getGeneration();
+		boolean consistent = snapshot.isEnabled() == isEnabled(generation);
+		String key = Integer.toString(uid);
+		LocationPrivacyApplication app = snapshot.getApplication(key);
+		if (app == null) {
+			app = new LocationPrivacyApplication(key, "v" + version, true,
+					algorithm, true);
+			policy.cache(snapshot, app);
+		} else {
+			int appVersion = Integer.parseInt(app.getName().substring(1));
+			int lastChange = uid < CHANGED ? generation : generation
+					- generation % 4;
+			consistent &= appVersion >= lastChange;
+		}
+		return consistent;
+	}
+
+	/**
+	 * Returns the framework state set by a change
+	 */
+	private static boolean isEnabled(int generation) {
+		return generation % 2 == 0;
+	}
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2013 Distributed Computing & Security Group,
+ *                    Leibniz Universitaet Hannover, Germany
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.locationprivacy.tools;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import android.locationprivacy.algorithm.AdminRegion;
+import android.locationprivacy.algorithm.Deactivate;
+import android.locationprivacy.algorithm.FixedPosition;
+import android.locationprivacy.algorithm.GeoIndistinguishability;
+import android.locationprivacy.algorithm.GeoReverseGeo;
+import android.locationprivacy.algorithm.GridCloak;
+import android.locationprivacy.algorithm.KAnonymity;
+import android.locationprivacy.algorithm.KeyedNoise;
+import android.locationprivacy.algorithm.Pipeline;
+import android.locationprivacy.algorithm.Radius;
+import android.locationprivacy.algorithm.RadiusDistance;
+import android.locationprivacy.algorithm.Truncate;
+import android.locationprivacy.algorithm.Webservice;
+import android.locationprivacy.control.AlgorithmRegistry;
+import android.locationprivacy.model.AbstractLocationPrivacyAlgorithm;
+import android.locationprivacy.model.LocationPrivacyConfiguration;
+import android.os.Debug;
+
+/**
+ * RegistryHarness measures the time and allocations of creating algorithms
+ * with the AlgorithmRegistry compared with the former eager creation.
+ *
+ * Startup: before the registry, the first use of an algorithm created every
+ * algorithm, each building its default configuration. The registry only
+ * registers classes and creates the prototype of the algorithm used. As
+ * class loading dominates a cold start, only one variant is measured per run.
+ *
+ * Load: before the registry, loading the policy of an app created an instance
+ * with default configuration and replaced it by the stored configuration. The
+ * registry creates the instance with the stored configuration directly. Both
+ * variants are measured for a number of apps using all algorithms in turn.
+ * Stored configurations are prepared in advance, as they are read from the
+ * database in both variants.
+ *
+ * Allocations are counted per thread with android.os.Debug.
+ *
+ * Options:
+ * --startup variant measured at startup, eager or registry (default registry)
+ * --algorithm algorithm used first (default radius)
+ * --loads number of app policies loaded per measurement (default 10000)
+ */
+public class RegistryHarness {
+
+	/** Sink keeping the results alive */
+	private static int sink;
+
+	/**
+	 * Runs the harness
+	 *
+	 * @param args
+	 *            options, see class description
+	 */
+	public static void main(String[] args) {
+		Options options = new Options(args);
+		String startup = options.get("startup", "registry");
+		String first = options.get("algorithm", "radius");
+		int loads = options.getInt("loads", 10000);
+
+		Debug.startAllocCounting();
+		AbstractLocationPrivacyAlgorithm[] eager = null;
+		AlgorithmRegistry registry = null;
+		if (startup.equals("eager")) {
+			Measurement measurement = new Measurement();
+			eager = createAll();
+			measurement.print("startup eager:    ", 1);
+		} else if (startup.equals("registry")) {
+			Measurement measurement = new Measurement();
+			registry = AlgorithmRegistry.getInstance();
+			measurement.print("startup registry: ", 1);
+			measurement = new Measurement();
+			sink += registry.newInstance(first).hashCode();
+			measurement.print("first " + first + ":     ", 1);
+		} else {
+			throw new IllegalArgumentException("Invalid startup " + startup);
+		}
+		if (eager == null) {
+			eager = createAll();
+		}
+		if (registry == null) {
+			registry = AlgorithmRegistry.getInstance();
+		}
+
+		// algorithms of the framework, add-ons were not available before
+		List<String> names = new ArrayList<String>();
+		for (AbstractLocationPrivacyAlgorithm algorithm : eager) {
+			names.add(algorithm.getName());
+		}
+		AbstractLocationPrivacyAlgorithm[] prototypes = eager;
+		// warm up
+		loadEager(prototypes, stored(registry, names, loads));
+		loadRegistry(registry, names, stored(registry, names, loads));
+
+		LocationPrivacyConfiguration[] configurations = stored(registry,
+				names, loads);
+		Measurement measurement = new Measurement();
+		loadEager(prototypes, configurations);
+		measurement.print("load eager:       ", loads);
+		configurations = stored(registry, names, loads);
+		measurement = new Measurement();
+		loadRegistry(registry, names, configurations);
+		measurement.print("load registry:    ", loads);
+		Debug.stopAllocCounting();
+	}
+
+	/**
+	 * Creates all algorithms of the framework, as done before the registry
+	 */
+	private static AbstractLocationPrivacyAlgorithm[] createAll() {
+		return new AbstractLocationPrivacyAlgorithm[] { new Deactivate(),
+				new FixedPosition(), new Radius(), new RadiusDistance(),
+				new GeoReverseGeo(), new Webservice(),
+				new GeoIndistinguishability(), new GridCloak(),
+				new KAnonymity(), new Truncate(), new Pipeline(),
+				new KeyedNoise(), new AdminRegion() };
+	}
+
+	/**
+	 * Returns stored configurations of apps, using all algorithms in turn
+	 */
+	private static LocationPrivacyConfiguration[] stored(
+			AlgorithmRegistry registry, List<String> names, int loads) {
+		LocationPrivacyConfiguration[] configurations = new LocationPrivacyConfiguration[loads];
+		for (int i = 0; i < loads; i++) {
+			configurations[i] = registry.getDefaultConfiguration(names.get(i
+					% names.size()));
+		}
+		return configurations;
+	}
+
+	/**
+	 * Loads policies as done before the registry
+	 */
+	private static void loadEager(AbstractLocationPrivacyAlgorithm[] prototypes,
+			LocationPrivacyConfiguration[] configurations) {
+		for (int i = 0; i < configurations.length; i++) {
+			AbstractLocationPrivacyAlgorithm algorithm = prototypes[i
+					% prototypes.length].newInstance();
+			algorithm.setConfiguration(configurations[i]);
+			sink += algorithm.hashCode();
+		}
+	}
+
+	/**
+	 * Loads policies with the registry
+	 */
+	private static void loadRegistry(AlgorithmRegistry registry,
+			List<String> names, LocationPrivacyConfiguration[] configurations) {
+		for (int i = 0; i < configurations.length; i++) {
+			sink += registry.newInstance(names.get(i % names.size()),
+					configurations[i]).hashCode();
+		}
+	}
+
+	/**
+	 * Measurement of time and allocations of the current thread
+	 */
+	private static class Measurement {
+		final long start;
+
+		Measurement() {
+			Debug.resetThreadAllocCount();
+			Debug.resetThreadAllocSize();
+			start = System.nanoTime();
+		}
+
+		/**
+		 * Prints the time and allocations since creation
+		 *
+		 * @param operations
+		 *            number of operations measured
+		 */
+		void print(String label, int operations) {
+			long duration = System.nanoTime() - start;
+			int count = Debug.getThreadAllocCount();
+			int size = Debug.getThreadAllocSize();
+			System.out.printf("%s %9d ns, %7d objects, %9d bytes%s%n", label,
+					duration / operations, count / operations, size
+							/ operations, operations > 1 ? " per app" : "");
+		}
+	}
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2013 Distributed Computing & Security Group,
+ *                    Leibniz Universitaet Hannover, Germany
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.locationprivacy.tools;
+
+import java.io.PrintWriter;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.location.Location;
+import android.locationprivacy.algorithm.Webservice;
+import android.locationprivacy.model.LocationPrivacyConfiguration;
+import android.locationprivacy.util.Metrics;
+
+/**
+ * WebserviceHarness drives many simulated apps through the algorithm
+ * Webservice and reports throughput and a latency histogram of obfuscate()
+ * together with the metrics of the algorithm, i.e. cache hits, request
+ * latencies and circuit breaker transitions. Each app has its own uid and
+ * instance of the algorithm and walks randomly through Hannover. The fixes of
+ * all apps are interleaved and obfuscated by a number of threads, like
+ * location updates dispatched to several apps at once.
+ *
+ * The harness runs on the device, where the framework is available, and is
+ * meant to be used with the StandInServer running on the host, which injects
+ * latency, errors and a throughput limit. The emulator reaches the host as
+ * 10.0.2.2. The algorithm only uses plain HTTP on a debug build with the
+ * system property debug.locationprivacy.allowhttp set to true.
+ *
+ * Options:
+ * --host service address (default http://10.0.2.2:8443/)
+ * --user name and --password password: Basic Auth credentials
+ * --uids number of simulated apps (default 50)
+ * --fixes number of locations per app (default 40)
+ * --threads number of threads calling obfuscate() (default 4)
+ * --step meters moved between two locations of an app, which are one second
+ * apart in the time of the locations (default 50)
+ * --interval milliseconds of real time between two locations of an app,
+ * 0 to run as fast as possible (default 0)
+ * --async, --batch, --cachettl, --areasize, --fallback, --prefetch and
+ * --prefetchbudget set the configuration of the algorithm (defaults as in
+ * the algorithm, but synchronous mode)
+ */
+public class WebserviceHarness {
+
+	/** Meters per degree of latitude */
+	private static final double METERS_PER_DEGREE = 111320;
+
+	/**
+	 * Runs the harness
+	 *
+	 * @param args
+	 *            options, see class description
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		Options options = new Options(args);
+		int uids = options.getInt("uids", 50);
+		final int fixes = options.getInt("fixes", 40);
+		int threads = options.getInt("threads", 4);
+		final double step = options.getDouble("step", 50);
+		final int interval = options.getInt("interval", 0);
+
+		final Walker[] walkers = new Walker[uids];
+		Random random = new Random(1);
+		for (int i = 0; i < uids; i++) {
+			Webservice algorithm = new Webservice();
+			configure(algorithm.getConfiguration(), options);
+			algorithm.setUid(String.valueOf(10000 + i));
+			walkers[i] = new Walker(algorithm, random.nextLong());
+		}
+
+		final long[] latencies = new long[uids * fixes];
+		final AtomicInteger next = new AtomicInteger();
+		final AtomicInteger suppressed = new AtomicInteger();
+		Thread[] workers = new Thread[threads];
+		final long start = System.nanoTime();
+		for (int t = 0; t < threads; t++) {
+			workers[t] = new Thread() {
+				@Override
+				public void run() {
+					int i;
+					while ((i = next.getAndIncrement()) < latencies.length) {
+						Walker walker = walkers[i % walkers.length];
+						long due = start + (long) (i / walkers.length)
+								* interval * 1000000L;
+						long wait = (due - System.nanoTime()) / 1000000L;
+						if (wait > 0) {
+							try {
+								Thread.sleep(wait);
+							} catch (InterruptedException e) {
+								return;
+							}
+						}
+						Location location = walker.next(step);
+						long begin = System.nanoTime();
+						Location result = walker.algorithm.obfuscate(location);
+						latencies[i] = System.nanoTime() - begin;
+						if (result == null) {
+							suppressed.incrementAndGet();
+						}
+					}
+				}
+			};
+			workers[t].start();
+		}
+		for (Thread worker : workers) {
+			worker.join();
+		}
+		long duration = System.nanoTime() - start;
+
+		System.out.println("apps:       " + uids + " with " + fixes
+				+ " locations each (" + suppressed.get() + " suppressed)");
+		System.out.println("threads:    " + threads);
+		System.out.printf("throughput: %.1f locations/s%n", latencies.length
+				* 1e9 / duration);
+		new Histogram(latencies).print(System.out);
+		PrintWriter pw = new PrintWriter(System.out);
+		Metrics.dumpAll(pw, "  ");
+		pw.flush();
+	}
+
+	/**
+	 * Sets the configuration of an algorithm from the options
+	 */
+	private static void configure(LocationPrivacyConfiguration configuration,
+			Options options) {
+		configuration.getStringValues().put("host",
+				options.get("host", "http://10.0.2.2:8443/"));
+		configuration.getStringValues().put("username",
+				options.get("user", "myname"));
+		configuration.getStringValues().put("secret_password",
+				options.get("password", "secret"));
+		configuration.getBooleanValues().put("async",
+				options.getBoolean("async", false));
+		configuration.getBooleanValues().put("batch",
+				options.getBoolean("batch", false));
+		configuration.getIntValues().put("cachettl",
+				options.getInt("cachettl", 600));
+		configuration.getIntValues().put("areasize",
+				options.getInt("areasize", 250));
+		configuration.getEnumChoosen().put("fallback",
+				options.get("fallback", "gridcloak"));
+		configuration.getBooleanValues().put("prefetch",
+				options.getBoolean("prefetch", false));
+		configuration.getIntValues().put("prefetchbudget",
+				options.getInt("prefetchbudget", 6));
+	}
+
+	/**
+	 * Walker is a simulated app moving randomly
+	 */
+	private static class Walker {
+		final Webservice algorithm;
+		final Random random;
+		double latitude;
+		double longitude;
+		double heading;
+		long time = System.currentTimeMillis();
+
+		Walker(Webservice algorithm, long seed) {
+			this.algorithm = algorithm;
+			random = new Random(seed);
+			latitude = 52.3 + random.nextDouble() * 0.2;
+			longitude = 9.6 + random.nextDouble() * 0.2;
+			heading = random.nextDouble() * 2 * Math.PI;
+		}
+
+		/**
+		 * Moves on and returns the new location
+		 *
+		 * @param step
+		 *            distance in meters
+		 */
+		synchronized Location next(double step) {
+			heading += random.nextGaussian() * 0.3;
+			latitude += step * Math.cos(heading) / METERS_PER_DEGREE;
+			longitude += step * Math.sin(heading)
+					/ (METERS_PER_DEGREE * Math.cos(Math.toRadians(latitude)));
+			Location location = new Location("gps");
+			location.setLatitude(latitude);
+			location.setLongitude(longitude);
+			location.setAccuracy(10);
+			time += 1000;
+			location.setTime(time);
+			return location;
+		}
+	}
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2013 Distributed Computing & Security Group,
+ *                    Leibniz Universitaet Hannover, Germany
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.locationprivacy.tools;
+
+import java.io.UnsupportedEncodingException;
+
+/**
+ * BasicAuth builds HTTP Basic Auth headers. The host tools cannot use
+ * android.util.Base64, so the encoding is done here.
+ */
+class BasicAuth {
+
+	/** Base64 alphabet */
+	private static final char[] ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/"
+			.toCharArray();
+
+	/**
+	 * Returns the value of the Authorization header for credentials
+	 */
+	static String header(String user, String password) {
+		try {
+			return "Basic " + encode((user + ":" + password).getBytes("UTF-8"));
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Encodes bytes in Base64 with padding
+	 */
+	static String encode(byte[] bytes) {
+		StringBuilder builder = new StringBuilder((bytes.length + 2) / 3 * 4);
+		for (int i = 0; i < bytes.length; i += 3) {
+			int remaining = bytes.length - i;
+			int block = (bytes[i] & 0xff) << 16;
+			if (remaining > 1) {
+				block |= (bytes[i + 1] & 0xff) << 8;
+			}
+			if (remaining > 2) {
+				block |= bytes[i + 2] & 0xff;
+			}
+			builder.append(ALPHABET[block >> 18 & 0x3f]);
+			builder.append(ALPHABET[block >> 12 & 0x3f]);
+			builder.append(remaining > 1 ? ALPHABET[block >> 6 & 0x3f] : '=');
+			builder.append(remaining > 2 ? ALPHABET[block & 0x3f] : '=');
+		}
+		return builder.toString();
+	}
+}
@@ -0,0 +1,248 @@
+/*
+ * Copyright (C) 2013 Distributed Computing & Security Group,
+ *                    Leibniz Universitaet Hannover, Germany
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.locationprivacy.tools;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.Random;
+
+import android.locationprivacy.util.BoundaryIndex;
+import android.locationprivacy.util.Gazetteer;
+
+/**
+ * BoundaryBenchmark measures lookups in a boundary index created by
+ * BoundaryIndexBuilder: the region of each level containing random locations
+ * within the bounds of the regions. It reports the mean latency, the share of
+ * locations found and the size of the file per region. The results of the
+ * first locations are compared with a linear search over all regions.
+ *
+ * As real boundaries are large, it can also generate synthetic ones: a
+ * tessellation of municipalities and a finer one of postal code regions with
+ * jagged borders, which neighboring regions share.
+ *
+ * Options:
+ * --boundaries file to measure
+ * --lookups number of lookups per measurement (default 200000)
+ * --generate CSV file to write synthetic boundaries to instead of measuring
+ * --rows and --columns number of municipalities (default 40 x 40, postal
+ * code regions are 2 x 2 per municipality)
+ * --vertices vertices per border between two corners (default 60)
+ */
+public class BoundaryBenchmark {
+
+	/** South-west corner and size of the synthetic regions in degrees */
+	private static final double SOUTH = 51.0;
+	private static final double WEST = 8.0;
+	private static final double HEIGHT = 0.05;
+	private static final double WIDTH = 0.08;
+
+	/** Number of lookups compared with a linear search */
+	private static final int CHECKED = 2000;
+
+	/** Sink keeping the results alive */
+	private static long sink;
+
+	/**
+	 * Runs the benchmark
+	 *
+	 * @param args
+	 *            options, see class description
+	 */
+	public static void main(String[] args) throws IOException {
+		Options options = new Options(args);
+		String generate = options.get("generate", null);
+		if (generate != null) {
+			generate(new File(generate), options.getInt("rows", 40),
+					options.getInt("columns", 40),
+					options.getInt("vertices", 60));
+			return;
+		}
+		String path = options.get("boundaries", null);
+		if (path == null) {
+			throw new IllegalArgumentException("--boundaries or --generate required");
+		}
+		int lookups = options.getInt("lookups", 200000);
+		BoundaryIndex index = BoundaryIndex.open(path);
+		int count = index.getRegionCount();
+		long vertices = 0;
+		double south = 90;
+		double west = 180;
+		double north = -90;
+		double east = -180;
+		for (int region = 0; region < count; region++) {
+			vertices += index.getVertexCount(region);
+			south = Math.min(south, index.getLatitude(region));
+			north = Math.max(north, index.getLatitude(region));
+			west = Math.min(west, index.getLongitude(region));
+			east = Math.max(east, index.getLongitude(region));
+		}
+		long size = new File(path).length();
+		System.out.printf(
+				"regions:  %d, %d vertices, %d KiB, %.0f bytes per region%n",
+				count, vertices, size / 1024, (double) size / Math.max(1, count));
+		System.out.printf("tolerance: %.1f m%n", index.getTolerance());
+
+		Random random = new Random(1);
+		double[] latitudes = new double[lookups];
+		double[] longitudes = new double[lookups];
+		for (int i = 0; i < lookups; i++) {
+			latitudes[i] = south + random.nextDouble() * (north - south);
+			longitudes[i] = west + random.nextDouble() * (east - west);
+		}
+		String[] levels = { "street", "postalcode", "city", "country" };
+		for (int level = Gazetteer.POSTALCODE; level <= Gazetteer.CITY; level++) {
+			// warm up
+			find(index, level, latitudes, longitudes);
+			long start = System.nanoTime();
+			int found = find(index, level, latitudes, longitudes);
+			long duration = System.nanoTime() - start;
+			int differences = 0;
+			for (int i = 0; i < Math.min(CHECKED, lookups); i++) {
+				int expected = -1;
+				for (int region = 0; region < count && expected < 0; region++) {
+					if (index.getLevel(region) == level
+							&& index.contains(region, latitudes[i],
+									longitudes[i])) {
+						expected = region;
+					}
+				}
+				int actual = index.find(level, latitudes[i], longitudes[i]);
+				// locations in gaps are assigned to a region within tolerance
+				if (expected >= 0 && actual != expected) {
+					differences++;
+				}
+			}
+			System.out.printf(
+					"find %-10s %6d ns, %5.1f%% found, %d of %d differ from linear search%n",
+					levels[level], duration / lookups, found * 100.0 / lookups,
+					differences, Math.min(CHECKED, lookups));
+		}
+	}
+
+	/**
+	 * Looks up the regions of a level
+	 *
+	 * @return number of locations a region has been found for
+	 */
+	static int find(BoundaryIndex index, int level, double[] latitudes,
+			double[] longitudes) {
+		int found = 0;
+		for (int i = 0; i < latitudes.length; i++) {
+			int region = index.find(level, latitudes[i], longitudes[i]);
+			if (region >= 0) {
+				found++;
+				sink += region;
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Writes synthetic boundaries of municipalities and postal code regions
+	 */
+	static void generate(File output, int rows, int columns, int vertices)
+			throws IOException {
+		Writer out = new BufferedWriter(new OutputStreamWriter(
+				new FileOutputStream(output), "UTF-8"));
+		try {
+			out.write("WKT,level,name\n");
+			writeTessellation(out, "city", rows, columns, 1, vertices);
+			writeTessellation(out, "postalcode", rows, columns, 2, vertices / 2);
+		} finally {
+			out.close();
+		}
+		System.out.println(rows * columns * 5 + " regions written to "
+				+ output);
+	}
+
+	/**
+	 * Writes a tessellation of the area into rows x columns regions
+	 *
+	 * @param split
+	 *            number of rows and columns each municipality is split into
+	 */
+	private static void writeTessellation(Writer out, String level, int rows,
+			int columns, int split, int vertices) throws IOException {
+		rows *= split;
+		columns *= split;
+		double height = HEIGHT / split;
+		double width = WIDTH / split;
+		for (int r = 0; r < rows; r++) {
+			for (int c = 0; c < columns; c++) {
+				StringBuilder wkt = new StringBuilder("\"POLYGON ((");
+				// south, east, north and west border, counterclockwise
+				appendBorder(wkt, split, true, r, c, height, width, vertices,
+						false);
+				appendBorder(wkt, split, false, r, c + 1, height, width,
+						vertices, false);
+				appendBorder(wkt, split, true, r + 1, c, height, width,
+						vertices, true);
+				appendBorder(wkt, split, false, r, c, height, width, vertices,
+						true);
+				wkt.append(String.format(Locale.ROOT, "%.7f %.7f))\"", WEST
+						+ c * width, SOUTH + r * height));
+				out.write(wkt.toString());
+				out.write("," + level + ",\"" + level + " " + r + "/" + c
+						+ "\"\n");
+			}
+		}
+	}
+
+	/**
+	 * Appends a jagged border between two corners, without its last vertex.
+	 * The border is derived from its position only, so both regions sharing
+	 * it get the same vertices.
+	 *
+	 * @param horizontal
+	 *            border from corner (row, column) towards east, otherwise
+	 *            towards north
+	 * @param reverse
+	 *            whether to append the vertices from the other end
+	 */
+	private static void appendBorder(StringBuilder wkt, int split,
+			boolean horizontal, int row, int column, double height,
+			double width, int vertices, boolean reverse) {
+		Random random = new Random(((long) split << 48)
+				^ ((horizontal ? 1L : 2L) << 40) ^ ((long) row << 20) ^ column);
+		double[] offsets = new double[vertices + 1];
+		for (int i = 1; i < vertices; i++) {
+			// tapered towards the corners, so borders do not cross
+			double t = (double) i / vertices;
+			offsets[i] = (random.nextDouble() - 0.5) * 0.3 * Math.sin(Math.PI * t);
+		}
+		for (int k = 0; k < vertices; k++) {
+			int i = reverse ? vertices - k : k;
+			double t = (double) i / vertices;
+			double lat;
+			double lon;
+			if (horizontal) {
+				lat = SOUTH + (row + offsets[i]) * height;
+				lon = WEST + (column + t) * width;
+			} else {
+				lat = SOUTH + (row + t) * height;
+				lon = WEST + (column + offsets[i]) * width;
+			}
+			wkt.append(String.format(Locale.ROOT, "%.7f %.7f, ", lon, lat));
+		}
+	}
+}
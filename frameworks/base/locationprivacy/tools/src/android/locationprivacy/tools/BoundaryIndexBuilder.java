@@ -0,0 +1,642 @@
+/*
+ * Copyright (C) 2013 Distributed Computing & Security Group,
+ *                    Leibniz Universitaet Hannover, Germany
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.locationprivacy.tools;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import android.locationprivacy.util.BoundaryIndex;
+import android.locationprivacy.util.Gazetteer;
+import android.locationprivacy.util.MetricGrid;
+
+/**
+ * BoundaryIndexBuilder creates the binary file read by BoundaryIndex from
+ * boundary polygons. Polygons are simplified by the Douglas-Peucker
+ * algorithm with a tolerance in meters, rings smaller than the tolerance are
+ * dropped. The representative point of a region is the centroid of its
+ * largest ring if the region contains it, otherwise the middle of the widest
+ * section of the region on the parallel through that centroid.
+ *
+ * Input is a CSV file with the columns WKT geometry (POLYGON or
+ * MULTIPOLYGON), level (postalcode or city, as the details of GeoReverseGeo)
+ * and name. This is what ogr2ogr writes for a query like
+ * <pre>
+ * ogr2ogr -f CSV out.csv in.shp -lco GEOMETRY=AS_WKT -sql
+ *   "SELECT 'city' AS level, name FROM in"
+ * </pre>
+ * Coordinates are WGS84 longitude and latitude. A header line is skipped.
+ *
+ * Usage: java android.locationprivacy.tools.BoundaryIndexBuilder input.csv
+ * output.bnd [tolerance in meters, default 20]
+ */
+public class BoundaryIndexBuilder {
+
+	/** Maximum number of children of a tree entry */
+	private static final int NODE_SIZE = 16;
+
+	/** Length of one degree latitude in meters */
+	private static final double METER_PER_LATITUDE = 111320;
+
+	/** Innermost parentheses of WKT, i.e. the rings */
+	private static final Pattern RING = Pattern.compile("\\(([^()]*)\\)");
+
+	/** Regions in order of input */
+	private final ArrayList<Region> regions = new ArrayList<Region>();
+
+	/** Tolerance of the simplification in 1e-7 degrees latitude */
+	private final int tolerance;
+
+	/** Number of vertices before and after simplification */
+	private long inputVertices;
+	private long outputVertices;
+
+	/** Number of regions dropped as smaller than the tolerance */
+	private int dropped;
+
+	/**
+	 * Creates new instance of BoundaryIndexBuilder
+	 *
+	 * @param tolerance
+	 *            tolerance of the simplification in meters
+	 */
+	public BoundaryIndexBuilder(double tolerance) {
+		this.tolerance = (int) Math.round(tolerance / METER_PER_LATITUDE
+				* MetricGrid.E7);
+	}
+
+	/**
+	 * Converts a boundary file
+	 *
+	 * @param args
+	 *            input file, output file and optionally the tolerance
+	 */
+	public static void main(String[] args) {
+		if (args.length != 2 && args.length != 3) {
+			System.err.println("Usage: BoundaryIndexBuilder input.csv output.bnd [tolerance]");
+			System.exit(1);
+		}
+		try {
+			BoundaryIndexBuilder builder = new BoundaryIndexBuilder(
+					args.length == 3 ? Double.parseDouble(args[2]) : 20);
+			builder.read(new File(args[0]));
+			builder.write(new File(args[1]));
+			builder.printStatistics();
+		} catch (NumberFormatException e) {
+			System.err.println("Invalid tolerance: " + args[2]);
+			System.exit(1);
+		} catch (IOException e) {
+			System.err.println(e.getMessage());
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Reads the regions of a CSV file
+	 *
+	 * @param input
+	 *            CSV file
+	 * @throws IOException
+	 *             if reading fails or the input is malformed
+	 */
+	public void read(File input) throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(
+				new BufferedInputStream(new FileInputStream(input), 65536),
+				"UTF-8"));
+		try {
+			String line;
+			int number = 0;
+			while ((line = reader.readLine()) != null) {
+				number++;
+				if (line.length() == 0 || line.startsWith("#")) {
+					continue;
+				}
+				ArrayList<String> fields = GazetteerBuilder.split(line);
+				if (fields.size() != 3) {
+					throw new IOException("Line " + number
+							+ ": 3 fields expected, found " + fields.size());
+				}
+				int level = Gazetteer.getLevel(fields.get(1));
+				if (level < 0 || fields.get(0) == null) {
+					if (number == 1) {
+						// header
+						continue;
+					}
+					throw new IOException("Line " + number
+							+ ": invalid level " + fields.get(1));
+				}
+				add(level, fields.get(2) == null ? "" : fields.get(2),
+						parseWkt(fields.get(0), number));
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Adds a region
+	 *
+	 * @param level
+	 *            level of the region, e.g. Gazetteer.CITY
+	 * @param name
+	 *            name of the region
+	 * @param rings
+	 *            rings of the region, latitudes and longitudes in 1e-7
+	 *            degrees alternating, optionally closed
+	 */
+	public void add(int level, String name, List<int[]> rings) {
+		ArrayList<int[]> simplified = new ArrayList<int[]>();
+		for (int[] ring : rings) {
+			inputVertices += ring.length / 2;
+			int[] result = simplify(ring);
+			if (result != null) {
+				simplified.add(result);
+				outputVertices += result.length / 2;
+			}
+		}
+		if (simplified.isEmpty()) {
+			dropped++;
+			return;
+		}
+		Region region = new Region(level, name, simplified);
+		region.setRepresentativePoint();
+		regions.add(region);
+	}
+
+	/**
+	 * Writes the index
+	 *
+	 * @param output
+	 *            file the BoundaryIndex is written to
+	 * @throws IOException
+	 *             if writing fails or there are too many regions
+	 */
+	public void write(File output) throws IOException {
+		// tree levels, each ordered by sort-tile-recursive packing
+		ArrayList<int[]> entries = new ArrayList<int[]>();
+		ArrayList<int[]> level = new ArrayList<int[]>();
+		for (int i = 0; i < regions.size(); i++) {
+			Region region = regions.get(i);
+			level.add(new int[] { region.south, region.west, region.north,
+					region.east, i });
+		}
+		ArrayList<Integer> levelEnds = new ArrayList<Integer>();
+		while (!level.isEmpty()) {
+			pack(level);
+			int start = entries.size();
+			entries.addAll(level);
+			levelEnds.add(entries.size());
+			if (level.size() == 1) {
+				break;
+			}
+			ArrayList<int[]> parents = new ArrayList<int[]>();
+			for (int i = 0; i < level.size(); i += NODE_SIZE) {
+				int[] parent = { Integer.MAX_VALUE, Integer.MAX_VALUE,
+						Integer.MIN_VALUE, Integer.MIN_VALUE, start + i };
+				for (int j = i; j < Math.min(i + NODE_SIZE, level.size()); j++) {
+					int[] child = level.get(j);
+					parent[0] = Math.min(parent[0], child[0]);
+					parent[1] = Math.min(parent[1], child[1]);
+					parent[2] = Math.max(parent[2], child[2]);
+					parent[3] = Math.max(parent[3], child[3]);
+				}
+				parents.add(parent);
+			}
+			level = parents;
+		}
+		if (levelEnds.size() > BoundaryIndex.MAX_HEIGHT) {
+			throw new IOException("Too many regions");
+		}
+
+		// names
+		ArrayList<byte[]> names = new ArrayList<byte[]>(regions.size());
+		int namesSize = 0;
+		for (Region region : regions) {
+			byte[] bytes = Gazetteer.toBytes(region.name);
+			if (bytes.length > 0xffff) {
+				throw new IOException("Name too long: " + region.name);
+			}
+			region.nameOffset = namesSize;
+			names.add(bytes);
+			namesSize += 2 + bytes.length;
+		}
+
+		// offsets
+		int ringCount = 0;
+		for (Region region : regions) {
+			ringCount += region.rings.size();
+		}
+		long treeOffset = BoundaryIndex.HEADER_SIZE;
+		long regionsOffset = treeOffset + (long) entries.size()
+				* BoundaryIndex.ENTRY_SIZE;
+		long ringsOffset = regionsOffset + (long) regions.size()
+				* BoundaryIndex.REGION_SIZE;
+		long verticesOffset = ringsOffset + 4L * (ringCount + 1);
+		long namesOffset = verticesOffset + 8L * outputVertices;
+		if (namesOffset + namesSize > Integer.MAX_VALUE) {
+			throw new IOException("Boundary index too large");
+		}
+
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(output), 65536));
+		try {
+			out.writeInt(BoundaryIndex.MAGIC);
+			out.writeInt(BoundaryIndex.VERSION);
+			out.writeInt(regions.size());
+			out.writeInt(entries.size());
+			out.writeInt(NODE_SIZE);
+			out.writeInt(tolerance);
+			out.writeInt(levelEnds.size());
+			out.writeInt((int) treeOffset);
+			out.writeInt((int) regionsOffset);
+			out.writeInt((int) ringsOffset);
+			out.writeInt((int) verticesOffset);
+			out.writeInt((int) namesOffset);
+			for (int i = 0; i < BoundaryIndex.MAX_HEIGHT; i++) {
+				out.writeInt(i < levelEnds.size() ? levelEnds.get(i) : 0);
+			}
+			for (int[] entry : entries) {
+				for (int value : entry) {
+					out.writeInt(value);
+				}
+			}
+			int ring = 0;
+			for (Region region : regions) {
+				out.writeInt(region.south);
+				out.writeInt(region.west);
+				out.writeInt(region.north);
+				out.writeInt(region.east);
+				out.writeInt(region.latE7);
+				out.writeInt(region.lonE7);
+				out.writeInt(region.level);
+				out.writeInt(region.nameOffset);
+				out.writeInt(ring);
+				out.writeInt(region.rings.size());
+				ring += region.rings.size();
+			}
+			int vertex = 0;
+			for (Region region : regions) {
+				for (int[] vertices : region.rings) {
+					out.writeInt(vertex);
+					vertex += vertices.length / 2;
+				}
+			}
+			out.writeInt(vertex);
+			for (Region region : regions) {
+				for (int[] vertices : region.rings) {
+					for (int value : vertices) {
+						out.writeInt(value);
+					}
+				}
+			}
+			for (byte[] bytes : names) {
+				out.writeShort(bytes.length);
+				out.write(bytes);
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Prints the number of regions of each level and the vertices before and
+	 * after simplification
+	 */
+	public void printStatistics() {
+		int[] counts = new int[Gazetteer.LEVELS];
+		for (Region region : regions) {
+			counts[region.level]++;
+		}
+		String[] levelNames = { "streets", "postal codes", "cities",
+				"countries" };
+		for (int level = 0; level < Gazetteer.LEVELS; level++) {
+			if (counts[level] > 0) {
+				System.out.println(levelNames[level] + ": " + counts[level]);
+			}
+		}
+		System.out.println("vertices: " + inputVertices + ", " + outputVertices
+				+ " after simplification");
+		if (dropped > 0) {
+			System.out.println("dropped: " + dropped
+					+ " regions smaller than the tolerance");
+		}
+	}
+
+	/**
+	 * Parses the rings of a WKT POLYGON or MULTIPOLYGON
+	 *
+	 * @return rings, latitudes and longitudes in 1e-7 degrees alternating
+	 */
+	static ArrayList<int[]> parseWkt(String wkt, int number)
+			throws IOException {
+		String type = wkt.trim().toUpperCase();
+		if (!type.startsWith("POLYGON") && !type.startsWith("MULTIPOLYGON")) {
+			throw new IOException("Line " + number + ": polygon expected");
+		}
+		ArrayList<int[]> rings = new ArrayList<int[]>();
+		Matcher matcher = RING.matcher(wkt);
+		while (matcher.find()) {
+			String[] points = matcher.group(1).split(",");
+			int[] ring = new int[2 * points.length];
+			for (int i = 0; i < points.length; i++) {
+				String[] xy = points[i].trim().split("\\s+");
+				try {
+					ring[2 * i] = MetricGrid.toE7(Double.parseDouble(xy[1]));
+					ring[2 * i + 1] = MetricGrid.toE7(Double
+							.parseDouble(xy[0]));
+				} catch (RuntimeException e) {
+					throw new IOException("Line " + number
+							+ ": invalid point " + points[i].trim());
+				}
+			}
+			rings.add(ring);
+		}
+		return rings;
+	}
+
+	/**
+	 * Simplifies a ring by the Douglas-Peucker algorithm. The ring is split
+	 * at its first vertex and the vertex farthest from it, both halves are
+	 * simplified on their own.
+	 *
+	 * @return simplified ring without closing vertex, null if fewer than
+	 *         three vertices remain
+	 */
+	private int[] simplify(int[] ring) {
+		int n = ring.length / 2;
+		if (n > 1 && ring[0] == ring[2 * n - 2] && ring[1] == ring[2 * n - 1]) {
+			n--;
+		}
+		if (n < 3) {
+			return null;
+		}
+		double scale = Math.cos(Math.toRadians(ring[0] / MetricGrid.E7));
+		int far = 0;
+		double farDistance = -1;
+		for (int i = 1; i < n; i++) {
+			double dy = ring[2 * i] - ring[0];
+			double dx = (ring[2 * i + 1] - ring[1]) * scale;
+			if (dx * dx + dy * dy > farDistance) {
+				farDistance = dx * dx + dy * dy;
+				far = i;
+			}
+		}
+		boolean[] keep = new boolean[n + 1];
+		keep[0] = true;
+		keep[far] = true;
+		keep[n] = true;
+		// the closing vertex n is vertex 0
+		int[] closed = Arrays.copyOf(ring, 2 * n + 2);
+		closed[2 * n] = ring[0];
+		closed[2 * n + 1] = ring[1];
+		simplify(closed, 0, far, scale, keep);
+		simplify(closed, far, n, scale, keep);
+		int count = 0;
+		for (int i = 0; i < n; i++) {
+			if (keep[i]) {
+				count++;
+			}
+		}
+		if (count < 3) {
+			return null;
+		}
+		int[] result = new int[2 * count];
+		int j = 0;
+		for (int i = 0; i < n; i++) {
+			if (keep[i]) {
+				result[j++] = closed[2 * i];
+				result[j++] = closed[2 * i + 1];
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Marks the vertices between two kept vertices that are needed to stay
+	 * within the tolerance
+	 */
+	private void simplify(int[] ring, int first, int last, double scale,
+			boolean[] keep) {
+		// explicit stack, rings of large regions have many vertices
+		ArrayList<int[]> ranges = new ArrayList<int[]>();
+		ranges.add(new int[] { first, last });
+		while (!ranges.isEmpty()) {
+			int[] range = ranges.remove(ranges.size() - 1);
+			int a = range[0];
+			int b = range[1];
+			double y1 = ring[2 * a];
+			double x1 = ring[2 * a + 1] * scale;
+			double dy = ring[2 * b] - y1;
+			double dx = ring[2 * b + 1] * scale - x1;
+			double length = dx * dx + dy * dy;
+			int worst = -1;
+			double worstDistance = (double) tolerance * tolerance;
+			for (int i = a + 1; i < b; i++) {
+				double py = ring[2 * i] - y1;
+				double px = ring[2 * i + 1] * scale - x1;
+				double t = length == 0 ? 0 : Math.max(0,
+						Math.min(1, (px * dx + py * dy) / length));
+				double ex = px - t * dx;
+				double ey = py - t * dy;
+				double distance = ex * ex + ey * ey;
+				if (distance > worstDistance) {
+					worstDistance = distance;
+					worst = i;
+				}
+			}
+			if (worst >= 0) {
+				keep[worst] = true;
+				ranges.add(new int[] { a, worst });
+				ranges.add(new int[] { worst, b });
+			}
+		}
+	}
+
+	/**
+	 * Orders the entries of a tree level by sort-tile-recursive packing, so
+	 * that each run of NODE_SIZE entries covers a compact area
+	 */
+	private static void pack(List<int[]> entries) {
+		int nodes = (entries.size() + NODE_SIZE - 1) / NODE_SIZE;
+		int slices = (int) Math.ceil(Math.sqrt(nodes));
+		int sliceSize = slices * NODE_SIZE;
+		Collections.sort(entries, new Comparator<int[]>() {
+			@Override
+			public int compare(int[] a, int[] b) {
+				long centerA = (long) a[1] + a[3];
+				long centerB = (long) b[1] + b[3];
+				return centerA < centerB ? -1 : centerA > centerB ? 1 : 0;
+			}
+		});
+		for (int i = 0; i < entries.size(); i += sliceSize) {
+			Collections.sort(
+					entries.subList(i, Math.min(i + sliceSize, entries.size())),
+					new Comparator<int[]>() {
+						@Override
+						public int compare(int[] a, int[] b) {
+							long centerA = (long) a[0] + a[2];
+							long centerB = (long) b[0] + b[2];
+							return centerA < centerB ? -1
+									: centerA > centerB ? 1 : 0;
+						}
+					});
+		}
+	}
+
+	/**
+	 * Region is a simplified region to be written
+	 */
+	private static class Region {
+		final int level;
+		final String name;
+		final ArrayList<int[]> rings;
+		int south = Integer.MAX_VALUE;
+		int west = Integer.MAX_VALUE;
+		int north = Integer.MIN_VALUE;
+		int east = Integer.MIN_VALUE;
+		int latE7;
+		int lonE7;
+		int nameOffset;
+
+		Region(int level, String name, ArrayList<int[]> rings) {
+			this.level = level;
+			this.name = name;
+			this.rings = rings;
+			for (int[] ring : rings) {
+				for (int i = 0; i < ring.length; i += 2) {
+					south = Math.min(south, ring[i]);
+					north = Math.max(north, ring[i]);
+					west = Math.min(west, ring[i + 1]);
+					east = Math.max(east, ring[i + 1]);
+				}
+			}
+		}
+
+		/**
+		 * Sets the representative point to the centroid of the largest ring
+		 * or, if the region does not contain it, to the middle of the widest
+		 * section on its parallel
+		 */
+		void setRepresentativePoint() {
+			int[] largest = null;
+			double largestArea = -1;
+			double centroidLat = 0;
+			double centroidLon = 0;
+			for (int[] ring : rings) {
+				double area = 0;
+				double lat = 0;
+				double lon = 0;
+				int n = ring.length / 2;
+				for (int i = 0, j = n - 1; i < n; j = i++) {
+					// relative to the first vertex for precision
+					double y1 = ring[2 * j] - ring[0];
+					double x1 = ring[2 * j + 1] - ring[1];
+					double y2 = ring[2 * i] - ring[0];
+					double x2 = ring[2 * i + 1] - ring[1];
+					double cross = x1 * y2 - x2 * y1;
+					area += cross;
+					lat += (y1 + y2) * cross;
+					lon += (x1 + x2) * cross;
+				}
+				if (Math.abs(area) > largestArea) {
+					largestArea = Math.abs(area);
+					largest = ring;
+					if (area != 0) {
+						centroidLat = ring[0] + lat / (3 * area);
+						centroidLon = ring[1] + lon / (3 * area);
+					} else {
+						centroidLat = ring[0];
+						centroidLon = ring[1];
+					}
+				}
+			}
+			latE7 = (int) Math.round(centroidLat);
+			lonE7 = (int) Math.round(centroidLon);
+			if (contains(latE7, lonE7)) {
+				return;
+			}
+			// crossings of the rings with the parallel through the centroid
+			double parallel = latE7 + 0.5;
+			ArrayList<Double> crossings = new ArrayList<Double>();
+			for (int[] ring : rings) {
+				int n = ring.length / 2;
+				for (int i = 0, j = n - 1; i < n; j = i++) {
+					double y1 = ring[2 * j];
+					double y2 = ring[2 * i];
+					if ((y1 > parallel) != (y2 > parallel)) {
+						double x1 = ring[2 * j + 1];
+						double x2 = ring[2 * i + 1];
+						crossings.add(x1 + (parallel - y1) * (x2 - x1)
+								/ (y2 - y1));
+					}
+				}
+			}
+			Collections.sort(crossings);
+			double widest = -1;
+			for (int i = 0; i + 1 < crossings.size(); i += 2) {
+				double width = crossings.get(i + 1) - crossings.get(i);
+				if (width > widest) {
+					widest = width;
+					lonE7 = (int) Math.round((crossings.get(i) + crossings
+							.get(i + 1)) / 2);
+				}
+			}
+			if (widest < 0) {
+				latE7 = largest[0];
+				lonE7 = largest[1];
+			}
+		}
+
+		/**
+		 * Tests whether the region contains a point, as BoundaryIndex does
+		 */
+		boolean contains(int latE7, int lonE7) {
+			boolean inside = false;
+			for (int[] ring : rings) {
+				int n = ring.length / 2;
+				for (int i = 0, j = n - 1; i < n; j = i++) {
+					long lat1 = ring[2 * j];
+					long lon1 = ring[2 * j + 1];
+					long lat2 = ring[2 * i];
+					long lon2 = ring[2 * i + 1];
+					if ((lat1 > latE7) != (lat2 > latE7)) {
+						long left = (lonE7 - lon1) * (lat2 - lat1);
+						long right = (latE7 - lat1) * (lon2 - lon1);
+						if (lat2 > lat1 ? left < right : left > right) {
+							inside = !inside;
+						}
+					}
+				}
+			}
+			return inside;
+		}
+	}
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2013 Distributed Computing & Security Group,
+ *                    Leibniz Universitaet Hannover, Germany
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.locationprivacy.tools;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.Random;
+
+import android.locationprivacy.util.Gazetteer;
+
+/**
+ * GazetteerBenchmark measures lookups in a gazetteer created by
+ * GazetteerBuilder: nearest places of each level for locations near random
+ * places and places by name. It reports the mean latency of both lookups and
+ * the size of the file per place.
+ *
+ * As real extracts are large, it can also generate a synthetic address CSV:
+ * cities scattered over a country, each with postal code regions and streets
+ * with a number of addresses.
+ *
+ * Options:
+ * --gazetteer file to measure
+ * --lookups number of lookups per measurement (default 200000)
+ * --generate CSV file to write synthetic addresses to instead of measuring
+ * --country name of the synthetic country (default Germany)
+ * --cities number of synthetic cities (default 200)
+ */
+public class GazetteerBenchmark {
+
+	/** Sink keeping the results alive */
+	private static long sink;
+
+	/**
+	 * Runs the benchmark
+	 *
+	 * @param args
+	 *            options, see class description
+	 */
+	public static void main(String[] args) throws IOException {
+		Options options = new Options(args);
+		String generate = options.get("generate", null);
+		if (generate != null) {
+			generate(new File(generate), options.get("country", "Germany"),
+					options.getInt("cities", 200));
+			return;
+		}
+		String path = options.get("gazetteer", null);
+		if (path == null) {
+			throw new IllegalArgumentException("--gazetteer or --generate required");
+		}
+		int lookups = options.getInt("lookups", 200000);
+		Gazetteer gazetteer = Gazetteer.open(path);
+		int count = gazetteer.getPlaceCount();
+		long size = new File(path).length();
+		System.out.printf("places:  %d, %d KiB, %.1f bytes per place%n",
+				count, size / 1024, (double) size / Math.max(1, count));
+
+		Random random = new Random(1);
+		double[] latitudes = new double[lookups];
+		double[] longitudes = new double[lookups];
+		String[] names = new String[lookups];
+		for (int i = 0; i < lookups; i++) {
+			int place = random.nextInt(count);
+			// up to about 300 m away from the place
+			latitudes[i] = gazetteer.getLatitude(place)
+					+ (random.nextDouble() - 0.5) * 0.005;
+			longitudes[i] = gazetteer.getLongitude(place)
+					+ (random.nextDouble() - 0.5) * 0.008;
+			names[i] = gazetteer.getName(place);
+		}
+		String[] levels = { "street", "postalcode", "city", "country" };
+		for (int level = 0; level < Gazetteer.LEVELS; level++) {
+			// warm up
+			nearest(gazetteer, level, latitudes, longitudes);
+			long start = System.nanoTime();
+			int found = nearest(gazetteer, level, latitudes, longitudes);
+			long duration = System.nanoTime() - start;
+			System.out.printf("nearest %-10s %6d ns, %5.1f%% found%n",
+					levels[level], duration / lookups, found * 100.0 / lookups);
+		}
+		find(gazetteer, names);
+		long start = System.nanoTime();
+		int found = find(gazetteer, names);
+		long duration = System.nanoTime() - start;
+		System.out.printf("find               %6d ns, %5.1f%% found%n",
+				duration / lookups, found * 100.0 / lookups);
+	}
+
+	/**
+	 * Looks up the nearest places of a level
+	 *
+	 * @return number of locations a place has been found for
+	 */
+	static int nearest(Gazetteer gazetteer, int level, double[] latitudes,
+			double[] longitudes) {
+		int found = 0;
+		for (int i = 0; i < latitudes.length; i++) {
+			int place = gazetteer.nearest(level, latitudes[i], longitudes[i]);
+			if (place >= 0) {
+				found++;
+				sink += place;
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Looks up places by name
+	 *
+	 * @return number of names a place has been found for
+	 */
+	static int find(Gazetteer gazetteer, String[] names) {
+		int found = 0;
+		for (String name : names) {
+			int place = gazetteer.find(name);
+			if (place >= 0) {
+				found++;
+				sink += place;
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Writes synthetic addresses. Cities get 2 to 20 postal code regions
+	 * with 20 to 100 streets of 5 to 30 addresses each.
+	 */
+	static void generate(File output, String country, int cities)
+			throws IOException {
+		Random random = new Random(1);
+		Writer out = new BufferedWriter(new OutputStreamWriter(
+				new FileOutputStream(output), "UTF-8"));
+		int addresses = 0;
+		try {
+			out.write("street,postalcode,city,country,latitude,longitude\n");
+			int postalCode = 10000;
+			for (int c = 0; c < cities; c++) {
+				String city = "City " + c;
+				double cityLat = 47.5 + random.nextDouble() * 7;
+				double cityLon = 6 + random.nextDouble() * 8.5;
+				int regions = 2 + random.nextInt(19);
+				for (int p = 0; p < regions; p++) {
+					postalCode += 1 + random.nextInt(20);
+					double regionLat = cityLat + random.nextGaussian() * 0.02;
+					double regionLon = cityLon + random.nextGaussian() * 0.03;
+					int streets = 20 + random.nextInt(81);
+					for (int s = 0; s < streets; s++) {
+						String street = "Street " + s + " (" + postalCode + ")";
+						double lat = regionLat + random.nextGaussian() * 0.005;
+						double lon = regionLon + random.nextGaussian() * 0.008;
+						double bearing = random.nextDouble() * Math.PI;
+						int numbers = 5 + random.nextInt(26);
+						for (int n = 0; n < numbers; n++) {
+							// addresses every 20 m along the street
+							double along = n * 20 / 111320.0;
+							out.write(String.format(Locale.ROOT,
+									"%s,%d,%s,%s,%.7f,%.7f%n", street,
+									postalCode, city, country, lat + along
+											* Math.cos(bearing), lon + along
+											* Math.sin(bearing) * 1.6));
+							addresses++;
+						}
+					}
+				}
+			}
+		} finally {
+			out.close();
+		}
+		System.out.println(addresses + " addresses written to " + output);
+	}
+}
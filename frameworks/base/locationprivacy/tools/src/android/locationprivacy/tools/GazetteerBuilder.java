@@ -0,0 +1,531 @@
+/*
+ * Copyright (C) 2013 Distributed Computing & Security Group,
+ *                    Leibniz Universitaet Hannover, Germany
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.locationprivacy.tools;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import android.locationprivacy.util.Gazetteer;
+import android.locationprivacy.util.MetricGrid;
+
+/**
+ * GazetteerBuilder creates the binary file read by Gazetteer from address
+ * points. Each address point adds to the centroid of its street, postal code
+ * region, city and country, so the places of all levels and their parents
+ * are derived from the addresses.
+ *
+ * Address points are read from
+ * <ul>
+ * <li>CSV files (.csv) with the columns street, postal code, city, country,
+ * latitude and longitude. Fields may be empty or quoted, lines starting with
+ * # and a header line are skipped.</li>
+ * <li>OSM XML extracts (.osm), from the addr:street, addr:postcode, addr:city
+ * and addr:country tags of nodes. Buildings mapped as ways are included if
+ * the extract is converted to nodes first, e.g. by osmconvert
+ * --all-to-nodes.</li>
+ * </ul>
+ * Countries should be given as named by the Geocoder, e.g. Germany, since
+ * names are looked up as formatted by GeoReverseGeo. The optional country
+ * argument sets the country of all addresses of the input, which is needed
+ * for OSM extracts that only contain country codes.
+ *
+ * Usage: java android.locationprivacy.tools.GazetteerBuilder input output.gaz
+ * [country]
+ */
+public class GazetteerBuilder {
+
+	/** Cell sizes of the grids of the levels in meters */
+	private static final int[] CELL_SIZES = { 500, 5000, 10000, 250000 };
+
+	/** Places of each level by name */
+	private final ArrayList<HashMap<String, Place>> levels = new ArrayList<HashMap<String, Place>>();
+
+	/** Country of all addresses, null to take it from the input */
+	private final String country;
+
+	/**
+	 * Creates new instance of GazetteerBuilder
+	 *
+	 * @param country
+	 *            country of all addresses, null to take it from the input
+	 */
+	public GazetteerBuilder(String country) {
+		this.country = country;
+		for (int level = 0; level < Gazetteer.LEVELS; level++) {
+			levels.add(new HashMap<String, Place>());
+		}
+	}
+
+	/**
+	 * Converts an address file
+	 *
+	 * @param args
+	 *            input file, output file and optionally the country
+	 */
+	public static void main(String[] args) {
+		if (args.length != 2 && args.length != 3) {
+			System.err.println("Usage: GazetteerBuilder input.csv|input.osm output.gaz [country]");
+			System.exit(1);
+		}
+		try {
+			GazetteerBuilder builder = new GazetteerBuilder(
+					args.length == 3 ? args[2] : null);
+			builder.read(new File(args[0]));
+			builder.write(new File(args[1]));
+			builder.printStatistics();
+		} catch (IOException e) {
+			System.err.println(e.getMessage());
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Reads the address points of a file, by its extension as CSV or OSM XML
+	 *
+	 * @param input
+	 *            CSV or OSM XML file
+	 * @throws IOException
+	 *             if reading fails or the input is malformed
+	 */
+	public void read(File input) throws IOException {
+		InputStream in = new BufferedInputStream(new FileInputStream(input),
+				65536);
+		try {
+			if (input.getName().endsWith(".osm")) {
+				readOsm(in);
+			} else {
+				readCsv(in);
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Adds an address point
+	 *
+	 * @param street
+	 *            street, may be null
+	 * @param postalCode
+	 *            postal code, may be null
+	 * @param city
+	 *            city, may be null
+	 * @param addressCountry
+	 *            country, may be null
+	 * @param latitude
+	 *            latitude in degrees
+	 * @param longitude
+	 *            longitude in degrees
+	 */
+	public void add(String street, String postalCode, String city,
+			String addressCountry, double latitude, double longitude) {
+		if (country != null) {
+			addressCountry = country;
+		}
+		String[] parts = { street, postalCode, city, addressCountry };
+		Place child = null;
+		for (int level = 0; level < Gazetteer.LEVELS; level++) {
+			// a postal code region is only known together with its city
+			if (parts[level] == null
+					|| (level == Gazetteer.POSTALCODE && city == null)) {
+				continue;
+			}
+			String name = Gazetteer.formatAddress(street, postalCode, city,
+					addressCountry, level);
+			Place place = levels.get(level).get(name);
+			if (place == null) {
+				place = new Place(name, level);
+				levels.get(level).put(name, place);
+			}
+			place.latitude += latitude;
+			place.longitude += longitude;
+			place.count++;
+			if (child != null && child.parentName == null) {
+				child.parentName = name;
+			}
+			child = place;
+		}
+	}
+
+	/**
+	 * Writes the gazetteer
+	 *
+	 * @param output
+	 *            file the Gazetteer is written to
+	 * @throws IOException
+	 *             if writing fails
+	 */
+	public void write(File output) throws IOException {
+		// order places by level and cell, and number them
+		ArrayList<Place> places = new ArrayList<Place>();
+		int[] firstPlaces = new int[Gazetteer.LEVELS + 1];
+		for (int level = 0; level < Gazetteer.LEVELS; level++) {
+			MetricGrid grid = new MetricGrid(CELL_SIZES[level]);
+			ArrayList<Place> sorted = new ArrayList<Place>(levels.get(level)
+					.values());
+			for (Place place : sorted) {
+				place.latE7 = MetricGrid.toE7(place.latitude / place.count);
+				place.lonE7 = MetricGrid.toE7(place.longitude / place.count);
+				place.cell = grid.getCell(place.latE7 / MetricGrid.E7,
+						place.lonE7 / MetricGrid.E7);
+			}
+			Collections.sort(sorted, new Comparator<Place>() {
+				@Override
+				public int compare(Place a, Place b) {
+					if (a.cell != b.cell) {
+						return a.cell < b.cell ? -1 : 1;
+					}
+					return a.name.compareTo(b.name);
+				}
+			});
+			firstPlaces[level] = places.size();
+			for (Place place : sorted) {
+				place.index = places.size();
+				places.add(place);
+			}
+		}
+		firstPlaces[Gazetteer.LEVELS] = places.size();
+
+		// cell tables
+		ArrayList<ArrayList<long[]>> cellTables = new ArrayList<ArrayList<long[]>>();
+		for (int level = 0; level < Gazetteer.LEVELS; level++) {
+			ArrayList<long[]> cells = new ArrayList<long[]>();
+			for (int i = firstPlaces[level]; i < firstPlaces[level + 1]; i++) {
+				long cell = places.get(i).cell;
+				if (cells.isEmpty() || cells.get(cells.size() - 1)[0] != cell) {
+					cells.add(new long[] { cell, i });
+				}
+			}
+			cells.add(new long[] { Long.MAX_VALUE, firstPlaces[level + 1] });
+			cellTables.add(cells);
+		}
+
+		// names and hash table
+		ArrayList<byte[]> names = new ArrayList<byte[]>(places.size());
+		int namesSize = 0;
+		for (Place place : places) {
+			byte[] bytes = Gazetteer.toBytes(place.name);
+			if (bytes.length > 0xffff) {
+				throw new IOException("Name too long: " + place.name);
+			}
+			place.nameOffset = namesSize;
+			names.add(bytes);
+			namesSize += 2 + bytes.length;
+		}
+		int hashSize = 2;
+		while (hashSize < 2 * places.size()) {
+			hashSize *= 2;
+		}
+		int[] hash = new int[hashSize];
+		for (Place place : places) {
+			int slot = Gazetteer.hash(place.name) & (hashSize - 1);
+			while (hash[slot] != 0) {
+				slot = (slot + 1) & (hashSize - 1);
+			}
+			hash[slot] = place.index + 1;
+		}
+
+		// offsets
+		int[] cellOffsets = new int[Gazetteer.LEVELS];
+		long offset = Gazetteer.HEADER_SIZE;
+		for (int level = 0; level < Gazetteer.LEVELS; level++) {
+			cellOffsets[level] = (int) offset;
+			offset += (long) cellTables.get(level).size() * Gazetteer.CELL_SIZE;
+		}
+		long placesOffset = offset;
+		long hashOffset = placesOffset + (long) places.size()
+				* Gazetteer.PLACE_SIZE;
+		long namesOffset = hashOffset + 4L * hashSize;
+		if (namesOffset + namesSize > Integer.MAX_VALUE) {
+			throw new IOException("Gazetteer too large");
+		}
+
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(output), 65536));
+		try {
+			out.writeInt(Gazetteer.MAGIC);
+			out.writeInt(Gazetteer.VERSION);
+			out.writeInt(places.size());
+			out.writeInt(hashSize);
+			out.writeInt((int) placesOffset);
+			out.writeInt((int) hashOffset);
+			out.writeInt((int) namesOffset);
+			out.writeInt(0);
+			for (int level = 0; level < Gazetteer.LEVELS; level++) {
+				out.writeInt(CELL_SIZES[level]);
+				out.writeInt(firstPlaces[level]);
+				out.writeInt(cellTables.get(level).size() - 1);
+				out.writeInt(cellOffsets[level]);
+			}
+			for (ArrayList<long[]> cells : cellTables) {
+				for (long[] cell : cells) {
+					out.writeLong(cell[0]);
+					out.writeInt((int) cell[1]);
+				}
+			}
+			for (Place place : places) {
+				Place parent = getParent(place);
+				out.writeInt(place.latE7);
+				out.writeInt(place.lonE7);
+				out.writeInt(place.nameOffset);
+				out.writeInt(parent == null ? -1 : parent.index);
+				out.writeInt(place.level);
+			}
+			for (int slot : hash) {
+				out.writeInt(slot);
+			}
+			for (byte[] bytes : names) {
+				out.writeShort(bytes.length);
+				out.write(bytes);
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Prints the number of places of each level and the size of the places
+	 * of each country, including their share of the indexes
+	 */
+	public void printStatistics() {
+		String[] levelNames = { "streets", "postal codes", "cities",
+				"countries" };
+		for (int level = 0; level < Gazetteer.LEVELS; level++) {
+			System.out.println(levelNames[level] + ": "
+					+ levels.get(level).size());
+		}
+		TreeMap<String, long[]> countries = new TreeMap<String, long[]>();
+		for (HashMap<String, Place> places : levels) {
+			for (Place place : places.values()) {
+				Place root = place;
+				while (getParent(root) != null) {
+					root = getParent(root);
+				}
+				String key = root.level == Gazetteer.COUNTRY ? root.name : "?";
+				long[] sizes = countries.get(key);
+				if (sizes == null) {
+					sizes = new long[2];
+					countries.put(key, sizes);
+				}
+				sizes[0]++;
+				// place, name and about two hash slots and one cell entry
+				sizes[1] += Gazetteer.PLACE_SIZE + 2
+						+ Gazetteer.toBytes(place.name).length + 8
+						+ Gazetteer.CELL_SIZE;
+			}
+		}
+		for (Map.Entry<String, long[]> entry : countries.entrySet()) {
+			long[] sizes = entry.getValue();
+			System.out.println(entry.getKey() + ": " + sizes[0] + " places, "
+					+ sizes[1] / 1024 + " KiB");
+		}
+	}
+
+	/**
+	 * Returns the parent of a place
+	 *
+	 * @return parent, null if the place has none
+	 */
+	private Place getParent(Place place) {
+		if (place.parentName == null) {
+			return null;
+		}
+		for (int level = place.level + 1; level < Gazetteer.LEVELS; level++) {
+			Place parent = levels.get(level).get(place.parentName);
+			if (parent != null) {
+				return parent;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Reads address points from CSV
+	 */
+	private void readCsv(InputStream in) throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(in,
+				"UTF-8"));
+		String line;
+		int number = 0;
+		while ((line = reader.readLine()) != null) {
+			number++;
+			if (line.length() == 0 || line.startsWith("#")) {
+				continue;
+			}
+			ArrayList<String> fields = split(line);
+			if (fields.size() != 6) {
+				throw new IOException("Line " + number
+						+ ": 6 fields expected, found " + fields.size());
+			}
+			double latitude;
+			double longitude;
+			try {
+				latitude = Double.parseDouble(fields.get(4));
+				longitude = Double.parseDouble(fields.get(5));
+			} catch (NumberFormatException e) {
+				if (number == 1) {
+					// header
+					continue;
+				}
+				throw new IOException("Line " + number + ": invalid coordinate");
+			}
+			add(fields.get(0), fields.get(1), fields.get(2), fields.get(3),
+					latitude, longitude);
+		}
+	}
+
+	/**
+	 * Splits a CSV line into fields. Empty fields are returned as null.
+	 */
+	static ArrayList<String> split(String line) {
+		ArrayList<String> fields = new ArrayList<String>();
+		StringBuilder field = new StringBuilder();
+		boolean quoted = false;
+		for (int i = 0; i < line.length(); i++) {
+			char c = line.charAt(i);
+			if (quoted) {
+				if (c == '"' && i + 1 < line.length()
+						&& line.charAt(i + 1) == '"') {
+					field.append('"');
+					i++;
+				} else if (c == '"') {
+					quoted = false;
+				} else {
+					field.append(c);
+				}
+			} else if (c == '"') {
+				quoted = true;
+			} else if (c == ',') {
+				fields.add(field.length() == 0 ? null : field.toString().trim());
+				field.setLength(0);
+			} else {
+				field.append(c);
+			}
+		}
+		fields.add(field.length() == 0 ? null : field.toString().trim());
+		return fields;
+	}
+
+	/**
+	 * Reads address points from the nodes of an OSM XML extract
+	 */
+	private void readOsm(InputStream in) throws IOException {
+		try {
+			SAXParserFactory.newInstance().newSAXParser()
+					.parse(in, new DefaultHandler() {
+						private HashMap<String, String> tags = new HashMap<String, String>();
+						private double latitude = Double.NaN;
+						private double longitude = Double.NaN;
+
+						@Override
+						public void startElement(String uri, String localName,
+								String qName, Attributes attributes) {
+							if (qName.equals("node")) {
+								tags.clear();
+								latitude = parse(attributes.getValue("lat"));
+								longitude = parse(attributes.getValue("lon"));
+							} else if (qName.equals("tag")
+									&& !Double.isNaN(latitude)) {
+								tags.put(attributes.getValue("k"),
+										attributes.getValue("v"));
+							}
+						}
+
+						@Override
+						public void endElement(String uri, String localName,
+								String qName) {
+							if (!qName.equals("node")) {
+								return;
+							}
+							if (tags.containsKey("addr:city")
+									|| tags.containsKey("addr:street")) {
+								add(tags.get("addr:street"),
+										tags.get("addr:postcode"),
+										tags.get("addr:city"),
+										tags.get("addr:country"), latitude,
+										longitude);
+							}
+							latitude = Double.NaN;
+						}
+					});
+		} catch (SAXException e) {
+			throw new IOException("Invalid OSM XML: " + e.getMessage());
+		} catch (ParserConfigurationException e) {
+			throw new IOException(e.getMessage());
+		}
+	}
+
+	/**
+	 * Parses a coordinate attribute
+	 *
+	 * @return coordinate, NaN if missing or invalid
+	 */
+	private static double parse(String value) {
+		if (value == null) {
+			return Double.NaN;
+		}
+		try {
+			return Double.parseDouble(value);
+		} catch (NumberFormatException e) {
+			return Double.NaN;
+		}
+	}
+
+	/**
+	 * Place collects the address points of a place
+	 */
+	private static class Place {
+		final String name;
+		final int level;
+		String parentName;
+		double latitude;
+		double longitude;
+		int count;
+		int latE7;
+		int lonE7;
+		long cell;
+		int index;
+		int nameOffset;
+
+		Place(String name, int level) {
+			this.name = name;
+			this.level = level;
+		}
+	}
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2013 Distributed Computing & Security Group,
+ *                    Leibniz Universitaet Hannover, Germany
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.locationprivacy.tools;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+
+/**
+ * Histogram prints percentiles and a histogram of measured latencies. Buckets
+ * grow roughly exponentially from 0.1 to 5000 milliseconds, latencies above
+ * fall into the last bucket.
+ */
+class Histogram {
+
+	/** Upper bounds of the buckets in milliseconds */
+	private static final double[] BOUNDS = { 0.1, 0.25, 0.5, 1, 2, 5, 10,
+			20, 50, 100, 200, 500, 1000, 2000, 5000 };
+
+	/** Width of the largest bar */
+	private static final int BAR = 50;
+
+	/** Latencies in nanoseconds, sorted */
+	private final long[] sorted;
+
+	/**
+	 * Creates new instance of Histogram
+	 *
+	 * @param latencies
+	 *            latencies in nanoseconds, the array is not changed
+	 */
+	Histogram(long[] latencies) {
+		sorted = Arrays.copyOf(latencies, latencies.length);
+		Arrays.sort(sorted);
+	}
+
+	/**
+	 * Returns a percentile
+	 *
+	 * @param p
+	 *            percentile between 0 and 1
+	 * @return latency in nanoseconds, 0 if there are no latencies
+	 */
+	long percentile(double p) {
+		if (sorted.length == 0) {
+			return 0;
+		}
+		int index = (int) Math.ceil(p * sorted.length) - 1;
+		return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+	}
+
+	/**
+	 * Prints percentiles and the histogram
+	 */
+	void print(PrintStream out) {
+		out.printf(
+				"latency:    p50 %.2f ms, p90 %.2f ms, p99 %.2f ms, max %.2f ms%n",
+				percentile(0.5) / 1e6, percentile(0.9) / 1e6,
+				percentile(0.99) / 1e6, percentile(1) / 1e6);
+		int[] counts = new int[BOUNDS.length + 1];
+		int bucket = 0;
+		for (long latency : sorted) {
+			while (bucket < BOUNDS.length && latency > BOUNDS[bucket] * 1e6) {
+				bucket++;
+			}
+			counts[bucket]++;
+		}
+		int max = 1;
+		for (int count : counts) {
+			max = Math.max(max, count);
+		}
+		int first = 0;
+		while (first < counts.length - 1 && counts[first] == 0) {
+			first++;
+		}
+		int last = counts.length - 1;
+		while (last > first && counts[last] == 0) {
+			last--;
+		}
+		for (int i = first; i <= last; i++) {
+			String label = i < BOUNDS.length ? String.format("<= %7.2f ms",
+					BOUNDS[i]) : String.format(" > %7.2f ms",
+					BOUNDS[BOUNDS.length - 1]);
+			char[] bar = new char[(int) ((long) counts[i] * BAR / max)];
+			Arrays.fill(bar, '#');
+			out.printf("  %s %7d %s%n", label, counts[i], new String(bar));
+		}
+	}
+}
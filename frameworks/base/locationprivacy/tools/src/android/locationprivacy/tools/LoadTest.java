@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2013 Distributed Computing & Security Group,
+ *                    Leibniz Universitaet Hannover, Germany
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.locationprivacy.tools;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.security.GeneralSecurityException;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * LoadTest sends requests to an obfuscation service the way the algorithm
+ * Webservice does and reports throughput and latency. It is meant to be run
+ * against the StandInServer to compare client settings, e.g. with and
+ * without keep-alive.
+ *
+ * Options:
+ * --url service address (default http://localhost:8443/)
+ * --user name and --password password: Basic Auth credentials
+ * --threads number of concurrent clients (default 4)
+ * --requests total number of requests (default 2000)
+ * --keepalive reuse connections (default true)
+ * --batch locations per request (default 1), sent as POST batch request if
+ * greater than 1
+ * --standin start an embedded StandInServer and send the requests to it
+ * (default false), its faults are set by the options --latency, --jitter,
+ * --errorrate and --maxrate of the StandInServer
+ * --serverthreads number of threads of the embedded StandInServer (default 8)
+ *
+ * For a server with a self-signed certificate, pass its keystore as trust
+ * store, i.e. -Djavax.net.ssl.trustStore=file.
+ */
+public class LoadTest {
+
+	/**
+	 * Runs the load test
+	 *
+	 * @param args
+	 *            options, see class description
+	 */
+	public static void main(String[] args) throws InterruptedException,
+			IOException, GeneralSecurityException {
+		Options options = new Options(args);
+		StandInServer server = null;
+		String address = options.get("url", "http://localhost:8443/");
+		if (options.getBoolean("standin", false)) {
+			server = new StandInServer(null, null);
+			server.setLatency(options.getInt("latency", 0),
+					options.getInt("jitter", 0));
+			server.setErrorRate(options.getDouble("errorrate", 0));
+			server.setMaxRate(options.getInt("maxrate", 0));
+			server.start(0, null, null, options.getInt("serverthreads", 8));
+			address = "http://localhost:" + server.getPort() + "/";
+		}
+		final String url = address;
+		final String authorization = BasicAuth.header(
+				options.get("user", "myname"), options.get("password", "secret"));
+		int threads = options.getInt("threads", 4);
+		int requests = options.getInt("requests", 2000);
+		boolean keepAlive = options.getBoolean("keepalive", true);
+		final int batch = Math.max(1, options.getInt("batch", 1));
+		System.setProperty("http.keepAlive", String.valueOf(keepAlive));
+
+		final long[] latencies = new long[requests];
+		final AtomicInteger next = new AtomicInteger();
+		final AtomicInteger errors = new AtomicInteger();
+		Thread[] clients = new Thread[threads];
+		long start = System.nanoTime();
+		for (int t = 0; t < threads; t++) {
+			final Random random = new Random(t);
+			clients[t] = new Thread() {
+				@Override
+				public void run() {
+					int i;
+					while ((i = next.getAndIncrement()) < latencies.length) {
+						String address = url;
+						String body = null;
+						if (batch == 1) {
+							address += "?" + location(random, "=", "&");
+						} else {
+							StringBuilder builder = new StringBuilder("[");
+							for (int j = 0; j < batch; j++) {
+								builder.append(j == 0 ? "{" : ",{");
+								builder.append(location(random, ":", ","));
+								builder.append('}');
+							}
+							body = builder.append(']').toString();
+						}
+						long begin = System.nanoTime();
+						if (!request(address, authorization, body)) {
+							errors.incrementAndGet();
+						}
+						latencies[i] = System.nanoTime() - begin;
+					}
+				}
+			};
+			clients[t].start();
+		}
+		for (Thread client : clients) {
+			client.join();
+		}
+		long duration = System.nanoTime() - start;
+		if (server != null) {
+			server.stop();
+		}
+
+		System.out.println("requests:   " + requests + " (" + errors.get()
+				+ " errors)");
+		System.out.println("keep-alive: " + keepAlive);
+		System.out.println("batch:      " + batch);
+		System.out.printf("throughput: %.1f requests/s, %.1f locations/s%n",
+				requests * 1e9 / duration, requests * batch * 1e9 / duration);
+		if (server != null) {
+			System.out.println("stand-in:   " + server.getRequests()
+					+ " requests, " + server.getFailed() + " failed, "
+					+ server.getRejected() + " rejected");
+		}
+		new Histogram(latencies).print(System.out);
+	}
+
+	/**
+	 * Returns a random location around Hannover
+	 *
+	 * @param assign
+	 *            separator of names and values
+	 * @param separator
+	 *            separator of lat and lon
+	 */
+	static String location(Random random, String assign, String separator) {
+		double lat = 52.3 + random.nextDouble() * 0.2;
+		double lon = 9.6 + random.nextDouble() * 0.2;
+		if (assign.equals(":")) {
+			return "\"lat\":" + lat + separator + "\"lon\":" + lon;
+		}
+		return "lat" + assign + lat + separator + "lon" + assign + lon;
+	}
+
+	/**
+	 * Sends one request and reads the response completely
+	 *
+	 * @param body
+	 *            body of a POST request, null for a GET request
+	 * @return true if the server answered with status 200
+	 */
+	static boolean request(String address, String authorization, String body) {
+		HttpURLConnection connection = null;
+		try {
+			connection = (HttpURLConnection) new URL(address).openConnection();
+			connection.setRequestProperty("Authorization", authorization);
+			if (body != null) {
+				byte[] bytes = body.getBytes("UTF-8");
+				connection.setRequestProperty("Content-Type",
+						"application/json");
+				connection.setDoOutput(true);
+				connection.setFixedLengthStreamingMode(bytes.length);
+				OutputStream os = connection.getOutputStream();
+				os.write(bytes);
+				os.close();
+			}
+			int status = connection.getResponseCode();
+			InputStream is = status < 400 ? connection.getInputStream()
+					: connection.getErrorStream();
+			if (is != null) {
+				StandInServer.drain(is);
+				is.close();
+			}
+			return status == 200;
+		} catch (IOException e) {
+			if (connection != null) {
+				connection.disconnect();
+			}
+			return false;
+		}
+	}
+}
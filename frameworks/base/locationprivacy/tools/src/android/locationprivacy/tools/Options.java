@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2013 Distributed Computing & Security Group,
+ *                    Leibniz Universitaet Hannover, Germany
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.locationprivacy.tools;
+
+import java.util.HashMap;
+
+/**
+ * Options parses command line arguments of the form --name value.
+ */
+class Options {
+
+	/** Values by option name */
+	private final HashMap<String, String> values = new HashMap<String, String>();
+
+	/**
+	 * Creates new instance of Options
+	 *
+	 * @param args
+	 *            command line arguments
+	 * @throws IllegalArgumentException
+	 *             if an argument is not an option or has no value
+	 */
+	Options(String[] args) {
+		for (int i = 0; i < args.length; i += 2) {
+			if (!args[i].startsWith("--") || i + 1 == args.length) {
+				throw new IllegalArgumentException("Invalid argument "
+						+ args[i]);
+			}
+			values.put(args[i].substring(2), args[i + 1]);
+		}
+	}
+
+	/**
+	 * Returns the value of an option
+	 *
+	 * @return value, defaultValue if the option is not given
+	 */
+	String get(String name, String defaultValue) {
+		String value = values.get(name);
+		return value == null ? defaultValue : value;
+	}
+
+	/**
+	 * Returns the value of an integer option
+	 *
+	 * @return value, defaultValue if the option is not given
+	 */
+	int getInt(String name, int defaultValue) {
+		String value = values.get(name);
+		return value == null ? defaultValue : Integer.parseInt(value);
+	}
+
+	/**
+	 * Returns the value of a floating point option
+	 *
+	 * @return value, defaultValue if the option is not given
+	 */
+	double getDouble(String name, double defaultValue) {
+		String value = values.get(name);
+		return value == null ? defaultValue : Double.parseDouble(value);
+	}
+
+	/**
+	 * Returns the value of a boolean option
+	 *
+	 * @return value, defaultValue if the option is not given
+	 */
+	boolean getBoolean(String name, boolean defaultValue) {
+		String value = values.get(name);
+		return value == null ? defaultValue : Boolean.parseBoolean(value);
+	}
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2013 Distributed Computing & Security Group,
+ *                    Leibniz Universitaet Hannover, Germany
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.locationprivacy.tools;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.HashMap;
+import java.util.Random;
+
+import android.locationprivacy.util.LocationJsonParser;
+
+/**
+ * ParserBenchmark measures how fast responses of the obfuscation service are
+ * parsed by LocationJsonParser, compared to reading the response as String
+ * and splitting it into a map of members as a tree parser like org.json does
+ * (org.json itself is not available on the host).
+ *
+ * Responses are single locations as sent by the service and batch responses
+ * of 16 and 64 locations with seven decimal digits and an additional member.
+ *
+ * Options:
+ * --iterations number of responses parsed per measurement (default 200000)
+ */
+public class ParserBenchmark {
+
+	/** Sink keeping the results alive */
+	private static double sink;
+
+	/**
+	 * Runs the benchmark
+	 *
+	 * @param args
+	 *            options, see class description
+	 */
+	public static void main(String[] args) throws IOException {
+		Options options = new Options(args);
+		int iterations = options.getInt("iterations", 200000);
+		Random random = new Random(1);
+		for (int size : new int[] { 1, 16, 64 }) {
+			byte[] response = createResponse(random, size);
+			// warm up
+			measure(response, size, iterations / 10, true);
+			measure(response, size, iterations / 10, false);
+			long streaming = measure(response, size, iterations / size, true);
+			long strings = measure(response, size, iterations / size, false);
+			System.out.printf(
+					"%2d locations, %5d bytes: streaming %7d ns, strings %7d ns, speedup %.1fx%n",
+					size, response.length, streaming, strings, (double) strings
+							/ streaming);
+		}
+		if (sink == 42) {
+			System.out.println();
+		}
+	}
+
+	/**
+	 * Creates a response
+	 *
+	 * @param size
+	 *            number of locations, 1 for a single location object
+	 */
+	static byte[] createResponse(Random random, int size) {
+		StringBuilder builder = new StringBuilder();
+		if (size > 1) {
+			builder.append('[');
+		}
+		for (int i = 0; i < size; i++) {
+			if (i > 0) {
+				builder.append(',');
+			}
+			builder.append(String.format(java.util.Locale.ROOT,
+					"{\"lat\":%.7f,\"lon\":%.7f,\"accuracy\":%d}",
+					52.3 + random.nextDouble() * 0.2,
+					9.6 + random.nextDouble() * 0.2, 100 + random.nextInt(900)));
+		}
+		if (size > 1) {
+			builder.append(']');
+		}
+		return builder.append('\n').toString().getBytes();
+	}
+
+	/**
+	 * Parses a response repeatedly
+	 *
+	 * @return mean time per response in nanoseconds
+	 */
+	static long measure(byte[] response, int size, int iterations,
+			boolean streaming) throws IOException {
+		double[] latitudes = new double[size];
+		double[] longitudes = new double[size];
+		double[] result = new double[2];
+		long start = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			ByteArrayInputStream in = new ByteArrayInputStream(response);
+			if (streaming) {
+				LocationJsonParser parser = new LocationJsonParser(in);
+				if (size == 1) {
+					parser.readLocation(result);
+					latitudes[0] = result[0];
+				} else {
+					parser.readLocations(latitudes, longitudes);
+				}
+				parser.finish();
+			} else {
+				parseStrings(in, latitudes, longitudes);
+			}
+			sink += latitudes[0];
+		}
+		return (System.nanoTime() - start) / Math.max(1, iterations);
+	}
+
+	/**
+	 * Parses a response the way it was parsed before: as a line, split into
+	 * objects and members
+	 */
+	static void parseStrings(ByteArrayInputStream in, double[] latitudes,
+			double[] longitudes) throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(in));
+		String line = reader.readLine();
+		int index = 0;
+		int start = line.indexOf('{');
+		while (start >= 0) {
+			int end = line.indexOf('}', start);
+			HashMap<String, String> members = new HashMap<String, String>();
+			for (String member : line.substring(start + 1, end).split(",")) {
+				int colon = member.indexOf(':');
+				members.put(member.substring(0, colon).trim().replace("\"", ""),
+						member.substring(colon + 1).trim());
+			}
+			latitudes[index] = Double.parseDouble(members.get("lat"));
+			longitudes[index] = Double.parseDouble(members.get("lon"));
+			index++;
+			start = line.indexOf('{', end);
+		}
+	}
+}
@@ -0,0 +1,360 @@
+/*
+ * Copyright (C) 2013 Distributed Computing & Security Group,
+ *                    Leibniz Universitaet Hannover, Germany
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.locationprivacy.tools;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Random;
+
+import android.locationprivacy.util.MetricGrid;
+import android.locationprivacy.util.PopulationGrid;
+
+/**
+ * PopulationGridBenchmark measures the lookups of the algorithm KAnonymity in
+ * a population grid created by PopulationGridBuilder: the smallest aligned
+ * block of 2^l x 2^l cells with at least k inhabitants containing random
+ * locations within the grid, found by PopulationGrid.getBlockLevel as done by
+ * KAnonymity. It reports the mean latency, the share of locations found, the
+ * mean side length of the blocks and the size of the file per cell.
+ *
+ * If the raster the grid has been built from is given, it is read into
+ * memory. Every entry of the summed-area table is compared with the sum of
+ * the raster values, and the results of the first locations are compared
+ * with blocks whose population is summed from the raster values. The
+ * benchmark fails if an entry or a result differs.
+ *
+ * As real rasters are large, it can also generate a synthetic one in ESRI
+ * ASCII grid format: cities with a population falling off from their center
+ * over a sparsely populated countryside.
+ *
+ * Options:
+ * --grid file to measure
+ * --raster ESRI ASCII grid file the grid has been built from, to check the
+ * results against
+ * --k minimum number of inhabitants of a block (default 1000)
+ * --lookups number of lookups per measurement (default 200000)
+ * --generate ESRI ASCII grid file to write a synthetic raster to instead of
+ * measuring
+ * --rows and --columns size of the synthetic raster (default 2000 x 3000
+ * cells of 30 arc seconds)
+ * --cities number of synthetic cities (default 300)
+ */
+public class PopulationGridBenchmark {
+
+	/** South-west corner and cell size of the synthetic raster in degrees */
+	private static final double SOUTH = 47.0;
+	private static final double WEST = 5.0;
+	private static final double CELL_SIZE = 30 / 3600.0;
+
+	/** Number of lookups compared with blocks summed from the raster */
+	private static final int CHECKED = 2000;
+
+	/** Largest block side length in cells that is summed from the raster */
+	private static final int CHECKED_SIZE = 64;
+
+	/** Sink keeping the results alive */
+	private static long sink;
+
+	/**
+	 * Runs the benchmark
+	 *
+	 * @param args
+	 *            options, see class description
+	 */
+	public static void main(String[] args) throws IOException {
+		Options options = new Options(args);
+		String generate = options.get("generate", null);
+		if (generate != null) {
+			generate(new File(generate), options.getInt("rows", 2000),
+					options.getInt("columns", 3000),
+					options.getInt("cities", 300));
+			return;
+		}
+		String path = options.get("grid", null);
+		if (path == null) {
+			throw new IllegalArgumentException("--grid or --generate required");
+		}
+		String rasterPath = options.get("raster", null);
+		long k = options.getInt("k", 1000);
+		int lookups = options.getInt("lookups", 200000);
+		PopulationGrid grid = PopulationGrid.open(path);
+		int rows = grid.getRows();
+		int columns = grid.getColumns();
+		long size = new File(path).length();
+		long population = grid.getPopulation(0, 0, rows, columns);
+		System.out.printf(
+				"cells:    %d x %d, %d inhabitants, %d KiB, %.1f bytes per cell%n",
+				rows, columns, population, size / 1024, (double) size
+						/ ((long) rows * columns));
+
+		Random random = new Random(1);
+		int[] latitudes = new int[lookups];
+		int[] longitudes = new int[lookups];
+		double north = grid.getLatitude(0);
+		double south = grid.getLatitude(rows);
+		double west = grid.getLongitude(0);
+		double east = grid.getLongitude(columns);
+		for (int i = 0; i < lookups; i++) {
+			latitudes[i] = MetricGrid.toE7(south + random.nextDouble()
+					* (north - south));
+			longitudes[i] = MetricGrid.toE7(west + random.nextDouble()
+					* (east - west));
+		}
+		// warm up
+		find(grid, k, latitudes, longitudes);
+		long start = System.nanoTime();
+		long[] result = find(grid, k, latitudes, longitudes);
+		long duration = System.nanoTime() - start;
+		System.out.printf(
+				"block k=%-6d %6d ns, %5.1f%% found, %.1f cells mean side length%n",
+				k, duration / lookups, result[0] * 100.0 / lookups,
+				(double) result[1] / Math.max(1, result[0]));
+
+		if (rasterPath == null) {
+			System.out.println("results not checked, no --raster given");
+			return;
+		}
+		int[][] raster = readRaster(new File(rasterPath));
+		if (raster.length != rows || raster[0].length != columns) {
+			System.out.printf("raster:   %d x %d cells differ%n",
+					raster.length, raster[0].length);
+			System.exit(1);
+		}
+		// entry (r, c) of the table is the population north-west of it,
+		// modulo 2^32 like all sums of the grid
+		int differences = 0;
+		long[] sums = new long[columns + 1];
+		for (int r = 0; r < rows; r++) {
+			long rowSum = 0;
+			for (int c = 0; c < columns; c++) {
+				rowSum += raster[r][c];
+				sums[c + 1] += rowSum;
+				if (grid.getPopulation(0, 0, r + 1, c + 1) != (sums[c + 1]
+						& 0xffffffffL)) {
+					differences++;
+				}
+			}
+		}
+		System.out.printf(
+				"%d of %d table entries differ from sums of the raster%n",
+				differences, (long) rows * columns);
+		int maxChecked = Integer.numberOfTrailingZeros(CHECKED_SIZE);
+		int checked = Math.min(CHECKED, lookups);
+		int blockDifferences = 0;
+		for (int i = 0; i < checked; i++) {
+			int row = grid.getRow(latitudes[i]);
+			int column = grid.getColumn(longitudes[i]);
+			if (row < 0 || column < 0) {
+				continue;
+			}
+			int level = grid.getBlockLevel(row, column, k);
+			int expected = -1;
+			for (int l = 0; l <= maxChecked && expected < 0; l++) {
+				if (sumRaster(raster, row, column, l) >= k) {
+					expected = l;
+				}
+			}
+			// larger blocks are not summed, only checked to be larger
+			if (expected >= 0 ? level != expected : level >= 0
+					&& level <= maxChecked) {
+				blockDifferences++;
+			}
+		}
+		System.out.printf(
+				"%d of %d blocks differ from blocks summed from the raster%n",
+				blockDifferences, checked);
+		if (differences > 0 || blockDifferences > 0) {
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Looks up the blocks of locations
+	 *
+	 * @return number of locations a block has been found for and sum of the
+	 *         side lengths of the blocks in cells
+	 */
+	static long[] find(PopulationGrid grid, long k, int[] latitudes,
+			int[] longitudes) {
+		long[] result = new long[2];
+		for (int i = 0; i < latitudes.length; i++) {
+			int row = grid.getRow(latitudes[i]);
+			int column = grid.getColumn(longitudes[i]);
+			if (row < 0 || column < 0) {
+				continue;
+			}
+			int level = grid.getBlockLevel(row, column, k);
+			if (level >= 0) {
+				result[0]++;
+				result[1] += 1 << level;
+				sink += level;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the population of the block of a level containing a cell,
+	 * summed from the raster values
+	 */
+	private static long sumRaster(int[][] raster, int row, int column,
+			int level) {
+		int row0 = (row >> level) << level;
+		int column0 = (column >> level) << level;
+		long sum = 0;
+		for (int r = row0; r < Math.min(raster.length, row0 + (1 << level)); r++) {
+			for (int c = column0; c < Math.min(raster[r].length, column0
+					+ (1 << level)); c++) {
+				sum += raster[r][c];
+			}
+		}
+		return sum;
+	}
+
+	/**
+	 * Reads the people per cell of an ESRI ASCII grid file, counting NODATA
+	 * and negative values as uninhabited and rounding fractional values
+	 *
+	 * @return people by row and column
+	 */
+	static int[][] readRaster(File input) throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(
+				new FileInputStream(input), "US-ASCII"), 65536);
+		try {
+			int rows = 0;
+			int columns = 0;
+			double noData = Double.NaN;
+			String line;
+			while ((line = reader.readLine()) != null
+					&& line.trim().length() > 0
+					&& Character.isLetter(line.trim().charAt(0))) {
+				String[] field = line.trim().split("\\s+");
+				String key = field[0].toLowerCase();
+				if (key.equals("ncols")) {
+					columns = Integer.parseInt(field[1]);
+				} else if (key.equals("nrows")) {
+					rows = Integer.parseInt(field[1]);
+				} else if (key.equals("nodata_value")) {
+					noData = Double.parseDouble(field[1]);
+				}
+			}
+			int[][] raster = new int[rows][columns];
+			int r = 0;
+			int c = 0;
+			for (; line != null; line = reader.readLine()) {
+				for (String value : line.trim().split("\\s+")) {
+					if (value.length() == 0) {
+						continue;
+					}
+					if (r == rows) {
+						throw new IOException("More values than cells");
+					}
+					double people = Double.parseDouble(value);
+					if (people > 0 && people != noData) {
+						raster[r][c] = (int) Math.round(people);
+					}
+					if (++c == columns) {
+						c = 0;
+						r++;
+					}
+				}
+			}
+			if (r != rows) {
+				throw new IOException("Unexpected end of raster in row " + r);
+			}
+			return raster;
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Writes a synthetic raster in ESRI ASCII grid format
+	 */
+	static void generate(File output, int rows, int columns, int cities)
+			throws IOException {
+		Random random = new Random(1);
+		double[] cityRows = new double[cities];
+		double[] cityColumns = new double[cities];
+		double[] peaks = new double[cities];
+		double[] radii = new double[cities];
+		for (int i = 0; i < cities; i++) {
+			cityRows[i] = random.nextDouble() * rows;
+			cityColumns[i] = random.nextDouble() * columns;
+			// few large and many small cities
+			double scale = Math.pow(random.nextDouble(), 3);
+			peaks[i] = 200 + scale * 8000;
+			radii[i] = 1 + scale * 8;
+		}
+		Writer out = new BufferedWriter(new OutputStreamWriter(
+				new FileOutputStream(output), "US-ASCII"), 65536);
+		long total = 0;
+		try {
+			out.write("ncols " + columns + "\n");
+			out.write("nrows " + rows + "\n");
+			out.write("xllcorner " + WEST + "\n");
+			out.write("yllcorner " + SOUTH + "\n");
+			out.write("cellsize " + CELL_SIZE + "\n");
+			out.write("NODATA_value -9999\n");
+			double[] row = new double[columns];
+			for (int r = 0; r < rows; r++) {
+				for (int c = 0; c < columns; c++) {
+					// countryside, partly uninhabited
+					row[c] = random.nextInt(4) == 0 ? 0 : random.nextInt(10);
+				}
+				for (int i = 0; i < cities; i++) {
+					double dr = r - cityRows[i];
+					if (Math.abs(dr) > 3 * radii[i]) {
+						continue;
+					}
+					int c0 = Math.max(0, (int) (cityColumns[i] - 3 * radii[i]));
+					int c1 = Math.min(columns, (int) (cityColumns[i] + 3
+							* radii[i]) + 1);
+					for (int c = c0; c < c1; c++) {
+						double dc = c - cityColumns[i];
+						row[c] += peaks[i]
+								* Math.exp(-(dr * dr + dc * dc)
+										/ (2 * radii[i] * radii[i]));
+					}
+				}
+				StringBuilder line = new StringBuilder(columns * 4);
+				for (int c = 0; c < columns; c++) {
+					long people = Math.round(row[c]);
+					total += people;
+					if (c > 0) {
+						line.append(' ');
+					}
+					line.append(people);
+				}
+				line.append('\n');
+				out.write(line.toString());
+			}
+		} finally {
+			out.close();
+		}
+		System.out.println(rows + " x " + columns + " cells with " + total
+				+ " inhabitants written to " + output);
+	}
+}
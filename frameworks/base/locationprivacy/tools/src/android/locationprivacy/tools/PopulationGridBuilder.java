@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2013 Distributed Computing & Security Group,
+ *                    Leibniz Universitaet Hannover, Germany
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.locationprivacy.tools;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.StreamTokenizer;
+
+import android.locationprivacy.util.MetricGrid;
+import android.locationprivacy.util.PopulationGrid;
+
+/**
+ * PopulationGridBuilder converts a population raster in ESRI ASCII grid
+ * format (as published e.g. by GPW or GEOSTAT) into the binary format read by
+ * PopulationGrid. The raster is processed row by row, so memory usage only
+ * depends on the number of columns.
+ *
+ * Usage: java android.locationprivacy.tools.PopulationGridBuilder input.asc
+ * output.grid
+ */
+public class PopulationGridBuilder {
+
+	/**
+	 * Converts an ESRI ASCII grid file
+	 *
+	 * @param args
+	 *            input file and output file
+	 */
+	public static void main(String[] args) {
+		if (args.length != 2) {
+			System.err.println("Usage: PopulationGridBuilder input.asc output.grid");
+			System.exit(1);
+		}
+		try {
+			build(new File(args[0]), new File(args[1]));
+		} catch (IOException e) {
+			System.err.println(e.getMessage());
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Converts an ESRI ASCII grid file. Cells with the NODATA value or negative
+	 * values count as uninhabited, fractional values are rounded.
+	 *
+	 * @param input
+	 *            ESRI ASCII grid file
+	 * @param output
+	 *            file the PopulationGrid is written to
+	 * @throws IOException
+	 *             if reading or writing fails or the input is malformed
+	 */
+	public static void build(File input, File output) throws IOException {
+		BufferedReader reader = new BufferedReader(new FileReader(input));
+		DataOutputStream out = null;
+		try {
+			StreamTokenizer tokens = new StreamTokenizer(reader);
+			tokens.resetSyntax();
+			tokens.wordChars(33, 255);
+			tokens.whitespaceChars(0, 32);
+
+			int columns = 0;
+			int rows = 0;
+			double west = Double.NaN;
+			double south = Double.NaN;
+			double cellSize = Double.NaN;
+			double noData = Double.NaN;
+			String value = null;
+			while ((value = next(tokens)) != null
+					&& Character.isLetter(value.charAt(0))) {
+				String key = value.toLowerCase();
+				double number = parse(next(tokens));
+				if (key.equals("ncols")) {
+					columns = (int) number;
+				} else if (key.equals("nrows")) {
+					rows = (int) number;
+				} else if (key.equals("xllcorner")) {
+					west = number;
+				} else if (key.equals("yllcorner")) {
+					south = number;
+				} else if (key.equals("cellsize")) {
+					cellSize = number;
+				} else if (key.equals("nodata_value")) {
+					noData = number;
+				} else {
+					throw new IOException("Unsupported header field: " + key);
+				}
+			}
+			if (columns <= 0 || rows <= 0 || Double.isNaN(west)
+					|| Double.isNaN(south) || !(cellSize > 0)) {
+				throw new IOException("Incomplete ESRI ASCII grid header");
+			}
+
+			out = new DataOutputStream(new BufferedOutputStream(
+					new FileOutputStream(output), 65536));
+			out.writeInt(PopulationGrid.MAGIC);
+			out.writeInt(PopulationGrid.VERSION);
+			out.writeInt(rows);
+			out.writeInt(columns);
+			out.writeInt(MetricGrid.toE7(south + rows * cellSize));
+			out.writeInt(MetricGrid.toE7(west));
+			out.writeInt(MetricGrid.toE7(cellSize));
+			out.writeInt(0);
+
+			// the file contains rows from north to south, as the table does
+			int[] sums = new int[columns + 1];
+			for (int c = 0; c <= columns; c++) {
+				out.writeInt(0);
+			}
+			for (int r = 0; r < rows; r++) {
+				int rowSum = 0;
+				out.writeInt(0);
+				for (int c = 0; c < columns; c++) {
+					if (value == null) {
+						throw new IOException("Unexpected end of grid in row "
+								+ r);
+					}
+					double people = parse(value);
+					if (people > 0 && people != noData) {
+						// sums are kept modulo 2^32, see PopulationGrid
+						rowSum += (int) Math.round(people);
+					}
+					sums[c + 1] += rowSum;
+					out.writeInt(sums[c + 1]);
+					value = next(tokens);
+				}
+			}
+		} finally {
+			reader.close();
+			if (out != null) {
+				out.close();
+			}
+		}
+	}
+
+	/**
+	 * Returns the next token or null at the end of the input
+	 */
+	private static String next(StreamTokenizer tokens) throws IOException {
+		return tokens.nextToken() == StreamTokenizer.TT_EOF ? null
+				: tokens.sval;
+	}
+
+	/**
+	 * Parses a number of the input
+	 */
+	private static double parse(String value) throws IOException {
+		if (value == null) {
+			throw new IOException("Unexpected end of grid");
+		}
+		try {
+			return Double.parseDouble(value);
+		} catch (NumberFormatException e) {
+			throw new IOException("Invalid number: " + value);
+		}
+	}
+}
@@ -0,0 +1,486 @@
+/*
+ * Copyright (C) 2013 Distributed Computing & Security Group,
+ *                    Leibniz Universitaet Hannover, Germany
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.locationprivacy.tools;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsServer;
+
+/**
+ * StandInServer is a local stand-in for the obfuscation service used by the
+ * algorithm Webservice. It answers GET requests with the parameters lat and
+ * lon with the location truncated to three decimal digits, in the JSON format
+ * of the service. Connections are kept alive.
+ *
+ * POST requests are batch requests. Their body is a JSON array of objects with
+ * lat and lon, the response is an array of the truncated locations in the
+ * same order. Invalid entries are answered with null.
+ *
+ * Faults of a real service can be injected: a latency with random jitter
+ * added to each response, a share of requests failing with status 500 and a
+ * throughput limit, above which requests are rejected at once with status
+ * 503 like an overloaded service does. The server can be embedded into other
+ * tools: create it, set the faults, start() and stop() it. The faults may be
+ * changed while the server is running.
+ *
+ * Options:
+ * --port port (default 8443)
+ * --keystore file and --storepass password: serve HTTPS with the first key
+ * of the keystore, plain HTTP if no keystore is given
+ * --user name and --password password: required Basic Auth credentials,
+ * any credentials are accepted if not given
+ * --threads number of server threads (default 8)
+ * --latency milliseconds added to each response (default 0)
+ * --jitter maximum random milliseconds added to the latency (default 0)
+ * --errorrate share of requests answered with status 500 (default 0)
+ * --maxrate requests per second served, more are answered with status 503
+ * (default 0, unlimited)
+ */
+public class StandInServer implements HttpHandler {
+
+	/** Pattern of a number member of a JSON object */
+	private static final Pattern MEMBER = Pattern
+			.compile("\"(lat|lon)\"\\s*:\\s*(-?[0-9.eE+-]+)");
+
+	/** Expected Authorization header, null accepts any */
+	private final String authorization;
+
+	/** Random numbers for jitter and errors */
+	private final Random random = new Random();
+
+	/** Number of requests received */
+	private final AtomicLong requests = new AtomicLong();
+
+	/** Number of requests failed by injection */
+	private final AtomicLong failed = new AtomicLong();
+
+	/** Number of requests rejected by the throughput limit */
+	private final AtomicLong rejected = new AtomicLong();
+
+	/** Latency added to each response in milliseconds */
+	private volatile int latency;
+
+	/** Maximum random latency added in milliseconds */
+	private volatile int jitter;
+
+	/** Share of requests failing with status 500 */
+	private volatile double errorRate;
+
+	/** Requests per second served, 0 for unlimited */
+	private int maxRate;
+
+	/** Tokens of the throughput limit, one is taken per request */
+	private double tokens;
+
+	/** Time the tokens have been refilled in nanoseconds */
+	private long refilled;
+
+	/** Running server, null if stopped */
+	private HttpServer server;
+
+	/** Threads of the running server */
+	private ExecutorService executor;
+
+	/**
+	 * Creates new instance of StandInServer
+	 *
+	 * @param user
+	 *            required user, null accepts any credentials
+	 * @param password
+	 *            required password
+	 */
+	public StandInServer(String user, String password) {
+		authorization = user == null ? null : BasicAuth.header(user, password);
+	}
+
+	/**
+	 * Starts the server
+	 *
+	 * @param args
+	 *            options, see class description
+	 */
+	public static void main(String[] args) throws IOException,
+			GeneralSecurityException {
+		Options options = new Options(args);
+		StandInServer server = new StandInServer(options.get("user", null),
+				options.get("password", ""));
+		server.setLatency(options.getInt("latency", 0),
+				options.getInt("jitter", 0));
+		server.setErrorRate(options.getDouble("errorrate", 0));
+		server.setMaxRate(options.getInt("maxrate", 0));
+		String keystore = options.get("keystore", null);
+		server.start(options.getInt("port", 8443), keystore,
+				options.get("storepass", ""), options.getInt("threads", 8));
+		System.out.println("Listening on port " + server.getPort()
+				+ (keystore == null ? " (HTTP)" : " (HTTPS)"));
+	}
+
+	/**
+	 * Sets the latency added to each response
+	 *
+	 * @param latency
+	 *            milliseconds added to each response
+	 * @param jitter
+	 *            maximum random milliseconds added to the latency
+	 */
+	public void setLatency(int latency, int jitter) {
+		this.latency = Math.max(0, latency);
+		this.jitter = Math.max(0, jitter);
+	}
+
+	/**
+	 * Sets the share of requests answered with status 500
+	 *
+	 * @param errorRate
+	 *            share between 0 and 1
+	 */
+	public void setErrorRate(double errorRate) {
+		this.errorRate = errorRate;
+	}
+
+	/**
+	 * Sets the throughput limit. Up to one second of requests may arrive in a
+	 * burst.
+	 *
+	 * @param maxRate
+	 *            requests per second served, 0 for unlimited
+	 */
+	public synchronized void setMaxRate(int maxRate) {
+		this.maxRate = Math.max(0, maxRate);
+		tokens = this.maxRate;
+		refilled = System.nanoTime();
+	}
+
+	/**
+	 * Starts the server
+	 *
+	 * @param port
+	 *            port, 0 for any free port
+	 * @param keystore
+	 *            keystore file for HTTPS, null for HTTP
+	 * @param storepass
+	 *            password of the keystore
+	 * @param threads
+	 *            number of server threads, which also limits the number of
+	 *            requests waiting for their latency at the same time
+	 */
+	public synchronized void start(int port, String keystore,
+			String storepass, int threads) throws IOException,
+			GeneralSecurityException {
+		if (server != null) {
+			throw new IllegalStateException("Server is already running");
+		}
+		// small responses on kept-alive connections would otherwise wait for
+		// delayed ACKs
+		System.setProperty("sun.net.httpserver.nodelay", "true");
+		HttpServer created;
+		if (keystore == null) {
+			created = HttpServer.create(new InetSocketAddress(port), 0);
+		} else {
+			HttpsServer https = HttpsServer.create(new InetSocketAddress(port),
+					0);
+			https.setHttpsConfigurator(new HttpsConfigurator(createSSLContext(
+					keystore, storepass)));
+			created = https;
+		}
+		created.createContext("/", this);
+		executor = Executors.newFixedThreadPool(threads);
+		created.setExecutor(executor);
+		created.start();
+		server = created;
+	}
+
+	/**
+	 * Stops the server
+	 */
+	public synchronized void stop() {
+		if (server != null) {
+			server.stop(0);
+			executor.shutdownNow();
+			server = null;
+			executor = null;
+		}
+	}
+
+	/**
+	 * Returns the port the server listens on
+	 *
+	 * @return port, -1 if the server is not running
+	 */
+	public synchronized int getPort() {
+		return server == null ? -1 : server.getAddress().getPort();
+	}
+
+	/**
+	 * Returns the number of requests received
+	 */
+	public long getRequests() {
+		return requests.get();
+	}
+
+	/**
+	 * Returns the number of requests answered with status 500 by injection
+	 */
+	public long getFailed() {
+		return failed.get();
+	}
+
+	/**
+	 * Returns the number of requests rejected by the throughput limit
+	 */
+	public long getRejected() {
+		return rejected.get();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.sun.net.httpserver.HttpHandler#handle(com.sun.net.httpserver.HttpExchange
+	 * )
+	 */
+	@Override
+	public void handle(HttpExchange exchange) throws IOException {
+		try {
+			byte[] body = read(exchange.getRequestBody());
+			if (authorization != null
+					&& !authorization.equals(exchange.getRequestHeaders()
+							.getFirst("Authorization"))) {
+				send(exchange, 401, "{\"error\":\"unauthorized\"}");
+				return;
+			}
+			requests.incrementAndGet();
+			if (!acquire()) {
+				rejected.incrementAndGet();
+				exchange.getResponseHeaders().set("Retry-After", "1");
+				send(exchange, 503, "{\"error\":\"overloaded\"}");
+				return;
+			}
+			delay();
+			if (errorRate > 0 && random.nextDouble() < errorRate) {
+				failed.incrementAndGet();
+				send(exchange, 500, "{\"error\":\"injected\"}");
+				return;
+			}
+			if ("POST".equals(exchange.getRequestMethod())) {
+				send(exchange, 200, batch(new String(body, "UTF-8")));
+				return;
+			}
+			String query = exchange.getRequestURI().getRawQuery();
+			double lat = parameter(query, "lat");
+			double lon = parameter(query, "lon");
+			if (Double.isNaN(lat) || Double.isNaN(lon)) {
+				send(exchange, 400, "{\"error\":\"lat and lon required\"}");
+				return;
+			}
+			send(exchange, 200, "{\"lat\":" + truncate(lat) + ",\"lon\":"
+					+ truncate(lon) + "}");
+		} finally {
+			exchange.close();
+		}
+	}
+
+	/**
+	 * Takes a token of the throughput limit
+	 *
+	 * @return true if the request may be served
+	 */
+	private synchronized boolean acquire() {
+		if (maxRate == 0) {
+			return true;
+		}
+		long now = System.nanoTime();
+		tokens = Math.min(maxRate, tokens + (now - refilled) * maxRate / 1e9);
+		refilled = now;
+		if (tokens < 1) {
+			return false;
+		}
+		tokens--;
+		return true;
+	}
+
+	/**
+	 * Waits for the injected latency
+	 */
+	private void delay() {
+		int millis = latency;
+		int range = jitter;
+		if (range > 0) {
+			millis += random.nextInt(range + 1);
+		}
+		if (millis > 0) {
+			try {
+				Thread.sleep(millis);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Answers a batch request
+	 *
+	 * @param body
+	 *            JSON array of locations
+	 * @return JSON array of truncated locations
+	 */
+	static String batch(String body) {
+		StringBuilder response = new StringBuilder(body.length());
+		response.append('[');
+		int start = body.indexOf('{');
+		while (start >= 0) {
+			int end = body.indexOf('}', start);
+			if (end < 0) {
+				break;
+			}
+			if (response.length() > 1) {
+				response.append(',');
+			}
+			double lat = Double.NaN;
+			double lon = Double.NaN;
+			Matcher matcher = MEMBER.matcher(body.substring(start, end));
+			try {
+				while (matcher.find()) {
+					if (matcher.group(1).equals("lat")) {
+						lat = Double.parseDouble(matcher.group(2));
+					} else {
+						lon = Double.parseDouble(matcher.group(2));
+					}
+				}
+			} catch (NumberFormatException e) {
+				lat = Double.NaN;
+			}
+			if (Double.isNaN(lat) || Double.isNaN(lon)) {
+				response.append("null");
+			} else {
+				response.append("{\"lat\":").append(truncate(lat))
+						.append(",\"lon\":").append(truncate(lon)).append('}');
+			}
+			start = body.indexOf('{', end);
+		}
+		response.append(']');
+		return response.toString();
+	}
+
+	/**
+	 * Returns a number parameter of a query
+	 *
+	 * @return value, NaN if the parameter is missing or invalid
+	 */
+	static double parameter(String query, String name) {
+		if (query == null) {
+			return Double.NaN;
+		}
+		for (String pair : query.split("&")) {
+			int separator = pair.indexOf('=');
+			if (separator > 0 && pair.substring(0, separator).equals(name)) {
+				try {
+					return Double.parseDouble(pair.substring(separator + 1));
+				} catch (NumberFormatException e) {
+					return Double.NaN;
+				}
+			}
+		}
+		return Double.NaN;
+	}
+
+	/**
+	 * Truncates a coordinate to three decimal digits
+	 */
+	static double truncate(double value) {
+		return Math.floor(value * 1000) / 1000;
+	}
+
+	/**
+	 * Sends a response with a body of one line
+	 */
+	static void send(HttpExchange exchange, int status, String body)
+			throws IOException {
+		byte[] bytes = (body + "\n").getBytes("UTF-8");
+		exchange.getResponseHeaders().set("Content-Type", "application/json");
+		exchange.sendResponseHeaders(status, bytes.length);
+		OutputStream os = exchange.getResponseBody();
+		os.write(bytes);
+		os.close();
+	}
+
+	/**
+	 * Reads a stream to its end
+	 */
+	static void drain(InputStream is) throws IOException {
+		byte[] buffer = new byte[1024];
+		while (is.read(buffer) >= 0) {
+			// discard
+		}
+	}
+
+	/**
+	 * Reads a stream to its end
+	 *
+	 * @return content of the stream
+	 */
+	static byte[] read(InputStream is) throws IOException {
+		ByteArrayOutputStream content = new ByteArrayOutputStream();
+		byte[] buffer = new byte[1024];
+		int length;
+		while ((length = is.read(buffer)) >= 0) {
+			content.write(buffer, 0, length);
+		}
+		return content.toByteArray();
+	}
+
+	/**
+	 * Creates a TLS context with the keys of a keystore
+	 */
+	private static SSLContext createSSLContext(String keystore,
+			String storepass) throws IOException, GeneralSecurityException {
+		KeyStore keys = KeyStore.getInstance(KeyStore.getDefaultType());
+		FileInputStream in = new FileInputStream(keystore);
+		try {
+			keys.load(in, storepass.toCharArray());
+		} finally {
+			in.close();
+		}
+		KeyManagerFactory factory = KeyManagerFactory
+				.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+		factory.init(keys, storepass.toCharArray());
+		SSLContext context = SSLContext.getInstance("TLS");
+		context.init(factory.getKeyManagers(), null, null);
+		return context;
+	}
+}
@@ -25,6 +25,7 @@ import android.app.PendingIntent;
 import android.content.BroadcastReceiver;
 import android.content.ComponentName;
 import android.content.ContentQueryMap;
+import android.locationprivacy.control.ILocationPrivacyService;
 import android.locationprivacy.control.LocationPrivacyManager;
 import android.content.ContentResolver;
 import android.content.Context;
@@ -59,6 +60,7 @@ import android.os.Message;
 import android.os.PowerManager;
 import android.os.Process;
 import android.os.RemoteException;
+import android.os.ServiceManager;
 import android.os.WorkSource;
 import android.provider.Settings;
 import android.text.TextUtils;
@@ -194,12 +196,6 @@ public class LocationManagerService extends ILocationManager.Stub implements Run
     // for Settings change notification
     private ContentQueryMap mSettings;
     private LocationPrivacyManager locationPrivacyManager;
-    BroadcastReceiver LPFBReciever = new BroadcastReceiver() {	
-        @Override
-        public void onReceive(Context context, Intent intent) {
-            locationPrivacyManager.updateData();
-        }
-        };
 
     /**
      * A wrapper class holding either an ILocationListener or a PendingIntent to receive
@@ -593,8 +589,9 @@ public class LocationManagerService extends ILocationManager.Stub implements Run
         if (LOCAL_LOGV) {
             Slog.v(TAG, "Constructed LocationManager Service");
         }
-        locationPrivacyManager = new LocationPrivacyManager(mContext);
-        mContext.registerReceiver(LPFBReciever, new IntentFilter("com.android.server.LocationManagerService.locationprivacy"));
+        locationPrivacyManager = LocationPrivacyManager.acquire(mContext);
+        ServiceManager.addService(ILocationPrivacyService.SERVICE_NAME,
+                new LocationPrivacyService(mContext, locationPrivacyManager));
     }
 
     void systemReady() {
@@ -2398,6 +2395,10 @@ public class LocationManagerService extends ILocationManager.Stub implements Run
                     pw.write(state);
                 }
             }
+            if (locationPrivacyManager != null) {
+                pw.println("  Location Privacy:");
+                locationPrivacyManager.dump(pw, "    ");
+            }
         }
     }
 }
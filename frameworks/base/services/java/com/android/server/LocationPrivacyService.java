@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2013 Distributed Computing & Security Group,
+ *                    Leibniz Universitaet Hannover, Germany
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.android.server;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import android.content.Context;
+import android.locationprivacy.control.ILocationPrivacyListener;
+import android.locationprivacy.control.LocationPrivacyManager;
+import android.locationprivacy.control.LocationPrivacyServiceNative;
+import android.locationprivacy.model.AbstractLocationPrivacyAlgorithm;
+import android.locationprivacy.model.LocationPrivacyApplication;
+import android.os.RemoteCallbackList;
+import android.os.RemoteException;
+
+/**
+ * System service owning the location privacy policy. It serves the policy
+ * from the LocationPrivacyManager of system_server, which holds the only
+ * in-memory copy and the only database handle, and tells registered
+ * listeners precisely what has changed.
+ */
+public class LocationPrivacyService extends LocationPrivacyServiceNative {
+    private final Context mContext;
+    private final LocationPrivacyManager mManager;
+    private final RemoteCallbackList<ILocationPrivacyListener> mListeners =
+            new RemoteCallbackList<ILocationPrivacyListener>();
+
+    /**
+     * Creates new instance of LocationPrivacyService
+     *
+     * @param context Context of system_server
+     * @param manager policy store the service works on
+     */
+    public LocationPrivacyService(Context context, LocationPrivacyManager manager) {
+        mContext = context;
+        mManager = manager;
+    }
+
+    private void enforceAccess() {
+        mContext.enforceCallingOrSelfPermission(
+                android.Manifest.permission.WRITE_SECURE_SETTINGS,
+                "Location privacy policy requires WRITE_SECURE_SETTINGS");
+    }
+
+    public boolean getStatus() {
+        enforceAccess();
+        return mManager.isEnabled();
+    }
+
+    public void setStatus(boolean on) {
+        enforceAccess();
+        mManager.setStatus(on);
+        notifyStatusChanged(on);
+    }
+
+    public List<LocationPrivacyApplication> getApplications(String[] uids) {
+        enforceAccess();
+        if (uids == null) {
+            return mManager.getApplications();
+        }
+        List<LocationPrivacyApplication> apps =
+                new ArrayList<LocationPrivacyApplication>(uids.length);
+        for (String uid : uids) {
+            LocationPrivacyApplication app = mManager.getApplication(uid);
+            if (app != null) {
+                apps.add(app);
+            }
+        }
+        return apps;
+    }
+
+    public void setApplications(List<LocationPrivacyApplication> apps) {
+        enforceAccess();
+        if (apps == null || apps.isEmpty()) {
+            return;
+        }
+        String[] uids = new String[apps.size()];
+        for (int i = 0; i < uids.length; i++) {
+            LocationPrivacyApplication app = apps.get(i);
+            mManager.setApplication(app);
+            uids[i] = app.getUid();
+        }
+        notifyApplicationsChanged(uids);
+    }
+
+    public void removeOldApplications() {
+        enforceAccess();
+        List<String> removed = mManager.removeOldApplications();
+        if (!removed.isEmpty()) {
+            notifyApplicationsChanged(removed.toArray(new String[removed.size()]));
+        }
+    }
+
+    public AbstractLocationPrivacyAlgorithm getDefaultAlgorithm() {
+        enforceAccess();
+        return mManager.getDefaultAlgorithm();
+    }
+
+    public void setDefaultAlgorithm(AbstractLocationPrivacyAlgorithm algorithm) {
+        enforceAccess();
+        String name = algorithm.getName();
+        mManager.setDefaultAlgorithm(name, algorithm.getConfiguration());
+        notifyDefaultAlgorithmChanged(name);
+    }
+
+    public void registerListener(ILocationPrivacyListener listener) {
+        enforceAccess();
+        if (listener != null) {
+            mListeners.register(listener);
+        }
+    }
+
+    public void unregisterListener(ILocationPrivacyListener listener) {
+        enforceAccess();
+        if (listener != null) {
+            mListeners.unregister(listener);
+        }
+    }
+
+    private void notifyStatusChanged(boolean on) {
+        synchronized (mListeners) {
+            int n = mListeners.beginBroadcast();
+            for (int i = 0; i < n; i++) {
+                try {
+                    mListeners.getBroadcastItem(i).onStatusChanged(on);
+                } catch (RemoteException e) {
+                    // the RemoteCallbackList removes the dead listener
+                }
+            }
+            mListeners.finishBroadcast();
+        }
+    }
+
+    private void notifyApplicationsChanged(String[] uids) {
+        synchronized (mListeners) {
+            int n = mListeners.beginBroadcast();
+            for (int i = 0; i < n; i++) {
+                try {
+                    mListeners.getBroadcastItem(i).onApplicationsChanged(uids);
+                } catch (RemoteException e) {
+                    // the RemoteCallbackList removes the dead listener
+                }
+            }
+            mListeners.finishBroadcast();
+        }
+    }
+
+    private void notifyDefaultAlgorithmChanged(String name) {
+        synchronized (mListeners) {
+            int n = mListeners.beginBroadcast();
+            for (int i = 0; i < n; i++) {
+                try {
+                    mListeners.getBroadcastItem(i).onDefaultAlgorithmChanged(name);
+                } catch (RemoteException e) {
+                    // the RemoteCallbackList removes the dead listener
+                }
+            }
+            mListeners.finishBroadcast();
+        }
+    }
+}
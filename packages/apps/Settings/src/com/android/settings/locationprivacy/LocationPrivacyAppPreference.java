@@ -20,7 +20,7 @@ package com.android.settings.locationprivacy;
 import android.content.Context;
 import android.content.res.Resources;
 import android.graphics.Color;
-import android.locationprivacy.control.LocationPrivacyManager;
+import android.locationprivacy.control.LocationPrivacyClient;
 import android.locationprivacy.model.LocationPrivacyApplication;
 import android.os.Bundle;
 import android.preference.Preference;
@@ -43,7 +43,7 @@ public class LocationPrivacyAppPreference extends SwitchPreference implements
 
 	private LocationPrivacyApplication app;
 	private LocationPrivacySettings settings;
-	private LocationPrivacyManager lpManager;
+	private LocationPrivacyClient lpManager;
 
 	/**
 	 * Instantiates a new LocationPrivacyAppPreference
@@ -59,7 +59,7 @@ public class LocationPrivacyAppPreference extends SwitchPreference implements
 			LocationPrivacyApplication app, LocationPrivacySettings settings) {
 		super(context);
 		this.app = app;
-		lpManager = new LocationPrivacyManager(context);
+		lpManager = settings.getManager();
 		this.settings = settings;
 		this.setOnPreferenceChangeListener(this);
 		this.setTitle(app.getName());
@@ -75,7 +75,7 @@ public class LocationPrivacyAppPreference extends SwitchPreference implements
 		}
 
 		this.setChecked(app.isEnabled());
-		this.setEnabled(lpManager.getStatus());
+		this.setEnabled(lpManager.isEnabled());
 	}
 
 	protected void onBindView(View view) {
@@ -30,6 +30,7 @@ import android.content.Intent;
 import android.content.ServiceConnection;
 import android.content.res.Configuration;
 import android.content.res.Resources;
+import android.locationprivacy.control.LocationPrivacyClient;
 import android.locationprivacy.control.LocationPrivacyManager;
 import android.locationprivacy.model.AbstractLocationPrivacyAlgorithm;
 import android.locationprivacy.model.Coordinate;
@@ -72,7 +73,7 @@ public class LocationPrivacyAppSettings extends SettingsPreferenceFragment
 
 	private LocationPrivacyApplication app;
 	private LocationPrivacyConfiguration config;
-	private LocationPrivacyManager lpManager;
+	private LocationPrivacyClient lpManager;
 	private List<String> lpAlgorithm;
 	/*
 	 * Assignment of Preference and name and data type
@@ -191,7 +192,6 @@ public class LocationPrivacyAppSettings extends SettingsPreferenceFragment
 		config = app.getAlgorithm().getConfiguration();
 		prefToKey = new HashMap<Preference, String[]>();
 		Activity activity = getActivity();
-		lpManager = new LocationPrivacyManager(getActivity());
 		Switch actionBarSwitch = new Switch(activity);
 		actionBarSwitch.setOnClickListener(this);
 		actionBarSwitch.setChecked(app.isEnabled());
@@ -211,21 +211,22 @@ public class LocationPrivacyAppSettings extends SettingsPreferenceFragment
 	}
 
 	
+	@Override
+	public void onCreate(Bundle savedInstanceState) {
+		super.onCreate(savedInstanceState);
+		lpManager = LocationPrivacyClient.acquire();
+	}
+
     @Override
     public void onDestroy() {
+        lpManager.release();
         lpManager = null;
         super.onDestroy();
     }
 
-	@Override
-	public void onResume() {
-		lpManager = new LocationPrivacyManager(getActivity());
-		super.onResume();
-	}
-
 	/**
      * If a parameter value changes, this method is called. Using the
-     * LocationPrivacyManager, the new values are stored in the database
+     * LocationPrivacyClient, the new values are stored by the location privacy service
 	 * 
 	 * @param preference
 	 *            changed preference object
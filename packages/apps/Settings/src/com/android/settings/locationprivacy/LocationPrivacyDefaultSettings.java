@@ -29,10 +29,12 @@ import android.content.Intent;
 import android.content.ServiceConnection;
 import android.content.res.Configuration;
 import android.content.res.Resources;
+import android.locationprivacy.control.LocationPrivacyClient;
 import android.locationprivacy.control.LocationPrivacyManager;
 import android.locationprivacy.model.AbstractLocationPrivacyAlgorithm;
 import android.locationprivacy.model.Coordinate;
 import android.locationprivacy.model.LocationPrivacyConfiguration;
+import android.os.Bundle;
 import android.os.IBinder;
 import android.os.RemoteException;
 import android.preference.CheckBoxPreference;
@@ -63,7 +65,7 @@ public class LocationPrivacyDefaultSettings extends SettingsPreferenceFragment
 
 	private AbstractLocationPrivacyAlgorithm algorithm;
 	private LocationPrivacyConfiguration config;
-	private LocationPrivacyManager lpManager;
+	private LocationPrivacyClient lpManager;
 	private List<String> lpAlgorithms;
 	private HashMap<Preference, String[]> prefToKey;
 	private ListPreference chooseAlgorithm;
@@ -163,7 +165,6 @@ public class LocationPrivacyDefaultSettings extends SettingsPreferenceFragment
 	public void onStart() {
 		super.onStart();
 		res = getActivity().getResources();
-		lpManager = new LocationPrivacyManager(getActivity());
 		lpAlgorithms = LocationPrivacyManager.getAllAlgorithm();
 		lpAlgorithms.remove("default");
 		algorithm = lpManager.getDefaultAlgorithm();
@@ -174,8 +175,15 @@ public class LocationPrivacyDefaultSettings extends SettingsPreferenceFragment
 	}
 
 
+	@Override
+	public void onCreate(Bundle savedInstanceState) {
+		super.onCreate(savedInstanceState);
+		lpManager = LocationPrivacyClient.acquire();
+	}
+
 	@Override
 	public void onDestroy() {
+		lpManager.release();
 		lpManager = null;
 		super.onDestroy();
 	}
@@ -18,7 +18,7 @@
 package com.android.settings.locationprivacy;
 
 import android.content.Context;
-import android.locationprivacy.control.LocationPrivacyManager;
+import android.locationprivacy.control.LocationPrivacyClient;
 import android.widget.CompoundButton;
 import android.widget.CompoundButton.OnCheckedChangeListener;
 import android.widget.Switch;
@@ -31,7 +31,7 @@ import android.widget.Switch;
  */
 public class LocationPrivacyEnabler implements OnCheckedChangeListener {
     private Switch mSwitch;
-    private LocationPrivacyManager mLPService;
+    private LocationPrivacyClient mLPService;
 
     /**
      * Creates new instance of LocationPrivacyEnabler
@@ -39,15 +39,18 @@ public class LocationPrivacyEnabler implements OnCheckedChangeListener {
      * @param context Context the LocationPrivacyEnabler is running in
      */
     public LocationPrivacyEnabler(Context context) {
-        mLPService = new LocationPrivacyManager(context);
     }
 
     /**
-     * Initializes the switch
+     * Initializes the switch and acquires the LocationPrivacyClient until
+     * pause is called
      */
     public void resume() {
+        if (mLPService == null) {
+            mLPService = LocationPrivacyClient.acquire();
+        }
         if (mSwitch != null) {
-            mSwitch.setChecked(mLPService.getStatus());
+            mSwitch.setChecked(mLPService.isEnabled());
             mSwitch.setOnCheckedChangeListener(this);
         }
     }
@@ -71,6 +74,10 @@ public class LocationPrivacyEnabler implements OnCheckedChangeListener {
         if (mSwitch != null) {
             mSwitch.setOnCheckedChangeListener(null);
         }
+        if (mLPService != null) {
+            mLPService.release();
+            mLPService = null;
+        }
     }
 
     @Override
@@ -19,8 +19,16 @@ package com.android.settings.locationprivacy;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import android.content.Context;
 import android.content.Intent;
@@ -28,7 +36,13 @@ import android.graphics.drawable.Drawable;
 import android.location.Address;
 import android.location.Geocoder;
 import android.locationprivacy.model.Coordinate;
+import android.locationprivacy.util.Metrics;
+import android.os.AsyncTask;
 import android.os.Bundle;
+import android.os.SystemClock;
+import android.text.Editable;
+import android.text.TextWatcher;
+import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -54,11 +68,17 @@ import com.mapquest.android.maps.OverlayItem;
 /**
  * LocationPrivacyMap provides a map to select coordinates
  * 
+ * Addresses are looked up in the background, so the map stays responsive
+ * while the geocoder waits for the network. A lookup that is superseded by a
+ * new tap or search is cancelled and its result dropped.
+ * 
  * @author Christian Kater
  * 
  */
 public class LocationPrivacyMap extends MapActivity implements OnClickListener {
 
+	private static final String TAG = "LocationPrivacyMap";
+
 	private AutoCompleteTextView searchAddress;
 	private ImageButton submitSearch;
 	private Button ok;
@@ -71,6 +91,13 @@ public class LocationPrivacyMap extends MapActivity implements OnClickListener {
 	private Geocoder geocoder;
 	private GeoPoint geopoint;
 	private String key;
+	/** running lookup of the address of the selected coordinates */
+	private ReverseGeocodeTask reverseTask;
+	/** running search for an address */
+	private SearchTask searchTask;
+
+	/** Adapter of the search field, counts the geocoder calls of this visit */
+	private AutoCompleteAdapter adapter;
 
 	/*
 	 * (non-Javadoc)
@@ -103,11 +130,30 @@ public class LocationPrivacyMap extends MapActivity implements OnClickListener {
 		cancel.setOnClickListener(this);
 		submitSearch.setOnClickListener(this);
 
-		searchAddress.setAdapter(new AutoCompleteAdapter(this));
+		adapter = new AutoCompleteAdapter(this);
+		searchAddress.setAdapter(adapter);
+		searchAddress.addTextChangedListener(adapter);
 
 		poiOverlay = new DefaultItemizedOverlay(icon);
 		map.getOverlays().add(new TapOverlay());
 		map.getOverlays().add(poiOverlay);
+		poiOverlay.setTapListener(new ItemizedOverlay.OverlayTapListener() {
+			@Override
+			public void onTap(GeoPoint pt, MapView mapView) {
+				int lastTouchedIndex = poiOverlay.getLastFocusedIndex();
+				if (lastTouchedIndex > -1) {
+					showPoiInfo = !showPoiInfo;
+					if (showPoiInfo) {
+						OverlayItem tapped = poiOverlay
+								.getItem(lastTouchedIndex);
+						annotation.showAnnotationView(tapped);
+					} else {
+						annotation.hide();
+					}
+
+				}
+			}
+		});
 
 		annotation = new AnnotationView(map);
 		annotation.getTitle().setMaxLines(2);
@@ -123,6 +169,25 @@ public class LocationPrivacyMap extends MapActivity implements OnClickListener {
 
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.mapquest.android.maps.MapActivity#onDestroy()
+	 */
+	@Override
+	protected void onDestroy() {
+		if (reverseTask != null) {
+			reverseTask.cancel(true);
+		}
+		if (searchTask != null) {
+			searchTask.cancel(true);
+		}
+		if (adapter != null) {
+			Log.i(TAG, "autocomplete: " + adapter.getRequestRate());
+		}
+		super.onDestroy();
+	}
+
 	@Override
 	public boolean isRouteDisplayed() {
 		return false;
@@ -147,45 +212,66 @@ public class LocationPrivacyMap extends MapActivity implements OnClickListener {
 			setResult(0);
 			finish();
 		} else if (v == submitSearch) {
-			String address = searchAddress.getText().toString();
-			List<Address> positions = null;
-			try {
-				positions = geocoder.getFromLocationName(address, 1);
-			} catch (IOException e) {
-				e.printStackTrace();
-			}
-			if (positions != null && positions.size() > 0) {
-				Address newPosition = positions.get(0);
-				GeoPoint geo = new GeoPoint(newPosition.getLatitude(),
-						newPosition.getLongitude());
-				map.getController().setCenter(geo);
-				setPOI(geo);
+			if (searchTask != null) {
+				searchTask.cancel(true);
 			}
+			searchTask = new SearchTask();
+			searchTask.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR,
+					searchAddress.getText().toString());
 		}
 
 	}
 
 	/**
-     * Set new coordinates. Address information is gathered and shown on the map.
+     * Set new coordinates. Address information is gathered in the background
+     * and shown on the map when it arrives.
 	 *
 	 * @param geo
 	 *            new coordinates
 	 */
 	public void setPOI(GeoPoint geo) {
 		geopoint = geo;
+		if (reverseTask != null) {
+			reverseTask.cancel(true);
+		}
+		showPOI(geo, getString(R.string.lp_map_lookup), "");
+		reverseTask = new ReverseGeocodeTask(geo);
+		reverseTask.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+	}
+
+	/**
+	 * Shows the marker of the selected coordinates. An open annotation is
+	 * updated.
+	 *
+	 * @param geo
+	 *            selected coordinates
+	 * @param street
+	 *            title of the marker
+	 * @param city
+	 *            snippet of the marker
+	 */
+	private void showPOI(GeoPoint geo, String street, String city) {
 		poiOverlay.clear();
-		List<Address> addresses = null;
-		try {
-			addresses = geocoder.getFromLocation(geo.getLatitude(),
-					geo.getLongitude(), 1);
-		} catch (IOException e) {
-			e.printStackTrace();
+		OverlayItem poi = new OverlayItem(geo, street, city);
+		poiOverlay.addItem(poi);
+		if (showPoiInfo) {
+			annotation.showAnnotationView(poi);
 		}
-		Address nextAddress = null;
+		map.invalidate();
+	}
+
+	/**
+	 * Shows the address of the selected coordinates
+	 *
+	 * @param geo
+	 *            selected coordinates
+	 * @param nextAddress
+	 *            address next to the coordinates, null if there is none
+	 */
+	private void showAddress(GeoPoint geo, Address nextAddress) {
 		String street = "";
 		String city = "";
-		if (addresses != null && addresses.size() > 0) {
-			nextAddress = addresses.get(0);
+		if (nextAddress != null) {
 			if (nextAddress.getThoroughfare() != null) {
 				street = nextAddress.getThoroughfare();
 				if (street.length() > 18) {
@@ -214,46 +300,162 @@ public class LocationPrivacyMap extends MapActivity implements OnClickListener {
 			}
 
 		}
+		showPOI(geo, street, city);
+	}
 
-		OverlayItem poi = new OverlayItem(geo, street, city);
+	/**
+	 * ReverseGeocodeTask looks up the address of the selected coordinates.
+	 * Cancelled tasks do not show their result.
+	 */
+	private class ReverseGeocodeTask extends AsyncTask<Void, Void, Address> {
 
-		poiOverlay.addItem(poi);
-		poiOverlay.setTapListener(new ItemizedOverlay.OverlayTapListener() {
-			@Override
-			public void onTap(GeoPoint pt, MapView mapView) {
-				int lastTouchedIndex = poiOverlay.getLastFocusedIndex();
-				if (lastTouchedIndex > -1) {
-					showPoiInfo = !showPoiInfo;
-					if (showPoiInfo) {
-						OverlayItem tapped = poiOverlay
-								.getItem(lastTouchedIndex);
-						annotation.showAnnotationView(tapped);
-					} else {
-						annotation.hide();
-					}
+		private final GeoPoint geo;
 
-				}
+		public ReverseGeocodeTask(GeoPoint geo) {
+			this.geo = geo;
+		}
+
+		@Override
+		protected Address doInBackground(Void... params) {
+			List<Address> addresses = null;
+			try {
+				addresses = geocoder.getFromLocation(geo.getLatitude(),
+						geo.getLongitude(), 1);
+			} catch (IOException e) {
+				e.printStackTrace();
 			}
-		});
+			if (addresses != null && addresses.size() > 0) {
+				return addresses.get(0);
+			}
+			return null;
+		}
 
+		@Override
+		protected void onPostExecute(Address address) {
+			if (reverseTask == this) {
+				reverseTask = null;
+				showAddress(geo, address);
+			}
+		}
+	}
+
+	/**
+	 * SearchTask looks up the coordinates of an address and selects them.
+	 * Cancelled tasks do not show their result.
+	 */
+	private class SearchTask extends AsyncTask<String, Void, Address> {
+
+		@Override
+		protected Address doInBackground(String... params) {
+			List<Address> positions = null;
+			try {
+				positions = geocoder.getFromLocationName(params[0], 1);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			if (positions != null && positions.size() > 0) {
+				return positions.get(0);
+			}
+			return null;
+		}
+
+		@Override
+		protected void onPostExecute(Address newPosition) {
+			if (searchTask != this) {
+				return;
+			}
+			searchTask = null;
+			if (newPosition != null) {
+				GeoPoint geo = new GeoPoint(newPosition.getLatitude(),
+						newPosition.getLongitude());
+				map.getController().setCenter(geo);
+				setPOI(geo);
+			}
+		}
 	}
 
 	/**
+	 * AutoCompleteAdapter suggests addresses while the user types. The
+	 * geocoder is only asked after typing pauses for DEBOUNCE milliseconds,
+	 * and a lookup is abandoned as soon as the text changes. Suggestions for
+	 * a text that extends an earlier one are narrowed from the cached
+	 * suggestions of the earlier text if any of them still match.
+	 * 
+	 * The adapter counts in the metrics "autocomplete": queries, texts
+	 * filtered; geocoder_calls, lookups started; prefix_hits and
+	 * prefix_misses, texts answered from the cache or not; debounced and
+	 * cancelled, texts superseded before or during their lookup. These live as
+	 * long as the process, so the adapter also counts the queries and
+	 * geocoder calls of its own activity, whose rate is logged when the
+	 * activity is destroyed.
+	 * 
 	 * @author Nicolas Klein
 	 *         (http://android.foxykeep.com/dev/how-to-add-autocompletion-to-an-edittext)
 	 */
 	private class AutoCompleteAdapter extends ArrayAdapter<Address> implements
-			Filterable {
+			Filterable, TextWatcher {
+
+		/** Milliseconds typing has to pause before the geocoder is asked */
+		private static final long DEBOUNCE = 300;
+
+		/** Milliseconds between two checks whether a lookup is superseded */
+		private static final long POLL = 50;
+
+		/** Minimum length of a text that is looked up */
+		private static final int MIN_LENGTH = 3;
+
+		/** Maximum number of suggestions */
+		private static final int MAX_RESULTS = 10;
+
+		/** Maximum number of cached texts */
+		private static final int MAX_CACHED = 32;
 
 		private LayoutInflater inflater;
 		private Geocoder geocoder;
 
+		/** Current text of the search field */
+		private volatile String latest = "";
+
+		/** Suggestions by normalized text, used by the filter thread only */
+		private final LinkedHashMap<String, List<Address>> cache = new LinkedHashMap<String, List<Address>>(
+				16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(
+					Map.Entry<String, List<Address>> eldest) {
+				return size() > MAX_CACHED;
+			}
+		};
+
+		private final Metrics metrics = Metrics.get("autocomplete");
+
+		/** Queries and geocoder calls of this activity */
+		private final AtomicInteger queryCount = new AtomicInteger();
+		private final AtomicInteger callCount = new AtomicInteger();
+
+		/** Time the adapter has been created, from elapsedRealtime */
+		private final long created = SystemClock.elapsedRealtime();
+
 		public AutoCompleteAdapter(Context context) {
 			super(context, -1);
 			inflater = LayoutInflater.from(context);
 			geocoder = new Geocoder(context);
 		}
 
+		@Override
+		public void beforeTextChanged(CharSequence s, int start, int count,
+				int after) {
+		}
+
+		@Override
+		public void onTextChanged(CharSequence s, int start, int before,
+				int count) {
+		}
+
+		@Override
+		public void afterTextChanged(Editable s) {
+			latest = s.toString();
+		}
+
 		
 		@Override
 		public View getView(int position, View convertView, ViewGroup parent) {
@@ -299,6 +501,142 @@ public class LocationPrivacyMap extends MapActivity implements OnClickListener {
 			return addressString;
 		}
 
+		/**
+		 * Returns suggestions for a text from the cache or the geocoder. Runs
+		 * on the filter thread.
+		 * 
+		 * @param text
+		 *            text of the search field
+		 * @return suggestions, null if the text has been superseded
+		 */
+		private List<Address> lookup(final String text) {
+			String query = text.trim().toLowerCase(Locale.getDefault());
+			if (query.length() < MIN_LENGTH) {
+				return new ArrayList<Address>();
+			}
+			metrics.increment("queries");
+			queryCount.incrementAndGet();
+			List<Address> addresses = cache.get(query);
+			if (addresses == null) {
+				addresses = narrow(query);
+			}
+			if (addresses != null) {
+				metrics.increment("prefix_hits");
+				cache.put(query, addresses);
+				return addresses;
+			}
+			metrics.increment("prefix_misses");
+			if (!pause(text, DEBOUNCE)) {
+				metrics.increment("debounced");
+				return null;
+			}
+			FutureTask<List<Address>> call = new FutureTask<List<Address>>(
+					new Callable<List<Address>>() {
+						@Override
+						public List<Address> call() throws IOException {
+							return geocoder.getFromLocationName(text,
+									MAX_RESULTS);
+						}
+					});
+			metrics.increment("geocoder_calls");
+			callCount.incrementAndGet();
+			long start = SystemClock.elapsedRealtime();
+			AsyncTask.THREAD_POOL_EXECUTOR.execute(call);
+			while (true) {
+				try {
+					addresses = call.get(POLL, TimeUnit.MILLISECONDS);
+					break;
+				} catch (TimeoutException e) {
+					if (!text.equals(latest)) {
+						call.cancel(true);
+						metrics.increment("cancelled");
+						return null;
+					}
+				} catch (ExecutionException e) {
+					Log.w(TAG, "Address lookup failed", e.getCause());
+					// errors are not cached
+					return new ArrayList<Address>();
+				} catch (InterruptedException e) {
+					call.cancel(true);
+					return null;
+				}
+			}
+			metrics.record("geocoder", SystemClock.elapsedRealtime() - start);
+			if (addresses == null) {
+				addresses = new ArrayList<Address>();
+			}
+			cache.put(query, addresses);
+			return addresses;
+		}
+
+		/**
+		 * Returns the rate of geocoder calls of this activity, per query and
+		 * per minute since the adapter has been created
+		 */
+		String getRequestRate() {
+			int queries = queryCount.get();
+			int calls = callCount.get();
+			double minutes = (SystemClock.elapsedRealtime() - created)
+					/ 60000.0;
+			return String.format(Locale.US,
+					"%d geocoder calls for %d queries in %.1f min, "
+							+ "%.2f per query, %.1f per minute", calls,
+					queries, minutes, queries == 0 ? 0.0 : (double) calls
+							/ queries, minutes == 0 ? 0.0 : calls / minutes);
+		}
+
+		/**
+		 * Narrows the cached suggestions of the longest cached prefix of a
+		 * text to those containing all words of the text
+		 * 
+		 * @return suggestions, null if none of them matches
+		 */
+		private List<Address> narrow(String query) {
+			List<Address> candidates = null;
+			for (int end = query.length() - 1; end >= MIN_LENGTH
+					&& candidates == null; end--) {
+				candidates = cache.get(query.substring(0, end));
+			}
+			if (candidates == null) {
+				return null;
+			}
+			String[] words = query.split("[\\s,]+");
+			List<Address> narrowed = new ArrayList<Address>();
+			for (Address address : candidates) {
+				String string = adressToString(address).toLowerCase(
+						Locale.getDefault());
+				boolean matches = true;
+				for (String word : words) {
+					if (!string.contains(word)) {
+						matches = false;
+						break;
+					}
+				}
+				if (matches) {
+					narrowed.add(address);
+				}
+			}
+			return narrowed.isEmpty() ? null : narrowed;
+		}
+
+		/**
+		 * Waits while the user types
+		 * 
+		 * @param text
+		 *            text to be looked up
+		 * @param millis
+		 *            time to wait
+		 * @return true if the text is still current
+		 */
+		private boolean pause(String text, long millis) {
+			try {
+				Thread.sleep(millis);
+			} catch (InterruptedException e) {
+				return false;
+			}
+			return text.equals(latest);
+		}
+
 		@Override
 		public Filter getFilter() {
 			Filter filter = new Filter() {
@@ -306,6 +644,10 @@ public class LocationPrivacyMap extends MapActivity implements OnClickListener {
 				@Override
 				protected void publishResults(CharSequence constraint,
 						FilterResults results) {
+					if (results == null || results.values == null) {
+						// superseded, the next text brings new suggestions
+						return;
+					}
 					clear();
 					List<Address> addresses = (List<Address>) results.values;
 					for (Address address : addresses) {
@@ -322,11 +664,9 @@ public class LocationPrivacyMap extends MapActivity implements OnClickListener {
 				protected FilterResults performFiltering(CharSequence constraint) {
 					List<Address> addresses = null;
 					if (constraint != null) {
-						try {
-							addresses = geocoder.getFromLocationName(
-									(String) constraint, 10);
-						} catch (IOException e) {
-							e.printStackTrace();
+						addresses = lookup(constraint.toString());
+						if (addresses == null) {
+							return null;
 						}
 					}
 					if (addresses == null) {
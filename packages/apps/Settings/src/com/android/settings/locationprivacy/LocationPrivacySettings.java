@@ -22,7 +22,7 @@ import java.util.List;
 import android.app.ActionBar;
 import android.app.Activity;
 import android.content.res.Resources;
-import android.locationprivacy.control.LocationPrivacyManager;
+import android.locationprivacy.control.LocationPrivacyClient;
 import android.locationprivacy.model.LocationPrivacyApplication;
 import android.os.Bundle;
 import android.preference.Preference;
@@ -48,7 +48,7 @@ public class LocationPrivacySettings extends SettingsPreferenceFragment
 		implements OnPreferenceClickListener {
 
 	private Preference defaultAlgorithm;
-	private LocationPrivacyManager lpManager;
+	private LocationPrivacyClient lpManager;
 	private List<LocationPrivacyApplication> applications;
 	private Switch actionBarSwitch;
 	private OnClickListener listener = new OnClickListener() {
@@ -60,6 +60,16 @@ public class LocationPrivacySettings extends SettingsPreferenceFragment
 		}
 	};
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see android.preference.PreferenceFragment#onCreate(android.os.Bundle)
+	 */
+	public void onCreate(Bundle savedInstanceState) {
+		super.onCreate(savedInstanceState);
+		lpManager = LocationPrivacyClient.acquire();
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -67,15 +77,12 @@ public class LocationPrivacySettings extends SettingsPreferenceFragment
 	 */
 	public void onStart() {
 		super.onStart();
-		System.out.println("Context Settings : "
-				+ getActivity().getDatabasePath("privacy.db"));
-		lpManager = new LocationPrivacyManager(getActivity());
 		lpManager.removeOldApplications();
 		applications = lpManager.getApplications();
 		Activity activity = getActivity();
 		actionBarSwitch = new Switch(activity);
 		actionBarSwitch.setOnClickListener(listener);
-		actionBarSwitch.setChecked(lpManager.getStatus());
+		actionBarSwitch.setChecked(lpManager.isEnabled());
 
 		final int padding = activity.getResources().getDimensionPixelSize(
 				R.dimen.action_bar_switch_padding);
@@ -94,22 +101,20 @@ public class LocationPrivacySettings extends SettingsPreferenceFragment
 	/*
 	 * (non-Javadoc)
 	 * 
-	 * @see android.preference.PreferenceFragment#onStop()
+	 * @see android.preference.PreferenceFragment#onDestroy()
 	 */
-	public void onStop() {
+	public void onDestroy() {
+		lpManager.release();
 		lpManager = null;
-		super.onStop();
+		super.onDestroy();
 	}
 
-	/*
-	 * (non-Javadoc)
-	 * 
-	 * @see android.app.Fragment#onResume()
+	/**
+	 * Returns the LocationPrivacyClient shared by the preferences of this
+	 * dialog
 	 */
-	public void onResume() {
-		lpManager = new LocationPrivacyManager(getActivity());
-		super.onResume();
-
+	LocationPrivacyClient getManager() {
+		return lpManager;
 	}
 
 	/**
@@ -122,7 +127,7 @@ public class LocationPrivacySettings extends SettingsPreferenceFragment
 		}
 		root = getPreferenceScreen();
 		boolean status = false;
-		status = lpManager.getStatus();
+		status = lpManager.isEnabled();
 		Resources r = getResources();
 		addPreferencesFromResource(R.xml.lp_settings);
 		root = getPreferenceScreen();